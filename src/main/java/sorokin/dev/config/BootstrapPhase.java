@@ -0,0 +1,20 @@
+package sorokin.dev.config;
+
+import java.time.Duration;
+
+/**
+ * Время одного этапа запуска Hibernate (см. {@link HibernateBootstrap}).
+ *
+ * @param name     название этапа
+ * @param duration сколько он длился
+ */
+public record BootstrapPhase(
+        String name,
+        Duration duration
+) {
+
+    @Override
+    public String toString() {
+        return name + "=" + duration.toMillis() + "ms";
+    }
+}
@@ -0,0 +1,39 @@
+package sorokin.dev.config;
+
+import sorokin.dev.entity.*;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Явный список всех сущностей (JPA Entity) приложения.
+ * <p>
+ * Hibernate не сканирует пакеты сам (addPackage("sorokin.dev") читает только аннотации уровня пакета,
+ * а не ищет в нем классы), поэтому каждую сущность нужно зарегистрировать. Список один на все
+ * SessionFactory - и в приложении, и в тестах. Новую сущность достаточно добавить сюда.
+ */
+public final class EntityRegistry {
+
+    public static final List<Class<?>> ENTITIES = List.of(
+            Student.class,
+            Profile.class,
+            Group.class,
+            Course.class,
+            User.class,
+            Account.class,
+            LogEntry.class,
+            AccountOutboxEvent.class
+    );
+
+    /**
+     * Сущности, изменения которых публикуются в {@link sorokin.dev.events.EntityChangeStream}.
+     */
+    public static final Set<Class<?>> CHANGE_STREAM_ENTITIES = Set.of(
+            Student.class,
+            Account.class,
+            Course.class
+    );
+
+    private EntityRegistry() {
+    }
+}
@@ -0,0 +1,169 @@
+package sorokin.dev.config;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.BootstrapServiceRegistryBuilder;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.spi.ManagedEntity;
+import org.hibernate.integrator.spi.Integrator;
+import sorokin.dev.query.QueryCatalog;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Запуск Hibernate: один раз готовит общие для всех SessionFactory части (ServiceRegistry и MetadataSources)
+ * и из них создает сколько угодно SessionFactory.
+ * <p>
+ * Раньше каждая SessionFactory строилась из своего org.hibernate.cfg.Configuration со своим ServiceRegistry
+ * и пулом соединений, плюс создавался неиспользуемый ServiceRegistry. Здесь этапы запуска разделены:
+ * <ol>
+ *     <li>service-registry - настройки, подключение к БД, пул соединений (один раз);</li>
+ *     <li>metadata-sources - регистрация классов из {@link EntityRegistry} (один раз);</li>
+ *     <li>enhancement-check - проверка, что классы сущностей прошли bytecode enhancement при сборке (один раз);</li>
+ *     <li>metadata:{имя} - построение маппинга для фабрики. Hibernate 6 привязывает Metadata к той
+ *     SessionFactory, которая из нее построена, поэтому этот этап выполняется для каждой фабрики;</li>
+ *     <li>session-factory:{имя} - создание SessionFactory.</li>
+ * </ol>
+ * Время каждого этапа пишется в лог и доступно через {@link #getPhases()}: для коротких batch-задач время
+ * холодного старта важно отслеживать.
+ * <p>
+ * ServiceRegistry общий для всех SessionFactory, поэтому закрытие одной фабрики его не закрывает
+ * (disableAutoClose). Он закрывается в {@link #close()}, после закрытия всех фабрик.
+ * <p>
+ * Integrator - расширение Hibernate, которое вызывается при создании каждой SessionFactory. Через него
+ * подключаются слушатели событий (например, {@link sorokin.dev.events.EntityChangeIntegrator}).
+ */
+public class HibernateBootstrap implements AutoCloseable {
+
+    private static final System.Logger log = System.getLogger(HibernateBootstrap.class.getName());
+
+    private final StandardServiceRegistry serviceRegistry;
+    private final MetadataSources metadataSources;
+    private final List<BootstrapPhase> phases = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * @param settings           настройки Hibernate (hibernate.connection.url и т.д.)
+     * @param entityClasses      классы сущностей
+     * @param requireEnhancement true - не запускаться, если какая-то сущность не прошла bytecode enhancement
+     */
+    public HibernateBootstrap(
+            Map<String, Object> settings,
+            List<Class<?>> entityClasses,
+            boolean requireEnhancement
+    ) {
+        this(settings, entityClasses, requireEnhancement, List.of());
+    }
+
+    /**
+     * @param settings           настройки Hibernate (hibernate.connection.url и т.д.)
+     * @param entityClasses      классы сущностей
+     * @param requireEnhancement true - не запускаться, если какая-то сущность не прошла bytecode enhancement
+     * @param integrators        расширения, которые подключаются к каждой SessionFactory
+     */
+    public HibernateBootstrap(
+            Map<String, Object> settings,
+            List<Class<?>> entityClasses,
+            boolean requireEnhancement,
+            List<Integrator> integrators
+    ) {
+        long start = System.nanoTime();
+        Map<String, Object> allSettings = new HashMap<>(settings);
+        // Имя фабрики нужно только для логов и статистики, регистрировать фабрику в JNDI не нужно.
+        allSettings.putIfAbsent(AvailableSettings.SESSION_FACTORY_NAME_IS_JNDI, false);
+        BootstrapServiceRegistryBuilder bootstrapRegistryBuilder = new BootstrapServiceRegistryBuilder();
+        integrators.forEach(bootstrapRegistryBuilder::applyIntegrator);
+        this.serviceRegistry = new StandardServiceRegistryBuilder(bootstrapRegistryBuilder.build())
+                .applySettings(allSettings)
+                .disableAutoClose()
+                .build();
+        start = recordPhase("service-registry", start);
+        try {
+            this.metadataSources = new MetadataSources(serviceRegistry);
+            entityClasses.forEach(metadataSources::addAnnotatedClass);
+            //каталог именованных запросов (аннотации на пакете), проверяется при создании каждой SessionFactory
+            metadataSources.addPackage(QueryCatalog.class.getPackage());
+            start = recordPhase("metadata-sources", start);
+
+            checkEnhancement(entityClasses, requireEnhancement);
+            recordPhase("enhancement-check", start);
+        } catch (RuntimeException e) {
+            StandardServiceRegistryBuilder.destroy(serviceRegistry);
+            throw e;
+        }
+    }
+
+    /**
+     * Создает новую SessionFactory на общем ServiceRegistry.
+     *
+     * @param name имя фабрики (для логов и статистики)
+     * @return SessionFactory
+     */
+    public SessionFactory buildSessionFactory(String name) {
+        long start = System.nanoTime();
+        Metadata metadata = metadataSources.buildMetadata();
+        start = recordPhase("metadata:" + name, start);
+        SessionFactory sessionFactory = metadata.getSessionFactoryBuilder()
+                .applyName(name)
+                .build();
+        recordPhase("session-factory:" + name, start);
+        log.log(System.Logger.Level.INFO, "Hibernate bootstrap timings: {0}, total={1}ms",
+                phases, String.valueOf(getTotalDuration().toMillis()));
+        return sessionFactory;
+    }
+
+    /**
+     * @return этапы запуска с их временем, в порядке выполнения
+     */
+    public List<BootstrapPhase> getPhases() {
+        return List.copyOf(phases);
+    }
+
+    /**
+     * @return суммарное время всех этапов запуска
+     */
+    public Duration getTotalDuration() {
+        return getPhases().stream()
+                .map(BootstrapPhase::duration)
+                .reduce(Duration.ZERO, Duration::plus);
+    }
+
+    @Override
+    public void close() {
+        StandardServiceRegistryBuilder.destroy(serviceRegistry);
+    }
+
+    private long recordPhase(String name, long start) {
+        long end = System.nanoTime();
+        phases.add(new BootstrapPhase(name, Duration.ofNanos(end - start)));
+        return end;
+    }
+
+    /**
+     * Классы, обработанные hibernate-enhance-maven-plugin, реализуют {@link ManagedEntity}.
+     * Без enhancement Hibernate работает, но ленивые basic-поля загружаются сразу, а изменения
+     * ищутся сравнением со снимком (snapshot) всех полей при каждом flush.
+     */
+    private static void checkEnhancement(List<Class<?>> entityClasses, boolean requireEnhancement) {
+        List<String> notEnhanced = entityClasses.stream()
+                .filter(entityClass -> !ManagedEntity.class.isAssignableFrom(entityClass))
+                .map(Class::getSimpleName)
+                .toList();
+        if (notEnhanced.isEmpty()) {
+            return;
+        }
+        if (requireEnhancement) {
+            throw new IllegalStateException(
+                    "Entities are not bytecode-enhanced, build with hibernate-enhance-maven-plugin: " + notEnhanced
+            );
+        }
+        log.log(System.Logger.Level.WARNING, "Entities are not bytecode-enhanced: {0}", notEnhanced);
+    }
+}
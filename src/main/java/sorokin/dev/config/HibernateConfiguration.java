@@ -1,12 +1,25 @@
 package sorokin.dev.config;
 
+import org.flywaydb.core.Flyway;
 import org.hibernate.SessionFactory;
-import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
-import org.hibernate.service.ServiceRegistry;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import sorokin.dev.entity.*;
-import sorokin.dev.service.StudentService;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.core.env.Environment;
+import sorokin.dev.events.EntityChangeIntegrator;
+import sorokin.dev.events.EntityChangeStream;
+import sorokin.dev.session.PersistenceContextGuard;
+import sorokin.dev.session.PersistenceContextGuardIntegrator;
+import sorokin.dev.session.SessionLeakDetector;
+import sorokin.dev.sql.SlowQueryLog;
+import sorokin.dev.sql.TimingConnectionProvider;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Конфигурация для подключения к Hibernate
@@ -35,90 +48,161 @@ import sorokin.dev.service.StudentService;
 @Configuration
 public class HibernateConfiguration {
 
+    private static final String URL = "jdbc:postgresql://localhost:6432/nsix"; //было - "jdbc:postgresql://localhost:5432/postgres"
+    private static final String USERNAME = "postgres";
+    private static final String PASSWORD = "postgres"; //было - root
+
     /**
-     * Метод для создания SessionFactory.
-     * Это есть бин, который будет создан при запуске приложения и помещен в контекст Spring.
-     * <p>
-     * В Hibernate основной класс для работы с БД - это Session. Он позволяет выполнять запросы к БД.
-     * <p>
-     * Этот метод создает SessionFactory, которая будет создавать нам Hibernate Session, которые будут использоваться
-     * для выполнения запросов к БД.
+     * Миграции схемы БД. Выполняются до создания SessionFactory (см. {@link SchemaMigration}).
      *
-     * @return SessionFactory
+     * @return Flyway, которым была мигрирована БД
      */
     @Bean
-    public SessionFactory sessionFactory() {
-        // Создаем объект org.hibernate.cfg.Configuration, для настройки Hibernate, который будет содержать информацию о наших классах и БД
-        org.hibernate.cfg.Configuration configuration = new org.hibernate.cfg.Configuration();
-
-        ServiceRegistry serviceRegistry = new StandardServiceRegistryBuilder()
-                .applySettings(configuration.getProperties())
-                .build();
+    public Flyway flyway() {
+        Flyway flyway = SchemaMigration.flyway(URL, USERNAME, PASSWORD);
+        flyway.migrate();
+        return flyway;
+    }
 
-        // Добавляем свойства, по которым будет работать Hibernate,
-        // а также аннотированные классы и указываем настройки подключения к БД.
-        // Чтобы Hibernate знал, что Student.class, Profile.class, Group.class, Course.class - это наши классы/сущности,
-        // которые мы хотим сохранять в БД (мы должны их тут указать).
-        configuration
-                .addAnnotatedClass(Student.class)
-                .addAnnotatedClass(Profile.class)
-                .addAnnotatedClass(Group.class)
-                .addAnnotatedClass(Course.class)
-                .addPackage("sorokin.dev") // добавляем пакет, чтобы Hibernate мог найти наши классы
-                .setProperty("hibernate.connection.driver_class", "org.postgresql.Driver")
-                .setProperty("hibernate.connection.url", "jdbc:postgresql://localhost:6432/nsix") //было - "jdbc:postgresql://localhost:5432/postgres"
-                .setProperty("hibernate.connection.username", "postgres")
-                .setProperty("hibernate.connection.password", "postgres") //было - root
-                .setProperty("hibernate.show_sql", "true")
-                .setProperty("hibernate.hbm2ddl.auto", "create-drop")
-                .setProperty("hibernate.current_session_context_class", "thread");
+    /**
+     * Настройки, по которым будет работать Hibernate, и настройки подключения к БД.
+     * Общие для всех SessionFactory приложения.
+     *
+     * @return настройки Hibernate
+     */
+    static Map<String, Object> hibernateSettings() {
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("hibernate.dialect", "org.hibernate.dialect.PostgreSQLDialect");
+        settings.put("hibernate.connection.driver_class", "org.postgresql.Driver");
+        settings.put("hibernate.connection.url", URL);
+        settings.put("hibernate.connection.username", USERNAME);
+        settings.put("hibernate.connection.password", PASSWORD);
+        //SQL пишет AsyncSqlLog (выборка, ограничение в секунду, фоновый поток), а не show_sql в System.out
+        settings.put("hibernate.show_sql", "false");
         //create-drop - при запуске приложения будет созданы таблицы, а при закрытии - удалены
         //Будет выполнено это:
         //Hibernate: drop table if exists courses cascade
         //Hibernate: drop table if exists profiles cascade
         //
         //update - при запуске приложения будут обновляться таблицы, если они уже существуют и у них добавляются новые поля
+        //
+        //validate - схему не трогаем, только проверяем, что маппинг сущностей с ней совпадает (сейчас используется)
+        //Схему создают миграции (SchemaMigration), Hibernate только сверяет с ней маппинг.
+        settings.put("hibernate.hbm2ddl.auto", "validate");
+        settings.put("hibernate.current_session_context_class", "thread");
+        // Отправлять INSERT/UPDATE/DELETE в БД пачками (JDBC batch), а не по одному.
+        // order_updates сортирует UPDATE по сущности и id, чтобы пачки получались длиннее.
+        settings.put("hibernate.jdbc.batch_size", "50");
+        settings.put("hibernate.order_updates", "true");
+        // Именованные запросы (sorokin.dev.query) разбираются и проверяются при создании SessionFactory:
+        // ошибка в HQL роняет запуск, а не первый вызов метода.
+        settings.put("hibernate.query.startup_check", "true");
+        // Кэш разобранных HQL (план запроса). Если различных запросов больше, чем размер кэша, планы
+        // вытесняют друг друга, и запросы разбираются заново - видно по промахам в QueryPlanCacheMetrics.
+        settings.put("hibernate.query.plan_cache_max_size", "512");
+        // Статистика нужна для попаданий/промахов кэша планов (QueryPlanCacheMetrics).
+        settings.put("hibernate.generate_statistics", "true");
+        return settings;
+    }
 
-        return configuration.buildSessionFactory();
+    /**
+     * Поток изменений сущностей {@link EntityRegistry#CHANGE_STREAM_ENTITIES}: после каждого коммита
+     * подписчики получают все изменения транзакции. Spring закроет его (close) после всех SessionFactory.
+     *
+     * @return EntityChangeStream
+     */
+    @Bean
+    public EntityChangeStream entityChangeStream() {
+        return new EntityChangeStream();
     }
 
-    @Bean("sessionFactorySecond")
-    public SessionFactory sessionFactorySecond() {
-        // Создаем объект org.hibernate.cfg.Configuration, для настройки Hibernate, который будет содержать информацию о наших классах и БД
-        org.hibernate.cfg.Configuration configuration = new org.hibernate.cfg.Configuration();
+    /**
+     * Сторож размера persistence context: предупреждение о разросшейся сессии, очистка сессии в пакетной
+     * обработке и отчет о наибольшем размере сессии после каждой транзакции.
+     *
+     * @param warnThreshold с какого числа сущностей в сессии предупреждать
+     * @param batchSize     при каком числе сущностей очищать сессию в пакетной обработке
+     * @return PersistenceContextGuard
+     */
+    @Bean
+    public PersistenceContextGuard persistenceContextGuard(
+            @Value("${persistence-context.warn-threshold:10000}") int warnThreshold,
+            @Value("${persistence-context.batch-size:1000}") int batchSize
+    ) {
+        return new PersistenceContextGuard(warnThreshold, batchSize);
+    }
 
-        // Добавляем свойства, по которым будет работать Hibernate,
-        // а также аннотированные классы (сущности JPA) и указываем настройки подключения к БД.
-        // Чтобы Hibernate знал, что Student.class, Profile.class, Group.class, Course.class - это наши классы/сущности,
-        // которые мы хотим сохранять в БД (мы должны их тут указать).
-        configuration
-                .addAnnotatedClass(Student.class)
-                .addAnnotatedClass(Profile.class)
-                .addAnnotatedClass(Group.class)
-                .addAnnotatedClass(Course.class)
-                .addAnnotatedClass(User.class)
-                .addAnnotatedClass(Account.class)
-                .addPackage("sorokin.dev") // добавляем пакет, чтобы Hibernate мог найти наши классы
-                .setProperty("hibernate.dialect", "org.hibernate.dialect.PostgreSQLDialect")
-                .setProperty("hibernate.connection.driver_class", "org.postgresql.Driver")
-                .setProperty("hibernate.connection.url", "jdbc:postgresql://localhost:6432/nsix") //было - "jdbc:postgresql://localhost:5432/postgres"
-                .setProperty("hibernate.connection.username", "postgres")
-                .setProperty("hibernate.connection.password", "postgres") //было - root
-                .setProperty("hibernate.show_sql", "true")
-                .setProperty("hibernate.hbm2ddl.auto", "create-drop")
-                .setProperty("hibernate.current_session_context_class", "thread");
-        //create-drop - при запуске приложения будет созданы таблицы, а при закрытии - удалены
-        //Будет выполнено это:
-        //Hibernate: drop table if exists courses cascade
-        //Hibernate: drop table if exists profiles cascade
-        //
-        //update - при запуске приложения будут обновляться таблицы, если они уже существуют и у них добавляются новые поля
+    /**
+     * Поиск незакрытых сессий: оборачивает бины SessionFactory и пишет в лог сессии, открытые дольше порога.
+     * Метод static - BeanPostProcessor создается раньше остальных бинов конфигурации, поэтому и настройки
+     * (session.leak.*) читаются из Environment: подстановка ${...} в @Value в этот момент еще не работает.
+     *
+     * @param environment настройки приложения
+     * @return SessionLeakDetector
+     */
+    @Bean
+    public static SessionLeakDetector sessionLeakDetector(Environment environment) {
+        return new SessionLeakDetector(
+                Duration.ofMillis(environment.getProperty("session.leak.threshold-ms", Long.class, 60000L)),
+                environment.getProperty("session.leak.stack-sample-rate", Double.class, 0.05),
+                Duration.ofMillis(environment.getProperty("session.leak.check-interval-ms", Long.class, 10000L)));
+    }
+
+    /**
+     * Пул соединений, который замеряет каждый SQL (см. {@link SlowQueryLog}). Бин Spring - чтобы слушатели
+     * замеров могли на него подписаться; создает и останавливает пул сам Hibernate.
+     *
+     * @return TimingConnectionProvider
+     */
+    @Bean
+    public TimingConnectionProvider timingConnectionProvider() {
+        return new TimingConnectionProvider();
+    }
+
+    /**
+     * Запуск Hibernate: ServiceRegistry и список сущностей из {@link EntityRegistry} готовятся один раз
+     * и используются всеми SessionFactory ниже. Сам маппинг (Metadata) строится заново для каждой фабрики:
+     * Hibernate 6 привязывает Metadata к той SessionFactory, которую из нее создали (см. {@link HibernateBootstrap}).
+     *
+     * @param entityChangeStream       куда слушатель событий Hibernate публикует изменения
+     * @param persistenceContextGuard  сторож размера persistence context
+     * @param timingConnectionProvider пул соединений
+     * @return HibernateBootstrap
+     */
+    @Bean
+    @DependsOn("flyway")
+    public HibernateBootstrap hibernateBootstrap(
+            EntityChangeStream entityChangeStream,
+            PersistenceContextGuard persistenceContextGuard,
+            TimingConnectionProvider timingConnectionProvider
+    ) {
+        Map<String, Object> settings = hibernateSettings();
+        settings.put(AvailableSettings.CONNECTION_PROVIDER, timingConnectionProvider);
+        return new HibernateBootstrap(settings, EntityRegistry.ENTITIES, false,
+                List.of(new EntityChangeIntegrator(entityChangeStream, EntityRegistry.CHANGE_STREAM_ENTITIES),
+                        new PersistenceContextGuardIntegrator(persistenceContextGuard)));
+    }
 
-        ServiceRegistry serviceRegistry = new StandardServiceRegistryBuilder()
-                .applySettings(configuration.getProperties())
-                .build();
+    /**
+     * Метод для создания SessionFactory.
+     * Это есть бин, который будет создан при запуске приложения и помещен в контекст Spring.
+     * <p>
+     * В Hibernate основной класс для работы с БД - это Session. Он позволяет выполнять запросы к БД.
+     * <p>
+     * Этот метод создает SessionFactory, которая будет создавать нам Hibernate Session, которые будут использоваться
+     * для выполнения запросов к БД.
+     *
+     * @param hibernateBootstrap общие метаданные Hibernate
+     * @return SessionFactory
+     */
+    @Bean
+    public SessionFactory sessionFactory(HibernateBootstrap hibernateBootstrap) {
+        return hibernateBootstrap.buildSessionFactory("sessionFactory");
+    }
 
-        return configuration.buildSessionFactory(serviceRegistry);
+    @Bean("sessionFactorySecond")
+    public SessionFactory sessionFactorySecond(HibernateBootstrap hibernateBootstrap) {
+        return hibernateBootstrap.buildSessionFactory("sessionFactorySecond");
     }
 
 }
@@ -0,0 +1,54 @@
+package sorokin.dev.config;
+
+import org.flywaydb.core.Flyway;
+
+/**
+ * Миграции схемы БД (Flyway).
+ * <p>
+ * Раньше схему создавал сам Hibernate при каждом запуске (hibernate.hbm2ddl.auto=create-drop): удалял и заново
+ * создавал все таблицы, причем без индексов на внешних ключах. Теперь схема описывается версионными
+ * SQL-скриптами в resources/db/migration:
+ * <ul>
+ *     <li>db/migration/common - скрипты, общие для PostgreSQL и H2;</li>
+ *     <li>db/migration/{vendor} - скрипты только для конкретной БД (например, db/migration/postgresql).</li>
+ * </ul>
+ * Имя скрипта - V{версия}__{описание}.sql. Уже примененный скрипт менять нельзя, любое изменение схемы - это
+ * новый скрипт со следующей версией. Flyway хранит примененные версии в таблице flyway_schema_history
+ * и при запуске выполняет только новые скрипты. На существующей БД это один запрос к этой таблице.
+ * <p>
+ * После миграций Hibernate запускается с hibernate.hbm2ddl.auto=validate: он ничего не меняет в схеме,
+ * а только сверяет с ней маппинг сущностей и падает при старте, если таблицы или колонки не совпадают.
+ */
+public final class SchemaMigration {
+
+    public static final String COMMON_LOCATION = "classpath:db/migration/common";
+
+    private SchemaMigration() {
+    }
+
+    /**
+     * Создает Flyway для указанной БД.
+     *
+     * @param url      JDBC url
+     * @param user     пользователь
+     * @param password пароль
+     * @return настроенный Flyway
+     */
+    public static Flyway flyway(String url, String user, String password) {
+        return Flyway.configure()
+                .dataSource(url, user, password)
+                .locations(COMMON_LOCATION, "classpath:db/migration/" + vendorOf(url))
+                .load();
+    }
+
+    /**
+     * Имя БД из JDBC url: jdbc:postgresql://... - postgresql, jdbc:h2:mem:... - h2.
+     */
+    static String vendorOf(String url) {
+        String[] parts = url.split(":");
+        if (parts.length < 2 || !"jdbc".equals(parts[0])) {
+            throw new IllegalArgumentException("Not a JDBC url: " + url);
+        }
+        return parts[1];
+    }
+}
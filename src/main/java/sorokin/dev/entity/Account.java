@@ -1,8 +1,11 @@
 package sorokin.dev.entity;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.BatchSize;
+import sorokin.dev.utils.MultiLoadHelper;
 
 @Entity
+@BatchSize(size = MultiLoadHelper.BATCH_SIZE)
 @Table(name = "accounts")
 public class Account {
 
@@ -0,0 +1,11 @@
+package sorokin.dev.entity;
+
+/**
+ * Тип события по счету в {@link AccountOutboxEvent}.
+ */
+public enum AccountEventType {
+    DEPOSIT,
+    WITHDRAW,
+    TRANSFER,
+    CLOSE
+}
@@ -0,0 +1,93 @@
+package sorokin.dev.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Событие по счету в таблице outbox (transactional outbox).
+ * <p>
+ * Если сначала закоммитить изменение счета, а потом отправить событие, то при падении между этими шагами
+ * событие потеряется, а если наоборот - уйдет событие об изменении, которое откатилось. Поэтому событие
+ * пишется строкой в таблицу account_outbox в той же транзакции, что и изменение счета: либо сохранятся оба,
+ * либо ни одно. Отправляет события отдельный поток (sorokin.dev.outbox.AccountOutboxRelay).
+ */
+@Entity
+@Table(name = "account_outbox")
+public class AccountOutboxEvent {
+
+    /**
+     * allocationSize = 50 совпадает с "increment by 50" последовательности и с hibernate.jdbc.batch_size.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "account_outbox_seq")
+    @SequenceGenerator(name = "account_outbox_seq", sequenceName = "account_outbox_seq", allocationSize = 50)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "event_type", nullable = false, length = 20)
+    private AccountEventType eventType;
+
+    /**
+     * Счет, с которым произошло событие (для перевода - счет, с которого переводили).
+     */
+    @Column(name = "account_id", nullable = false)
+    private Long accountId;
+
+    /**
+     * Второй счет: для перевода - на который переводили, для закрытия - на который перенесли остаток.
+     */
+    @Column(name = "related_account_id")
+    private Long relatedAccountId;
+
+    @Column(name = "amount", nullable = false)
+    private int amount;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    public AccountOutboxEvent() {
+    }
+
+    public AccountOutboxEvent(AccountEventType eventType, Long accountId, Long relatedAccountId, int amount) {
+        this.eventType = eventType;
+        this.accountId = accountId;
+        this.relatedAccountId = relatedAccountId;
+        this.amount = amount;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public AccountEventType getEventType() {
+        return eventType;
+    }
+
+    public Long getAccountId() {
+        return accountId;
+    }
+
+    public Long getRelatedAccountId() {
+        return relatedAccountId;
+    }
+
+    public int getAmount() {
+        return amount;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    @Override
+    public String toString() {
+        return "AccountOutboxEvent{" +
+                "id=" + id +
+                ", eventType=" + eventType +
+                ", accountId=" + accountId +
+                ", relatedAccountId=" + relatedAccountId +
+                ", amount=" + amount +
+                '}';
+    }
+}
@@ -1,6 +1,8 @@
 package sorokin.dev.entity;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.BatchSize;
+import sorokin.dev.utils.MultiLoadHelper;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -9,6 +11,7 @@ import java.util.List;
  * Класс в котором хранится информация о курсах, на которых обучаются Студенты.
  */
 @Entity //помечаем что это сущность для hibernate (JPA)
+@BatchSize(size = MultiLoadHelper.BATCH_SIZE)
 @Table(name = "courses")
 public class Course {
 
@@ -27,6 +30,7 @@ public class Course {
      * Здесь добавим только mappedBy = "courseList"
      * <p>
      */
+    @BatchSize(size = MultiLoadHelper.BATCH_SIZE)
     @ManyToMany(mappedBy = "courseList")
     private List<Student> studentList;
 
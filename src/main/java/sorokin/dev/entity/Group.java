@@ -1,7 +1,11 @@
 package sorokin.dev.entity;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
 import sorokin.dev.service.GroupService;
+import sorokin.dev.utils.MultiLoadHelper;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -10,6 +14,7 @@ import java.util.List;
  * Класс, в котором хранится информация о группах Студента.
  */
 @Entity //помечаем что это сущность для hibernate (JPA)
+@BatchSize(size = MultiLoadHelper.BATCH_SIZE)
 @Table(name = "student_group")
 public class Group {
 
@@ -34,9 +39,14 @@ public class Group {
      * С FetchType.LAZY тоже не решает эту проблему, не смотря на то что при запросе не
      * подгружаются студенты сразу. Если нам понадобятся студенты, то мы всё равно будем делать запросы к БД.
      * <p>
-     * Чтобы уйти от проблемы N+1, нужно использовать правильные запросы к БД. С помощью JOIN FETCH (смотри это в
-     * сервисе {@link GroupService#findAll()}).
+     * Чтобы уйти от проблемы N+1, нужно использовать правильные запросы к БД: JOIN FETCH или загрузку по уровням
+     * (смотри это в сервисе {@link GroupService#findAll()}).
+     * <p>
+     * {@code @Fetch(FetchMode.SUBSELECT)} - если запросом загружено несколько групп, то списки студентов всех этих
+     * групп подгружаются одним запросом "where group_id in (select id from student_group where ...)" с тем же
+     * условием, что и у исходного запроса, - сколько бы групп ни было.
      */
+    @Fetch(FetchMode.SUBSELECT)
     @OneToMany(mappedBy = "group", fetch = FetchType.EAGER)
     private List<Student> studentList = new ArrayList<>();
 
@@ -1,6 +1,7 @@
 package sorokin.dev.entity;
 
 import jakarta.persistence.*;
+import org.hibernate.Length;
 
 import java.time.LocalDateTime;
 
@@ -12,7 +13,12 @@ public class LogEntry {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(name = "message")
+    /**
+     * Текст сообщения может быть большим: колонка без ограничения длины, а поле ленивое
+     * (загружается при первом вызове getMessage(), нужен bytecode enhancement).
+     */
+    @Basic(fetch = FetchType.LAZY)
+    @Column(name = "message", length = Length.LONG)
     private String message;
 
     @Column(name = "created_at")
@@ -1,6 +1,10 @@
 package sorokin.dev.entity;
 
 import jakarta.persistence.*;
+import org.hibernate.Hibernate;
+import org.hibernate.Length;
+import org.hibernate.annotations.BatchSize;
+import sorokin.dev.utils.MultiLoadHelper;
 
 import java.time.LocalDateTime;
 
@@ -8,21 +12,27 @@ import java.time.LocalDateTime;
  * Класс, в котором хранится информация о профиле Студента.
  */
 @Entity //JPA сущность
+@BatchSize(size = MultiLoadHelper.BATCH_SIZE)
 @Table(name = "profiles") //Таблица в БД
 public class Profile {
 
     /**
-     * @GeneratedValue(strategy = GenerationType.IDENTITY) - стратегия генерации id, когда сохраняется сущность в БД.
-     * GenerationType.IDENTITY - БД сама генерит id.
+     * Общий первичный ключ со студентом: id профиля равен id студента, отдельной колонки student_id нет.
+     * Значение не генерируется, его берет {@code @MapsId} из {@link #student} при сохранении.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
     /**
      * Описание о себе в профиле.
+     * <p>
+     * Текст может быть большим, поэтому колонка без ограничения длины (text в PostgreSQL), а поле ленивое:
+     * {@code @Basic(fetch = FetchType.LAZY)} - bio не загружается вместе с профилем, а подгружается отдельным
+     * запросом при первом вызове getBio(). Для basic-полей это работает только с bytecode enhancement
+     * (см. hibernate-enhance-maven-plugin в pom.xml), без него поле загружается сразу.
      */
-    @Column(name = "bio")
+    @Basic(fetch = FetchType.LAZY)
+    @Column(name = "bio", length = Length.LONG)
     private String bio;
 
     /**
@@ -32,28 +42,23 @@ public class Profile {
     private LocalDateTime lastSeenTime;
 
     /**
-     * Колонка в Профилях: student_id.
-     * Связь с сущностью Студент. Поле, показывающее к какому студенту относится профиль.
-     * Аннотация @OneToOne говорит, что сущность Студента должна подтягиваться из другой связной таблицы.
-     * Т.е. "Студент" не хранится в качестве поля в таблице профиля, а хранится в отдельной таблице "Студент"
-     * и подтягивается из нее.
-     * Аннотация @JoinColumn(name = "student_id", referencedColumnName = "id") говорит,
-     * как студент хранится в таблице профиля: под именем "student_id", а в таблице студента под именем "id".
-     * В таблице Профилей есть идентификатор "student_id", который говорит к какому студенту относится профиль.
-     * А в таблице студента есть "id", который равен "student_id" в таблице профилей.
-     * name = "student_id" - показывает, как колонка в таблице профиля называется.
-     * referencedColumnName = "id" - показывает, на какую колонку в таблице студента ссылается колонка "student_id".
+     * Связь с сущностью Студент: профиль принадлежит студенту и хранится под тем же id (shared primary key).
+     * <p>
+     * {@code @MapsId} - колонка id профиля одновременно и первичный ключ, и FK на students.id. Раньше у профиля был
+     * свой id и колонка student_id с FK + unique, и со стороны Студента (mappedBy) Hibernate не знал,
+     * есть ли у студента профиль, не выполнив запрос к profiles. Поэтому профиль загружался вместе с каждым
+     * студентом, даже если он не нужен: список из N студентов - N+1 запрос.
      * <p>
-     * Если посмотреть в БД на колонку "student_id", то там будет идентификатор из таблицы студентов из колонки "id" в
-     * таблице студентов. Так же на ней будет навешен FK + unique (констреинт).
-     * В колонку "student_id" можно записать только идентификатор, который есть в таблице студентов. Это из-за FK.
-     * Но также можно поместить значение null, когда нет связи со студентом.
+     * Теперь профиль студента можно загрузить по id студента ({@code session.get(Profile.class, studentId)}),
+     * без join и без загрузки самого студента, а {@link Student#getProfile()} ленивый.
+     * Профиль без студента существовать не может: при удалении студента сначала удаляется профиль
+     * (cascade = REMOVE на {@link Student#getProfile()}).
      * <p>
-     * Благодаря наличию в профиле у колонки "student_id" FK, база данных не даст удалить студента из таблицы студентов,
-     * если в профиле есть ссылка на него. Так же мы можем поместить null в эту колонку.
+     * {@code fetch = FetchType.LAZY} - со стороны профиля студент подгружается только при обращении к нему.
      */
-    @OneToOne
-    @JoinColumn(name = "student_id", referencedColumnName = "id")
+    @MapsId
+    @OneToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "id")
     private Student student;
 
     public Profile() {
@@ -63,7 +68,7 @@ public class Profile {
      * Конструктор с тремя параметрами.
      * @param bio - описание о себе в профиле.
      * @param lastSeenTime - последнее время, когда студент был у себя в профиле (в сети).
-     * @param student - студент.
+     * @param student - студент, которому принадлежит профиль; id профиля будет равен id студента.
      */
     public Profile(
             String bio,
@@ -111,9 +116,11 @@ public class Profile {
     public String toString() {
         return "Profile{" +
                 "id=" + id +
-                ", bio='" + bio + '\'' +
+                //bio не подгружаем ради toString, иначе вне сессии получим LazyInitializationException
+                ", bio='" + (Hibernate.isPropertyInitialized(this, "bio") ? bio : "<not loaded>") + '\'' +
                 ", lastSeenTime=" + lastSeenTime +
-                ", student=" + student +
+                //студент ленивый, а его id у прокси есть и без загрузки
+                ", studentId=" + (student != null ? student.getId() : null) +
                 '}';
     }
 }
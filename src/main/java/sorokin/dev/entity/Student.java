@@ -1,11 +1,18 @@
 package sorokin.dev.entity;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
+import sorokin.dev.utils.MultiLoadHelper;
 
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity //помечаем что это сущность для hibernate (JPA)
+@BatchSize(size = MultiLoadHelper.BATCH_SIZE) //ленивые ссылки на студентов инициализируются пачками
+@DynamicUpdate //UPDATE только измененных колонок, а не всех полей студента (такие UPDATE не собираются в JDBC batch)
 @Table(name = "students") //указываем имя таблицы
 public class Student {
 
@@ -32,17 +39,25 @@ public class Student {
     @Column(name = "student_age")
     private Integer age;
 
+    /**
+     * Версия строки (оптимистическая блокировка).
+     * Hibernate увеличивает ее при каждом UPDATE и добавляет в условие "where id = ? and version = ?":
+     * если студента успели изменить после того, как мы его прочитали, UPDATE не найдет строку, и вместо
+     * молчаливой перезаписи чужих изменений будет исключение (OptimisticLockException / StaleObjectStateException).
+     */
+    @Version
+    @Column(name = "version")
+    private Long version;
+
     /**
      * @OneToOne - аннотация, которая указывает, что у сущности Student есть одна сущность Profile.
      * Аннотацию @JoinColumn тут уже не пишем, т.к. она уже прописана в Profile.
      * mappedBy = "student" - указывает по какому полю в классе Profile идет связь с классом Student (
      * на какое поле мапить поле profile в классе Student в классе Profile).
      * <p>
-     * Благодаря наличию в Профиле у колонки "student_id" FK, база данных не даст удалить студента из таблицы студентов,
-     * если в профиле есть ссылка на него. Но мы можем поместить null в "student_id" колонке в профиле.
-     * Также не сможем удалить профиль, если у него есть ссылка на студента.
-     * <p>
-     * Чтобы решить проблему при удалении профиля или студента, можно сначала удалить профиль.
+     * Профиль хранится под тем же id, что и студент (shared primary key, {@code @MapsId} в Profile), а profiles.id -
+     * это FK на students.id: база данных не даст удалить студента, пока у него есть профиль.
+     * Чтобы решить проблему при удалении студента, нужно сначала удалить профиль.
      * <p>
      * Также можно это решить с помощью CascadeType.REMOVE:
      * cascade = CascadeType.REMOVE
@@ -54,8 +69,15 @@ public class Student {
      * Мы сами управляем сущностями и их связями. Например, мы сами удаляем сначала все связанные сущности,
      * а потом основную сущность. Это нужно для того, чтобы нас самим было понятно, что происходит.
      * Чтобы не было неочевидных последствий от использования каскадных операций.
+     * <p>
+     * {@code fetch = FetchType.LAZY} - со стороны mappedBy Hibernate не может поставить вместо профиля прокси:
+     * он не знает, есть ли профиль вообще (null или объект), не сходив в profiles. Поэтому без enhancement такая
+     * связь всегда загружается сразу, отдельным запросом на каждого студента. С bytecode enhancement
+     * (enableLazyInitialization, см. pom.xml) поле перехватывается и загружается при первом вызове getProfile().
+     * Когда профиль нужен вместе со студентом - "left join fetch s.profile" в запросе, а профили списка студентов
+     * проще загрузить по тем же id: {@code ProfileService.findAllByIds(studentIds)}.
      */
-    @OneToOne(mappedBy = "student", cascade = CascadeType.REMOVE)
+    @OneToOne(mappedBy = "student", fetch = FetchType.LAZY, cascade = CascadeType.REMOVE)
     private Profile profile;
 
 
@@ -87,7 +109,11 @@ public class Student {
      * "student_id" - FK соответствует "id" студента из таблицы "students", а "course_id" - FK соответствует "id" курса из таблицы "courses".
      * <p>
      * По дефолту список курсов у студента будет пустой - List<Course> courseList = new ArrayList<>();
+     * <p>
+     * {@code @Fetch(FetchMode.SUBSELECT)} - курсы всех студентов, загруженных одним запросом, подгружаются одним
+     * запросом "where student_id in (select id from students where ...)", а не пачками по 50 студентов.
      */
+    @Fetch(FetchMode.SUBSELECT)
     @ManyToMany(fetch = FetchType.EAGER)
     @JoinTable(
             name = "student_courses", //имя соединяющей таблицы, которая будет создана в БД
@@ -161,6 +187,14 @@ public class Student {
         return id;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     @Override
     public String toString() {
         return "Student{" +
@@ -1,11 +1,14 @@
 package sorokin.dev.entity;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.BatchSize;
+import sorokin.dev.utils.MultiLoadHelper;
 
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
+@BatchSize(size = MultiLoadHelper.BATCH_SIZE) //Account.user - LAZY, такие ссылки инициализируются пачками
 @Table(name = "users")
 public class User {
 
@@ -16,6 +19,7 @@ public class User {
     @Column(name = "login", nullable = false, unique = true)
     private String login;
 
+    @BatchSize(size = MultiLoadHelper.BATCH_SIZE)
     @OneToMany(mappedBy = "user", fetch = FetchType.EAGER)
     private List<Account> accountList = new ArrayList<>();
 
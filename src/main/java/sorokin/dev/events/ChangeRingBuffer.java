@@ -0,0 +1,124 @@
+package sorokin.dev.events;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Кольцевой буфер без блокировок: много писателей (потоки, которые коммитят транзакции), один читатель
+ * (поток рассылки).
+ * <p>
+ * Запись в два шага:
+ * <ol>
+ *     <li>{@link #reserve(Duration)} - писатель забирает следующий номер (getAndIncrement - без блокировок).
+ *     Если буфер полон, писатель ждет (backpressure), а по таймауту получает {@link TimeoutException};</li>
+ *     <li>{@link #publish(long, Object)} или {@link #abort(long)} - кладет значение в свою ячейку
+ *     или помечает ее пустой.</li>
+ * </ol>
+ * Читатель берет ячейки строго по номерам и ждет, пока заполнится следующая. Значит, порядок чтения - это
+ * порядок резервирования, даже если писатели заполнили ячейки в другом порядке.
+ *
+ * @param <T> тип значений
+ */
+class ChangeRingBuffer<T> {
+
+    private static final Object ABORTED = new Object();
+    private static final long WAIT_NANOS = 50_000;
+
+    private final AtomicReferenceArray<Object> slots;
+    private final int mask;
+    private final int capacity;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong backpressureWaits = new AtomicLong();
+    private volatile long head;
+    private volatile Thread reader;
+
+    ChangeRingBuffer(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * Резервирует следующую ячейку.
+     *
+     * @param timeout сколько ждать свободного места
+     * @return номер ячейки для {@link #publish} или {@link #abort}
+     * @throws TimeoutException буфер был полон все время ожидания
+     */
+    long reserve(Duration timeout) throws TimeoutException {
+        long deadline = 0;
+        while (true) {
+            long sequence = tail.get();
+            if (sequence - head < capacity) {
+                if (tail.compareAndSet(sequence, sequence + 1)) {
+                    return sequence;
+                }
+                continue;
+            }
+            //буфер полон: ждем, пока читатель освободит место
+            if (deadline == 0) {
+                backpressureWaits.incrementAndGet();
+                deadline = System.nanoTime() + timeout.toNanos();
+            } else if (System.nanoTime() - deadline > 0) {
+                throw new TimeoutException("Change buffer is full: capacity=%s".formatted(capacity));
+            }
+            LockSupport.parkNanos(WAIT_NANOS);
+        }
+    }
+
+    void publish(long sequence, T value) {
+        slots.set(index(sequence), value);
+        LockSupport.unpark(reader);
+    }
+
+    void abort(long sequence) {
+        slots.set(index(sequence), ABORTED);
+        LockSupport.unpark(reader);
+    }
+
+    /**
+     * Берет следующее по порядку значение. Вызывается только из одного потока-читателя.
+     *
+     * @param maxWait сколько ждать, если следующая ячейка еще не заполнена
+     * @return значение или null, если ячейка не заполнилась за maxWait или оказалась отмененной
+     */
+    @SuppressWarnings("unchecked")
+    T poll(Duration maxWait) {
+        reader = Thread.currentThread();
+        long sequence = head;
+        int index = index(sequence);
+        Object value = slots.get(index);
+        if (value == null) {
+            LockSupport.parkNanos(maxWait.toNanos());
+            value = slots.get(index);
+            if (value == null) {
+                return null;
+            }
+        }
+        //сначала чистим ячейку, потом двигаем head: писатель займет ячейку только после изменения head
+        slots.set(index, null);
+        head = sequence + 1;
+        return value == ABORTED ? null : (T) value;
+    }
+
+    /**
+     * @return сколько ячеек занято: зарезервировано, но еще не прочитано
+     */
+    long size() {
+        return tail.get() - head;
+    }
+
+    long backpressureWaits() {
+        return backpressureWaits.get();
+    }
+
+    private int index(long sequence) {
+        return (int) (sequence & mask);
+    }
+}
@@ -0,0 +1,16 @@
+package sorokin.dev.events;
+
+import java.util.List;
+
+/**
+ * Все изменения одной закоммиченной транзакции.
+ *
+ * @param sequence номер в порядке коммитов. Номера откатившихся транзакций пропускаются,
+ *                 поэтому номера растут, но могут идти с пропусками
+ * @param events   изменения в том порядке, в котором Hibernate выполнял INSERT/UPDATE/DELETE
+ */
+public record EntityChangeBatch(
+        long sequence,
+        List<EntityChangeEvent> events
+) {
+}
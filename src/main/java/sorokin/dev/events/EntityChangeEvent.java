@@ -0,0 +1,19 @@
+package sorokin.dev.events;
+
+import java.util.List;
+
+/**
+ * Изменение одной сущности.
+ *
+ * @param type              вставка, изменение или удаление
+ * @param entityClass       класс сущности
+ * @param entityId          id сущности
+ * @param changedProperties для UPDATE - измененные поля (если Hibernate их знает), для INSERT и DELETE - пустой
+ */
+public record EntityChangeEvent(
+        EntityChangeType type,
+        Class<?> entityClass,
+        Object entityId,
+        List<String> changedProperties
+) {
+}
@@ -0,0 +1,43 @@
+package sorokin.dev.events;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.spi.BootstrapContext;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+
+import java.util.Set;
+
+/**
+ * Подключает {@link EntityChangeListener} к каждой SessionFactory при ее создании.
+ * Передается в {@link sorokin.dev.config.HibernateBootstrap}.
+ */
+public class EntityChangeIntegrator implements Integrator {
+
+    private final EntityChangeStream stream;
+    private final Set<Class<?>> trackedClasses;
+
+    /**
+     * @param stream         куда публиковать изменения
+     * @param trackedClasses изменения каких сущностей публиковать
+     */
+    public EntityChangeIntegrator(EntityChangeStream stream, Set<Class<?>> trackedClasses) {
+        this.stream = stream;
+        this.trackedClasses = Set.copyOf(trackedClasses);
+    }
+
+    @Override
+    public void integrate(Metadata metadata, BootstrapContext bootstrapContext, SessionFactoryImplementor sessionFactory) {
+        EntityChangeListener listener = new EntityChangeListener(stream, trackedClasses);
+        EventListenerRegistry registry = sessionFactory.getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_INSERT, listener);
+        registry.appendListeners(EventType.POST_UPDATE, listener);
+        registry.appendListeners(EventType.POST_DELETE, listener);
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+    }
+}
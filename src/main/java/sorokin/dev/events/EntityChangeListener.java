@@ -0,0 +1,140 @@
+package sorokin.dev.events;
+
+import org.hibernate.SessionEventListener;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.event.spi.*;
+import org.hibernate.persister.entity.EntityPersister;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Слушатель событий Hibernate: после каждого INSERT/UPDATE/DELETE отслеживаемой сущности запоминает изменение
+ * в буфере текущей транзакции сессии. При первом изменении в транзакции регистрирует в ActionQueue сессии:
+ * <ul>
+ *     <li>действие перед коммитом - резервирует место в {@link EntityChangeStream};</li>
+ *     <li>действие после завершения транзакции - публикует изменения или, при откате, освобождает место.</li>
+ * </ul>
+ * Сессия снимается с учета при close() ({@link SessionEventListener#end()}), а не после транзакции: сессию могут
+ * закрыть посреди транзакции, и тогда after completion уже не вызовется.
+ */
+class EntityChangeListener implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+    private final EntityChangeStream stream;
+    private final Set<Class<?>> trackedClasses;
+    private final Map<SharedSessionContractImplementor, SessionState> sessions = new ConcurrentHashMap<>();
+
+    EntityChangeListener(EntityChangeStream stream, Set<Class<?>> trackedClasses) {
+        this.stream = stream;
+        this.trackedClasses = trackedClasses;
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        record(event.getSession(), event.getPersister(), EntityChangeType.INSERT, event.getId(), List.of());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        int[] dirtyProperties = event.getDirtyProperties();
+        List<String> changedProperties = dirtyProperties == null
+                ? List.of()
+                : Arrays.stream(dirtyProperties).mapToObj(i -> event.getPersister().getPropertyNames()[i]).toList();
+        record(event.getSession(), event.getPersister(), EntityChangeType.UPDATE, event.getId(), changedProperties);
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        record(event.getSession(), event.getPersister(), EntityChangeType.DELETE, event.getId(), List.of());
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return false;
+    }
+
+    private void record(
+            EventSource session, EntityPersister persister, EntityChangeType type, Object id,
+            List<String> changedProperties
+    ) {
+        Class<?> entityClass = persister.getMappedClass();
+        if (!trackedClasses.contains(entityClass)) {
+            return;
+        }
+        SessionState state = sessions.computeIfAbsent(session, key -> startTracking(session));
+        if (state.transaction == null) {
+            state.transaction = startTransaction(session, state);
+        }
+        state.transaction.events.add(new EntityChangeEvent(type, entityClass, id, changedProperties));
+    }
+
+    /**
+     * @return сколько сессий сейчас на учете (для тестов)
+     */
+    int trackedSessions() {
+        return sessions.size();
+    }
+
+    private SessionState startTracking(EventSource session) {
+        SessionState state = new SessionState();
+        session.getEventListenerManager().addListener(new SessionEventListener() {
+            @Override
+            public void end() {
+                sessions.remove(session);
+                //сессию закрыли посреди транзакции: коммита не было, зарезервированное место освобождаем
+                if (state.transaction != null) {
+                    complete(state, state.transaction, false);
+                }
+            }
+        });
+        return state;
+    }
+
+    private PendingTransaction startTransaction(EventSource session, SessionState state) {
+        PendingTransaction transaction = new PendingTransaction();
+        session.getActionQueue().registerProcess(
+                (BeforeTransactionCompletionProcess) ignored -> transaction.sequence = stream.reserve()
+        );
+        session.getActionQueue().registerProcess(
+                (AfterTransactionCompletionProcess) (success, ignored) -> complete(state, transaction, success)
+        );
+        return transaction;
+    }
+
+    private void complete(SessionState state, PendingTransaction transaction, boolean success) {
+        if (state.transaction != transaction) {
+            return;
+        }
+        state.transaction = null;
+        if (transaction.sequence < 0) {
+            //откат до коммита: место не резервировали
+            return;
+        }
+        if (success) {
+            stream.publish(transaction.sequence, List.copyOf(transaction.events));
+        } else {
+            stream.abort(transaction.sequence);
+        }
+    }
+
+    /**
+     * Состояние сессии между open и close: текущая транзакция, если в ней уже есть изменения.
+     */
+    private static final class SessionState {
+        private PendingTransaction transaction;
+    }
+
+    /**
+     * Изменения одной транзакции. Сессия однопоточная, поэтому синхронизация не нужна.
+     */
+    private static final class PendingTransaction {
+        private final List<EntityChangeEvent> events = new ArrayList<>();
+        private long sequence = -1;
+    }
+}
@@ -0,0 +1,127 @@
+package sorokin.dev.events;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Поток изменений сущностей (change data capture внутри приложения).
+ * <p>
+ * Подписчикам (индекс поиска, кэши, аналитика) не нужно периодически перечитывать таблицы: после каждого
+ * коммита они получают одним {@link EntityChangeBatch} все INSERT/UPDATE/DELETE этой транзакции.
+ * Изменения собирает {@link EntityChangeIntegrator} - слушатель событий Hibernate.
+ * <p>
+ * Как доставляются изменения:
+ * <ul>
+ *     <li>перед коммитом транзакция резервирует место в кольцевом буфере {@link ChangeRingBuffer}.
+ *     В этот момент она еще держит блокировки измененных строк. Вторая транзакция, изменившая ту же строку,
+ *     дождется коммита первой, и ее место в буфере будет дальше. Поэтому изменения одной сущности
+ *     подписчики получают в том порядке, в каком их закоммитила БД;</li>
+ *     <li>после коммита транзакция кладет изменения в свое место, после отката - освобождает его;</li>
+ *     <li>один поток рассылки читает буфер по порядку и вызывает подписчиков;</li>
+ *     <li>если подписчики не успевают и буфер полон, коммиты ждут (backpressure). Если место не освободилось
+ *     за publishTimeout, транзакция откатывается с исключением: изменения не теряются молча.</li>
+ * </ul>
+ * Не попадают в поток: HQL/SQL UPDATE и DELETE (executeUpdate), StatelessSession, изменения коллекций
+ * (например, запись студента на курс через student_courses).
+ */
+public class EntityChangeStream implements AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final Duration DEFAULT_PUBLISH_TIMEOUT = Duration.ofSeconds(5);
+
+    private static final System.Logger log = System.getLogger(EntityChangeStream.class.getName());
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(10);
+
+    private final ChangeRingBuffer<EntityChangeBatch> buffer;
+    private final Duration publishTimeout;
+    private final List<EntityChangeSubscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final Thread dispatcher;
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong aborted = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong subscriberErrors = new AtomicLong();
+    private volatile boolean running = true;
+
+    public EntityChangeStream() {
+        this(DEFAULT_CAPACITY, DEFAULT_PUBLISH_TIMEOUT);
+    }
+
+    /**
+     * @param capacity       размер буфера в транзакциях, степень двойки
+     * @param publishTimeout сколько коммит ждет свободного места в буфере
+     */
+    public EntityChangeStream(int capacity, Duration publishTimeout) {
+        this.buffer = new ChangeRingBuffer<>(capacity);
+        this.publishTimeout = publishTimeout;
+        this.dispatcher = new Thread(this::dispatchLoop, "entity-change-dispatcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    public void subscribe(EntityChangeSubscriber subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    public void unsubscribe(EntityChangeSubscriber subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    public EntityChangeStreamStats getStats() {
+        return new EntityChangeStreamStats(published.get(), aborted.get(), delivered.get(), subscriberErrors.get(),
+                buffer.backpressureWaits(), buffer.size());
+    }
+
+    /**
+     * Резервирует место для транзакции. Вызывается перед коммитом.
+     *
+     * @return номер места
+     * @throws IllegalStateException буфер полон дольше publishTimeout
+     */
+    long reserve() {
+        try {
+            return buffer.reserve(publishTimeout);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Entity change subscribers are too slow: " + e.getMessage(), e);
+        }
+    }
+
+    void publish(long sequence, List<EntityChangeEvent> events) {
+        buffer.publish(sequence, new EntityChangeBatch(sequence, events));
+        published.incrementAndGet();
+    }
+
+    void abort(long sequence) {
+        buffer.abort(sequence);
+        aborted.incrementAndGet();
+    }
+
+    /**
+     * Останавливает рассылку. Уже опубликованные изменения успевают разослаться.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        dispatcher.join(publishTimeout.toMillis());
+    }
+
+    private void dispatchLoop() {
+        while (running || buffer.size() > 0) {
+            EntityChangeBatch batch = buffer.poll(POLL_INTERVAL);
+            if (batch == null) {
+                continue;
+            }
+            for (EntityChangeSubscriber subscriber : subscribers) {
+                try {
+                    subscriber.onChanges(batch);
+                } catch (RuntimeException e) {
+                    subscriberErrors.incrementAndGet();
+                    log.log(System.Logger.Level.ERROR, "Entity change subscriber failed: " + subscriber, e);
+                }
+            }
+            delivered.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package sorokin.dev.events;
+
+/**
+ * Метрики {@link EntityChangeStream}.
+ *
+ * @param published        сколько транзакций опубликовано (закоммичено с изменениями)
+ * @param aborted          сколько зарезервированных мест освобождено из-за отката транзакции
+ * @param delivered        сколько транзакций разослано подписчикам
+ * @param subscriberErrors сколько раз подписчик бросил исключение
+ * @param backpressureWaits сколько раз коммит ждал свободного места в буфере
+ * @param pending          сколько мест в буфере сейчас занято
+ */
+public record EntityChangeStreamStats(
+        long published,
+        long aborted,
+        long delivered,
+        long subscriberErrors,
+        long backpressureWaits,
+        long pending
+) {
+}
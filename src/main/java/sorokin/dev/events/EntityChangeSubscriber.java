@@ -0,0 +1,13 @@
+package sorokin.dev.events;
+
+/**
+ * Подписчик на изменения сущностей, см. {@link EntityChangeStream#subscribe(EntityChangeSubscriber)}.
+ * <p>
+ * Вызывается в потоке рассылки, по одной транзакции за раз, в порядке коммитов. Долгая обработка задерживает
+ * всех подписчиков, а при заполнении буфера - и коммиты, поэтому тяжелую работу лучше передавать дальше.
+ */
+@FunctionalInterface
+public interface EntityChangeSubscriber {
+
+    void onChanges(EntityChangeBatch batch);
+}
@@ -0,0 +1,10 @@
+package sorokin.dev.events;
+
+/**
+ * Что случилось со строкой в БД.
+ */
+public enum EntityChangeType {
+    INSERT,
+    UPDATE,
+    DELETE
+}
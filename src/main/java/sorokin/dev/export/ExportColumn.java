@@ -0,0 +1,13 @@
+package sorokin.dev.export;
+
+/**
+ * Колонка выгрузки.
+ *
+ * @param name имя колонки (как в таблице)
+ * @param type тип значений
+ */
+public record ExportColumn(
+        String name,
+        ExportColumnType type
+) {
+}
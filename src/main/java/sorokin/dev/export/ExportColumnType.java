@@ -0,0 +1,20 @@
+package sorokin.dev.export;
+
+/**
+ * Тип колонки в файле выгрузки и как ее значения хранятся в блоке.
+ */
+public enum ExportColumnType {
+    /**
+     * Long: разница с предыдущим значением колонки в блоке, zig-zag varint. Id идут по возрастанию,
+     * поэтому разница обычно 1 байт.
+     */
+    LONG,
+    /**
+     * LocalDateTime: микросекунды от 1970-01-01T00:00 (без часового пояса), тоже разницей с предыдущим.
+     */
+    TIMESTAMP,
+    /**
+     * String: длина в байтах UTF-8 + 1 (0 - null), varint, затем байты.
+     */
+    STRING
+}
@@ -0,0 +1,53 @@
+package sorokin.dev.export;
+
+import java.util.List;
+
+/**
+ * Что можно выгрузить через {@link StreamingExportService}.
+ * <p>
+ * Запрос выбирает колонки, а не сущности: StatelessSession не держит выбранное в памяти, а скаляры не тянут
+ * связи и ленивые поля. Первая колонка - id, по ней упорядочена выгрузка и с нее продолжается после сбоя.
+ */
+public enum ExportDataset {
+
+    LOG_ENTRIES("""
+            SELECT l.id, l.createdAt, l.message
+            FROM LogEntry l
+            WHERE l.id > :afterId
+            ORDER BY l.id
+            """, List.of(
+            new ExportColumn("id", ExportColumnType.LONG),
+            new ExportColumn("created_at", ExportColumnType.TIMESTAMP),
+            new ExportColumn("message", ExportColumnType.STRING)
+    )),
+
+    ACCOUNTS("""
+            SELECT a.id, a.user.id, a.moneyAmount
+            FROM Account a
+            WHERE a.id > :afterId
+            ORDER BY a.id
+            """, List.of(
+            new ExportColumn("id", ExportColumnType.LONG),
+            new ExportColumn("user_id", ExportColumnType.LONG),
+            new ExportColumn("money_amount", ExportColumnType.LONG)
+    ));
+
+    private final String query;
+    private final List<ExportColumn> columns;
+
+    ExportDataset(String query, List<ExportColumn> columns) {
+        this.query = query;
+        this.columns = columns;
+    }
+
+    /**
+     * @return HQL с параметром :afterId, строки по возрастанию id
+     */
+    public String getQuery() {
+        return query;
+    }
+
+    public List<ExportColumn> getColumns() {
+        return columns;
+    }
+}
@@ -0,0 +1,111 @@
+package sorokin.dev.export;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Формат файла выгрузки.
+ * <pre>
+ * заголовок: int FILE_MAGIC, UTF имя набора данных, short число колонок, (UTF имя, byte тип) на колонку
+ * блок:      int BLOCK_MAGIC, int строк, long первый id, long последний id,
+ *            int размер до сжатия, int размер сжатого, int CRC32 сжатого, сжатые байты (Deflater)
+ * </pre>
+ * Внутри блока данные лежат по колонкам: сначала все id, потом все created_at и т.д. Соседние значения одной
+ * колонки похожи (id подряд, время рядом, однотипные сообщения), поэтому хранятся разницей с предыдущим
+ * и сжимаются лучше, чем те же данные по строкам.
+ * <p>
+ * Блок пишется в файл целиком после того, как собран. Если выгрузка оборвалась посреди записи блока,
+ * в конце файла остается неполный блок - при продолжении он отбрасывается по длине или CRC.
+ */
+final class ExportFileFormat {
+
+    static final int FILE_MAGIC = 0x48435831; // "HCX1"
+    static final int BLOCK_MAGIC = 0x424C4B31; // "BLK1"
+    static final int BLOCK_HEADER_BYTES = 4 + 4 + 8 + 8 + 4 + 4 + 4;
+
+    private ExportFileFormat() {
+    }
+
+    static byte[] encodeHeader(ExportDataset dataset) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(FILE_MAGIC);
+            out.writeUTF(dataset.name());
+            out.writeShort(dataset.getColumns().size());
+            for (ExportColumn column : dataset.getColumns()) {
+                out.writeUTF(column.name());
+                out.writeByte(column.type().ordinal());
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Читает заголовок файла.
+     *
+     * @return набор данных и колонки, как они записаны в файле
+     */
+    static Header readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != FILE_MAGIC) {
+            throw new IOException("Not an export file");
+        }
+        ExportDataset dataset = ExportDataset.valueOf(in.readUTF());
+        int columnCount = in.readShort();
+        List<ExportColumn> columns = new ArrayList<>(columnCount);
+        for (int i = 0; i < columnCount; i++) {
+            columns.add(new ExportColumn(in.readUTF(), ExportColumnType.values()[in.readByte()]));
+        }
+        return new Header(dataset, columns);
+    }
+
+    static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static long toEpochMicros(LocalDateTime value) {
+        return value.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + value.getNano() / 1_000;
+    }
+
+    static LocalDateTime fromEpochMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000),
+                Math.floorMod(micros, 1_000_000) * 1_000, ZoneOffset.UTC);
+    }
+
+    record Header(ExportDataset dataset, List<ExportColumn> columns) {
+    }
+}
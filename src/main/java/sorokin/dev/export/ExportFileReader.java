@@ -0,0 +1,202 @@
+package sorokin.dev.export;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Чтение файла, записанного {@link StreamingExportService}, блок за блоком: в памяти один блок.
+ * <p>
+ * Значения строк: LONG - Long, TIMESTAMP - LocalDateTime, STRING - String, для пустых значений null.
+ * Неполный или поврежденный блок в конце файла (выгрузка оборвалась) считается концом файла.
+ */
+public final class ExportFileReader implements AutoCloseable {
+
+    private final FileChannel channel;
+    private final ExportDataset dataset;
+    private final List<ExportColumn> columns;
+    private final ByteBuffer blockHeader = ByteBuffer.allocate(ExportFileFormat.BLOCK_HEADER_BYTES);
+    private final CRC32 crc = new CRC32();
+    private final Inflater inflater = new Inflater();
+    private ByteBuffer compressed = ByteBuffer.allocate(0);
+    private byte[] raw = new byte[0];
+    private int rawLength;
+    private long validEnd;
+    private Long lastId;
+
+    private ExportFileReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        //заголовок маленький: читаем его потоком поверх канала. DataInputStream не буферизует и не читает
+        //лишнего, поэтому после заголовка позиция канала - начало первого блока
+        DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+        ExportFileFormat.Header header = ExportFileFormat.readHeader(in);
+        this.dataset = header.dataset();
+        this.columns = header.columns();
+        this.validEnd = channel.position();
+    }
+
+    public static ExportFileReader open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new ExportFileReader(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public ExportDataset getDataset() {
+        return dataset;
+    }
+
+    public List<ExportColumn> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Читает все оставшиеся строки.
+     *
+     * @param consumer получает строку; массив можно сохранять, он новый для каждой строки
+     * @return сколько строк прочитано
+     */
+    public long forEachRow(Consumer<Object[]> consumer) throws IOException {
+        long rows = 0;
+        int rowCount;
+        while ((rowCount = nextBlock()) >= 0) {
+            inflate();
+            decodeBlock(rowCount, consumer);
+            rows += rowCount;
+        }
+        return rows;
+    }
+
+    /**
+     * Проходит оставшиеся блоки без распаковки, только проверяя CRC.
+     *
+     * @return id последней строки последнего целого блока, null - блоков нет
+     */
+    public Long scanToEnd() throws IOException {
+        while (nextBlock() >= 0) {
+            //только считаем lastId и validEnd
+        }
+        return lastId;
+    }
+
+    /**
+     * @return позиция сразу за последним целым блоком из прочитанных
+     */
+    long getValidEnd() {
+        return validEnd;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        channel.close();
+    }
+
+    /**
+     * Читает следующий блок в {@link #compressed}.
+     *
+     * @return число строк в блоке, -1 - блоков больше нет (или дальше неполный блок)
+     */
+    private int nextBlock() throws IOException {
+        blockHeader.clear();
+        if (!readFully(blockHeader)) {
+            return -1;
+        }
+        blockHeader.flip();
+        if (blockHeader.getInt() != ExportFileFormat.BLOCK_MAGIC) {
+            return -1;
+        }
+        int rowCount = blockHeader.getInt();
+        blockHeader.getLong(); //первый id
+        long blockLastId = blockHeader.getLong();
+        int rawLength = blockHeader.getInt();
+        int compressedLength = blockHeader.getInt();
+        int expectedCrc = blockHeader.getInt();
+        if (rowCount < 0 || rawLength < 0 || compressedLength < 0) {
+            return -1;
+        }
+        if (compressed.capacity() < compressedLength) {
+            compressed = ByteBuffer.allocate(compressedLength);
+        }
+        compressed.clear().limit(compressedLength);
+        if (!readFully(compressed)) {
+            return -1;
+        }
+        compressed.flip();
+        crc.reset();
+        crc.update(compressed.duplicate());
+        if ((int) crc.getValue() != expectedCrc) {
+            return -1;
+        }
+        this.rawLength = rawLength;
+        validEnd = channel.position();
+        lastId = blockLastId;
+        return rowCount;
+    }
+
+    private void inflate() throws IOException {
+        if (raw.length < rawLength) {
+            raw = new byte[rawLength];
+        }
+        inflater.reset();
+        inflater.setInput(compressed);
+        try {
+            int inflated = 0;
+            while (inflated < rawLength && !inflater.finished()) {
+                inflated += inflater.inflate(raw, inflated, rawLength - inflated);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted block ending at " + validEnd, e);
+        }
+    }
+
+    private void decodeBlock(int rowCount, Consumer<Object[]> consumer) {
+        Object[][] rows = new Object[rowCount][columns.size()];
+        ByteBuffer in = ByteBuffer.wrap(raw);
+        for (int column = 0; column < columns.size(); column++) {
+            ExportColumnType type = columns.get(column).type();
+            long previous = 0;
+            for (int row = 0; row < rowCount; row++) {
+                long encoded = ExportFileFormat.readVarLong(in);
+                if (encoded == 0) {
+                    continue;
+                }
+                if (type == ExportColumnType.STRING) {
+                    int length = (int) encoded - 1;
+                    rows[row][column] = new String(raw, in.position(), length, StandardCharsets.UTF_8);
+                    in.position(in.position() + length);
+                    continue;
+                }
+                previous += ExportFileFormat.unZigZag(encoded - 1);
+                rows[row][column] = type == ExportColumnType.LONG
+                        ? previous
+                        : ExportFileFormat.fromEpochMicros(previous);
+            }
+        }
+        for (Object[] row : rows) {
+            consumer.accept(row);
+        }
+    }
+
+    private boolean readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
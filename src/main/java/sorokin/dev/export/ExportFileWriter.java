@@ -0,0 +1,236 @@
+package sorokin.dev.export;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Пишет строки в файл выгрузки блоками (формат - {@link ExportFileFormat}).
+ * <p>
+ * Память постоянная: буферы колонок, буфер сжатия и Deflater переиспользуются от блока к блоку,
+ * блок ограничен и числом строк, и размером до сжатия.
+ */
+final class ExportFileWriter implements AutoCloseable {
+
+    /**
+     * Блок сбрасывается раньше blockRows, если данные до сжатия превысили этот размер (длинные сообщения).
+     */
+    static final int MAX_BLOCK_BYTES = 4 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final List<ExportColumn> columns;
+    private final int blockRows;
+    private final ByteArrayOutputStream[] columnBuffers;
+    private final long[] previousValues;
+    private final BlockBuffer raw = new BlockBuffer();
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final CRC32 crc = new CRC32();
+    private final ByteBuffer blockHeader = ByteBuffer.allocate(ExportFileFormat.BLOCK_HEADER_BYTES);
+    private byte[] compressed = new byte[64 * 1024];
+    private int rows;
+    private int rawBytes;
+    private long firstId;
+    private long lastId;
+    private long totalRawBytes;
+    private long blocksWritten;
+
+    private ExportFileWriter(FileChannel channel, ExportDataset dataset, int blockRows) {
+        this.channel = channel;
+        this.columns = dataset.getColumns();
+        this.blockRows = blockRows;
+        this.columnBuffers = new ByteArrayOutputStream[columns.size()];
+        for (int i = 0; i < columnBuffers.length; i++) {
+            columnBuffers[i] = new ByteArrayOutputStream();
+        }
+        this.previousValues = new long[columns.size()];
+    }
+
+    /**
+     * Новый файл (существующий перезаписывается).
+     */
+    static ExportFileWriter create(Path file, ExportDataset dataset, int blockRows) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            writeFully(channel, ByteBuffer.wrap(ExportFileFormat.encodeHeader(dataset)));
+            return new ExportFileWriter(channel, dataset, blockRows);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Дописывает существующий файл: неполный блок в конце (выгрузка оборвалась при записи) отрезается.
+     *
+     * @param validEnd позиция за последним целым блоком, см. {@link ExportFileReader#getValidEnd()}
+     */
+    static ExportFileWriter append(Path file, ExportDataset dataset, int blockRows, long validEnd) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);
+        try {
+            channel.truncate(validEnd);
+            channel.position(validEnd);
+            return new ExportFileWriter(channel, dataset, blockRows);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Добавляет строку; когда блок заполнен, он сжимается и пишется в файл.
+     *
+     * @param row значения колонок, первая - id (не null, по возрастанию)
+     */
+    void addRow(Object[] row) throws IOException {
+        long id = ((Number) row[0]).longValue();
+        if (rows == 0) {
+            firstId = id;
+        }
+        lastId = id;
+        for (int column = 0; column < columns.size(); column++) {
+            rawBytes += encode(column, row[column]);
+        }
+        rows++;
+        if (rows >= blockRows || rawBytes >= MAX_BLOCK_BYTES) {
+            flushBlock();
+        }
+    }
+
+    /**
+     * Пишет собранный неполный блок.
+     */
+    void flushBlock() throws IOException {
+        if (rows == 0) {
+            return;
+        }
+        raw.reset();
+        for (ByteArrayOutputStream columnBuffer : columnBuffers) {
+            columnBuffer.writeTo(raw);
+            columnBuffer.reset();
+        }
+        int rawLength = raw.size();
+        int compressedLength = deflate(raw.array(), rawLength);
+
+        crc.reset();
+        crc.update(compressed, 0, compressedLength);
+        blockHeader.clear();
+        blockHeader.putInt(ExportFileFormat.BLOCK_MAGIC)
+                .putInt(rows)
+                .putLong(firstId)
+                .putLong(lastId)
+                .putInt(rawLength)
+                .putInt(compressedLength)
+                .putInt((int) crc.getValue())
+                .flip();
+        writeFully(channel, blockHeader);
+        writeFully(channel, ByteBuffer.wrap(compressed, 0, compressedLength));
+
+        totalRawBytes += rawLength;
+        blocksWritten++;
+        rows = 0;
+        rawBytes = 0;
+        Arrays.fill(previousValues, 0);
+    }
+
+    /**
+     * Сбрасывает записанное на диск: после этого последний блок переживет падение процесса и ОС.
+     */
+    void sync() throws IOException {
+        channel.force(false);
+    }
+
+    long getTotalRawBytes() {
+        return totalRawBytes;
+    }
+
+    long getBlocksWritten() {
+        return blocksWritten;
+    }
+
+    long getFileSize() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBlock();
+            sync();
+        } finally {
+            deflater.end();
+            channel.close();
+        }
+    }
+
+    private int encode(int column, Object value) {
+        ByteArrayOutputStream out = columnBuffers[column];
+        int sizeBefore = out.size();
+        if (value == null) {
+            ExportFileFormat.writeVarLong(out, 0);
+            return out.size() - sizeBefore;
+        }
+        switch (columns.get(column).type()) {
+            case STRING -> {
+                byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+                ExportFileFormat.writeVarLong(out, bytes.length + 1L);
+                out.writeBytes(bytes);
+            }
+            case LONG -> writeDelta(column, ((Number) value).longValue());
+            case TIMESTAMP -> writeDelta(column, ExportFileFormat.toEpochMicros(toLocalDateTime(value)));
+        }
+        return out.size() - sizeBefore;
+    }
+
+    private void writeDelta(int column, long value) {
+        ExportFileFormat.writeVarLong(columnBuffers[column],
+                ExportFileFormat.zigZag(value - previousValues[column]) + 1);
+        previousValues[column] = value;
+    }
+
+    private int deflate(byte[] input, int inputLength) {
+        deflater.reset();
+        deflater.setInput(input, 0, inputLength);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+        return length;
+    }
+
+    private static LocalDateTime toLocalDateTime(Object value) {
+        if (value instanceof Timestamp timestamp) {
+            return timestamp.toLocalDateTime();
+        }
+        return (LocalDateTime) value;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Буфер блока, который отдает свой массив без копирования.
+     */
+    private static final class BlockBuffer extends ByteArrayOutputStream {
+        byte[] array() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package sorokin.dev.export;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Итог выгрузки {@link StreamingExportService}.
+ *
+ * @param dataset       что выгружали
+ * @param file          файл
+ * @param startAfterId  с какого id начали (не включительно): 0 - с начала, иначе продолжение
+ * @param lastId        id последней записанной строки, null - ничего не записано
+ * @param rows          строк записано за эту выгрузку
+ * @param blocks        блоков записано за эту выгрузку
+ * @param rawBytes      размер записанного до сжатия
+ * @param fileBytes     размер файла после выгрузки
+ * @param elapsed       время выгрузки
+ */
+public record ExportReport(
+        ExportDataset dataset,
+        Path file,
+        long startAfterId,
+        Long lastId,
+        long rows,
+        long blocks,
+        long rawBytes,
+        long fileBytes,
+        Duration elapsed
+) {
+
+    public double rowsPerSecond() {
+        long millis = Math.max(1, elapsed.toMillis());
+        return rows * 1000.0 / millis;
+    }
+
+    /**
+     * @return мегабайт в секунду до сжатия - сколько данных прошло через выгрузку
+     */
+    public double rawMegabytesPerSecond() {
+        long millis = Math.max(1, elapsed.toMillis());
+        return rawBytes / (1024.0 * 1024.0) * 1000.0 / millis;
+    }
+}
@@ -0,0 +1,159 @@
+package sorokin.dev.export;
+
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Выгрузка таблиц в файлы для аналитиков без загрузки всей таблицы в память.
+ * <p>
+ * Почему не {@code LoggingService}/{@code AccountService}: они возвращают списки сущностей, и вся таблица
+ * оказалась бы в heap (и в persistence context). Здесь:
+ * <ul>
+ *     <li>StatelessSession - выбранные строки нигде не запоминаются;</li>
+ *     <li>ScrollableResults с fetch size - драйвер получает строки с сервера порциями через курсор,
+ *     а не весь результат сразу. В PostgreSQL курсор работает только внутри транзакции, поэтому
+ *     выгрузка идет в одной (читающей) транзакции;</li>
+ *     <li>строки складываются в блоки по колонкам, блок сжимается и пишется в FileChannel
+ *     (формат - {@link ExportFileFormat}, чтение - {@link ExportFileReader}).</li>
+ * </ul>
+ * В памяти одновременно порция fetch size и один блок, сколько бы строк ни было в таблице.
+ * <p>
+ * Продолжение после сбоя: каждый блок хранит id своей последней строки. {@link #export(ExportDataset, Path)}
+ * для существующего файла отрезает неполный блок в конце и продолжает с id после последнего целого блока.
+ */
+@Service
+public class StreamingExportService {
+
+    private static final System.Logger log = System.getLogger(StreamingExportService.class.getName());
+
+    /**
+     * Как часто (в блоках) сбрасывать файл на диск. После сбоя выгрузка повторит не больше этого числа блоков.
+     */
+    private static final int SYNC_EVERY_BLOCKS = 16;
+
+    private final SessionFactory sessionFactory;
+    private final int fetchSize;
+    private final int blockRows;
+
+    public StreamingExportService(
+            SessionFactory sessionFactory,
+            @Value("${export.fetch-size:1000}") int fetchSize,
+            @Value("${export.block-rows:4096}") int blockRows
+    ) {
+        this.sessionFactory = sessionFactory;
+        this.fetchSize = fetchSize;
+        this.blockRows = blockRows;
+    }
+
+    /**
+     * Выгружает набор данных в файл. Если файл уже есть - продолжает его с места, где выгрузка остановилась
+     * (после сбоя или чтобы дописать новые строки).
+     *
+     * @param dataset что выгружать
+     * @param file    файл
+     * @return итог выгрузки
+     */
+    public ExportReport export(ExportDataset dataset, Path file) {
+        try {
+            if (!Files.exists(file) || Files.size(file) == 0) {
+                return export(dataset, file, 0);
+            }
+            Long lastId;
+            long validEnd;
+            try (ExportFileReader reader = ExportFileReader.open(file)) {
+                if (reader.getDataset() != dataset) {
+                    throw new IllegalArgumentException("File %s contains %s, not %s"
+                            .formatted(file, reader.getDataset(), dataset));
+                }
+                lastId = reader.scanToEnd();
+                validEnd = reader.getValidEnd();
+            }
+            long startAfterId = lastId == null ? 0 : lastId;
+            try (ExportFileWriter writer = ExportFileWriter.append(file, dataset, blockRows, validEnd)) {
+                return write(dataset, file, startAfterId, writer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Выгружает набор данных в новый файл, начиная с заданной контрольной точки.
+     *
+     * @param dataset      что выгружать
+     * @param file         файл, существующий перезаписывается
+     * @param startAfterId выгружаются строки с id больше этого
+     * @return итог выгрузки
+     */
+    public ExportReport export(ExportDataset dataset, Path file, long startAfterId) {
+        try (ExportFileWriter writer = ExportFileWriter.create(file, dataset, blockRows)) {
+            return write(dataset, file, startAfterId, writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ExportReport write(
+            ExportDataset dataset,
+            Path file,
+            long startAfterId,
+            ExportFileWriter writer
+    ) throws IOException {
+        long startedAt = System.nanoTime();
+        long rows = 0;
+        Long lastId = null;
+        //сессия закроется при выходе из try при любом исходе, транзакцию откатываем до ее закрытия
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            Transaction transaction = session.beginTransaction();
+            try {
+                try (ScrollableResults<Object[]> results = session
+                        .createSelectionQuery(dataset.getQuery(), Object[].class)
+                        .setParameter("afterId", startAfterId)
+                        .setFetchSize(fetchSize)
+                        .setReadOnly(true)
+                        .scroll(ScrollMode.FORWARD_ONLY)) {
+                    long syncedBlocks = 0;
+                    while (results.next()) {
+                        Object[] row = results.get();
+                        writer.addRow(row);
+                        lastId = ((Number) row[0]).longValue();
+                        rows++;
+                        if (writer.getBlocksWritten() - syncedBlocks >= SYNC_EVERY_BLOCKS) {
+                            writer.sync();
+                            syncedBlocks = writer.getBlocksWritten();
+                            log.log(System.Logger.Level.DEBUG, "Export {0}: {1} rows, last id {2}",
+                                    dataset, rows, lastId);
+                        }
+                    }
+                }
+                transaction.commit();
+            } catch (RuntimeException | IOException e) {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+                throw e;
+            }
+        }
+        writer.flushBlock();
+        writer.sync();
+
+        ExportReport report = new ExportReport(dataset, file, startAfterId, lastId, rows,
+                writer.getBlocksWritten(), writer.getTotalRawBytes(), writer.getFileSize(),
+                Duration.ofNanos(System.nanoTime() - startedAt));
+        log.log(System.Logger.Level.INFO, "Export {0} to {1}: {2} rows in {3} ms, {4} rows/s, {5} MB/s raw, {6} bytes on disk",
+                dataset, file, rows, report.elapsed().toMillis(), Math.round(report.rowsPerSecond()),
+                String.format("%.1f", report.rawMegabytesPerSecond()), report.fileBytes());
+        return report;
+    }
+}
@@ -0,0 +1,129 @@
+package sorokin.dev.outbox;
+
+import org.hibernate.LockMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import sorokin.dev.entity.AccountOutboxEvent;
+import sorokin.dev.query.QueryCatalog;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Отправляет события из таблицы account_outbox в {@link OutboxSink} и удаляет отправленные.
+ * <p>
+ * Одна пачка - одна транзакция:
+ * <ol>
+ *     <li>берем до batchSize самых старых строк с блокировкой:
+ *     SELECT ... ORDER BY id LIMIT n FOR UPDATE SKIP LOCKED. SKIP LOCKED пропускает строки, которые уже
+ *     заблокировал другой relay, поэтому несколько JVM разбирают outbox параллельно, не ожидая друг друга
+ *     и не отправляя одно событие дважды;</li>
+ *     <li>отправляем пачку в sink;</li>
+ *     <li>удаляем отправленные строки одним DELETE и коммитим. Если sink бросил исключение - откат,
+ *     строки остаются и будут отправлены снова.</li>
+ * </ol>
+ * Фоновый поток каждые poll-interval-ms разбирает outbox, пока в нем есть полные пачки. Порядок событий
+ * гарантирован внутри пачки; между пачками разных relay порядок не гарантирован.
+ * Интервал 0 - фоновый поток не запускается, только {@link #relayPending()} вручную.
+ */
+@Component
+public class AccountOutboxRelay implements DisposableBean {
+
+    private static final System.Logger log = System.getLogger(AccountOutboxRelay.class.getName());
+
+    private final SessionFactory sessionFactory;
+    private final OutboxSink sink;
+    private final int batchSize;
+    private final ScheduledExecutorService poller;
+
+    public AccountOutboxRelay(
+            SessionFactory sessionFactory,
+            OutboxSink sink,
+            @Value("${outbox.relay.poll-interval-ms:200}") long pollIntervalMs,
+            @Value("${outbox.relay.batch-size:500}") int batchSize
+    ) {
+        this.sessionFactory = sessionFactory;
+        this.sink = sink;
+        this.batchSize = batchSize;
+        if (pollIntervalMs > 0) {
+            this.poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "account-outbox-relay");
+                thread.setDaemon(true);
+                return thread;
+            });
+            poller.scheduleWithFixedDelay(this::relayQuietly, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            this.poller = null;
+        }
+    }
+
+    /**
+     * Отправляет все, что сейчас есть в outbox (и не заблокировано другими relay).
+     *
+     * @return сколько событий отправлено
+     */
+    public int relayPending() {
+        int total = 0;
+        int sent;
+        do {
+            sent = relayBatch();
+            total += sent;
+        } while (sent == batchSize);
+        return total;
+    }
+
+    /**
+     * Отправляет одну пачку.
+     *
+     * @return сколько событий отправлено
+     */
+    public int relayBatch() {
+        Transaction transaction = null;
+        try (Session session = sessionFactory.openSession()) {
+            transaction = session.beginTransaction();
+            List<AccountOutboxEvent> events = session
+                    .createNamedQuery(QueryCatalog.OUTBOX_FIND_OLDEST, AccountOutboxEvent.class)
+                    .setMaxResults(batchSize)
+                    .setHibernateLockMode(LockMode.UPGRADE_SKIPLOCKED)
+                    .list();
+            if (events.isEmpty()) {
+                transaction.commit();
+                return 0;
+            }
+            sink.send(events.stream().map(OutboxMessage::of).toList());
+
+            session.createNamedMutationQuery(QueryCatalog.OUTBOX_DELETE_BY_IDS)
+                    .setParameter("ids", events.stream().map(AccountOutboxEvent::getId).toList())
+                    .executeUpdate();
+            transaction.commit();
+            return events.size();
+        } catch (Exception e) {
+            if (transaction != null && transaction.isActive()) {
+                transaction.rollback();
+            }
+            throw new IllegalStateException("Failed to relay account outbox events", e);
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        if (poller != null) {
+            poller.shutdown();
+            poller.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private void relayQuietly() {
+        try {
+            relayPending();
+        } catch (RuntimeException e) {
+            log.log(System.Logger.Level.WARNING, "Account outbox relay failed, will retry", e);
+        }
+    }
+}
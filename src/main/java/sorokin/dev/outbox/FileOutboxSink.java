@@ -0,0 +1,54 @@
+package sorokin.dev.outbox;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Дописывает события в файл, по строке на событие:
+ * <pre>
+ * id;eventType;accountId;relatedAccountId;amount;createdAt
+ * </pre>
+ * Пачка пишется одной записью и сбрасывается на диск (force) до того, как relay удалит строки из outbox.
+ */
+@Component
+public class FileOutboxSink implements OutboxSink {
+
+    private final Path file;
+
+    public FileOutboxSink(@Value("${outbox.file:outbox/account-events.log}") String file) {
+        this.file = Path.of(file);
+    }
+
+    @Override
+    public synchronized void send(List<OutboxMessage> messages) throws IOException {
+        StringBuilder lines = new StringBuilder(messages.size() * 64);
+        for (OutboxMessage message : messages) {
+            lines.append(message.id()).append(';')
+                    .append(message.eventType()).append(';')
+                    .append(message.accountId()).append(';')
+                    .append(message.relatedAccountId() == null ? "" : message.relatedAccountId()).append(';')
+                    .append(message.amount()).append(';')
+                    .append(message.createdAt()).append('\n');
+        }
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+}
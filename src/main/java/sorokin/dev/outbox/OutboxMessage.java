@@ -0,0 +1,34 @@
+package sorokin.dev.outbox;
+
+import sorokin.dev.entity.AccountEventType;
+import sorokin.dev.entity.AccountOutboxEvent;
+
+import java.time.LocalDateTime;
+
+/**
+ * Событие по счету, которое отправляется в {@link OutboxSink}.
+ * <p>
+ * id - id строки outbox. При сбое после отправки, но до коммита удаления, событие будет отправлено еще раз
+ * (at-least-once), поэтому получатель может отбрасывать повторы по id.
+ *
+ * @param id               id события
+ * @param eventType        тип события
+ * @param accountId        счет
+ * @param relatedAccountId второй счет (перевод, закрытие) или null
+ * @param amount           сумма
+ * @param createdAt        время события
+ */
+public record OutboxMessage(
+        long id,
+        AccountEventType eventType,
+        long accountId,
+        Long relatedAccountId,
+        int amount,
+        LocalDateTime createdAt
+) {
+
+    static OutboxMessage of(AccountOutboxEvent event) {
+        return new OutboxMessage(event.getId(), event.getEventType(), event.getAccountId(),
+                event.getRelatedAccountId(), event.getAmount(), event.getCreatedAt());
+    }
+}
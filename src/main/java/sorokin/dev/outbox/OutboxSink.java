@@ -0,0 +1,17 @@
+package sorokin.dev.outbox;
+
+import java.util.List;
+
+/**
+ * Куда {@link AccountOutboxRelay} отправляет события: файл, брокер сообщений, память (в тестах).
+ */
+public interface OutboxSink {
+
+    /**
+     * Отправляет пачку событий. Если метод бросил исключение, вся пачка останется в outbox
+     * и будет отправлена еще раз.
+     *
+     * @param messages события в порядке id
+     */
+    void send(List<OutboxMessage> messages) throws Exception;
+}
@@ -0,0 +1,57 @@
+package sorokin.dev.query;
+
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+
+/**
+ * Имена именованных запросов (HQL). Сами запросы объявлены в одном месте - в package-info.java этого пакета.
+ * <p>
+ * Зачем не строки прямо в сервисах:
+ * <ul>
+ *     <li>Hibernate разбирает и проверяет все именованные запросы при создании SessionFactory
+ *     (hibernate.query.startup_check): опечатка в имени поля или неверный тип результата роняет запуск,
+ *     а не первый вызов метода в продакшене;</li>
+ *     <li>запрос разбирается один раз при запуске, поэтому первый вызов не платит за разбор HQL;</li>
+ *     <li>все запросы к сущности видны в одном файле.</li>
+ * </ul>
+ * Использование: {@code session.createNamedQuery(QueryCatalog.STUDENT_FIND_ALL, Student.class)}.
+ * Запрос, который строится динамически, в каталог не попадает - его вариантам нужны отдельные имена.
+ * В StatelessSession - {@code session.createSelectionQuery(QueryCatalog.hql(session, name), ...)}, см. {@link #hql}.
+ */
+public final class QueryCatalog {
+
+    public static final String STUDENT_FIND_ALL = "Student.findAll";
+    public static final String STUDENT_PATCH_NAME = "Student.patchName";
+    public static final String STUDENT_PATCH_AGE = "Student.patchAge";
+    public static final String STUDENT_PATCH_NAME_AND_AGE = "Student.patchNameAndAge";
+    public static final String STUDENT_AGE_DISTRIBUTION = "Student.ageDistribution";
+
+    public static final String GROUP_FIND_ALL = "Group.findAll";
+    public static final String GROUP_FIND_ALL_WITHOUT_FETCH = "Group.findAllWithoutFetch";
+
+    public static final String USER_FIND_BY_LOGIN = "User.findByLogin";
+    public static final String USER_FIND_ALL_WITH_ACCOUNTS = "User.findAllWithAccounts";
+
+    public static final String ACCOUNT_FIND_BY_IDS_ORDERED = "Account.findByIdsOrdered";
+
+    public static final String OUTBOX_FIND_OLDEST = "AccountOutboxEvent.findOldest";
+    public static final String OUTBOX_DELETE_BY_IDS = "AccountOutboxEvent.deleteByIds";
+
+    public static final String LOG_FIND_PAGE = "LogEntry.findPage";
+    public static final String LOG_FIND_PAGE_AFTER = "LogEntry.findPageAfter";
+    public static final String LOG_DELETE_OLDER_THAN = "LogEntry.deleteOlderThan";
+
+    private QueryCatalog() {
+    }
+
+    /**
+     * Текст именованного запроса для StatelessSession. Именованный запрос Hibernate 6.5 всегда несет режим кэша
+     * из аннотации и перед выполнением ставит его сессии, а StatelessSession на это бросает
+     * UnsupportedOperationException. Текст тот же, что проверен при запуске, план берется из кэша планов.
+     */
+    public static String hql(StatelessSession session, String name) {
+        return ((SharedSessionContractImplementor) session).getFactory().getQueryEngine().getNamedObjectRepository()
+                .getSqmQueryMemento(name)
+                .getHqlString();
+    }
+}
@@ -0,0 +1,91 @@
+package sorokin.dev.query;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.query.spi.QueryEngine;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Попадания и промахи кэша планов запросов.
+ * <p>
+ * Перед выполнением HQL Hibernate разбирает строку запроса в дерево (SQM) и кладет результат в кэш планов
+ * размером hibernate.query.plan_cache_max_size. Промах - это разбор HQL в потоке запроса: так выглядит первый
+ * вызов каждого запроса и каждый запрос, вытесненный из переполненного кэша. Если после прогрева промахи
+ * продолжают расти, разных запросов больше, чем помещается в кэш (например, значения склеиваются в строку
+ * запроса вместо параметров), и запросы разбираются заново на каждом вызове.
+ * <p>
+ * Нужна статистика Hibernate (hibernate.generate_statistics). Каждые report-interval-ms счетчики пишутся в лог,
+ * интервал 0 - не пишутся, {@link #getStats()} можно вызывать вручную.
+ */
+@Component
+public class QueryPlanCacheMetrics implements DisposableBean {
+
+    private static final System.Logger log = System.getLogger(QueryPlanCacheMetrics.class.getName());
+
+    private final Statistics statistics;
+    private final int maxSize;
+    private final ScheduledExecutorService scheduler;
+
+    public QueryPlanCacheMetrics(
+            SessionFactory sessionFactory,
+            @Value("${query.plan-cache.report-interval-ms:0}") long reportIntervalMs
+    ) {
+        this.statistics = sessionFactory.getStatistics();
+        Map<String, Object> properties = sessionFactory.unwrap(SessionFactoryImplementor.class).getProperties();
+        Object configuredSize = properties.get(AvailableSettings.QUERY_PLAN_CACHE_MAX_SIZE);
+        this.maxSize = configuredSize == null
+                ? QueryEngine.DEFAULT_QUERY_PLAN_MAX_COUNT
+                : Integer.parseInt(configuredSize.toString());
+        if (!statistics.isStatisticsEnabled()) {
+            log.log(System.Logger.Level.WARNING, "hibernate.generate_statistics is off, query plan cache metrics are empty");
+        }
+        if (reportIntervalMs > 0) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "query-plan-cache-report");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::reportQuietly, reportIntervalMs, reportIntervalMs,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            this.scheduler = null;
+        }
+    }
+
+    public QueryPlanCacheStats getStats() {
+        long compilationMicros = Arrays.stream(statistics.getQueries())
+                .mapToLong(query -> statistics.getQueryStatistics(query).getPlanCompilationTotalMicroseconds())
+                .sum();
+        return new QueryPlanCacheStats(statistics.getQueryPlanCacheHitCount(),
+                statistics.getQueryPlanCacheMissCount(), compilationMicros, maxSize);
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void reportQuietly() {
+        try {
+            QueryPlanCacheStats stats = getStats();
+            log.log(System.Logger.Level.INFO, String.format(
+                    "Query plan cache: %d hits, %d misses (%.1f%% hit), %d us compiling, max size %d",
+                    stats.hits(), stats.misses(), stats.hitRatio() * 100, stats.compilationMicros(),
+                    stats.maxSize()));
+        } catch (RuntimeException e) {
+            log.log(System.Logger.Level.WARNING, "Failed to report query plan cache statistics", e);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package sorokin.dev.query;
+
+/**
+ * Счетчики кэша планов запросов (разобранных HQL) из статистики Hibernate.
+ *
+ * @param hits              запрос найден в кэше, разбирать не пришлось
+ * @param misses            запроса не было в кэше (первый вызов или вытеснен) - HQL разобран заново
+ * @param compilationMicros сколько всего ушло на разбор запросов, мкс
+ * @param maxSize           размер кэша (hibernate.query.plan_cache_max_size)
+ */
+public record QueryPlanCacheStats(
+        long hits,
+        long misses,
+        long compilationMicros,
+        int maxSize
+) {
+
+    /**
+     * @return доля попаданий; промахов много при прогретом приложении - кэш мал для числа разных запросов
+     */
+    public double hitRatio() {
+        long total = hits + misses;
+        return total == 0 ? 1.0 : (double) hits / total;
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Каталог именованных запросов: все HQL сервисов в одном месте, имена - в {@link sorokin.dev.query.QueryCatalog}.
+ * <p>
+ * Аннотации Hibernate ({@code org.hibernate.annotations.NamedQuery}), а не JPA: JPA-аннотацию можно поставить
+ * только на класс сущности, а эту - и на пакет. Пакет подключает {@link sorokin.dev.config.HibernateBootstrap}.
+ */
+@NamedQuery(name = QueryCatalog.STUDENT_FIND_ALL, query = """
+        SELECT s FROM Student s
+        """)
+@NamedQuery(name = QueryCatalog.STUDENT_PATCH_NAME, query = """
+        update versioned Student s set s.name = :name
+        where s.id = :id and s.version = :version
+        """)
+@NamedQuery(name = QueryCatalog.STUDENT_PATCH_AGE, query = """
+        update versioned Student s set s.age = :age
+        where s.id = :id and s.version = :version
+        """)
+@NamedQuery(name = QueryCatalog.STUDENT_PATCH_NAME_AND_AGE, query = """
+        update versioned Student s set s.name = :name, s.age = :age
+        where s.id = :id and s.version = :version
+        """)
+@NamedQuery(name = QueryCatalog.STUDENT_AGE_DISTRIBUTION, query = """
+        SELECT s.age, count(s)
+        FROM Student s
+        WHERE s.id >= :fromId AND s.id < :toId AND s.age IS NOT NULL
+        GROUP BY s.age
+        """)
+@NamedQuery(name = QueryCatalog.GROUP_FIND_ALL, query = """
+        SELECT g from Group g
+        order by g.id
+        """)
+@NamedQuery(name = QueryCatalog.GROUP_FIND_ALL_WITHOUT_FETCH, query = """
+        SELECT g from Group g
+        """)
+@NamedQuery(name = QueryCatalog.USER_FIND_BY_LOGIN, query = """
+        FROM User WHERE login = :login
+        """)
+@NamedQuery(name = QueryCatalog.USER_FIND_ALL_WITH_ACCOUNTS, query = """
+        SELECT u FROM User u LEFT JOIN FETCH u.accountList
+        """)
+@NamedQuery(name = QueryCatalog.ACCOUNT_FIND_BY_IDS_ORDERED, query = """
+        SELECT a FROM Account a WHERE a.id IN :ids ORDER BY a.id
+        """)
+@NamedQuery(name = QueryCatalog.OUTBOX_FIND_OLDEST, query = """
+        SELECT e FROM AccountOutboxEvent e ORDER BY e.id
+        """)
+@NamedQuery(name = QueryCatalog.OUTBOX_DELETE_BY_IDS, query = """
+        DELETE FROM AccountOutboxEvent e WHERE e.id IN :ids
+        """)
+@NamedQuery(name = QueryCatalog.LOG_FIND_PAGE, query = """
+        SELECT new sorokin.dev.service.LogLine(l.id, l.createdAt, l.message)
+        FROM LogEntry l
+        WHERE l.createdAt >= :from AND l.createdAt < :to
+        ORDER BY l.createdAt DESC, l.id DESC
+        """)
+@NamedQuery(name = QueryCatalog.LOG_FIND_PAGE_AFTER, query = """
+        SELECT new sorokin.dev.service.LogLine(l.id, l.createdAt, l.message)
+        FROM LogEntry l
+        WHERE l.createdAt >= :from AND l.createdAt < :to
+        AND (l.createdAt < :afterCreatedAt OR (l.createdAt = :afterCreatedAt AND l.id < :afterId))
+        ORDER BY l.createdAt DESC, l.id DESC
+        """)
+@NamedQuery(name = QueryCatalog.LOG_DELETE_OLDER_THAN, query = """
+        DELETE FROM LogEntry l WHERE l.createdAt < :cutoff
+        """)
+package sorokin.dev.query;
+
+import org.hibernate.annotations.NamedQuery;
@@ -0,0 +1,22 @@
+package sorokin.dev.report;
+
+import org.hibernate.StatelessSession;
+
+/**
+ * Обработка одного диапазона id в {@link ParallelScanEngine}.
+ *
+ * @param <A> частичный результат
+ */
+@FunctionalInterface
+public interface ChunkScanner<A> {
+
+    /**
+     * Вызывается в своем потоке со своей сессией; сессия открыта на время вызова, транзакция - снаружи.
+     *
+     * @param session сессия только для этого диапазона
+     * @param fromId  начало диапазона, включительно
+     * @param toId    конец диапазона, не включительно
+     * @return результат по строкам диапазона
+     */
+    A scan(StatelessSession session, long fromId, long toId);
+}
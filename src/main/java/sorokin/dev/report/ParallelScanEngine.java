@@ -0,0 +1,236 @@
+package sorokin.dev.report;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * Параллельная обработка всей таблицы для отчетов.
+ * <p>
+ * Диапазон id таблицы [min, max] делится на куски по chunk-size id. Несколько рабочих потоков берут куски
+ * по очереди (кто освободился - берет следующий, поэтому неравномерные куски не тормозят остальных),
+ * каждый кусок обрабатывается в своей StatelessSession и своей транзакции, т.е. на своем соединении.
+ * Результаты кусков собираются reducer'ом сначала внутри потока, затем между потоками.
+ * <p>
+ * Одновременно обрабатывается не больше parallelism кусков. Каждый кусок держит соединение, поэтому
+ * parallelism ограничен размером пула соединений Hibernate (hibernate.connection.pool_size) за вычетом
+ * {@link #RESERVED_CONNECTIONS} для остального приложения. По умолчанию (0) - число ядер, но не больше пула.
+ * <p>
+ * Потоки обычные, а не виртуальные: драйверы JDBC блокируются внутри synchronized, и на Java 21 виртуальный
+ * поток при этом занимает поток-носитель - параллельность все равно упиралась бы в число ядер.
+ */
+@Component
+public class ParallelScanEngine implements DisposableBean {
+
+    /**
+     * Соединения пула, которые отчеты не занимают: их оставляем обычным запросам приложения.
+     */
+    static final int RESERVED_CONNECTIONS = 2;
+
+    /**
+     * Размер пула встроенного DriverManagerConnectionProvider, если hibernate.connection.pool_size не задан.
+     */
+    private static final int DEFAULT_POOL_SIZE = 20;
+
+    private final SessionFactory sessionFactory;
+    private final int parallelism;
+    private final long chunkSize;
+    private final ExecutorService executor;
+
+    public ParallelScanEngine(
+            SessionFactory sessionFactory,
+            @Value("${scan.parallelism:0}") int parallelism,
+            @Value("${scan.chunk-size:10000}") long chunkSize
+    ) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        this.sessionFactory = sessionFactory;
+        int maxParallelism = Math.max(1, poolSize(sessionFactory) - RESERVED_CONNECTIONS);
+        int requested = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.parallelism = Math.min(requested, maxParallelism);
+        this.chunkSize = chunkSize;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "parallel-scan-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Обрабатывает все строки таблицы сущности по кускам id параллельно.
+     *
+     * @param entityClass сущность, id которой - число; делится диапазон ее id
+     * @param scanner     обработка одного куска
+     * @param identity    начальное значение для reducer'а; вызывается для каждого потока отдельно, поэтому
+     *                    reducer может изменять и возвращать свой левый аргумент
+     * @param reducer     объединение двух частичных результатов
+     * @return результат по всей таблице
+     * @throws IllegalStateException если вызывающий поток прерван; к этому моменту рабочие потоки уже
+     *                               остановлены и закрыли свои сессии, флаг прерывания восстановлен
+     */
+    public <A> ScanResult<A> scan(
+            Class<?> entityClass,
+            ChunkScanner<A> scanner,
+            Supplier<A> identity,
+            BinaryOperator<A> reducer
+    ) {
+        long startedAt = System.nanoTime();
+        long[] range = idRange(entityClass);
+        if (range == null) {
+            return new ScanResult<>(identity.get(), 0, 0, Duration.ofNanos(System.nanoTime() - startedAt));
+        }
+        long minId = range[0];
+        long maxId = range[1];
+        long chunks = (maxId - minId) / chunkSize + 1;
+        int workers = (int) Math.min(parallelism, chunks);
+
+        AtomicLong nextChunk = new AtomicLong();
+        AtomicBoolean failed = new AtomicBoolean();
+        //отсчитывается и за задачу, отмененную до старта: executor все равно вызывает ее run()
+        CountDownLatch finished = new CountDownLatch(workers);
+        List<Future<A>> results = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            FutureTask<A> task = new FutureTask<>(() -> {
+                A accumulator = identity.get();
+                long chunk;
+                while (!failed.get() && (chunk = nextChunk.getAndIncrement()) < chunks) {
+                    long fromId = minId + chunk * chunkSize;
+                    long toId = Math.min(fromId + chunkSize, maxId + 1);
+                    try {
+                        accumulator = reducer.apply(accumulator, scanChunk(scanner, fromId, toId));
+                    } catch (RuntimeException e) {
+                        //остальные потоки не берут новые куски: результат все равно не получится
+                        failed.set(true);
+                        throw e;
+                    }
+                }
+                return accumulator;
+            });
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    finished.countDown();
+                }
+            });
+            results.add(task);
+        }
+
+        //ждем все потоки, даже если один уже упал: иначе scan вернется, пока остальные держат сессии и соединения
+        A value = identity.get();
+        RuntimeException failure = null;
+        for (Future<A> result : results) {
+            try {
+                A partial = await(result);
+                if (failure == null) {
+                    value = reducer.apply(value, partial);
+                }
+            } catch (InterruptedException e) {
+                //get() отмененной задачи возвращается сразу, поэтому завершения ждем по finished
+                failed.set(true);
+                results.forEach(future -> future.cancel(true));
+                awaitUninterruptibly(finished);
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for scan", e);
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return new ScanResult<>(value, chunks, workers, Duration.ofNanos(System.nanoTime() - startedAt));
+    }
+
+    /**
+     * @return сколько кусков обрабатывается одновременно
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private <A> A scanChunk(ChunkScanner<A> scanner, long fromId, long toId) {
+        //сессия закроется при выходе из try при любом исходе, транзакцию откатываем до ее закрытия
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            Transaction transaction = session.beginTransaction();
+            try {
+                A result = scanner.scan(session, fromId, toId);
+                transaction.commit();
+                return result;
+            } catch (RuntimeException e) {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+                throw e;
+            }
+        }
+    }
+
+    private long[] idRange(Class<?> entityClass) {
+        String entityName = sessionFactory.getMetamodel().entity(entityClass).getName();
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            Object[] minMax = session.createSelectionQuery(
+                            "SELECT min(e.id), max(e.id) FROM " + entityName + " e", Object[].class)
+                    .getSingleResult();
+            if (minMax[0] == null) {
+                return null;
+            }
+            return new long[]{((Number) minMax[0]).longValue(), ((Number) minMax[1]).longValue()};
+        }
+    }
+
+    private static <A> A await(Future<A> result) throws InterruptedException {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Chunk scan failed", e.getCause());
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        while (true) {
+            try {
+                latch.await();
+                return;
+            } catch (InterruptedException e) {
+                //флаг восстановит вызывающий код
+            }
+        }
+    }
+
+    private static int poolSize(SessionFactory sessionFactory) {
+        Object poolSize = sessionFactory.getProperties().get(AvailableSettings.POOL_SIZE);
+        return poolSize == null ? DEFAULT_POOL_SIZE : Integer.parseInt(poolSize.toString());
+    }
+}
@@ -0,0 +1,75 @@
+package sorokin.dev.report;
+
+import org.springframework.stereotype.Service;
+import sorokin.dev.entity.Account;
+import sorokin.dev.entity.Student;
+import sorokin.dev.query.QueryCatalog;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Отчеты по всем студентам и счетам. Каждый кусок id считается в БД (GROUP BY), в Java складываются
+ * только счетчики кусков - см. {@link ParallelScanEngine}.
+ */
+@Service
+public class ReportService {
+
+    private final ParallelScanEngine parallelScanEngine;
+
+    public ReportService(ParallelScanEngine parallelScanEngine) {
+        this.parallelScanEngine = parallelScanEngine;
+    }
+
+    /**
+     * Распределение студентов по возрасту. Студенты без возраста не учитываются.
+     *
+     * @return возраст - количество студентов, по возрастанию возраста
+     */
+    public ScanResult<SortedMap<Integer, Long>> getAgeDistribution() {
+        return parallelScanEngine.scan(Student.class, (session, fromId, toId) -> {
+            SortedMap<Integer, Long> counts = new TreeMap<>();
+            String query = QueryCatalog.hql(session, QueryCatalog.STUDENT_AGE_DISTRIBUTION);
+            session.createSelectionQuery(query, Object[].class)
+                    .setParameter("fromId", fromId)
+                    .setParameter("toId", toId)
+                    .list()
+                    .forEach(row -> counts.put((Integer) row[0], (Long) row[1]));
+            return counts;
+        }, TreeMap::new, ReportService::mergeCounts);
+    }
+
+    /**
+     * Гистограмма остатков на счетах.
+     *
+     * @param bucketSize ширина интервала, например 100: 0-99, 100-199 и т.д.
+     * @return начало интервала - количество счетов, по возрастанию
+     */
+    public ScanResult<SortedMap<Long, Long>> getBalanceHistogram(int bucketSize) {
+        if (bucketSize < 1) {
+            throw new IllegalArgumentException("Bucket size must be positive: " + bucketSize);
+        }
+        //ширина подставляется в текст запроса, а не параметром: выражение в SELECT и GROUP BY должно совпадать
+        //текстом, иначе PostgreSQL не признает их одним выражением ($1 и $2 - разные параметры)
+        String bucket = "floor(a.moneyAmount / %d.0)".formatted(bucketSize);
+        return parallelScanEngine.scan(Account.class, (session, fromId, toId) -> {
+            SortedMap<Long, Long> counts = new TreeMap<>();
+            session.createSelectionQuery("""
+                            SELECT %s, count(a)
+                            FROM Account a
+                            WHERE a.id >= :fromId AND a.id < :toId
+                            GROUP BY %s
+                            """.formatted(bucket, bucket), Object[].class)
+                    .setParameter("fromId", fromId)
+                    .setParameter("toId", toId)
+                    .list()
+                    .forEach(row -> counts.put(((Number) row[0]).longValue() * bucketSize, (Long) row[1]));
+            return counts;
+        }, TreeMap::new, ReportService::mergeCounts);
+    }
+
+    private static <K> SortedMap<K, Long> mergeCounts(SortedMap<K, Long> left, SortedMap<K, Long> right) {
+        right.forEach((key, count) -> left.merge(key, count, Long::sum));
+        return left;
+    }
+}
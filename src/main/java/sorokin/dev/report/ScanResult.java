@@ -0,0 +1,19 @@
+package sorokin.dev.report;
+
+import java.time.Duration;
+
+/**
+ * Результат {@link ParallelScanEngine#scan}.
+ *
+ * @param value       результат, собранный reducer'ом из результатов всех диапазонов
+ * @param chunks      на сколько диапазонов id разбита таблица
+ * @param parallelism сколько диапазонов обрабатывалось одновременно
+ * @param elapsed     время обработки
+ */
+public record ScanResult<A>(
+        A value,
+        long chunks,
+        int parallelism,
+        Duration elapsed
+) {
+}
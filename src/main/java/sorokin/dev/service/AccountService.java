@@ -1,28 +1,88 @@
 package sorokin.dev.service;
 
+import jakarta.persistence.LockModeType;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import sorokin.dev.entity.Account;
+import sorokin.dev.entity.AccountEventType;
+import sorokin.dev.entity.AccountOutboxEvent;
 import sorokin.dev.entity.User;
+import sorokin.dev.query.QueryCatalog;
+import sorokin.dev.utils.MultiLoadHelper;
+import sorokin.dev.utils.RetryPolicy;
 import sorokin.dev.utils.TransactionHelper;
+import sorokin.dev.utils.TransactionIsolation;
+import sorokin.dev.utils.TransactionOptions;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.TreeSet;
 
 @Service
 public class AccountService {
 
+    /**
+     * Сколько id счетов блокируем одним запросом при пакетном переводе.
+     * Ограничивает длину списка параметров в IN (...).
+     */
+    private static final int LOCK_CHUNK_SIZE = 1000;
+
+    /**
+     * Пауза перед повтором перевода: случайная, до 20 мс перед первым повтором, дальше вдвое больше,
+     * но не больше 500 мс (см. {@link RetryPolicy}).
+     */
+    private static final Duration RETRY_BASE_BACKOFF = Duration.ofMillis(20);
+    private static final Duration RETRY_MAX_BACKOFF = Duration.ofMillis(500);
+
     private final SessionFactory sessionFactory;
     private final AccountProperties accountProperties;
     private final TransactionHelper transactionHelper;
+    private final EntitySnapshotCaches caches;
+    /**
+     * Перевод и закрытие счета:
+     * <ul>
+     *     <li>дедлайн - оба ждут блокировки строк счетов, и зависшая блокировка не должна держать соединение
+     *     дольше account.transaction-timeout-ms;</li>
+     *     <li>изоляция account.transaction-isolation (по умолчанию SERIALIZABLE) - баланс читается и
+     *     записывается в одной транзакции, и два параллельных перевода с одного счета не должны оба
+     *     списать деньги с одного и того же прочитанного баланса;</li>
+     *     <li>повтор до account.transaction-max-attempts раз после ошибки сериализации или взаимной
+     *     блокировки - без него SERIALIZABLE под нагрузкой просто отказывает части переводов.</li>
+     * </ul>
+     */
+    private final TransactionOptions moneyTransactionOptions;
+    /**
+     * Пакетный перевод: блокирует все счета пакета сразу, поэтому ему тоже нужен дедлайн, но свой -
+     * account.transfer-batch.timeout-ms, с запасом на ночной пакет. Изоляция по умолчанию и без повторов:
+     * балансы читаются уже под блокировкой, а порядок блокировок исключает взаимные блокировки.
+     */
+    private final TransactionOptions transferBatchTransactionOptions;
 
     public AccountService(
-            SessionFactory sessionFactory, AccountProperties accountProperties, TransactionHelper transactionHelper) {
+            SessionFactory sessionFactory, AccountProperties accountProperties, TransactionHelper transactionHelper,
+            EntitySnapshotCaches caches,
+            @Value("${account.transaction-timeout-ms:5000}") long transactionTimeoutMs,
+            @Value("${account.transaction-isolation:SERIALIZABLE}") TransactionIsolation transactionIsolation,
+            @Value("${account.transaction-max-attempts:5}") int transactionMaxAttempts,
+            @Value("${account.transfer-batch.timeout-ms:60000}") long transferBatchTimeoutMs) {
         this.sessionFactory = sessionFactory;
         this.accountProperties = accountProperties;
         this.transactionHelper = transactionHelper;
+        this.caches = caches;
+        this.moneyTransactionOptions = TransactionOptions.DEFAULT
+                .withTimeout(Duration.ofMillis(transactionTimeoutMs))
+                .withIsolation(transactionIsolation)
+                .withRetry(new RetryPolicy(transactionMaxAttempts, RETRY_BASE_BACKOFF, RETRY_MAX_BACKOFF));
+        this.transferBatchTransactionOptions = TransactionOptions.DEFAULT
+                .withTimeout(Duration.ofMillis(transferBatchTimeoutMs));
     }
 
     /**
@@ -49,17 +109,54 @@ public class AccountService {
     /**
      * Ищет аккаунт по id.
      * Его можно в транзакцию не оборачивать, т.к. он не изменяет данные в базе.
+     * <p>
+     * Аккаунт читается из кэша {@link EntitySnapshotCaches#accounts()}, в БД идем только при промахе.
+     * Все методы этого сервиса, меняющие счета, удаляют их из кэша после завершения транзакции (самой внешней).
+     * Снимок из кэша - только для чтения: методы, меняющие баланс, читают счет заново в своей транзакции.
      *
      * @param id id аккаунта
      * @return Optional с аккаунтом, если он найден
      */
     public Optional<Account> findAccountById(Long id) {
+        if (id == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(caches.accounts().get(id, this::loadAccount));
+    }
+
+    private Account loadAccount(long id) {
         try (Session session = sessionFactory.openSession()) {
-            Account account = session.get(Account.class, id);
-            return Optional.of(account);
+            return session.get(Account.class, id);
         }
     }
 
+    /**
+     * Ищет аккаунты по списку id одной сессией, пачками по {@link MultiLoadHelper#BATCH_SIZE}.
+     *
+     * @param ids id аккаунтов
+     * @return найденные аккаунты в порядке входного списка id
+     */
+    public List<Account> findAllByIds(Collection<Long> ids) {
+        try (Session session = sessionFactory.openSession()) {
+            return MultiLoadHelper.findAllByIds(session, Account.class, ids);
+        }
+    }
+
+    private Optional<Account> lockAccountInCurrentSession(Long id) {
+        Session session = sessionFactory.getCurrentSession();
+        return Optional.ofNullable(session.find(Account.class, id, LockModeType.PESSIMISTIC_WRITE));
+    }
+
+    /**
+     * Сбрасывает счета из кэша после завершения транзакции - самой внешней, если метод вызван внутри другой
+     * транзакции ({@link TransactionHelper#afterCompletion(Runnable)}). Сброс до коммита не помогает: другой поток
+     * успел бы загрузить в кэш еще старый баланс.
+     */
+    private void invalidateAfterCompletion(Collection<Long> accountIds) {
+        List<Long> ids = List.copyOf(accountIds);
+        transactionHelper.afterCompletion(() -> ids.forEach(caches.accounts()::invalidate));
+    }
+
     private Optional<Account> findAccountByIdInCurrentSession(Long id) {
         Session session = sessionFactory.getCurrentSession();
         Account account = session.get(Account.class, id);
@@ -74,10 +171,6 @@ public class AccountService {
      * @param moneyToDeposit количество денег для пополнения
      */
     public void depositAccount(Long accountId, int moneyToDeposit) {
-        var account = findAccountById(accountId).orElseThrow(
-                () -> new IllegalArgumentException("No such account: id=%s".formatted(accountId))
-        );
-
         if (moneyToDeposit <= 0) {
             throw new IllegalArgumentException(
                     ("Cannot deposit not positive amount: amount=%s")
@@ -85,11 +178,15 @@ public class AccountService {
             );
         }
         transactionHelper.executeInTransaction(() -> {
-            //Сделаем так, чтобы текущая сессия начала следить за этим аккаунтом.
-            //Нам вернется объект, который уже находится в базе и за которым будет следить сессия.
-            var acc = sessionFactory.getCurrentSession().merge(account);
+            //Счет загружаем в текущей сессии и блокируем (SELECT ... FOR UPDATE), а не берем из кэша:
+            //баланс из кэша мог устареть, и запись "баланс из кэша + сумма" потеряла бы чужое пополнение.
+            var account = lockAccountInCurrentSession(accountId).orElseThrow(
+                    () -> new IllegalArgumentException("No such account: id=%s".formatted(accountId))
+            );
             //Пополняем счет:
-            acc.setMoneyAmount(acc.getMoneyAmount() + moneyToDeposit);
+            account.setMoneyAmount(account.getMoneyAmount() + moneyToDeposit);
+            writeOutboxEvent(AccountEventType.DEPOSIT, accountId, null, moneyToDeposit);
+            invalidateAfterCompletion(List.of(accountId));
             return 0; //Не используется, просто что-то вернули.
         });
     }
@@ -102,7 +199,8 @@ public class AccountService {
      */
     public void depositAccountAdvanced(Long accountId, int moneyToDeposit) {
         transactionHelper.executeInTransaction(() -> {
-            var account = findAccountById(accountId).orElseThrow(
+            //Берем счет из текущей сессии: изменения счета, загруженного в другой сессии, не сохранятся.
+            var account = findAccountByIdInCurrentSession(accountId).orElseThrow(
                     () -> new IllegalArgumentException("No such account: id=%s".formatted(accountId))
             );
 
@@ -114,6 +212,8 @@ public class AccountService {
             }
             //Пополняем счет:
             account.setMoneyAmount(account.getMoneyAmount() + moneyToDeposit);
+            writeOutboxEvent(AccountEventType.DEPOSIT, accountId, null, moneyToDeposit);
+            invalidateAfterCompletion(List.of(accountId));
             return 0; //Не используется, просто что-то вернули.
         });
     }
@@ -125,28 +225,27 @@ public class AccountService {
      * @param amountToWithdraw количество денег для снятия.
      */
     public void withdrawFromAccount(Long accountId, int amountToWithdraw) {
-        var account = findAccountById(accountId).orElseThrow(
-                () -> new IllegalArgumentException("No such account: id=%s".formatted(accountId))
-        );
         if (amountToWithdraw <= 0) {
             throw new IllegalArgumentException(
                     ("Cannot withdraw not positive amount: amount=%s")
                             .formatted(amountToWithdraw)
             );
         }
-        if (account.getMoneyAmount() < amountToWithdraw) {
-            throw new IllegalArgumentException(
-                    ("Cannot withdraw from account: id=%s, moneyAmount=%s, " +
-                            "attemptedTransfer=%s")
-                            .formatted(accountId, account.getMoneyAmount(), amountToWithdraw)
-            );
-        }
         transactionHelper.executeInTransaction(() -> {
-            //Сделаем так, чтобы текущая сессия начала следить за этим аккаунтом.
-            //Нам вернется объект, который уже находится в базе и за которым будет следить сессия.
-            var acc = sessionFactory.getCurrentSession().merge(account);
-            //Пополняем счет:
-            acc.setMoneyAmount(acc.getMoneyAmount() - amountToWithdraw);
+            //Как и в depositAccount: актуальный баланс под блокировкой строки, а не снимок из кэша.
+            var account = lockAccountInCurrentSession(accountId).orElseThrow(
+                    () -> new IllegalArgumentException("No such account: id=%s".formatted(accountId))
+            );
+            if (account.getMoneyAmount() < amountToWithdraw) {
+                throw new IllegalArgumentException(
+                        ("Cannot withdraw from account: id=%s, moneyAmount=%s, " +
+                                "attemptedTransfer=%s")
+                                .formatted(accountId, account.getMoneyAmount(), amountToWithdraw)
+                );
+            }
+            account.setMoneyAmount(account.getMoneyAmount() - amountToWithdraw);
+            writeOutboxEvent(AccountEventType.WITHDRAW, accountId, null, amountToWithdraw);
+            invalidateAfterCompletion(List.of(accountId));
             return 0; //Не используется, просто что-то вернули.
         });
     }
@@ -177,6 +276,8 @@ public class AccountService {
             }
             //Пополняем счет:
             account.setMoneyAmount(account.getMoneyAmount() - amountToWithdraw);
+            writeOutboxEvent(AccountEventType.WITHDRAW, accountId, null, amountToWithdraw);
+            invalidateAfterCompletion(List.of(accountId));
             return 0; //Не используется, просто что-то вернули.
         });
     }
@@ -188,8 +289,7 @@ public class AccountService {
      * @return Удаленный/закрытый аккаунт.
      */
     public Account closeAccount(Long accountId) {
-        return transactionHelper.executeInTransaction(() -> {
-
+        return transactionHelper.executeInTransaction(moneyTransactionOptions, () -> {
             var accountToRemove = findAccountByIdInCurrentSession(accountId).orElseThrow(
                     () -> new IllegalArgumentException("No such account: id=%s".formatted(accountId))
             );
@@ -211,6 +311,9 @@ public class AccountService {
 
             //Удаляем аккаунт в текущей сессии:
             sessionFactory.getCurrentSession().remove(accountToRemove);
+            writeOutboxEvent(AccountEventType.CLOSE, accountId, accountToDeposit.getId(),
+                    accountToRemove.getMoneyAmount());
+            invalidateAfterCompletion(List.of(accountId, accountToDeposit.getId()));
             return accountToRemove;
         });
     }
@@ -226,7 +329,7 @@ public class AccountService {
             throw new IllegalArgumentException("Cannot transfer. Amount to transfer must be positive: amount=%s"
                     .formatted(amountToTransfer));
         }
-        transactionHelper.executeInTransaction(() -> {
+        transactionHelper.executeInTransaction(moneyTransactionOptions, () -> {
 
             var accountFrom = findAccountByIdInCurrentSession(fromAccountId).orElseThrow(
                     () -> new IllegalArgumentException("No such account: id=%s".formatted(fromAccountId))
@@ -242,12 +345,169 @@ public class AccountService {
                                 .formatted(accountFrom, accountFrom.getMoneyAmount(), amountToTransfer)
                 );
             }
-            int totalAmountToDeposit = !accountTo.getUser().getId().equals(accountFrom.getUser().getId())
-                    ? (int) (amountToTransfer * (1 - accountProperties.getTransferCommission()))
-                    : amountToTransfer;
+            int totalAmountToDeposit = calculateAmountToDeposit(accountFrom, accountTo, amountToTransfer);
             accountFrom.setMoneyAmount(accountFrom.getMoneyAmount() - amountToTransfer);
             accountTo.setMoneyAmount(accountTo.getMoneyAmount() + totalAmountToDeposit);
+            writeOutboxEvent(AccountEventType.TRANSFER, fromAccountId, toAccountId, amountToTransfer);
+            invalidateAfterCompletion(List.of(fromAccountId, toAccountId));
             return 0; //Не используется, просто что-то вернули.
         });
     }
+
+    /**
+     * Пакетный перевод денег, в режиме "не строгий" - см. {@link #transferBatch(List, boolean)}.
+     *
+     * @param commands команды на перевод
+     * @return результат с количеством выполненных команд и списком отказов
+     */
+    public TransferBatchResult transferBatch(List<TransferCommand> commands) {
+        return transferBatch(commands, false);
+    }
+
+    /**
+     * Метод для пакетного перевода денег (например, ночной расчет).<br/>
+     * Все команды выполняются в одной транзакции:
+     * <p>
+     * 1. все участвующие счета загружаются одним запросом (по кускам {@link #LOCK_CHUNK_SIZE}) и сразу блокируются
+     * (SELECT ... FOR UPDATE) в порядке возрастания id. Одинаковый порядок блокировок во всех транзакциях
+     * исключает взаимные блокировки (deadlock) между параллельными пакетами;<br/>
+     * 2. команды применяются по очереди к балансам в памяти, так что каждая следующая команда видит результат
+     * предыдущих;<br/>
+     * 3. в конце на каждый измененный счет записывается итоговый баланс. Hibernate отправит эти UPDATE
+     * пачками (hibernate.jdbc.batch_size), по одному на счет, а не по два на каждую команду.
+     * <p>
+     * Если команду выполнить нельзя (нет счета, не хватает денег, не положительная сумма), то в не строгом
+     * режиме она попадает в список отказов, а остальные команды выполняются. В строгом режиме первая же
+     * ошибка откатывает весь пакет.
+     * <p>
+     * Пакет не может держать блокировки и соединение дольше account.transfer-batch.timeout-ms: по дедлайну
+     * запросы и ожидание блокировок отменяются, пакет откатывается с DeadlineExceededException.
+     *
+     * @param commands команды на перевод
+     * @param strict   true - любой отказ откатывает весь пакет с IllegalArgumentException
+     * @return результат с количеством выполненных команд и списком отказов
+     */
+    public TransferBatchResult transferBatch(List<TransferCommand> commands, boolean strict) {
+        if (commands.isEmpty()) {
+            return new TransferBatchResult(0, List.of());
+        }
+        TreeSet<Long> accountIds = collectAccountIds(commands);
+        TransferBatchResult result = transactionHelper.executeInTransaction(transferBatchTransactionOptions, () -> {
+            Session session = sessionFactory.getCurrentSession();
+            Map<Long, Account> accounts = lockAccountsInIdOrder(session, accountIds);
+
+            //Текущие балансы в памяти, к ним применяем команды по очереди:
+            Map<Long, Integer> balances = new HashMap<>();
+            accounts.forEach((id, account) -> balances.put(id, account.getMoneyAmount()));
+
+            List<TransferFailure> failures = new ArrayList<>();
+            int appliedCount = 0;
+            for (int i = 0; i < commands.size(); i++) {
+                TransferCommand command = commands.get(i);
+                String error = validateTransfer(command, accounts, balances);
+                if (error != null) {
+                    if (strict) {
+                        throw new IllegalArgumentException(
+                                "Cannot transfer. Command #%s %s rejected: %s".formatted(i, command, error)
+                        );
+                    }
+                    failures.add(new TransferFailure(i, command, error));
+                    continue;
+                }
+                Account accountFrom = accounts.get(command.fromAccountId());
+                Account accountTo = accounts.get(command.toAccountId());
+                int totalAmountToDeposit = calculateAmountToDeposit(accountFrom, accountTo, command.amount());
+                balances.merge(accountFrom.getId(), -command.amount(), Integer::sum);
+                balances.merge(accountTo.getId(), totalAmountToDeposit, Integer::sum);
+                writeOutboxEvent(AccountEventType.TRANSFER, command.fromAccountId(), command.toAccountId(),
+                        command.amount());
+                appliedCount++;
+            }
+
+            //Записываем итоговые балансы. Сессия сделает UPDATE только для тех счетов, у которых баланс изменился.
+            balances.forEach((id, balance) -> accounts.get(id).setMoneyAmount(balance));
+            invalidateAfterCompletion(accountIds);
+            return new TransferBatchResult(appliedCount, List.copyOf(failures));
+        });
+        return result;
+    }
+
+    /**
+     * Пишет событие в outbox в текущей транзакции: событие сохранится, только если закоммитится
+     * и изменение счета. См. {@link AccountOutboxEvent}.
+     */
+    private void writeOutboxEvent(AccountEventType type, Long accountId, Long relatedAccountId, int amount) {
+        sessionFactory.getCurrentSession().persist(new AccountOutboxEvent(type, accountId, relatedAccountId, amount));
+    }
+
+    private static TreeSet<Long> collectAccountIds(List<TransferCommand> commands) {
+        TreeSet<Long> ids = new TreeSet<>();
+        for (TransferCommand command : commands) {
+            if (command.fromAccountId() != null) {
+                ids.add(command.fromAccountId());
+            }
+            if (command.toAccountId() != null) {
+                ids.add(command.toAccountId());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Загружает и блокирует (PESSIMISTIC_WRITE) счета в порядке возрастания id.
+     *
+     * @param session    текущая сессия
+     * @param sortedIds  отсортированные id счетов
+     * @return счета по id (несуществующих id в карте не будет)
+     */
+    private Map<Long, Account> lockAccountsInIdOrder(Session session, TreeSet<Long> sortedIds) {
+        Map<Long, Account> accounts = new HashMap<>();
+        List<Long> ids = new ArrayList<>(sortedIds);
+        for (int from = 0; from < ids.size(); from += LOCK_CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(from + LOCK_CHUNK_SIZE, ids.size()));
+            session.createNamedQuery(QueryCatalog.ACCOUNT_FIND_BY_IDS_ORDERED, Account.class)
+                    .setParameter("ids", chunk)
+                    .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                    .list()
+                    .forEach(account -> accounts.put(account.getId(), account));
+        }
+        return accounts;
+    }
+
+    /**
+     * Проверяет команду на перевод относительно текущих балансов в памяти.
+     *
+     * @return текст ошибки или null, если команду можно выполнить
+     */
+    private static String validateTransfer(
+            TransferCommand command, Map<Long, Account> accounts, Map<Long, Integer> balances
+    ) {
+        if (command.amount() <= 0) {
+            return "Amount to transfer must be positive: amount=%s".formatted(command.amount());
+        }
+        if (!accounts.containsKey(command.fromAccountId())) {
+            return "No such account: id=%s".formatted(command.fromAccountId());
+        }
+        if (!accounts.containsKey(command.toAccountId())) {
+            return "No such account: id=%s".formatted(command.toAccountId());
+        }
+        if (Objects.equals(command.fromAccountId(), command.toAccountId())) {
+            return "Cannot transfer to the same account: id=%s".formatted(command.fromAccountId());
+        }
+        int moneyAmount = balances.get(command.fromAccountId());
+        if (moneyAmount < command.amount()) {
+            return "Not enough money: id=%s, moneyAmount=%s, attemptedTransfer=%s"
+                    .formatted(command.fromAccountId(), moneyAmount, command.amount());
+        }
+        return null;
+    }
+
+    /**
+     * Сколько денег зачислить на счет получателя. Между счетами разных пользователей берется комиссия.
+     */
+    private int calculateAmountToDeposit(Account accountFrom, Account accountTo, int amountToTransfer) {
+        return !accountTo.getUser().getId().equals(accountFrom.getUser().getId())
+                ? (int) (amountToTransfer * (1 - accountProperties.getTransferCommission()))
+                : amountToTransfer;
+    }
 }
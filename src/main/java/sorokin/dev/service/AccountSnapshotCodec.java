@@ -0,0 +1,42 @@
+package sorokin.dev.service;
+
+import sorokin.dev.entity.Account;
+import sorokin.dev.entity.User;
+import sorokin.dev.utils.SnapshotCodec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Снимок счета: id, баланс и id пользователя - 20 байт.
+ * <p>
+ * Пользователь в снимок не входит: после чтения у счета будет объект User только с id,
+ * как незагруженный прокси (Account.user - LAZY) у счета, загруженного через сессию.
+ */
+class AccountSnapshotCodec implements SnapshotCodec<Account> {
+
+    private static final long NO_USER = -1;
+
+    @Override
+    public byte[] encode(Account account) {
+        return ByteBuffer.allocate(Long.BYTES + Integer.BYTES + Long.BYTES)
+                .putLong(account.getId())
+                .putInt(account.getMoneyAmount())
+                .putLong(account.getUser() == null ? NO_USER : account.getUser().getId())
+                .array();
+    }
+
+    @Override
+    public Account decode(byte[] snapshot) {
+        ByteBuffer buffer = ByteBuffer.wrap(snapshot);
+        Account account = new Account();
+        account.setId(buffer.getLong());
+        account.setMoneyAmount(buffer.getInt());
+        long userId = buffer.getLong();
+        if (userId != NO_USER) {
+            User user = new User();
+            user.setId(userId);
+            account.setUser(user);
+        }
+        return account;
+    }
+}
@@ -0,0 +1,17 @@
+package sorokin.dev.service;
+
+/**
+ * Курс с количеством записанных студентов из {@link RosterSummaryService}.
+ *
+ * @param courseId     id курса
+ * @param name         название
+ * @param type         тип
+ * @param studentCount сколько студентов записано
+ */
+public record CourseEnrollmentSummary(
+        Long courseId,
+        String name,
+        String type,
+        long studentCount
+) {
+}
@@ -13,13 +13,16 @@ public class CourseService {
 
     private final SessionFactory sessionFactory;
     private final TransactionHelper transactionHelper;
+    private final EntitySnapshotCaches caches;
 
     public CourseService(
             SessionFactory sessionFactory,
-            TransactionHelper transactionHelper
+            TransactionHelper transactionHelper,
+            EntitySnapshotCaches caches
     ) {
         this.sessionFactory = sessionFactory;
         this.transactionHelper = transactionHelper;
+        this.caches = caches;
     }
 
     /**
@@ -61,6 +64,8 @@ public class CourseService {
                     .setParameter("courseId", courseId)
                     .executeUpdate();
         });
+        //список курсов входит в снимок студента в кэше
+        caches.students().invalidate(studentId);
     }
 
     public List<Student> getStudentsOnCourse(Long id) {
@@ -0,0 +1,43 @@
+package sorokin.dev.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import sorokin.dev.entity.Account;
+import sorokin.dev.entity.Student;
+import sorokin.dev.utils.LongKeyedSnapshotCache;
+
+/**
+ * Кэши приложения для частых чтений по id: {@link StudentService#getStudentById(Long)} и
+ * {@link AccountService#findAccountById(Long)}. Без кэша каждый вызов - новая сессия и запросы к БД.
+ * <p>
+ * Отдельный бин, потому что студента меняют несколько сервисов: запись на курс ({@link CourseService})
+ * тоже меняет то, что лежит в снимке студента. Каждый такой метод после коммита вызывает invalidate.
+ * Профиля в снимке нет (см. {@link StudentSnapshotCodec}), поэтому запись профиля и last seen кэш не трогает.
+ * <p>
+ * Изменения в обход этих сервисов (StudentSimpleManualService, SQL руками) кэш не видит:
+ * в таком случае нужен invalidate или invalidateAll.
+ */
+@Component
+public class EntitySnapshotCaches {
+
+    private final LongKeyedSnapshotCache<Student> students;
+    private final LongKeyedSnapshotCache<Account> accounts;
+
+    public EntitySnapshotCaches(
+            @Value("${cache.students.max-entries:10000}") int studentsMaxEntries,
+            @Value("${cache.students.max-bytes:16777216}") long studentsMaxBytes,
+            @Value("${cache.accounts.max-entries:100000}") int accountsMaxEntries,
+            @Value("${cache.accounts.max-bytes:4194304}") long accountsMaxBytes
+    ) {
+        this.students = new LongKeyedSnapshotCache<>(new StudentSnapshotCodec(), studentsMaxEntries, studentsMaxBytes);
+        this.accounts = new LongKeyedSnapshotCache<>(new AccountSnapshotCodec(), accountsMaxEntries, accountsMaxBytes);
+    }
+
+    public LongKeyedSnapshotCache<Student> students() {
+        return students;
+    }
+
+    public LongKeyedSnapshotCache<Account> accounts() {
+        return accounts;
+    }
+}
@@ -0,0 +1,19 @@
+package sorokin.dev.service;
+
+import java.util.List;
+
+/**
+ * Группа со списком студентов из {@link RosterSummaryService}.
+ *
+ * @param groupId        id группы
+ * @param number         номер группы
+ * @param graduationYear год выпуска
+ * @param students       студенты по имени
+ */
+public record GroupRosterSummary(
+        Long groupId,
+        String number,
+        Long graduationYear,
+        List<RosterStudent> students
+) {
+}
@@ -1,11 +1,18 @@
 package sorokin.dev.service;
 
+import org.hibernate.Hibernate;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import sorokin.dev.entity.Group;
+import sorokin.dev.entity.Student;
+import sorokin.dev.query.QueryCatalog;
+import sorokin.dev.utils.OperationClass;
 import sorokin.dev.utils.TransactionHelper;
+import sorokin.dev.utils.TransactionOptions;
 
+import java.time.Duration;
 import java.util.List;
 
 /**
@@ -17,13 +24,17 @@ public class GroupService {
 
     private final SessionFactory sessionFactory;
     private final TransactionHelper transactionHelper;
+    private final TransactionOptions findAllOptions;
 
     public GroupService(
             SessionFactory sessionFactory,
-            TransactionHelper transactionHelper
+            TransactionHelper transactionHelper,
+            @Value("${group.find-all.timeout-ms:30000}") long findAllTimeoutMs
     ) {
         this.sessionFactory = sessionFactory;
         this.transactionHelper = transactionHelper;
+        this.findAllOptions = TransactionOptions.DEFAULT.withTimeout(Duration.ofMillis(findAllTimeoutMs))
+                .forOperation(OperationClass.READ);
     }
 
     public Group saveGroup(
@@ -38,20 +49,40 @@ public class GroupService {
     }
 
     /**
-     * Метод возвращает список всех групп.
+     * Метод возвращает список всех групп со студентами и их курсами.
      * @return List<Group>
-     * В этом методе используется корректный запрос, который решает проблему N+1.
-     * Одним запросом мы получаем данные о группах, а также о студентах из этих групп и профилях студентов.
+     * Граф загружается по уровням, а не одним JOIN FETCH:
+     * <ol>
+     *     <li>группы - один запрос без join'ов;</li>
+     *     <li>студенты всех групп - один запрос
+     *     "where group_id in (select id from student_group ...)"
+     *     ({@code @Fetch(SUBSELECT)} на {@link Group#getStudentList()});</li>
+     *     <li>курсы всех этих студентов - еще один такой же запрос по подзапросу студентов
+     *     ({@code @Fetch(SUBSELECT)} на {@link Student#getCourseList()}).</li>
+     * </ol>
+     * Итого 3 запроса при любом числе групп. Один запрос с join fetch по студентам и курсам вернул бы строку на каждую
+     * комбинацию группа x студент x курс (декартово произведение: данные группы и студента повторяются в каждой
+     * строке), а два List (bag) в одном join fetch Hibernate и вовсе не разрешает (MultipleBagFetchException).
+     * Каждая сущность приходит из БД одной строкой, Hibernate сам раскладывает их по коллекциям без дублей.
+     * <p>
+     * Профили студентов не загружаются ({@link Student#getProfile()} ленивый): если нужны - одним запросом
+     * по id студентов через {@link ProfileService#findAllByIds(java.util.Collection)}.
+     * <p>
+     * Все группы - самый тяжелый запрос сервиса, поэтому он выполняется с дедлайном group.find-all.timeout-ms:
+     * по его истечении запрос отменяется и соединение возвращается в пул (см. {@link TransactionHelper}).
+     * Это чтение: оно входит в лимит одновременных чтений, а не записей.
      */
     public List<Group> findAll() {
-        try (Session session = sessionFactory.openSession()) {
-            return session.createQuery("""
-                    SELECT g from Group g
-                    left join fetch g.studentList s
-                    left join fetch s.profile
-                    """, Group.class)
+        return transactionHelper.executeInTransaction(findAllOptions, session -> {
+            List<Group> groups = session.createNamedQuery(QueryCatalog.GROUP_FIND_ALL, Group.class)
                     .list();
-        }
+            //коллекции EAGER и уже загружены подзапросами; initialize - на случай, если их сделают LAZY
+            groups.forEach(group -> {
+                Hibernate.initialize(group.getStudentList());
+                group.getStudentList().forEach(student -> Hibernate.initialize(student.getCourseList()));
+            });
+            return groups;
+        });
     }
 
     /**
@@ -62,9 +93,7 @@ public class GroupService {
      */
     public List<Group> findAllWithNPlusOneProblem() {
         try (Session session = sessionFactory.openSession()) {
-            return session.createQuery("""
-                    SELECT g from Group g
-                    """, Group.class)
+            return session.createNamedQuery(QueryCatalog.GROUP_FIND_ALL_WITHOUT_FETCH, Group.class)
                     .list();
         }
     }
@@ -0,0 +1,111 @@
+package sorokin.dev.service;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Поиск для H2 (тесты): в H2 нет tsvector, поэтому строим обратный индекс в памяти.
+ * <p>
+ * Индекс: слово - (id записи - сколько раз слово в ней встречается). Слова лежат в TreeMap, поэтому поиск
+ * по началу слова - это subMap от "pet" до "pet" + Character.MAX_VALUE. Релевантность считаем как в PostgreSQL с ts_rank(..., 2):
+ * сколько раз встретились слова запроса, деленное на количество слов в тексте.
+ * <p>
+ * Индекс строится при первом поиске и дальше не обновляется сам: после изменения данных нужен
+ * {@link SearchService#reindex()}. Для тестов этого достаточно, для большой БД этот вариант не предназначен.
+ */
+class InMemorySearchBackend implements SearchBackend {
+
+    private final SessionFactory sessionFactory;
+    private final Map<SearchTarget, Index> indexes = new ConcurrentHashMap<>();
+
+    InMemorySearchBackend(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    @Override
+    public List<SearchHit> search(SearchTarget target, List<String> tokens, boolean lastIsPrefix, int offset, int limit) {
+        Index index = indexes.computeIfAbsent(target, this::buildIndex);
+
+        Map<Long, Integer> matches = null;
+        for (int i = 0; i < tokens.size(); i++) {
+            boolean prefix = lastIsPrefix && i == tokens.size() - 1;
+            Map<Long, Integer> tokenMatches = index.lookup(tokens.get(i), prefix);
+            matches = matches == null ? tokenMatches : intersect(matches, tokenMatches);
+            if (matches.isEmpty()) {
+                return List.of();
+            }
+        }
+        if (matches == null) {
+            return List.of();
+        }
+
+        return matches.entrySet().stream()
+                .map(entry -> new SearchHit(target, entry.getKey(), index.snippets().get(entry.getKey()),
+                        (double) entry.getValue() / index.lengths().get(entry.getKey())))
+                .sorted(Comparator.comparingDouble(SearchHit::rank).reversed().thenComparing(SearchHit::id))
+                .skip(offset)
+                .limit(limit)
+                .toList();
+    }
+
+    @Override
+    public void reindex() {
+        indexes.clear();
+    }
+
+    private Index buildIndex(SearchTarget target) {
+        NavigableMap<String, Map<Long, Integer>> postings = new TreeMap<>();
+        Map<Long, String> snippets = new HashMap<>();
+        Map<Long, Integer> lengths = new HashMap<>();
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            for (Object[] row : session.createQuery(target.textQuery(), Object[].class).list()) {
+                Long id = (Long) row[0];
+                String text = (String) row[1];
+                List<String> tokens = SearchService.tokenize(text);
+                if (tokens.isEmpty()) {
+                    continue;
+                }
+                for (String token : tokens) {
+                    postings.computeIfAbsent(token, key -> new HashMap<>()).merge(id, 1, Integer::sum);
+                }
+                snippets.put(id, text.length() > SearchService.SNIPPET_LENGTH
+                        ? text.substring(0, SearchService.SNIPPET_LENGTH)
+                        : text);
+                lengths.put(id, tokens.size());
+            }
+        }
+        return new Index(postings, snippets, lengths);
+    }
+
+    private static Map<Long, Integer> intersect(Map<Long, Integer> left, Map<Long, Integer> right) {
+        Map<Long, Integer> result = new HashMap<>();
+        left.forEach((id, count) -> {
+            Integer rightCount = right.get(id);
+            if (rightCount != null) {
+                result.put(id, count + rightCount);
+            }
+        });
+        return result;
+    }
+
+    private record Index(
+            NavigableMap<String, Map<Long, Integer>> postings,
+            Map<Long, String> snippets,
+            Map<Long, Integer> lengths
+    ) {
+
+        Map<Long, Integer> lookup(String token, boolean prefix) {
+            if (!prefix) {
+                return postings.getOrDefault(token, Map.of());
+            }
+            Map<Long, Integer> result = new HashMap<>();
+            postings.subMap(token, true, token + Character.MAX_VALUE, true)
+                    .values()
+                    .forEach(ids -> ids.forEach((id, count) -> result.merge(id, count, Integer::sum)));
+            return result;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package sorokin.dev.service;
+
+import java.time.LocalDateTime;
+
+/**
+ * Позиция, с которой {@link LoggingService#findLogs} продолжает чтение: последняя запись прочитанной страницы.
+ * <p>
+ * Вместо номера страницы (OFFSET): OFFSET заставляет БД прочитать и выбросить все предыдущие строки,
+ * а с курсором каждая страница - это поиск по индексу created_at, сколько бы страниц ни прочитали до нее.
+ *
+ * @param createdAt created_at последней прочитанной записи
+ * @param id        id последней прочитанной записи (created_at у записей может совпадать)
+ */
+public record LogCursor(
+        LocalDateTime createdAt,
+        Long id
+) {
+}
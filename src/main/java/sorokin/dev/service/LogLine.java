@@ -0,0 +1,20 @@
+package sorokin.dev.service;
+
+import java.time.LocalDateTime;
+
+/**
+ * Запись лога из {@link LoggingService#findLogs}.
+ * <p>
+ * Не сущность {@link sorokin.dev.entity.LogEntry}, а проекция: message у сущности ленивый, и после закрытия
+ * сессии его уже не прочитать, а здесь он выбирается тем же запросом.
+ *
+ * @param id        id записи
+ * @param createdAt когда записано
+ * @param message   текст
+ */
+public record LogLine(
+        Long id,
+        LocalDateTime createdAt,
+        String message
+) {
+}
@@ -0,0 +1,15 @@
+package sorokin.dev.service;
+
+import java.util.List;
+
+/**
+ * Страница лога из {@link LoggingService#findLogs}.
+ *
+ * @param lines записи, от новых к старым
+ * @param next  курсор следующей страницы, null - это последняя страница
+ */
+public record LogPage(
+        List<LogLine> lines,
+        LogCursor next
+) {
+}
@@ -0,0 +1,18 @@
+package sorokin.dev.service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Результат {@link LogRetentionService#applyRetention()}.
+ *
+ * @param cutoff            записи старше этого времени удаляются
+ * @param removedPartitions удаленные секции, а при archive=true - имена, под которыми они отсоединены
+ * @param deletedRows       сколько строк удалено через DELETE (H2 и default-секция PostgreSQL)
+ */
+public record LogRetentionResult(
+        LocalDateTime cutoff,
+        List<String> removedPartitions,
+        long deletedRows
+) {
+}
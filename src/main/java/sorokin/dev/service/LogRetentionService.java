@@ -0,0 +1,208 @@
+package sorokin.dev.service;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import sorokin.dev.query.QueryCatalog;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Обслуживание таблицы log_entries: новые секции заранее и удаление старых записей.
+ * <p>
+ * В PostgreSQL log_entries секционирована по месяцам (миграция V6):
+ * <ul>
+ *     <li>{@link #ensurePartitions()} создает секции на текущий месяц и months-ahead месяцев вперед.
+ *     Если секции нет, запись уходит в log_entries_default, а создать секцию на месяц, строки которого
+ *     уже лежат в default, нельзя - поэтому секции создаются заранее;</li>
+ *     <li>{@link #applyRetention()} убирает секции, все строки которых старше retention-days. Это DROP TABLE
+ *     (или DETACH, если archive=true: секция остается отдельной таблицей log_entries_archive_YYYY_MM, ее
+ *     можно выгрузить и удалить потом) - время не зависит от числа строк, нет раздувания таблицы и
+ *     долгого VACUUM, как после DELETE. Секция удаляется, только когда устарел весь ее месяц, поэтому
+ *     записи хранятся не меньше retention-days, но до месяца дольше.</li>
+ * </ul>
+ * В H2 секций нет: старые записи удаляются обычным DELETE по индексу created_at.
+ * <p>
+ * Фоновый поток выполняет оба шага каждые check-interval-ms. Интервал 0 - поток не запускается.
+ */
+@Service
+public class LogRetentionService implements DisposableBean {
+
+    private static final System.Logger log = System.getLogger(LogRetentionService.class.getName());
+
+    private static final String PARTITION_PREFIX = "log_entries_";
+    private static final String ARCHIVE_PREFIX = "log_entries_archive_";
+    private static final DateTimeFormatter PARTITION_MONTH = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    private final SessionFactory sessionFactory;
+    private final boolean partitioned;
+    private final int retentionDays;
+    private final int monthsAhead;
+    private final boolean archive;
+    private final ScheduledExecutorService scheduler;
+
+    public LogRetentionService(
+            SessionFactory sessionFactory,
+            @Value("${log.retention.days:90}") int retentionDays,
+            @Value("${log.retention.archive:false}") boolean archive,
+            @Value("${log.partitions.months-ahead:2}") int monthsAhead,
+            @Value("${log.retention.check-interval-ms:3600000}") long checkIntervalMs
+    ) {
+        this.sessionFactory = sessionFactory;
+        var dialect = sessionFactory.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect();
+        this.partitioned = dialect instanceof PostgreSQLDialect;
+        this.retentionDays = retentionDays;
+        this.archive = archive;
+        this.monthsAhead = monthsAhead;
+        if (checkIntervalMs > 0) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "log-retention");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::maintainQuietly, 0, checkIntervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            this.scheduler = null;
+        }
+    }
+
+    /**
+     * Создает недостающие секции log_entries на текущий месяц и months-ahead месяцев вперед.
+     *
+     * @return имена созданных секций (в H2 всегда пусто)
+     */
+    public List<String> ensurePartitions() {
+        if (!partitioned) {
+            return List.of();
+        }
+        return inTransaction(session -> {
+            List<String> existing = attachedPartitions(session);
+            List<String> created = new ArrayList<>();
+            YearMonth month = YearMonth.now();
+            for (int i = 0; i <= monthsAhead; i++, month = month.plusMonths(1)) {
+                String name = PARTITION_PREFIX + month.format(PARTITION_MONTH);
+                if (existing.contains(name)) {
+                    continue;
+                }
+                session.createNativeMutationQuery("CREATE TABLE %s PARTITION OF log_entries FOR VALUES FROM ('%s') TO ('%s')"
+                                .formatted(name, month.atDay(1), month.plusMonths(1).atDay(1)))
+                        .executeUpdate();
+                created.add(name);
+            }
+            return created;
+        });
+    }
+
+    /**
+     * Удаляет записи лога старше retention-days.
+     *
+     * @return что удалено
+     */
+    public LogRetentionResult applyRetention() {
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(retentionDays);
+        if (!partitioned) {
+            return inTransaction(session -> {
+                String query = QueryCatalog.hql(session, QueryCatalog.LOG_DELETE_OLDER_THAN);
+                int deleted = session.createMutationQuery(query)
+                        .setParameter("cutoff", cutoff)
+                        .executeUpdate();
+                return new LogRetentionResult(cutoff, List.of(), deleted);
+            });
+        }
+        return inTransaction(session -> {
+            List<String> removed = new ArrayList<>();
+            for (String name : attachedPartitions(session)) {
+                YearMonth month = partitionMonth(name);
+                if (month == null || month.plusMonths(1).atDay(1).atStartOfDay().isAfter(cutoff)) {
+                    continue;
+                }
+                if (archive) {
+                    String archiveName = ARCHIVE_PREFIX + month.format(PARTITION_MONTH);
+                    session.createNativeMutationQuery("ALTER TABLE log_entries DETACH PARTITION " + name)
+                            .executeUpdate();
+                    session.createNativeMutationQuery("ALTER TABLE %s RENAME TO %s".formatted(name, archiveName))
+                            .executeUpdate();
+                    removed.add(archiveName);
+                } else {
+                    session.createNativeMutationQuery("DROP TABLE " + name).executeUpdate();
+                    removed.add(name);
+                }
+            }
+            //в default-секции строк быть не должно, но если попали - удаляем их по одной
+            int deleted = session.createNativeMutationQuery("DELETE FROM log_entries_default WHERE created_at < :cutoff")
+                    .setParameter("cutoff", cutoff)
+                    .executeUpdate();
+            return new LogRetentionResult(cutoff, removed, deleted);
+        });
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void maintainQuietly() {
+        try {
+            List<String> created = ensurePartitions();
+            LogRetentionResult result = applyRetention();
+            if (!created.isEmpty() || !result.removedPartitions().isEmpty() || result.deletedRows() > 0) {
+                log.log(System.Logger.Level.INFO, "log_entries maintenance: created {0}, {1}", created, result);
+            }
+        } catch (RuntimeException e) {
+            log.log(System.Logger.Level.WARNING, "log_entries maintenance failed, will retry", e);
+        }
+    }
+
+    private List<String> attachedPartitions(StatelessSession session) {
+        return session.createNativeQuery("""
+                        SELECT c.relname
+                        FROM pg_inherits i
+                        JOIN pg_class c ON c.oid = i.inhrelid
+                        WHERE i.inhparent = 'log_entries'::regclass
+                        ORDER BY c.relname
+                        """, String.class)
+                .list();
+    }
+
+    private static YearMonth partitionMonth(String partitionName) {
+        try {
+            return YearMonth.parse(partitionName.substring(PARTITION_PREFIX.length()), PARTITION_MONTH);
+        } catch (DateTimeParseException | IndexOutOfBoundsException e) {
+            //log_entries_default и секции, созданные вручную не по шаблону, не трогаем
+            return null;
+        }
+    }
+
+    private <T> T inTransaction(Function<StatelessSession, T> work) {
+        //сессия закроется при выходе из try при любом исходе, транзакцию откатываем до ее закрытия
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            Transaction transaction = session.beginTransaction();
+            try {
+                T result = work.apply(session);
+                transaction.commit();
+                return result;
+            } catch (RuntimeException e) {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+                throw e;
+            }
+        }
+    }
+}
@@ -4,13 +4,17 @@ import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.springframework.stereotype.Service;
 import sorokin.dev.entity.LogEntry;
-import sorokin.dev.entity.Student;
+import sorokin.dev.query.QueryCatalog;
 import sorokin.dev.utils.TransactionHelper;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Service
 public class LoggingService {
+
+    public static final int MAX_PAGE_SIZE = 1000;
+
     private final SessionFactory sessionFactory;
     private final TransactionHelper transactionHelper;
 
@@ -25,14 +29,45 @@ public class LoggingService {
         });
     }
 
-    public List<LogEntry> getAllLogs() {
+    /**
+     * Записи лога за период [from, to), от новых к старым, постранично.
+     * <p>
+     * Вместо чтения всей таблицы (она только растет): период обязателен, в PostgreSQL он ограничивает
+     * чтение секциями нужных месяцев (см. миграцию V6), внутри секции записи ищутся по индексу created_at.
+     *
+     * @param from     начало периода, включительно
+     * @param to       конец периода, не включительно
+     * @param after    курсор из предыдущей страницы, null - первая страница
+     * @param pageSize размер страницы, не больше {@link #MAX_PAGE_SIZE}
+     * @return страница записей
+     */
+    public LogPage findLogs(LocalDateTime from, LocalDateTime to, LogCursor after, int pageSize) {
+        if (from == null || to == null || !from.isBefore(to)) {
+            throw new IllegalArgumentException("Period must be non-empty: from=%s, to=%s".formatted(from, to));
+        }
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page size must be between 1 and %s: %s"
+                    .formatted(MAX_PAGE_SIZE, pageSize));
+        }
+        //первая страница и продолжение по курсору - два разных запроса каталога
+        String queryName = after == null ? QueryCatalog.LOG_FIND_PAGE : QueryCatalog.LOG_FIND_PAGE_AFTER;
         try (Session session = sessionFactory.openSession()) {
-            return session
-                    .createQuery("SELECT s FROM Student s", LogEntry.class)
-                    .list();
+            var query = session.createNamedQuery(queryName, LogLine.class)
+                    .setParameter("from", from)
+                    .setParameter("to", to)
+                    //одна лишняя запись - чтобы узнать, есть ли следующая страница
+                    .setMaxResults(pageSize + 1);
+            if (after != null) {
+                query.setParameter("afterCreatedAt", after.createdAt())
+                        .setParameter("afterId", after.id());
+            }
+            List<LogLine> lines = query.list();
+            if (lines.size() <= pageSize) {
+                return new LogPage(lines, null);
+            }
+            List<LogLine> page = lines.subList(0, pageSize);
+            LogLine last = page.get(pageSize - 1);
+            return new LogPage(List.copyOf(page), new LogCursor(last.createdAt(), last.id()));
         }
-//        return transactionHelper.executeInTransaction(session ->
-//                session.createQuery("FROM LogEntry", LogEntry.class).list()
-//        );
     }
 }
@@ -0,0 +1,57 @@
+package sorokin.dev.service;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Поиск в PostgreSQL по GIN-индексам to_tsvector('simple', колонка) (миграция V3__search_indexes.sql).
+ * <p>
+ * Запрос собираем в синтаксисе tsquery: 'ivan &amp; pet:*'. Слова в нем уже очищены до букв и цифр, поэтому
+ * подставлять их в параметр безопасно. ts_rank(..., 2) делит релевантность на длину текста:
+ * короткое "Иван" выше длинного "Иван Иванович Петров".
+ */
+class PostgresSearchBackend implements SearchBackend {
+
+    private static final String SQL = """
+            SELECT t.id, left(t.%2$s, %3$d), ts_rank(to_tsvector('simple', t.%2$s), q, 2) AS rank
+            FROM %1$s t, to_tsquery('simple', :query) q
+            WHERE to_tsvector('simple', t.%2$s) @@ q
+            ORDER BY rank DESC, t.id
+            LIMIT :limit OFFSET :offset
+            """;
+
+    private final SessionFactory sessionFactory;
+
+    PostgresSearchBackend(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    @Override
+    public List<SearchHit> search(SearchTarget target, List<String> tokens, boolean lastIsPrefix, int offset, int limit) {
+        String sql = SQL.formatted(target.table(), target.column(), SearchService.SNIPPET_LENGTH);
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            return session.createNativeQuery(sql, Object[].class)
+                    .setParameter("query", toTsQuery(tokens, lastIsPrefix))
+                    .setParameter("limit", limit)
+                    .setParameter("offset", offset)
+                    .list()
+                    .stream()
+                    .map(row -> new SearchHit(target, ((Number) row[0]).longValue(), (String) row[1],
+                            ((Number) row[2]).doubleValue()))
+                    .toList();
+        }
+    }
+
+    @Override
+    public void reindex() {
+        //GIN-индексы PostgreSQL обновляются вместе с данными.
+    }
+
+    static String toTsQuery(List<String> tokens, boolean lastIsPrefix) {
+        String query = tokens.stream().collect(Collectors.joining(" & "));
+        return lastIsPrefix ? query + ":*" : query;
+    }
+}
@@ -0,0 +1,172 @@
+package sorokin.dev.service;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сервис для частого обновления {@link sorokin.dev.entity.Profile#getLastSeenTime()} ("студент был в сети").
+ * <p>
+ * Время последнего посещения меняется при каждом действии студента. Если на каждое действие загружать профиль,
+ * менять его и коммитить транзакцию, то при тысячах действий в секунду это тысячи транзакций.
+ * <p>
+ * Поэтому {@link #touch(Long)} ничего не пишет в БД, а только запоминает в памяти самое позднее время для профиля.
+ * Повторные вызовы для одного профиля схлопываются в одну запись. Фоновый поток раз в
+ * profile.last-seen.flush-interval-ms миллисекунд записывает накопленные значения одним JDBC batch:
+ * <pre>
+ * UPDATE profiles SET last_seen_time = ? WHERE id = ? AND (last_seen_time IS NULL OR last_seen_time &lt; ?)
+ * </pre>
+ * Цена - в БД время может отставать от реального на интервал записи. Условие в WHERE не дает записать
+ * более старое время поверх более нового.
+ */
+@Service
+public class ProfileLastSeenService implements DisposableBean {
+
+    private static final System.Logger log = System.getLogger(ProfileLastSeenService.class.getName());
+
+    private static final String UPDATE_SQL = """
+            UPDATE profiles SET last_seen_time = ?
+            WHERE id = ? AND (last_seen_time IS NULL OR last_seen_time < ?)
+            """;
+
+    private final SessionFactory sessionFactory;
+    private final Map<Long, LocalDateTime> pending = new ConcurrentHashMap<>();
+    /**
+     * Сколько UPDATE отправляем в БД одной пачкой (executeBatch) - hibernate.jdbc.batch_size.
+     */
+    private final int jdbcBatchSize;
+    private final ScheduledExecutorService flusher;
+
+    public ProfileLastSeenService(
+            SessionFactory sessionFactory,
+            @Value("${profile.last-seen.flush-interval-ms:500}") long flushIntervalMs
+    ) {
+        this.sessionFactory = sessionFactory;
+        this.jdbcBatchSize = Math.max(1, sessionFactory.unwrap(SessionFactoryImplementor.class)
+                .getSessionFactoryOptions().getJdbcBatchSize());
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "profile-last-seen-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Отмечает, что студент с этим профилем сейчас в сети.
+     *
+     * @param profileId id профиля (он же id студента)
+     */
+    public void touch(Long profileId) {
+        touch(profileId, LocalDateTime.now());
+    }
+
+    /**
+     * Запоминает время посещения. В БД оно попадет при следующей записи, если оно позже уже сохраненного.
+     *
+     * @param profileId id профиля (он же id студента)
+     * @param seenAt    время посещения
+     */
+    public void touch(Long profileId, LocalDateTime seenAt) {
+        pending.merge(profileId, seenAt, (current, next) -> next.isAfter(current) ? next : current);
+    }
+
+    /**
+     * @return сколько профилей ждут записи в БД
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Записывает в БД все накопленные значения. Вызывается фоновым потоком, но можно вызвать и вручную.
+     *
+     * @return сколько строк в profiles было обновлено
+     */
+    public int flush() {
+        List<Map.Entry<Long, LocalDateTime>> batch = drainPending();
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        //сессия закроется при выходе из try при любом исходе, транзакцию откатываем до ее закрытия
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            Transaction transaction = session.beginTransaction();
+            try {
+                int updated = executeBatchUpdate(session, batch);
+                transaction.commit();
+                return updated;
+            } catch (RuntimeException e) {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+                throw e;
+            }
+        } catch (RuntimeException e) {
+            //Не потеряем значения: вернем их обратно, следующая запись попробует еще раз.
+            batch.forEach(entry -> touch(entry.getKey(), entry.getValue()));
+            throw e;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        flusher.shutdown();
+        flushQuietly();
+    }
+
+    private List<Map.Entry<Long, LocalDateTime>> drainPending() {
+        List<Map.Entry<Long, LocalDateTime>> batch = new ArrayList<>(pending.size());
+        for (Long profileId : pending.keySet()) {
+            //remove атомарно забирает значение: touch после этого создаст новую запись для следующей записи в БД.
+            LocalDateTime seenAt = pending.remove(profileId);
+            if (seenAt != null) {
+                batch.add(Map.entry(profileId, seenAt));
+            }
+        }
+        return batch;
+    }
+
+    private int executeBatchUpdate(StatelessSession session, List<Map.Entry<Long, LocalDateTime>> batch) {
+        return session.doReturningWork(connection -> {
+            int updated = 0;
+            try (PreparedStatement statement = connection.prepareStatement(UPDATE_SQL)) {
+                for (int i = 0; i < batch.size(); i++) {
+                    Timestamp seenAt = Timestamp.valueOf(batch.get(i).getValue());
+                    statement.setTimestamp(1, seenAt);
+                    statement.setLong(2, batch.get(i).getKey());
+                    statement.setTimestamp(3, seenAt);
+                    statement.addBatch();
+                    if ((i + 1) % jdbcBatchSize == 0 || i == batch.size() - 1) {
+                        for (int count : statement.executeBatch()) {
+                            updated += Math.max(count, 0);
+                        }
+                    }
+                }
+            }
+            return updated;
+        });
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.log(System.Logger.Level.WARNING, "Failed to flush profile last seen times, will retry", e);
+        }
+    }
+}
@@ -4,8 +4,13 @@ import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.springframework.stereotype.Service;
 import sorokin.dev.entity.Profile;
+import sorokin.dev.entity.Student;
+import sorokin.dev.utils.MultiLoadHelper;
 import sorokin.dev.utils.TransactionHelper;
 
+import java.util.Collection;
+import java.util.List;
+
 /**
  * Сервис для работы с профилями.
  */
@@ -22,8 +27,19 @@ public class ProfileService {
         this.transactionHelper = transactionHelper;
     }
 
+    /**
+     * Сохраняет профиль студента. id профиля берется из студента (общий первичный ключ, см. {@link Profile}).
+     *
+     * @param profile профиль, у которого задан сохраненный студент
+     * @return сохраненный профиль
+     */
     public Profile saveProfile(Profile profile) {
+        if (profile.getStudent() == null || profile.getStudent().getId() == null) {
+            throw new IllegalArgumentException("Profile must belong to a saved student");
+        }
         return transactionHelper.executeInTransaction(session -> {
+            //id профиля берется из студента (@MapsId): студент должен быть в этой сессии, а не detached
+            profile.setStudent(session.getReference(Student.class, profile.getStudent().getId()));
             session.persist(profile);
             return profile;
         });
@@ -34,16 +50,35 @@ public class ProfileService {
      * <p>
      * Поиск можно проводить без транзакции, т.к. он не изменяет данные, этот метод для чтения.
      * <p>
+     * Ленивое поле bio подгружаем сразу, пока сессия открыта: профиль запрашивают по одному,
+     * и вызывающему коду bio нужно после закрытия сессии.
      *
-     * @param id - id профиля
+     * @param id - id профиля (он же id студента)
      * @return профиль
      */
     public Profile getProfileById(Long id) {
         try (Session session = sessionFactory.openSession()) {
             if (id != null) {
-                return session.get(Profile.class, id);
+                Profile profile = session.get(Profile.class, id);
+                if (profile != null) {
+                    profile.getBio();
+                }
+                return profile;
             }
         }
         return null;
     }
+
+    /**
+     * Возвращает профили по списку id одной сессией, пачками по {@link MultiLoadHelper#BATCH_SIZE}.
+     * id профиля равен id студента, поэтому так же загружаются профили списка студентов.
+     *
+     * @param ids - id профилей (они же id студентов)
+     * @return найденные профили в порядке входного списка id
+     */
+    public List<Profile> findAllByIds(Collection<Long> ids) {
+        try (Session session = sessionFactory.openSession()) {
+            return MultiLoadHelper.findAllByIds(session, Profile.class, ids);
+        }
+    }
 }
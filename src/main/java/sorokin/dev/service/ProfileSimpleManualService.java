@@ -2,6 +2,7 @@ package sorokin.dev.service;
 
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
 import org.springframework.stereotype.Service;
 import sorokin.dev.entity.Profile;
 import sorokin.dev.entity.Student;
@@ -25,34 +26,55 @@ public class ProfileSimpleManualService {
      * @return сохраненный профиль
      */
     public Profile saveProfile(Profile profile) {
-        Session session = sessionFactory.openSession();
-        if (profile != null) {
-            session.beginTransaction();
-            session.persist(profile);
-            session.getTransaction().commit();
+        if (profile == null) {
+            return null;
+        }
+        if (profile.getStudent() == null || profile.getStudent().getId() == null) {
+            throw new IllegalArgumentException("Profile must belong to a saved student");
+        }
+        //сессия закроется при выходе из try при любом исходе, транзакцию откатываем до ее закрытия
+        try (Session session = sessionFactory.openSession()) {
+            Transaction transaction = session.beginTransaction();
+            try {
+                //id профиля берется из студента (@MapsId): студент должен быть в этой сессии, а не detached
+                profile.setStudent(session.getReference(Student.class, profile.getStudent().getId()));
+                session.persist(profile);
+                transaction.commit();
+                return profile;
+            } catch (Exception e) {
+                rollback(transaction);
+                throw e;
+            }
         }
-        session.close();
-        return profile;
     }
 
     /**
      * Возвращает профиль по id.
      * <p>
      * Поиск можно проводить без транзакции.
+     * Ленивое поле bio подгружаем сразу, пока сессия открыта.
      *
      * @param id - id профиля
      * @return профиль
      */
     public Profile getProfileById(Long id) {
-        Session session = sessionFactory.openSession();
-        Profile profileById = null;
-        if (id != null) {
-            session.beginTransaction();
-            profileById = session.get(Profile.class, id);
-            session.getTransaction().commit();
+        if (id == null) {
+            return null;
+        }
+        try (Session session = sessionFactory.openSession()) {
+            Transaction transaction = session.beginTransaction();
+            try {
+                Profile profileById = session.get(Profile.class, id);
+                if (profileById != null) {
+                    profileById.getBio();
+                }
+                transaction.commit();
+                return profileById;
+            } catch (Exception e) {
+                rollback(transaction);
+                throw e;
+            }
         }
-        session.close();
-        return profileById;
     }
 
     /**
@@ -61,15 +83,30 @@ public class ProfileSimpleManualService {
      * @param id - id профиля
      */
     public void deleteProfileById(Long id) {
-        Session session = sessionFactory.openSession();
-        if (id != null) {
-            session.beginTransaction();
-            Profile profileById = session.get(Profile.class, id);
-            if (profileById != null) {
-                session.remove(profileById);   // Удаляем объект из БД.
+        if (id == null) {
+            return;
+        }
+        try (Session session = sessionFactory.openSession()) {
+            Transaction transaction = session.beginTransaction();
+            try {
+                Profile profileById = session.get(Profile.class, id);
+                if (profileById != null) {
+                    session.remove(profileById);   // Удаляем объект из БД.
+                }
+                transaction.commit();
+            } catch (Exception e) {
+                rollback(transaction);
+                throw e;
             }
-            session.getTransaction().commit();
         }
-        session.close();
+    }
+
+    /**
+     * Откатывает транзакцию, если она еще не завершена (commit мог упасть сам - тогда откатывать нечего).
+     */
+    private static void rollback(Transaction transaction) {
+        if (transaction.isActive()) {
+            transaction.rollback();
+        }
     }
 }
@@ -0,0 +1,19 @@
+package sorokin.dev.service;
+
+import java.time.LocalDateTime;
+
+/**
+ * Студент в составе группы из {@link RosterSummaryService}.
+ *
+ * @param id           id студента
+ * @param name         имя
+ * @param age          возраст
+ * @param lastSeenTime когда студент был в сети (из профиля), null - нет профиля или не был
+ */
+public record RosterStudent(
+        Long id,
+        String name,
+        Integer age,
+        LocalDateTime lastSeenTime
+) {
+}
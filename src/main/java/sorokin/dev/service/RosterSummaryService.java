@@ -0,0 +1,246 @@
+package sorokin.dev.service;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import sorokin.dev.entity.Course;
+import sorokin.dev.entity.Student;
+import sorokin.dev.events.EntityChangeBatch;
+import sorokin.dev.events.EntityChangeStream;
+import sorokin.dev.events.EntityChangeSubscriber;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Сводные данные по группам (состав) и курсам (сколько записано студентов).
+ * <p>
+ * {@link GroupService#findAll()} при каждом вызове заново соединяет группы, студентов и профили, хотя состав
+ * групп меняется несколько раз в день. Здесь этот join выполняется только при перестройке сводных таблиц
+ * group_roster_summary и course_enrollment_summary (миграция V5), а чтение - один запрос по одной таблице.
+ * <p>
+ * Когда перестраиваем:
+ * <ul>
+ *     <li>изменился студент или курс: сервис подписан на {@link EntityChangeStream} и помечает сводку
+ *     устаревшей, фоновый поток перестраивает ее при следующей проверке (check-interval-ms);</li>
+ *     <li>изменения, которые не попадают в поток (группы, профили, запись на курс через SQL), учитываются
+ *     по времени: сводка никогда не старше max-staleness-ms. Если фоновый поток не успел, чтение само
+ *     перестроит ее перед запросом.</li>
+ * </ul>
+ * Перестройка - DELETE и INSERT ... SELECT в одной транзакции: читатели до коммита видят старые данные целиком.
+ * Строка summary_refresh блокируется на время перестройки, поэтому несколько экземпляров приложения не
+ * перестраивают сводку одновременно.
+ */
+@Service
+public class RosterSummaryService implements DisposableBean {
+
+    private static final System.Logger log = System.getLogger(RosterSummaryService.class.getName());
+
+    private static final String REFRESH_NAME = "rosters";
+
+    private static final String REFRESH_GROUP_ROSTERS = """
+            INSERT INTO group_roster_summary
+                (group_id, group_number, grad_year, student_id, student_name, student_age, profile_last_seen_time)
+            SELECT g.id, g.number, g.grad_year, s.id, s.name, s.student_age, p.last_seen_time
+            FROM student_group g
+            LEFT JOIN students s ON s.group_id = g.id
+            LEFT JOIN profiles p ON p.id = s.id
+            """;
+
+    private static final String REFRESH_COURSE_ENROLLMENTS = """
+            INSERT INTO course_enrollment_summary (course_id, course_name, course_type, student_count)
+            SELECT c.id, c.name, c.type, count(sc.student_id)
+            FROM courses c
+            LEFT JOIN student_courses sc ON sc.course_id = c.id
+            GROUP BY c.id, c.name, c.type
+            """;
+
+    private final SessionFactory sessionFactory;
+    private final EntityChangeStream entityChangeStream;
+    private final Duration maxStaleness;
+    private final AtomicBoolean dirty = new AtomicBoolean(true);
+    private final EntityChangeSubscriber changeSubscriber = this::onChanges;
+    private final ScheduledExecutorService refresher;
+    private volatile LocalDateTime refreshedAt = LocalDateTime.MIN;
+
+    public RosterSummaryService(
+            SessionFactory sessionFactory,
+            EntityChangeStream entityChangeStream,
+            @Value("${summary.rosters.max-staleness-ms:300000}") long maxStalenessMs,
+            @Value("${summary.rosters.check-interval-ms:1000}") long checkIntervalMs
+    ) {
+        this.sessionFactory = sessionFactory;
+        this.entityChangeStream = entityChangeStream;
+        this.maxStaleness = Duration.ofMillis(maxStalenessMs);
+        entityChangeStream.subscribe(changeSubscriber);
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "roster-summary-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(this::refreshIfNeededQuietly, 0, checkIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Все группы с составом, по номеру группы. Один запрос к group_roster_summary.
+     *
+     * @return группы со студентами
+     */
+    public List<GroupRosterSummary> getGroupRosters() {
+        ensureFresh();
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            List<Object[]> rows = session.createNativeQuery("""
+                            SELECT group_id, group_number, grad_year, student_id, student_name, student_age,
+                                   profile_last_seen_time
+                            FROM group_roster_summary
+                            ORDER BY group_number, group_id, student_name, student_id
+                            """, Object[].class)
+                    .list();
+            Map<Long, GroupRosterSummary> groups = new LinkedHashMap<>();
+            for (Object[] row : rows) {
+                GroupRosterSummary group = groups.computeIfAbsent(toLong(row[0]), id ->
+                        new GroupRosterSummary(id, (String) row[1], toLong(row[2]), new ArrayList<>()));
+                if (row[3] != null) {
+                    group.students().add(new RosterStudent(toLong(row[3]), (String) row[4],
+                            row[5] == null ? null : ((Number) row[5]).intValue(), toLocalDateTime(row[6])));
+                }
+            }
+            return groups.values().stream()
+                    .map(group -> new GroupRosterSummary(group.groupId(), group.number(), group.graduationYear(),
+                            List.copyOf(group.students())))
+                    .toList();
+        }
+    }
+
+    /**
+     * Все курсы с количеством записанных студентов, по названию. Один запрос к course_enrollment_summary.
+     *
+     * @return курсы
+     */
+    public List<CourseEnrollmentSummary> getCourseEnrollments() {
+        ensureFresh();
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            return session.createNativeQuery("""
+                            SELECT course_id, course_name, course_type, student_count
+                            FROM course_enrollment_summary
+                            ORDER BY course_name, course_id
+                            """, Object[].class)
+                    .list()
+                    .stream()
+                    .map(row -> new CourseEnrollmentSummary(toLong(row[0]), (String) row[1], (String) row[2],
+                            ((Number) row[3]).longValue()))
+                    .toList();
+        }
+    }
+
+    /**
+     * @return когда сводные таблицы перестраивались этим экземпляром приложения
+     */
+    public LocalDateTime getRefreshedAt() {
+        return refreshedAt;
+    }
+
+    /**
+     * Помечает сводку устаревшей: она перестроится при следующей проверке. Для изменений,
+     * которые не попадают в {@link EntityChangeStream}.
+     */
+    public void markDirty() {
+        dirty.set(true);
+    }
+
+    /**
+     * Перестраивает сводные таблицы сейчас.
+     */
+    public synchronized void refreshNow() {
+        //сбрасываем флаг до чтения данных: изменение во время перестройки снова его поставит
+        dirty.set(false);
+        LocalDateTime startedAt = LocalDateTime.now();
+        //сессия закроется при выходе из try при любом исходе, транзакцию откатываем до ее закрытия
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            Transaction transaction = session.beginTransaction();
+            try {
+                session.createNativeQuery("SELECT refreshed_at FROM summary_refresh WHERE name = :name FOR UPDATE",
+                                Object.class)
+                        .setParameter("name", REFRESH_NAME)
+                        .getSingleResult();
+                session.createNativeMutationQuery("DELETE FROM group_roster_summary").executeUpdate();
+                session.createNativeMutationQuery(REFRESH_GROUP_ROSTERS).executeUpdate();
+                session.createNativeMutationQuery("DELETE FROM course_enrollment_summary").executeUpdate();
+                session.createNativeMutationQuery(REFRESH_COURSE_ENROLLMENTS).executeUpdate();
+                session.createNativeMutationQuery(
+                                "UPDATE summary_refresh SET refreshed_at = :refreshedAt WHERE name = :name")
+                        .setParameter("refreshedAt", startedAt)
+                        .setParameter("name", REFRESH_NAME)
+                        .executeUpdate();
+                transaction.commit();
+                refreshedAt = startedAt;
+            } catch (RuntimeException e) {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+                throw e;
+            }
+        } catch (RuntimeException e) {
+            dirty.set(true);
+            throw e;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        entityChangeStream.unsubscribe(changeSubscriber);
+        refresher.shutdownNow();
+    }
+
+    private void onChanges(EntityChangeBatch batch) {
+        boolean affectsSummaries = batch.events().stream()
+                .anyMatch(event -> event.entityClass() == Student.class || event.entityClass() == Course.class);
+        if (affectsSummaries) {
+            dirty.set(true);
+        }
+    }
+
+    private boolean isStale() {
+        return dirty.get() || refreshedAt.plus(maxStaleness).isBefore(LocalDateTime.now());
+    }
+
+    private void ensureFresh() {
+        //только граница устаревания: пометку dirty обработает фоновый поток
+        if (refreshedAt.plus(maxStaleness).isBefore(LocalDateTime.now())) {
+            refreshNow();
+        }
+    }
+
+    private void refreshIfNeededQuietly() {
+        try {
+            if (isStale()) {
+                refreshNow();
+            }
+        } catch (RuntimeException e) {
+            log.log(System.Logger.Level.WARNING, "Failed to refresh roster summaries, will retry", e);
+        }
+    }
+
+    private static Long toLong(Object value) {
+        return value == null ? null : ((Number) value).longValue();
+    }
+
+    private static LocalDateTime toLocalDateTime(Object value) {
+        if (value instanceof Timestamp timestamp) {
+            return timestamp.toLocalDateTime();
+        }
+        return (LocalDateTime) value;
+    }
+}
@@ -0,0 +1,26 @@
+package sorokin.dev.service;
+
+import java.util.List;
+
+/**
+ * Реализация поиска для конкретной БД. Выбирается в {@link SearchService} по диалекту Hibernate.
+ */
+interface SearchBackend {
+
+    /**
+     * Ищет записи, в которых есть все слова запроса.
+     *
+     * @param target       где ищем
+     * @param tokens       слова запроса в нижнем регистре, только буквы и цифры
+     * @param lastIsPrefix последнее слово - начало слова (подсказки при вводе), остальные - целые слова
+     * @param offset       сколько записей пропустить
+     * @param limit        сколько записей вернуть
+     * @return найденные записи, от самых релевантных
+     */
+    List<SearchHit> search(SearchTarget target, List<String> tokens, boolean lastIsPrefix, int offset, int limit);
+
+    /**
+     * Сбрасывает построенные индексы, если они есть.
+     */
+    void reindex();
+}
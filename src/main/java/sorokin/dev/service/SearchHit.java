@@ -0,0 +1,17 @@
+package sorokin.dev.service;
+
+/**
+ * Одна найденная запись. Это проекция, а не сущность: поиск не загружает студентов, курсы и профили целиком.
+ *
+ * @param target где нашли
+ * @param id     id студента, курса или профиля
+ * @param text   найденный текст (имя, название или начало bio не длиннее {@link SearchService#SNIPPET_LENGTH})
+ * @param rank   релевантность, больше - лучше
+ */
+public record SearchHit(
+        SearchTarget target,
+        Long id,
+        String text,
+        double rank
+) {
+}
@@ -0,0 +1,22 @@
+package sorokin.dev.service;
+
+import java.util.List;
+
+/**
+ * Страница результатов поиска {@link SearchService}.
+ * <p>
+ * Общее количество найденного не считаем: на больших таблицах это отдельный дорогой запрос,
+ * а для подсказок при вводе и кнопки "дальше" достаточно знать, есть ли следующая страница.
+ *
+ * @param hits     найденные записи, от самых релевантных
+ * @param page     номер страницы, с 0
+ * @param pageSize размер страницы
+ * @param hasNext  есть ли следующая страница
+ */
+public record SearchPage(
+        List<SearchHit> hits,
+        int page,
+        int pageSize,
+        boolean hasNext
+) {
+}
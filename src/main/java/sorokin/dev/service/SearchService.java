@@ -0,0 +1,108 @@
+package sorokin.dev.service;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Поиск студентов и курсов по имени/названию и профилей по bio.
+ * <p>
+ * Раньше искать можно было только точным совпадением HQL (WHERE s.name = :name), а это не подходит для подсказок
+ * при вводе: "ива" должно находить "Иван Петров". Два режима:
+ * <ul>
+ *     <li>{@link #searchByPrefix} - подсказки при вводе: все слова запроса целые, последнее - начало слова;</li>
+ *     <li>{@link #searchFullText} - полнотекстовый поиск: все слова запроса целые.</li>
+ * </ul>
+ * Результат - проекции {@link SearchHit} (id, текст, релевантность) постранично, от самых релевантных.
+ * <p>
+ * Как ищем, зависит от БД:
+ * <ul>
+ *     <li>PostgreSQL - запрос по GIN-индексу tsvector, см. {@link PostgresSearchBackend};</li>
+ *     <li>остальные (H2 в тестах) - обратный индекс в памяти, см. {@link InMemorySearchBackend}.</li>
+ * </ul>
+ */
+@Service
+public class SearchService {
+
+    /**
+     * Максимальная длина текста в {@link SearchHit}: bio может быть большим, в результатах поиска хватит начала.
+     */
+    public static final int SNIPPET_LENGTH = 200;
+
+    public static final int MAX_PAGE_SIZE = 100;
+
+    private final SearchBackend backend;
+
+    public SearchService(SessionFactory sessionFactory) {
+        var dialect = sessionFactory.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect();
+        this.backend = dialect instanceof PostgreSQLDialect
+                ? new PostgresSearchBackend(sessionFactory)
+                : new InMemorySearchBackend(sessionFactory);
+    }
+
+    /**
+     * Поиск для подсказок при вводе: "иван пе" найдет "Иван Петров".
+     *
+     * @param target   где ищем
+     * @param text     введенный текст
+     * @param page     номер страницы, с 0
+     * @param pageSize размер страницы, не больше {@link #MAX_PAGE_SIZE}
+     * @return страница результатов
+     */
+    public SearchPage searchByPrefix(SearchTarget target, String text, int page, int pageSize) {
+        return search(target, text, true, page, pageSize);
+    }
+
+    /**
+     * Полнотекстовый поиск: находит записи, в которых есть все слова запроса целиком.
+     *
+     * @param target   где ищем
+     * @param text     текст запроса
+     * @param page     номер страницы, с 0
+     * @param pageSize размер страницы, не больше {@link #MAX_PAGE_SIZE}
+     * @return страница результатов
+     */
+    public SearchPage searchFullText(SearchTarget target, String text, int page, int pageSize) {
+        return search(target, text, false, page, pageSize);
+    }
+
+    /**
+     * Перестраивает индекс в памяти (только для H2). В PostgreSQL индексы обновляются вместе с данными.
+     */
+    public void reindex() {
+        backend.reindex();
+    }
+
+    private SearchPage search(SearchTarget target, String text, boolean prefix, int page, int pageSize) {
+        if (page < 0 || pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException(
+                    "Invalid page: page=%s, pageSize=%s, max pageSize=%s".formatted(page, pageSize, MAX_PAGE_SIZE));
+        }
+        List<String> tokens = tokenize(text);
+        if (tokens.isEmpty()) {
+            return new SearchPage(List.of(), page, pageSize, false);
+        }
+        //берем на одну запись больше, чтобы узнать, есть ли следующая страница, без подсчета общего количества
+        List<SearchHit> hits = backend.search(target, tokens, prefix, page * pageSize, pageSize + 1);
+        boolean hasNext = hits.size() > pageSize;
+        return new SearchPage(hasNext ? hits.subList(0, pageSize) : hits, page, pageSize, hasNext);
+    }
+
+    /**
+     * Разбивает текст на слова в нижнем регистре. Все, кроме букв и цифр, - разделители,
+     * как в конфигурации 'simple' полнотекстового поиска PostgreSQL.
+     */
+    static List<String> tokenize(String text) {
+        if (text == null) {
+            return List.of();
+        }
+        return Arrays.stream(text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+"))
+                .filter(token -> !token.isEmpty())
+                .toList();
+    }
+}
@@ -0,0 +1,35 @@
+package sorokin.dev.service;
+
+/**
+ * По чему ищет {@link SearchService}: какая таблица и какая текстовая колонка.
+ * <p>
+ * textQuery - HQL-проекция (id, текст) для построения индекса в памяти на H2.
+ */
+public enum SearchTarget {
+
+    STUDENT("students", "name", "SELECT s.id, s.name FROM Student s"),
+    COURSE("courses", "name", "SELECT c.id, c.name FROM Course c"),
+    PROFILE("profiles", "bio", "SELECT p.id, p.bio FROM Profile p");
+
+    private final String table;
+    private final String column;
+    private final String textQuery;
+
+    SearchTarget(String table, String column, String textQuery) {
+        this.table = table;
+        this.column = column;
+        this.textQuery = textQuery;
+    }
+
+    String table() {
+        return table;
+    }
+
+    String column() {
+        return column;
+    }
+
+    String textQuery() {
+        return textQuery;
+    }
+}
@@ -0,0 +1,26 @@
+package sorokin.dev.service;
+
+/**
+ * Изменения студента для {@link StudentService#patchStudent(Long, long, StudentPatch)}: только те поля,
+ * которые нужно поменять. null - поле не меняется.
+ *
+ * @param name новое имя
+ * @param age  новый возраст
+ */
+public record StudentPatch(
+        String name,
+        Integer age
+) {
+
+    public static StudentPatch name(String name) {
+        return new StudentPatch(name, null);
+    }
+
+    public static StudentPatch age(Integer age) {
+        return new StudentPatch(null, age);
+    }
+
+    public boolean isEmpty() {
+        return name == null && age == null;
+    }
+}
@@ -2,10 +2,15 @@ package sorokin.dev.service;
 
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StaleObjectStateException;
+import org.hibernate.query.MutationQuery;
 import org.springframework.stereotype.Service;
 import sorokin.dev.entity.Student;
+import sorokin.dev.query.QueryCatalog;
+import sorokin.dev.utils.MultiLoadHelper;
 import sorokin.dev.utils.TransactionHelper;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -16,12 +21,15 @@ public class StudentService {
 
     private final SessionFactory sessionFactory;
     private final TransactionHelper transactionHelper;
+    private final EntitySnapshotCaches caches;
 
     public StudentService(SessionFactory sessionFactory,
-                          TransactionHelper transactionHelper
+                          TransactionHelper transactionHelper,
+                          EntitySnapshotCaches caches
     ) {
         this.sessionFactory = sessionFactory;
         this.transactionHelper = transactionHelper;
+        this.caches = caches;
     }
 
     /**
@@ -46,6 +54,7 @@ public class StudentService {
             Student studentForDelete = session.get(Student.class, id);
             session.remove(studentForDelete);
         });
+        caches.students().invalidate(id);
     }
 
     /**
@@ -53,22 +62,49 @@ public class StudentService {
      * @param id - id студента
      * @return студент
      * Этот метод может работать без транзакции, т.к. он не изменяет данные, этот метод для чтения.
+     * <p>
+     * Студент читается из кэша {@link EntitySnapshotCaches#students()}, в БД идем только при промахе.
+     * Возвращается всегда новый объект из снимка: с группой и курсами, но без обратных ссылок и без профиля
+     * (см. {@link StudentSnapshotCodec}), и при попадании в кэш, и при промахе. Профиль - {@link ProfileService}.
      */
     public Student getStudentById(Long id) {
+        if (id == null) {
+            throw new IllegalArgumentException("Student id must not be null");
+        }
+        return caches.students().get(id, this::loadStudent);
+    }
+
+    private Student loadStudent(long id) {
         try (Session session = sessionFactory.openSession()) {
             return session.get(Student.class, id);
         }
     }
 
+    /**
+     * Возвращает студентов по списку id.
+     * Вместо вызова {@link #getStudentById(Long)} в цикле (одна сессия и один запрос на каждый id)
+     * загружает всех студентов в одной сессии пачками по {@link MultiLoadHelper#BATCH_SIZE}.
+     * @param ids - id студентов
+     * @return найденные студенты в порядке входного списка id
+     */
+    public List<Student> findAllByIds(Collection<Long> ids) {
+        try (Session session = sessionFactory.openSession()) {
+            return MultiLoadHelper.findAllByIds(session, Student.class, ids);
+        }
+    }
+
     /**
      * Возвращает всех студентов.
      * @return список студентов.
      * Этот метод может работать без транзакции, т.к. он не изменяет данные, этот метод для чтения.
+     * <p>
+     * Профили не загружаются (связь ленивая): один запрос на список вместо запроса на каждого студента.
+     * Профили нужных студентов - {@link ProfileService#findAllByIds(Collection)} по id студентов.
      */
     public List<Student> findAllStudents() {
         try (Session session = sessionFactory.openSession()) {
             return session
-                    .createQuery("SELECT s FROM Student s", Student.class)
+                    .createNamedQuery(QueryCatalog.STUDENT_FIND_ALL, Student.class)
                     .list();
         }
     }
@@ -77,10 +113,63 @@ public class StudentService {
      * Обновляет студента.
      * @param student студент
      * @return обновленный студент
+     * merge сначала загружает студента из БД (SELECT вместе с EAGER курсами), копирует в него все поля
+     * и только потом делает UPDATE. Если нужно поменять одно-два поля - {@link #patchStudent}.
      */
     public Student updateStudent(Student student) {
-        return transactionHelper.executeInTransaction(session -> {
+        Student updated = transactionHelper.executeInTransaction(session -> {
             return session.merge(student);
         });
+        caches.students().invalidate(updated.getId());
+        return updated;
+    }
+
+    /**
+     * Меняет у студента только поля из patch, без загрузки студента: один запрос
+     * <pre>
+     * update students set name = ?, version = version + 1 where id = ? and version = ?
+     * </pre>
+     * вместо SELECT + UPDATE всех колонок у {@link #updateStudent(Student)}. Версия - та, которую видел клиент
+     * (например, {@link Student#getVersion()} из {@link #getStudentById(Long)}): если студента успели изменить
+     * после этого, строка не найдется, и чужие изменения не будут перезаписаны.
+     * <p>
+     * Это HQL UPDATE, поэтому изменение не попадает в {@link sorokin.dev.events.EntityChangeStream} (сводки
+     * {@link RosterSummaryService} увидят его не позже max-staleness), а кэш студентов сбрасывается здесь же.
+     *
+     * @param id      id студента
+     * @param version версия, которую видел клиент
+     * @param patch   поля, которые нужно поменять
+     * @return новая версия студента
+     * @throws StaleObjectStateException студента нет или его версия уже другая
+     */
+    public long patchStudent(Long id, long version, StudentPatch patch) {
+        if (id == null) {
+            throw new IllegalArgumentException("Student id must not be null");
+        }
+        if (patch.isEmpty()) {
+            return version;
+        }
+        //у каждого набора полей свой запрос в каталоге: все варианты проверены при запуске
+        String queryName = patch.name() == null ? QueryCatalog.STUDENT_PATCH_AGE
+                : patch.age() == null ? QueryCatalog.STUDENT_PATCH_NAME
+                : QueryCatalog.STUDENT_PATCH_NAME_AND_AGE;
+
+        int updated = transactionHelper.executeInTransaction(session -> {
+            MutationQuery query = session.createNamedMutationQuery(queryName)
+                    .setParameter("id", id)
+                    .setParameter("version", version);
+            if (patch.name() != null) {
+                query.setParameter("name", patch.name());
+            }
+            if (patch.age() != null) {
+                query.setParameter("age", patch.age());
+            }
+            return query.executeUpdate();
+        });
+        if (updated == 0) {
+            throw new StaleObjectStateException(Student.class.getName(), id);
+        }
+        caches.students().invalidate(id);
+        return version + 1;
     }
 }
@@ -1,10 +1,12 @@
 package sorokin.dev.service;
 
+import org.hibernate.Hibernate;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.Transaction;
 import org.springframework.stereotype.Service;
 import sorokin.dev.entity.Student;
+import sorokin.dev.query.QueryCatalog;
 
 import java.util.List;
 
@@ -117,19 +119,25 @@ public class StudentSimpleManualService {
      * @return студент
      */
     public Student getStudentById(Long id) {
-        Session session = sessionFactory.openSession();
-        Student studentById = null;
-        if (id != null) {
-            session.beginTransaction();
-            studentById = session.get(Student.class, id);
-            session.getTransaction().commit();
+        if (id == null) {
+            return null;
+        }
+        //сессия закроется при выходе из try при любом исходе, транзакцию откатываем до ее закрытия
+        try (Session session = sessionFactory.openSession()) {
+            Transaction transaction = session.beginTransaction();
+            try {
+                Student studentById = session.get(Student.class, id);
+                if (studentById != null) {
+                    //профиль ленивый: загружаем, пока сессия открыта, вызывающий код обращается к нему после закрытия
+                    Hibernate.initialize(studentById.getProfile());
+                }
+                transaction.commit();
+                return studentById;
+            } catch (Exception e) {
+                rollback(transaction);
+                throw e;
+            }
         }
-        session.close();
-        return studentById;
-
-//        try (Session session = sessionFactory.openSession()) {
-//            return session.get(Student.class, id);
-//        }
     }
 
     /**
@@ -138,16 +146,11 @@ public class StudentSimpleManualService {
      * @return список студентов.
      */
     public List<Student> findAll() {
-        Session session = sessionFactory.openSession();
-        List<Student> students = session.createQuery("SELECT s FROM Student s", Student.class)
-                .list();
-        session.close();
-        return students;
-//        try (Session session = sessionFactory.openSession()) {
-//            return session
-//                    .createQuery("SELECT s FROM Student s", Student.class)
-//                    .list();
-//        }
+        //без транзакции: откатывать нечего, try-with-resources закроет сессию и при исключении
+        try (Session session = sessionFactory.openSession()) {
+            return session.createNamedQuery(QueryCatalog.STUDENT_FIND_ALL, Student.class)
+                    .list();
+        }
     }
 
     /**
@@ -157,13 +160,28 @@ public class StudentSimpleManualService {
      * @return обновленный студент
      */
     public Student updateStudent(Student student) {
-        Session session = sessionFactory.openSession();
-        if (student != null) {
-            session.beginTransaction();
-            student = session.merge(student);
-            session.getTransaction().commit();
+        if (student == null) {
+            return null;
+        }
+        try (Session session = sessionFactory.openSession()) {
+            Transaction transaction = session.beginTransaction();
+            try {
+                Student merged = session.merge(student);
+                transaction.commit();
+                return merged;
+            } catch (Exception e) {
+                rollback(transaction);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Откатывает транзакцию, если она еще не завершена (commit мог упасть сам - тогда откатывать нечего).
+     */
+    private static void rollback(Transaction transaction) {
+        if (transaction.isActive()) {
+            transaction.rollback();
         }
-        session.close();
-        return student;
     }
 }
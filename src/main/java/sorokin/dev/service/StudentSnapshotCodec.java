@@ -0,0 +1,110 @@
+package sorokin.dev.service;
+
+import sorokin.dev.entity.Course;
+import sorokin.dev.entity.Group;
+import sorokin.dev.entity.Student;
+import sorokin.dev.utils.SnapshotCodec;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Снимок студента: сам студент, его группа и курсы.
+ * <p>
+ * Обратные ссылки в снимок не входят: у группы пустой studentList, у курсов studentList = null.
+ * Профиля в снимке нет (profile = null): last seen меняется постоянно ({@link ProfileLastSeenService}) и в обход
+ * кэша, а bio большое и ленивое. Профиль читается через {@link ProfileService}.
+ * <p>
+ * Что из кэша, что из БД {@link StudentService#getStudentById(Long)} возвращает объект из снимка
+ * ({@link sorokin.dev.utils.LongKeyedSnapshotCache#get}), поэтому форма объекта не зависит от того, был ли он в кэше.
+ */
+class StudentSnapshotCodec implements SnapshotCodec<Student> {
+
+    @Override
+    public byte[] encode(Student student) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(student.getId());
+            //версия нужна, чтобы изменения студента из кэша проверялись оптимистической блокировкой
+            out.writeBoolean(student.getVersion() != null);
+            if (student.getVersion() != null) {
+                out.writeLong(student.getVersion());
+            }
+            writeNullableString(out, student.getName());
+            out.writeBoolean(student.getAge() != null);
+            if (student.getAge() != null) {
+                out.writeInt(student.getAge());
+            }
+
+            Group group = student.getGroup();
+            out.writeBoolean(group != null);
+            if (group != null) {
+                out.writeLong(group.getId());
+                writeNullableString(out, group.getNumber());
+                out.writeBoolean(group.getGraduationYear() != null);
+                if (group.getGraduationYear() != null) {
+                    out.writeLong(group.getGraduationYear());
+                }
+            }
+
+            List<Course> courses = student.getCourseList();
+            out.writeInt(courses == null ? 0 : courses.size());
+            if (courses != null) {
+                for (Course course : courses) {
+                    out.writeLong(course.getId());
+                    writeNullableString(out, course.getName());
+                    writeNullableString(out, course.getType());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Student decode(byte[] snapshot) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot))) {
+            Student student = new Student();
+            student.setId(in.readLong());
+            student.setVersion(in.readBoolean() ? in.readLong() : null);
+            student.setName(readNullableString(in));
+            student.setAge(in.readBoolean() ? in.readInt() : null);
+
+            if (in.readBoolean()) {
+                Group group = new Group();
+                group.setId(in.readLong());
+                group.setNumber(readNullableString(in));
+                group.setGraduationYear(in.readBoolean() ? in.readLong() : null);
+                student.setGroup(group);
+            }
+
+            int courseCount = in.readInt();
+            List<Course> courses = new ArrayList<>(courseCount);
+            for (int i = 0; i < courseCount; i++) {
+                Course course = new Course();
+                course.setId(in.readLong());
+                course.setName(readNullableString(in));
+                course.setType(readNullableString(in));
+                courses.add(course);
+            }
+            student.setCourseList(courses);
+
+            return student;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeNullableString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
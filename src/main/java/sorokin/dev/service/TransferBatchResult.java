@@ -0,0 +1,19 @@
+package sorokin.dev.service;
+
+import java.util.List;
+
+/**
+ * Результат пакетного перевода {@link AccountService#transferBatch(List, boolean)}.
+ *
+ * @param appliedCount количество успешно выполненных команд
+ * @param failures     команды, которые не были выполнены, с причиной отказа
+ */
+public record TransferBatchResult(
+        int appliedCount,
+        List<TransferFailure> failures
+) {
+
+    public boolean isFullySuccessful() {
+        return failures.isEmpty();
+    }
+}
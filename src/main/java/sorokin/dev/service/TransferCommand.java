@@ -0,0 +1,16 @@
+package sorokin.dev.service;
+
+/**
+ * Команда на перевод денег с одного счета на другой.
+ * Используется в пакетном переводе {@link AccountService#transferBatch(java.util.List, boolean)}.
+ *
+ * @param fromAccountId id счета (Аккаунт) с которого переводим
+ * @param toAccountId   id счета (Аккаунт) на который переводим
+ * @param amount        количество денег для перевода
+ */
+public record TransferCommand(
+        Long fromAccountId,
+        Long toAccountId,
+        int amount
+) {
+}
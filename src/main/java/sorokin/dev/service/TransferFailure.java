@@ -0,0 +1,15 @@
+package sorokin.dev.service;
+
+/**
+ * Информация о команде перевода, которую не удалось выполнить в пакете.
+ *
+ * @param index   порядковый номер команды во входном списке
+ * @param command сама команда
+ * @param reason  причина отказа
+ */
+public record TransferFailure(
+        int index,
+        TransferCommand command,
+        String reason
+) {
+}
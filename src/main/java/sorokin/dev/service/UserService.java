@@ -5,6 +5,7 @@ import org.hibernate.SessionFactory;
 import org.hibernate.Transaction;
 import org.springframework.stereotype.Service;
 import sorokin.dev.entity.User;
+import sorokin.dev.query.QueryCatalog;
 import sorokin.dev.utils.TransactionHelper;
 
 import java.util.ArrayList;
@@ -51,7 +52,7 @@ public class UserService {
         // Используем transactionHelper с корректной реализацией работы с транзакцией
         return transactionHelper.executeInTransaction(() -> {
             Session session = sessionFactory.getCurrentSession();
-            var existedUser = session.createQuery("FROM User WHERE login=:login", User.class)
+            var existedUser = session.createNamedQuery(QueryCatalog.USER_FIND_BY_LOGIN, User.class)
                     .setParameter("login", login)
                     .getSingleResultOrNull();
             if (existedUser != null) {
@@ -91,7 +92,7 @@ public class UserService {
      */
     public List<User> getAllUsers() {
         try (Session session = sessionFactory.openSession()) {
-            return session.createQuery("SELECT u FROM User u LEFT JOIN FETCH u.accountList", User.class)
+            return session.createNamedQuery(QueryCatalog.USER_FIND_ALL_WITH_ACCOUNTS, User.class)
                     .list();
         }
     }
@@ -0,0 +1,63 @@
+package sorokin.dev.session;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+
+/**
+ * Обертка SessionFactory для {@link SessionLeakDetector}: все вызовы уходят в настоящую SessionFactory,
+ * каждая сессия, которую она открыла (openSession, openStatelessSession), ставится на учет.
+ * <p>
+ * Прокси реализует все публичные интерфейсы SessionFactory, поэтому и приведение к SessionFactoryImplementor,
+ * и unwrap работают как раньше. Не учитываются сессии, открытые через withOptions() или через unwrap(...),
+ * и getCurrentSession(): ее закрывает сам Hibernate при commit/rollback, а до начала транзакции обертка
+ * Hibernate вокруг нее не дает вызвать почти ни один метод.
+ */
+final class LeakTrackingSessionFactory implements InvocationHandler {
+
+    private final SessionFactory delegate;
+    private final String sessionFactoryName;
+    private final SessionLeakDetector detector;
+
+    private LeakTrackingSessionFactory(SessionFactory delegate, String sessionFactoryName,
+                                       SessionLeakDetector detector) {
+        this.delegate = delegate;
+        this.sessionFactoryName = sessionFactoryName;
+        this.detector = detector;
+    }
+
+    static SessionFactory wrap(SessionFactory delegate, String sessionFactoryName, SessionLeakDetector detector) {
+        Class<?>[] interfaces = Arrays.stream(ClassUtils.getAllInterfacesForClass(delegate.getClass()))
+                .filter(type -> Modifier.isPublic(type.getModifiers()))
+                .toArray(Class<?>[]::new);
+        return (SessionFactory) Proxy.newProxyInstance(delegate.getClass().getClassLoader(), interfaces,
+                new LeakTrackingSessionFactory(delegate, sessionFactoryName, detector));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class && method.getName().equals("equals")) {
+            return proxy == args[0];
+        }
+        if (method.getDeclaringClass() == Object.class && method.getName().equals("toString")) {
+            return "LeakTracking[" + delegate + "]";
+        }
+        Object result;
+        try {
+            result = method.invoke(delegate, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+        if (method.getName().startsWith("open") && result instanceof SharedSessionContractImplementor session) {
+            detector.track(sessionFactoryName, session);
+        }
+        return result;
+    }
+}
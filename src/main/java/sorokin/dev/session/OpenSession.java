@@ -0,0 +1,24 @@
+package sorokin.dev.session;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Открытая сессия, которую видит {@link SessionLeakDetector}.
+ *
+ * @param sessionFactoryName SessionFactory, которая открыла сессию
+ * @param thread             поток, который открыл сессию
+ * @param openedAt           когда сессия открыта
+ * @param openFor            сколько она открыта на момент снимка
+ * @param holdsConnection    сессия держит соединение из пула
+ * @param allocationSite     стек вызова, который открыл сессию; null - стек не записан (выборка)
+ */
+public record OpenSession(
+        String sessionFactoryName,
+        String thread,
+        Instant openedAt,
+        Duration openFor,
+        boolean holdsConnection,
+        Throwable allocationSite
+) {
+}
@@ -0,0 +1,98 @@
+package sorokin.dev.session;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Следит за размером persistence context (сколько сущностей управляет сессия).
+ * <p>
+ * Каждая загруженная или сохраненная сущность остается в сессии до ее закрытия или clear(): вместе со снимком
+ * состояния для dirty checking. Каждый flush обходит их все, поэтому в длинной сессии (пакетная обработка,
+ * сессия на несколько транзакций) каждый следующий flush медленнее предыдущего, а память растет.
+ * <ul>
+ *     <li>сессия переросла warn-threshold сущностей - предупреждение в лог (один раз за транзакцию);</li>
+ *     <li>в режиме пакетной обработки (свойство сессии {@link #BATCH_MODE}, в {@link sorokin.dev.utils.TransactionHelper}
+ *     - {@code TransactionOptions.inBatchMode()}) при batch-size сущностей перед очередным persist сессия
+ *     сбрасывается в БД (flush) и очищается (clear). Все сущности, сохраненные или загруженные до этого,
+ *     становятся detached: код пакета не должен их больше менять. Загрузка сессию не очищает - загружаемые
+ *     сущности еще используются; для чтения пакетами - StatelessSession или scroll (см. StreamingExportService);</li>
+ *     <li>после каждой транзакции - {@link PersistenceContextReport} с наибольшим размером сессии за транзакцию:
+ *     в лог (DEBUG) и слушателям {@link #addReportListener(Consumer)}.</li>
+ * </ul>
+ * Подключается к SessionFactory через {@link PersistenceContextGuardIntegrator}.
+ */
+public class PersistenceContextGuard {
+
+    /**
+     * Свойство сессии: true - режим пакетной обработки, сессия очищается автоматически.
+     */
+    public static final String BATCH_MODE = "sorokin.persistence_context.batch_mode";
+
+    private static final System.Logger log = System.getLogger(PersistenceContextGuard.class.getName());
+
+    private final int warnThreshold;
+    private final int batchSize;
+    private final List<Consumer<PersistenceContextReport>> listeners = new CopyOnWriteArrayList<>();
+    private final LongAdder transactions = new LongAdder();
+    private final AtomicInteger maxPeakEntities = new AtomicInteger();
+    private final LongAdder warnings = new LongAdder();
+    private final LongAdder autoClears = new LongAdder();
+
+    /**
+     * @param warnThreshold с какого числа сущностей в сессии предупреждать
+     * @param batchSize     при каком числе сущностей очищать сессию в режиме пакетной обработки
+     */
+    public PersistenceContextGuard(int warnThreshold, int batchSize) {
+        if (warnThreshold < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("Thresholds must be positive: warnThreshold=%s, batchSize=%s"
+                    .formatted(warnThreshold, batchSize));
+        }
+        this.warnThreshold = warnThreshold;
+        this.batchSize = batchSize;
+    }
+
+    public void addReportListener(Consumer<PersistenceContextReport> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeReportListener(Consumer<PersistenceContextReport> listener) {
+        listeners.remove(listener);
+    }
+
+    public PersistenceContextGuardStats getStats() {
+        return new PersistenceContextGuardStats(transactions.sum(), maxPeakEntities.get(), warnings.sum(),
+                autoClears.sum());
+    }
+
+    int getWarnThreshold() {
+        return warnThreshold;
+    }
+
+    int getBatchSize() {
+        return batchSize;
+    }
+
+    void warn(String sessionFactoryName, int managedEntities) {
+        warnings.increment();
+        log.log(System.Logger.Level.WARNING, "Session of {0} manages {1} entities (warn threshold {2}): "
+                        + "flushes slow down with every entity; use batch mode, clear() or StatelessSession",
+                sessionFactoryName, managedEntities, warnThreshold);
+    }
+
+    void autoCleared() {
+        autoClears.increment();
+    }
+
+    void report(PersistenceContextReport report) {
+        transactions.increment();
+        maxPeakEntities.accumulateAndGet(report.peakManagedEntities(), Math::max);
+        log.log(System.Logger.Level.DEBUG, "Persistence context of {0}: peak {1} entities, {2} auto clears",
+                report.sessionFactoryName(), report.peakManagedEntities(), report.autoClears());
+        for (Consumer<PersistenceContextReport> listener : listeners) {
+            listener.accept(report);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package sorokin.dev.session;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.spi.BootstrapContext;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+
+/**
+ * Подключает {@link PersistenceContextGuardListener} к каждой SessionFactory при ее создании.
+ * Передается в {@link sorokin.dev.config.HibernateBootstrap}.
+ */
+public class PersistenceContextGuardIntegrator implements Integrator {
+
+    private final PersistenceContextGuard guard;
+
+    public PersistenceContextGuardIntegrator(PersistenceContextGuard guard) {
+        this.guard = guard;
+    }
+
+    @Override
+    public void integrate(Metadata metadata, BootstrapContext bootstrapContext, SessionFactoryImplementor sessionFactory) {
+        PersistenceContextGuardListener listener = new PersistenceContextGuardListener(guard,
+                sessionFactory.getName());
+        EventListenerRegistry registry = sessionFactory.getServiceRegistry().getService(EventListenerRegistry.class);
+        //до стандартного слушателя: очищать сессию можно, пока новая сущность в нее еще не попала
+        registry.prependListeners(EventType.PERSIST, listener);
+        registry.appendListeners(EventType.PERSIST, listener.afterPersist());
+        registry.appendListeners(EventType.POST_LOAD, listener);
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+    }
+}
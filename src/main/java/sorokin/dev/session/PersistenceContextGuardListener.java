@@ -0,0 +1,171 @@
+package sorokin.dev.session;
+
+import org.hibernate.SessionEventListener;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.PersistContext;
+import org.hibernate.event.spi.PersistEvent;
+import org.hibernate.event.spi.PersistEventListener;
+import org.hibernate.event.spi.PostLoadEvent;
+import org.hibernate.event.spi.PostLoadEventListener;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Слушатель событий Hibernate для {@link PersistenceContextGuard}: после каждой загрузки и перед каждым persist
+ * смотрит, сколько сущностей в сессии. В транзакции запоминает наибольшее значение и регистрирует в ActionQueue
+ * сессии замер перед коммитом (после последнего flush) и отчет после завершения транзакции.
+ * <p>
+ * Сам слушатель стоит перед стандартным слушателем persist - чтобы очистить сессию до того, как в нее попадет
+ * новая сущность; замер после persist делает {@link #afterPersist()}.
+ * <p>
+ * Сессия снимается с учета при close() ({@link SessionEventListener#end()}), а не после транзакции: сессию могут
+ * закрыть посреди транзакции, и тогда after completion уже не вызовется.
+ */
+class PersistenceContextGuardListener implements PersistEventListener, PostLoadEventListener {
+
+    private final PersistenceContextGuard guard;
+    private final String sessionFactoryName;
+    private final Map<SharedSessionContractImplementor, SessionState> sessions = new ConcurrentHashMap<>();
+
+    PersistenceContextGuardListener(PersistenceContextGuard guard, String sessionFactoryName) {
+        this.guard = guard;
+        this.sessionFactoryName = sessionFactoryName;
+    }
+
+    @Override
+    public void onPersist(PersistEvent event) {
+        EventSource session = event.getSession();
+        PersistenceContext persistenceContext = session.getPersistenceContextInternal();
+        //только persist, вызванный приложением: внутри каскада или flush очищать сессию нельзя
+        if (persistenceContext.getCascadeLevel() == 0 && !persistenceContext.isFlushing()
+                && persistenceContext.getNumberOfManagedEntities() >= guard.getBatchSize()
+                && Boolean.TRUE.equals(session.getProperties().get(PersistenceContextGuard.BATCH_MODE))) {
+            session.flush();
+            session.clear();
+            guard.autoCleared();
+            SessionState state = sessions.get(session);
+            if (state != null && state.transaction != null) {
+                state.transaction.autoClears++;
+            }
+        }
+    }
+
+    @Override
+    public void onPersist(PersistEvent event, PersistContext createdAlready) {
+        onPersist(event);
+    }
+
+    /**
+     * @return слушатель persist, который ставится после стандартного: замер с только что сохраненной сущностью
+     */
+    PersistEventListener afterPersist() {
+        return new AfterPersist();
+    }
+
+    @Override
+    public void onPostLoad(PostLoadEvent event) {
+        EventSource session = event.getSession();
+        track(session, session.getPersistenceContextInternal().getNumberOfManagedEntities());
+    }
+
+    private void track(EventSource session, int managedEntities) {
+        if (!session.isTransactionInProgress()) {
+            //без транзакции отчета нет, только предупреждение - в момент перехода через порог
+            if (managedEntities == guard.getWarnThreshold()) {
+                guard.warn(sessionFactoryName, managedEntities);
+            }
+            return;
+        }
+        SessionState state = sessions.computeIfAbsent(session, key -> startTracking(session));
+        if (state.transaction == null) {
+            state.transaction = startTransaction(session, state);
+        }
+        state.transaction.update(managedEntities);
+    }
+
+    /**
+     * @return сколько сессий сейчас на учете (для тестов)
+     */
+    int trackedSessions() {
+        return sessions.size();
+    }
+
+    private SessionState startTracking(EventSource session) {
+        SessionState state = new SessionState();
+        session.getEventListenerManager().addListener(new SessionEventListener() {
+            @Override
+            public void end() {
+                sessions.remove(session);
+                //сессию закрыли посреди транзакции: коммита не было
+                if (state.transaction != null) {
+                    complete(state, state.transaction, false);
+                }
+            }
+        });
+        return state;
+    }
+
+    private TransactionContext startTransaction(EventSource session, SessionState state) {
+        TransactionContext transaction = new TransactionContext();
+        session.getActionQueue().registerProcess(
+                (BeforeTransactionCompletionProcess) ignored -> transaction.update(
+                        session.getPersistenceContextInternal().getNumberOfManagedEntities())
+        );
+        session.getActionQueue().registerProcess(
+                (AfterTransactionCompletionProcess) (success, ignored) -> complete(state, transaction, success)
+        );
+        return transaction;
+    }
+
+    private void complete(SessionState state, TransactionContext transaction, boolean success) {
+        if (state.transaction != transaction) {
+            return;
+        }
+        state.transaction = null;
+        guard.report(new PersistenceContextReport(sessionFactoryName, transaction.peak, transaction.autoClears,
+                success));
+    }
+
+    private final class AfterPersist implements PersistEventListener {
+
+        @Override
+        public void onPersist(PersistEvent event) {
+            EventSource session = event.getSession();
+            track(session, session.getPersistenceContextInternal().getNumberOfManagedEntities());
+        }
+
+        @Override
+        public void onPersist(PersistEvent event, PersistContext createdAlready) {
+            onPersist(event);
+        }
+    }
+
+    /**
+     * Состояние сессии между open и close: текущая транзакция, если она уже что-то загрузила или сохранила.
+     */
+    private static final class SessionState {
+        private TransactionContext transaction;
+    }
+
+    /**
+     * Состояние одной транзакции. Сессия однопоточная, поэтому синхронизация не нужна.
+     */
+    private final class TransactionContext {
+        private int peak;
+        private int autoClears;
+        private boolean warned;
+
+        private void update(int managedEntities) {
+            peak = Math.max(peak, managedEntities);
+            if (!warned && managedEntities >= guard.getWarnThreshold()) {
+                warned = true;
+                guard.warn(sessionFactoryName, managedEntities);
+            }
+        }
+    }
+}
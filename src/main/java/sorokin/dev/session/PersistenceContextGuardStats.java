@@ -0,0 +1,17 @@
+package sorokin.dev.session;
+
+/**
+ * Счетчики {@link PersistenceContextGuard} по всем транзакциям.
+ *
+ * @param transactions        сколько транзакций отслежено
+ * @param maxPeakEntities     наибольший persistence context среди них
+ * @param warnings            сколько раз сессия переросла warn-threshold
+ * @param autoClears          сколько раз сессия была очищена автоматически
+ */
+public record PersistenceContextGuardStats(
+        long transactions,
+        int maxPeakEntities,
+        long warnings,
+        long autoClears
+) {
+}
@@ -0,0 +1,17 @@
+package sorokin.dev.session;
+
+/**
+ * Размер persistence context одной транзакции.
+ *
+ * @param sessionFactoryName SessionFactory, в сессии которой шла транзакция
+ * @param peakManagedEntities наибольшее число управляемых сущностей в сессии за транзакцию
+ * @param autoClears          сколько раз сессия была очищена автоматически (режим пакетной обработки)
+ * @param committed           транзакция закоммичена (false - откачена)
+ */
+public record PersistenceContextReport(
+        String sessionFactoryName,
+        int peakManagedEntities,
+        int autoClears,
+        boolean committed
+) {
+}
@@ -0,0 +1,306 @@
+package sorokin.dev.session;
+
+import org.hibernate.SessionEventListener;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Поиск утечек сессий (и их соединений).
+ * <p>
+ * Сессия, которую не закрыли (openSession() и close() без try/finally, исключение между ними), держит
+ * persistence context, а если в ней уже был запрос - и соединение из пула. Несколько таких утечек - и пул
+ * пуст, приложение ждет соединения. Детектор:
+ * <ul>
+ *     <li>оборачивает каждый бин SessionFactory ({@link BeanPostProcessor}, см. {@link LeakTrackingSessionFactory})
+ *     и ставит на учет каждую открытую через него сессию (openSession, openStatelessSession); при close()
+ *     сессия снимается с учета ({@link SessionEventListener#end()});</li>
+ *     <li>для доли сессий session.leak.stack-sample-rate запоминает стек вызова, который ее открыл: стек стоит
+ *     дорого, а для поиска места утечки хватает нескольких экземпляров;</li>
+ *     <li>раз в session.leak.check-interval-ms пишет в лог (WARNING, один раз на сессию) сессии, открытые дольше
+ *     session.leak.threshold-ms, со стеком открытия;</li>
+ *     <li>{@link #getOpenSessions()} и {@link #drainCollectedLeaks()} - открытые сейчас сессии и сессии, собранные
+ *     сборщиком мусора без close(); на них в тестах работает SessionLeakExtension, которая роняет тест,
+ *     оставивший открытую сессию.</li>
+ * </ul>
+ * Сессии на учете хранятся по слабой ссылке: незакрытую сессию, на которую больше никто не ссылается,
+ * детектор не удерживает в памяти вместе с ее persistence context. Сведения об открытии хранятся в самой ссылке,
+ * поэтому собранная без close() сессия - самая частая утечка: openSession(), исключение, ссылок больше нет -
+ * все равно записывается в лог как утечка, со стеком открытия.
+ * Сессии getCurrentSession() (их открывает TransactionHelper) не учитываются: их закрывает сам Hibernate
+ * при commit/rollback.
+ */
+public class SessionLeakDetector implements BeanPostProcessor, DisposableBean {
+
+    private static final System.Logger log = System.getLogger(SessionLeakDetector.class.getName());
+
+    /**
+     * Сколько последних собранных без close() сессий хранить для {@link #drainCollectedLeaks()}.
+     */
+    static final int MAX_COLLECTED_LEAKS = 100;
+
+    private final Duration threshold;
+    private final double stackSampleRate;
+    private final Set<SessionKey> openSessions = ConcurrentHashMap.newKeySet();
+    private final ReferenceQueue<SharedSessionContractImplementor> collectedSessions = new ReferenceQueue<>();
+    private final Deque<OpenSession> collectedLeaks = new ArrayDeque<>();
+    private final LongAdder opened = new LongAdder();
+    private final LongAdder leaksReported = new LongAdder();
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param threshold       сессия, открытая дольше, считается утечкой
+     * @param stackSampleRate доля сессий, для которых запоминается стек открытия (0..1)
+     * @param checkInterval   как часто искать утечки; 0 - не искать по расписанию
+     */
+    public SessionLeakDetector(Duration threshold, double stackSampleRate, Duration checkInterval) {
+        if (threshold.isNegative() || stackSampleRate < 0 || stackSampleRate > 1 || checkInterval.isNegative()) {
+            throw new IllegalArgumentException(
+                    "Invalid leak detector settings: threshold=%s, stackSampleRate=%s, checkInterval=%s"
+                            .formatted(threshold, stackSampleRate, checkInterval));
+        }
+        this.threshold = threshold;
+        this.stackSampleRate = stackSampleRate;
+        if (checkInterval.isZero()) {
+            scheduler = null;
+        } else {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "session-leak-detector");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::reportLeaks, checkInterval.toMillis(), checkInterval.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof SessionFactory sessionFactory) {
+            return LeakTrackingSessionFactory.wrap(sessionFactory, beanName, this);
+        }
+        return bean;
+    }
+
+    /**
+     * @return открытые сейчас сессии, от самой старой
+     */
+    public List<OpenSession> getOpenSessions() {
+        expungeCollected();
+        Instant now = Instant.now();
+        List<OpenSession> sessions = new ArrayList<>();
+        for (SessionKey key : openSessions) {
+            SharedSessionContractImplementor session = key.get();
+            if (session != null) {
+                sessions.add(key.allocation.toOpenSession(session, now));
+            } else {
+                collected(key);
+            }
+        }
+        return sessions.stream()
+                .sorted(Comparator.comparing(OpenSession::openedAt))
+                .toList();
+    }
+
+    /**
+     * Сессии, которые собрал сборщик мусора, а close() для них так и не вызвали. Каждая уже записана в лог;
+     * хранятся последние {@link #MAX_COLLECTED_LEAKS}. Соединение собранной сессии проверить уже нельзя, поэтому
+     * holdsConnection у них false.
+     *
+     * @return собранные без close() сессии с прошлого вызова, от самой старой
+     */
+    public List<OpenSession> drainCollectedLeaks() {
+        expungeCollected();
+        synchronized (collectedLeaks) {
+            List<OpenSession> leaks = new ArrayList<>(collectedLeaks);
+            collectedLeaks.clear();
+            return leaks;
+        }
+    }
+
+    /**
+     * @return сколько сессий открыто за все время
+     */
+    public long getOpenedCount() {
+        return opened.sum();
+    }
+
+    /**
+     * @return сколько утечек записано в лог (и открытых дольше порога, и собранных без close())
+     */
+    public long getLeaksReported() {
+        return leaksReported.sum();
+    }
+
+    /**
+     * Пишет в лог сессии, открытые дольше порога и еще не записанные.
+     *
+     * @return сколько сессий записано сейчас
+     */
+    public int reportLeaks() {
+        expungeCollected();
+        Instant now = Instant.now();
+        int reported = 0;
+        for (SessionKey key : openSessions) {
+            Allocation allocation = key.allocation;
+            SharedSessionContractImplementor openSession = key.get();
+            if (openSession == null) {
+                collected(key);
+                continue;
+            }
+            if (allocation.reported || Duration.between(allocation.openedAt, now).compareTo(threshold) <= 0) {
+                continue;
+            }
+            allocation.reported = true;
+            reported++;
+            leaksReported.increment();
+            OpenSession session = allocation.toOpenSession(openSession, now);
+            String message = "Session of %s opened by thread %s is open for %s ms (holds connection: %s)%s"
+                    .formatted(session.sessionFactoryName(), session.thread(), session.openFor().toMillis(),
+                            session.holdsConnection(),
+                            session.allocationSite() == null ? ", allocation site not sampled" : "");
+            log.log(System.Logger.Level.WARNING, message, session.allocationSite());
+        }
+        return reported;
+    }
+
+    void track(String sessionFactoryName, SharedSessionContractImplementor session) {
+        expungeCollected();
+        if (session.isClosed() || openSessions.contains(new SessionKey(session, null, null))) {
+            return;
+        }
+        Throwable allocationSite = ThreadLocalRandom.current().nextDouble() < stackSampleRate
+                ? new Throwable("Session opened here")
+                : null;
+        Allocation allocation = new Allocation(sessionFactoryName, Thread.currentThread().getName(), Instant.now(),
+                allocationSite);
+        SessionKey key = new SessionKey(session, allocation, collectedSessions);
+        if (openSessions.add(key)) {
+            opened.increment();
+            session.getEventListenerManager().addListener(new SessionEventListener() {
+                @Override
+                public void end() {
+                    openSessions.remove(key);
+                }
+            });
+        }
+    }
+
+    /**
+     * Снимает с учета сессии, которые не закрыли, но уже собрал сборщик мусора.
+     */
+    private void expungeCollected() {
+        for (Object key = collectedSessions.poll(); key != null; key = collectedSessions.poll()) {
+            collected((SessionKey) key);
+        }
+    }
+
+    /**
+     * Сессию собрал сборщик мусора. Закрытая сессия уже снята с учета в end(), значит, если ключ еще на учете,
+     * close() не вызывали - это утечка. Ключ может прийти дважды (из очереди и при обходе), запишется один раз.
+     */
+    private void collected(SessionKey key) {
+        if (!openSessions.remove(key)) {
+            return;
+        }
+        Allocation allocation = key.allocation;
+        if (!allocation.reported) {
+            allocation.reported = true;
+            leaksReported.increment();
+        }
+        Instant now = Instant.now();
+        OpenSession session = new OpenSession(allocation.sessionFactoryName, allocation.thread, allocation.openedAt,
+                Duration.between(allocation.openedAt, now), false, allocation.allocationSite);
+        synchronized (collectedLeaks) {
+            if (collectedLeaks.size() == MAX_COLLECTED_LEAKS) {
+                collectedLeaks.removeFirst();
+            }
+            collectedLeaks.addLast(session);
+        }
+        String message = "Session of %s opened by thread %s was garbage collected without close() after %s ms%s"
+                .formatted(session.sessionFactoryName(), session.thread(), session.openFor().toMillis(),
+                        session.allocationSite() == null ? ", allocation site not sampled" : "");
+        log.log(System.Logger.Level.WARNING, message, session.allocationSite());
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Слабая ссылка на сессию со сведениями о ее открытии: после сборки сессии их еще можно записать в лог.
+     * Сравнение по идентичности сессии, хэш запоминается заранее - после сборки сессии ключ должен находиться
+     * в множестве, чтобы его можно было удалить.
+     */
+    private static final class SessionKey extends WeakReference<SharedSessionContractImplementor> {
+        private final int hash;
+        private final Allocation allocation;
+
+        private SessionKey(SharedSessionContractImplementor session, Allocation allocation,
+                           ReferenceQueue<SharedSessionContractImplementor> queue) {
+            super(session, queue);
+            this.hash = System.identityHashCode(session);
+            this.allocation = allocation;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof SessionKey key)) {
+                return false;
+            }
+            SharedSessionContractImplementor session = get();
+            return session != null && session == key.get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Allocation {
+        private final String sessionFactoryName;
+        private final String thread;
+        private final Instant openedAt;
+        private final Throwable allocationSite;
+        private volatile boolean reported;
+
+        private Allocation(String sessionFactoryName, String thread, Instant openedAt, Throwable allocationSite) {
+            this.sessionFactoryName = sessionFactoryName;
+            this.thread = thread;
+            this.openedAt = openedAt;
+            this.allocationSite = allocationSite;
+        }
+
+        private OpenSession toOpenSession(SharedSessionContractImplementor session, Instant now) {
+            boolean holdsConnection = !session.isClosed()
+                    && session.getJdbcCoordinator().getLogicalConnection().isPhysicallyConnected();
+            return new OpenSession(sessionFactoryName, thread, openedAt, Duration.between(openedAt, now),
+                    holdsConnection, allocationSite);
+        }
+    }
+}
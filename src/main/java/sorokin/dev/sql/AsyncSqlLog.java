@@ -0,0 +1,250 @@
+package sorokin.dev.sql;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SQL-лог вместо hibernate.show_sql.
+ * <p>
+ * show_sql печатает каждый запрос в System.out в потоке запроса: форматирование и синхронизированная запись
+ * в консоль добавляются ко времени каждого SQL. Здесь поток запроса только решает, писать ли запрос
+ * ({@link #wants(boolean, long)} - до того, как для него создан {@link SqlExecution}), и кладет ссылку
+ * на SqlExecution в очередь - без форматирования и ввода-вывода. Все остальное
+ * делает один фоновый поток:
+ * <ul>
+ *     <li>выборка: пишется доля sample-rate запросов (ошибочные - всегда);</li>
+ *     <li>ограничение: не больше max-per-second строк в секунду, лишние отбрасываются;</li>
+ *     <li>очередь ограничена queue-size: если фоновый поток не успевает, запись отбрасывается, а не тормозит
+ *     запросы;</li>
+ *     <li>строка - JSON (время, поток, длительность в мкс, пачка, ошибка, SQL, параметры, метод приложения)
+ *     собирается в один переиспользуемый StringBuilder и отдается в {@link SqlLogSink}.</li>
+ * </ul>
+ * Метод приложения (include-caller) ищется обходом стека в потоке запроса - это самая дорогая часть,
+ * поэтому по умолчанию выключено.
+ */
+@Component
+public class AsyncSqlLog implements SqlExecutionListener, DisposableBean {
+
+    private static final System.Logger log = System.getLogger(AsyncSqlLog.class.getName());
+
+    private static final int MAX_BINDS = 20;
+    private static final int MAX_BIND_LENGTH = 100;
+    private static final int DRAIN_BATCH = 256;
+
+    private final TimingConnectionProvider timingConnectionProvider;
+    private final SqlLogSink sink;
+    private final double sampleRate;
+    private final int maxPerSecond;
+    private final boolean includeCaller;
+    private final BlockingQueue<Entry> queue;
+    private final Thread writer;
+    private final AtomicLong currentSecond = new AtomicLong();
+    private final AtomicLong writtenInSecond = new AtomicLong();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private volatile boolean running = true;
+
+    public AsyncSqlLog(
+            TimingConnectionProvider timingConnectionProvider,
+            SqlLogSink sink,
+            @Value("${sql.log.sample-rate:1.0}") double sampleRate,
+            @Value("${sql.log.max-per-second:1000}") int maxPerSecond,
+            @Value("${sql.log.queue-size:8192}") int queueSize,
+            @Value("${sql.log.include-caller:false}") boolean includeCaller
+    ) {
+        this.timingConnectionProvider = timingConnectionProvider;
+        this.sink = sink;
+        this.sampleRate = sampleRate;
+        this.maxPerSecond = maxPerSecond;
+        this.includeCaller = includeCaller;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.writer = new Thread(this::writeLoop, "async-sql-log");
+        writer.setDaemon(true);
+        writer.start();
+        if (sampleRate > 0) {
+            timingConnectionProvider.addListener(this);
+        }
+    }
+
+    /**
+     * Выборка и ограничение в секунду: отброшенный здесь запрос ничего не стоит, SqlExecution для него не создается.
+     */
+    @Override
+    public boolean wants(boolean failed, long nanos) {
+        if (!failed && sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            sampledOut.increment();
+            return false;
+        }
+        if (!acquirePermit()) {
+            rateLimited.increment();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void onExecution(SqlExecution execution) {
+        Entry entry = new Entry(System.currentTimeMillis(), Thread.currentThread().getName(), execution,
+                includeCaller ? SqlCaller.find() : null);
+        if (queue.offer(entry)) {
+            enqueued.incrementAndGet();
+        } else {
+            dropped.increment();
+        }
+    }
+
+    public SqlLogStats getStats() {
+        return new SqlLogStats(written.sum(), sampledOut.sum(), rateLimited.sum(), dropped.sum());
+    }
+
+    /**
+     * Ждет, пока фоновый поток запишет все, что сейчас в очереди.
+     *
+     * @param timeoutMs сколько ждать не больше
+     * @return true - очередь записана
+     */
+    public boolean awaitWritten(long timeoutMs) throws InterruptedException {
+        long target = enqueued.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (processed.get() < target) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(5);
+        }
+        return true;
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        timingConnectionProvider.removeListener(this);
+        running = false;
+        writer.interrupt();
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    /**
+     * Ограничение строк в секунду: счетчик в окне текущей секунды, новая секунда - счетчик с нуля.
+     */
+    private boolean acquirePermit() {
+        long second = System.currentTimeMillis() / 1000;
+        long windowSecond = currentSecond.get();
+        if (second != windowSecond && currentSecond.compareAndSet(windowSecond, second)) {
+            writtenInSecond.set(0);
+        }
+        return writtenInSecond.incrementAndGet() <= maxPerSecond;
+    }
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>(DRAIN_BATCH);
+        StringBuilder line = new StringBuilder(512);
+        while (running || !queue.isEmpty()) {
+            try {
+                Entry first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, DRAIN_BATCH - 1);
+                for (Entry entry : batch) {
+                    line.setLength(0);
+                    format(entry, line);
+                    sink.write(line);
+                    written.increment();
+                }
+            } catch (InterruptedException e) {
+                //при остановке дописываем очередь и выходим
+                running = false;
+            } catch (RuntimeException e) {
+                log.log(System.Logger.Level.WARNING, "Failed to write SQL log", e);
+            } finally {
+                processed.addAndGet(batch.size());
+                batch.clear();
+            }
+        }
+    }
+
+    private static void format(Entry entry, StringBuilder line) {
+        SqlExecution execution = entry.execution();
+        line.append("{\"ts\":\"").append(Instant.ofEpochMilli(entry.timestamp()))
+                .append("\",\"thread\":");
+        appendString(line, entry.thread(), Integer.MAX_VALUE);
+        line.append(",\"us\":").append(execution.duration().toNanos() / 1_000)
+                .append(",\"batch\":").append(execution.batchSize())
+                .append(",\"failed\":").append(execution.failed())
+                .append(",\"sql\":");
+        appendString(line, execution.sql(), Integer.MAX_VALUE);
+        line.append(",\"binds\":[");
+        List<Object> binds = execution.binds();
+        for (int i = 0; i < binds.size() && i < MAX_BINDS; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            Object value = binds.get(i);
+            if (value == null) {
+                line.append("null");
+            } else if (value instanceof Number || value instanceof Boolean) {
+                line.append(value);
+            } else {
+                appendString(line, value.toString(), MAX_BIND_LENGTH);
+            }
+        }
+        if (binds.size() > MAX_BINDS) {
+            line.append(",\"...\"");
+        }
+        line.append(']');
+        if (entry.caller() != null) {
+            line.append(",\"caller\":");
+            appendString(line, entry.caller(), Integer.MAX_VALUE);
+        }
+        line.append('}');
+    }
+
+    private static void appendString(StringBuilder line, String value, int maxLength) {
+        if (value == null) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        int length = Math.min(value.length(), maxLength);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> line.append("\\\"");
+                case '\\' -> line.append("\\\\");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                case '\t' -> line.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+                }
+            }
+        }
+        if (value.length() > maxLength) {
+            line.append("...");
+        }
+        line.append('"');
+    }
+
+    private record Entry(long timestamp, String thread, SqlExecution execution, String caller) {
+    }
+}
@@ -0,0 +1,20 @@
+package sorokin.dev.sql;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Пишет строки SQL-лога в отдельный логгер "sorokin.dev.sql.statements": его можно направить в свой файл
+ * и включать/выключать независимо от остальных логов приложения.
+ */
+@Component
+public class LoggerSqlLogSink implements SqlLogSink {
+
+    private static final System.Logger log = System.getLogger("sorokin.dev.sql.statements");
+
+    @Override
+    public void write(CharSequence line) {
+        if (log.isLoggable(System.Logger.Level.INFO)) {
+            log.log(System.Logger.Level.INFO, line.toString());
+        }
+    }
+}
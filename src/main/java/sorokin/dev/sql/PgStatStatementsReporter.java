@@ -0,0 +1,134 @@
+package sorokin.dev.sql;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Самые дорогие запросы по данным pg_stat_statements.
+ * <p>
+ * Расширение создается скриптом postgres-compose/init-script/05_create_extensions.sql (и должно быть в
+ * shared_preload_libraries). В отличие от {@link SlowQueryLog}, который видит отдельные выполнения одного
+ * экземпляра приложения, pg_stat_statements накапливает статистику по всем клиентам БД: частый запрос по 5 мс
+ * может стоить больше редкого по 500 мс.
+ * <p>
+ * Каждые report-interval-ms в лог пишется top запросов по суммарному времени. Интервал 0 - отчет не пишется,
+ * {@link #getTopStatements(int)} можно вызывать вручную. В H2 (и без расширения) статистики нет - пустой список.
+ */
+@Component
+public class PgStatStatementsReporter implements DisposableBean {
+
+    private static final System.Logger log = System.getLogger(PgStatStatementsReporter.class.getName());
+
+    private final SessionFactory sessionFactory;
+    private final boolean postgres;
+    private final int top;
+    private final ScheduledExecutorService scheduler;
+
+    public PgStatStatementsReporter(
+            SessionFactory sessionFactory,
+            @Value("${sql.stat-statements.report-interval-ms:0}") long reportIntervalMs,
+            @Value("${sql.stat-statements.top:10}") int top
+    ) {
+        this.sessionFactory = sessionFactory;
+        var dialect = sessionFactory.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect();
+        this.postgres = dialect instanceof PostgreSQLDialect;
+        this.top = top;
+        if (reportIntervalMs > 0 && postgres) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "pg-stat-statements-report");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::reportQuietly, reportIntervalMs, reportIntervalMs,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            this.scheduler = null;
+        }
+    }
+
+    /**
+     * @return true - БД PostgreSQL и расширение pg_stat_statements установлено
+     */
+    public boolean isAvailable() {
+        if (!postgres) {
+            return false;
+        }
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            return session.createNativeQuery(
+                            "SELECT count(*) FROM pg_extension WHERE extname = 'pg_stat_statements'", Long.class)
+                    .getSingleResult() > 0;
+        }
+    }
+
+    /**
+     * Запросы текущей БД с наибольшим суммарным временем выполнения.
+     *
+     * @param limit сколько запросов вернуть
+     * @return от самого дорогого
+     */
+    public List<StatementStats> getTopStatements(int limit) {
+        if (!isAvailable()) {
+            return List.of();
+        }
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            List<Object[]> rows = session.createNativeQuery("""
+                            SELECT queryid, query, calls, total_exec_time, mean_exec_time, rows,
+                                   shared_blks_hit, shared_blks_read
+                            FROM pg_stat_statements
+                            WHERE dbid = (SELECT oid FROM pg_database WHERE datname = current_database())
+                            ORDER BY total_exec_time DESC
+                            LIMIT :limit
+                            """, Object[].class)
+                    .setParameter("limit", limit)
+                    .list();
+            return rows.stream()
+                    .map(row -> new StatementStats(
+                            ((Number) row[0]).longValue(),
+                            (String) row[1],
+                            ((Number) row[2]).longValue(),
+                            ((Number) row[3]).doubleValue(),
+                            ((Number) row[4]).doubleValue(),
+                            ((Number) row[5]).longValue(),
+                            ((Number) row[6]).longValue(),
+                            ((Number) row[7]).longValue()))
+                    .toList();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void reportQuietly() {
+        try {
+            List<StatementStats> statements = getTopStatements(top);
+            StringBuilder report = new StringBuilder("Top statements by total time (pg_stat_statements):");
+            for (StatementStats statement : statements) {
+                report.append(String.format("%n%10.1f ms total %8.2f ms mean %8d calls %6.1f%% cache hit  %s",
+                        statement.totalTimeMs(), statement.meanTimeMs(), statement.calls(),
+                        hitRatio(statement) * 100, statement.query().replaceAll("\\s+", " ")));
+            }
+            log.log(System.Logger.Level.INFO, report.toString());
+        } catch (RuntimeException e) {
+            log.log(System.Logger.Level.WARNING, "Failed to read pg_stat_statements", e);
+        }
+    }
+
+    private static double hitRatio(StatementStats statement) {
+        long blocks = statement.sharedBlocksHit() + statement.sharedBlocksRead();
+        return blocks == 0 ? 1.0 : (double) statement.sharedBlocksHit() / blocks;
+    }
+}
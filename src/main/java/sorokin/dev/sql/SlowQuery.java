@@ -0,0 +1,33 @@
+package sorokin.dev.sql;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Медленный запрос, записанный {@link SlowQueryLog}.
+ *
+ * @param executedAt когда выполнен
+ * @param sql        текст запроса
+ * @param binds      значения параметров
+ * @param batchSize  строк в пачке, 1 - обычное выполнение
+ * @param duration   время выполнения
+ * @param failed     запрос завершился ошибкой
+ * @param caller     метод приложения, который его выполнил
+ * @param plan       вывод EXPLAIN (ANALYZE, BUFFERS), если запрос попал в выборку; иначе null
+ */
+public record SlowQuery(
+        LocalDateTime executedAt,
+        String sql,
+        List<Object> binds,
+        int batchSize,
+        Duration duration,
+        boolean failed,
+        String caller,
+        String plan
+) {
+
+    SlowQuery withPlan(String plan) {
+        return new SlowQuery(executedAt, sql, binds, batchSize, duration, failed, caller, plan);
+    }
+}
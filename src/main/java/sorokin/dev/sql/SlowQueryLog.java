@@ -0,0 +1,186 @@
+package sorokin.dev.sql;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Журнал медленных запросов: все SQL дольше threshold-ms с параметрами и методом приложения, который их выполнил.
+ * <p>
+ * Получает замеры от {@link TimingConnectionProvider}. Последние max-entries медленных запросов хранятся в памяти
+ * ({@link #getSlowQueries()}), каждый пишется в лог с уровнем WARNING.
+ * <p>
+ * План выполнения: для доли explain-sample-rate медленных SELECT в PostgreSQL в фоне выполняется
+ * EXPLAIN (ANALYZE, BUFFERS) с теми же параметрами, и план добавляется к записи. ANALYZE выполняет запрос
+ * еще раз, поэтому это выборка, а не каждый медленный запрос, и только SELECT (EXPLAIN ANALYZE для
+ * INSERT/UPDATE/DELETE изменил бы данные). Если фоновая очередь планов заполнена - план не снимается.
+ */
+@Component
+public class SlowQueryLog implements SqlExecutionListener, DisposableBean {
+
+    private static final System.Logger log = System.getLogger(SlowQueryLog.class.getName());
+
+    private static final int EXPLAIN_QUEUE_SIZE = 16;
+    private static final String EXPLAIN_PREFIX = "EXPLAIN (ANALYZE, BUFFERS) ";
+
+    private final SessionFactory sessionFactory;
+    private final TimingConnectionProvider timingConnectionProvider;
+    private final long thresholdNanos;
+    private final int maxEntries;
+    private final double explainSampleRate;
+    private final boolean explainSupported;
+    private final List<SlowQuery> slowQueries = new ArrayList<>();
+    private final ExecutorService explainExecutor;
+
+    public SlowQueryLog(
+            SessionFactory sessionFactory,
+            TimingConnectionProvider timingConnectionProvider,
+            @Value("${sql.slow.threshold-ms:200}") long thresholdMs,
+            @Value("${sql.slow.max-entries:100}") int maxEntries,
+            @Value("${sql.slow.explain-sample-rate:0.0}") double explainSampleRate
+    ) {
+        this.sessionFactory = sessionFactory;
+        this.timingConnectionProvider = timingConnectionProvider;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMs);
+        this.maxEntries = maxEntries;
+        this.explainSampleRate = explainSampleRate;
+        var dialect = sessionFactory.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect();
+        this.explainSupported = dialect instanceof PostgreSQLDialect;
+        this.explainExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(EXPLAIN_QUEUE_SIZE), runnable -> {
+            Thread thread = new Thread(runnable, "slow-query-explain");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timingConnectionProvider.addListener(this);
+    }
+
+    @Override
+    public boolean wants(boolean failed, long nanos) {
+        return nanos >= thresholdNanos;
+    }
+
+    @Override
+    public void onExecution(SqlExecution execution) {
+        if (execution.duration().toNanos() < thresholdNanos || execution.sql() == null
+                || execution.sql().startsWith(EXPLAIN_PREFIX)) {
+            return;
+        }
+        SlowQuery slowQuery = new SlowQuery(LocalDateTime.now(), execution.sql(), execution.binds(),
+                execution.batchSize(), execution.duration(), execution.failed(), SqlCaller.find(), null);
+        synchronized (slowQueries) {
+            if (slowQueries.size() == maxEntries) {
+                slowQueries.remove(0);
+            }
+            slowQueries.add(slowQuery);
+        }
+        log.log(System.Logger.Level.WARNING, "Slow SQL {0} ms in {1}: {2} binds={3}",
+                execution.duration().toMillis(), slowQuery.caller(), execution.sql(), execution.binds());
+        if (shouldExplain(execution)) {
+            try {
+                explainExecutor.execute(() -> explain(slowQuery));
+            } catch (RejectedExecutionException e) {
+                //очередь планов заполнена: этот запрос без плана
+            }
+        }
+    }
+
+    /**
+     * @return последние медленные запросы, от старых к новым
+     */
+    public List<SlowQuery> getSlowQueries() {
+        synchronized (slowQueries) {
+            return List.copyOf(slowQueries);
+        }
+    }
+
+    public void clear() {
+        synchronized (slowQueries) {
+            slowQueries.clear();
+        }
+    }
+
+    /**
+     * Снимает план запроса: EXPLAIN (ANALYZE, BUFFERS) с теми же параметрами в транзакции, которая откатывается.
+     *
+     * @return план построчно, как его вывел PostgreSQL
+     */
+    public String explain(String sql, List<Object> binds) {
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            session.beginTransaction();
+            try {
+                return session.doReturningWork(connection -> {
+                    try (PreparedStatement statement = connection.prepareStatement(EXPLAIN_PREFIX + sql)) {
+                        for (int i = 0; i < binds.size(); i++) {
+                            statement.setObject(i + 1, binds.get(i));
+                        }
+                        StringBuilder plan = new StringBuilder();
+                        try (ResultSet resultSet = statement.executeQuery()) {
+                            while (resultSet.next()) {
+                                plan.append(resultSet.getString(1)).append('\n');
+                            }
+                        }
+                        return plan.toString();
+                    }
+                });
+            } finally {
+                session.getTransaction().rollback();
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        timingConnectionProvider.removeListener(this);
+        explainExecutor.shutdownNow();
+    }
+
+    private boolean shouldExplain(SqlExecution execution) {
+        if (!explainSupported || execution.failed() || explainSampleRate <= 0) {
+            return false;
+        }
+        String sql = execution.sql().stripLeading().toLowerCase(Locale.ROOT);
+        if (!sql.startsWith("select") && !sql.startsWith("with")) {
+            return false;
+        }
+        return ThreadLocalRandom.current().nextDouble() < explainSampleRate;
+    }
+
+    private void explain(SlowQuery slowQuery) {
+        try {
+            String plan = explain(slowQuery.sql(), slowQuery.binds());
+            synchronized (slowQueries) {
+                //запись могла уже вытесниться новыми - тогда план никуда не добавляем
+                slowQueries.replaceAll(query -> query == slowQuery ? query.withPlan(plan) : query);
+            }
+            log.log(System.Logger.Level.INFO, "Plan of slow SQL from {0}:\n{1}", slowQuery.caller(), plan);
+        } catch (RuntimeException e) {
+            log.log(System.Logger.Level.WARNING, "Failed to explain slow SQL: " + slowQuery.sql(), e);
+        }
+    }
+
+    /**
+     * @return порог, начиная с которого запрос считается медленным
+     */
+    public Duration getThreshold() {
+        return Duration.ofNanos(thresholdNanos);
+    }
+}
@@ -0,0 +1,39 @@
+package sorokin.dev.sql;
+
+import sorokin.dev.utils.TransactionHelper;
+
+/**
+ * Какой метод приложения выполняет текущий SQL.
+ */
+public final class SqlCaller {
+
+    private static final String APPLICATION_PACKAGE = "sorokin.dev.";
+    private static final String SQL_PACKAGE = SqlCaller.class.getPackageName() + ".";
+
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance();
+
+    private SqlCaller() {
+    }
+
+    /**
+     * Ищет в стеке текущего потока первый метод приложения - не Hibernate, не JDBC, не этот пакет и не
+     * {@link TransactionHelper}. Обход стека заметно дороже самого вызова, поэтому вызывать только
+     * для запросов, которые действительно записываются (медленных, выбранных в выборку).
+     *
+     * @return "Класс.метод:строка" или "unknown", если запрос выполняется не из кода приложения
+     */
+    public static String find() {
+        return STACK_WALKER.walk(frames -> frames
+                .filter(frame -> frame.getClassName().startsWith(APPLICATION_PACKAGE))
+                .filter(frame -> !frame.getClassName().startsWith(SQL_PACKAGE))
+                .filter(frame -> !frame.getClassName().equals(TransactionHelper.class.getName()))
+                .findFirst()
+                .map(frame -> simpleName(frame.getClassName()) + "." + frame.getMethodName()
+                        + ":" + frame.getLineNumber())
+                .orElse("unknown"));
+    }
+
+    private static String simpleName(String className) {
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+}
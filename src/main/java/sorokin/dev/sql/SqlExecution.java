@@ -0,0 +1,22 @@
+package sorokin.dev.sql;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Одно выполнение SQL, замеренное {@link TimingConnectionProvider}.
+ *
+ * @param sql       текст запроса (с ? вместо значений)
+ * @param binds     значения параметров по порядку; для пачки (JDBC batch) - значения последней строки пачки
+ * @param batchSize сколько строк в пачке, 1 - обычное выполнение
+ * @param duration  время выполнения в драйвере (без чтения ResultSet)
+ * @param failed    драйвер бросил SQLException
+ */
+public record SqlExecution(
+        String sql,
+        List<Object> binds,
+        int batchSize,
+        Duration duration,
+        boolean failed
+) {
+}
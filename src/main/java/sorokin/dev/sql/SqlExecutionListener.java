@@ -0,0 +1,29 @@
+package sorokin.dev.sql;
+
+/**
+ * Получает каждое выполнение SQL от {@link TimingConnectionProvider}.
+ * <p>
+ * Вызывается синхронно, в потоке, который выполнил запрос, сразу после выполнения - поэтому из слушателя
+ * можно узнать, какой метод приложения выполнил запрос ({@link SqlCaller#find()}). Слушатель должен быть
+ * быстрым: он добавляется ко времени каждого запроса.
+ * <p>
+ * Сначала вызывается {@link #wants(boolean, long)}: {@link SqlExecution} с копией параметров создается, только
+ * если запрос нужен хотя бы одному слушателю, и {@link #onExecution(SqlExecution)} получают только они.
+ */
+@FunctionalInterface
+public interface SqlExecutionListener {
+
+    /**
+     * Нужно ли слушателю это выполнение. Решение окончательное (выборка, лимиты - здесь):
+     * true - следом придет {@link #onExecution(SqlExecution)}. Вызывается для каждого SQL, не должен создавать
+     * объектов.
+     *
+     * @param failed драйвер бросил SQLException
+     * @param nanos  время выполнения в драйвере
+     */
+    default boolean wants(boolean failed, long nanos) {
+        return true;
+    }
+
+    void onExecution(SqlExecution execution);
+}
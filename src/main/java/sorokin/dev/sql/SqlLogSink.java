@@ -0,0 +1,13 @@
+package sorokin.dev.sql;
+
+/**
+ * Куда {@link AsyncSqlLog} пишет готовые строки лога. Вызывается только из фонового потока записи.
+ */
+@FunctionalInterface
+public interface SqlLogSink {
+
+    /**
+     * @param line строка JSON; буфер переиспользуется, сохранять нужно копию (toString)
+     */
+    void write(CharSequence line);
+}
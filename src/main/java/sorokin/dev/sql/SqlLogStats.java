@@ -0,0 +1,17 @@
+package sorokin.dev.sql;
+
+/**
+ * Счетчики {@link AsyncSqlLog}.
+ *
+ * @param written     записано строк
+ * @param sampledOut  не попало в выборку
+ * @param rateLimited отброшено ограничением строк в секунду
+ * @param dropped     отброшено, потому что очередь записи заполнена
+ */
+public record SqlLogStats(
+        long written,
+        long sampledOut,
+        long rateLimited,
+        long dropped
+) {
+}
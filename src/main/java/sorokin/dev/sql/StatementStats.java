@@ -0,0 +1,25 @@
+package sorokin.dev.sql;
+
+/**
+ * Статистика одного нормализованного запроса из pg_stat_statements.
+ *
+ * @param queryId          id запроса в pg_stat_statements
+ * @param query            текст запроса ($1, $2 вместо значений)
+ * @param calls            сколько раз выполнялся
+ * @param totalTimeMs      суммарное время выполнения
+ * @param meanTimeMs       среднее время выполнения
+ * @param rows             сколько строк вернул/изменил всего
+ * @param sharedBlocksHit  сколько страниц найдено в shared buffers
+ * @param sharedBlocksRead сколько страниц прочитано с диска (или из кэша ОС)
+ */
+public record StatementStats(
+        long queryId,
+        String query,
+        long calls,
+        double totalTimeMs,
+        double meanTimeMs,
+        long rows,
+        long sharedBlocksHit,
+        long sharedBlocksRead
+) {
+}
@@ -0,0 +1,258 @@
+package sorokin.dev.sql;
+
+import org.hibernate.engine.jdbc.connections.internal.DriverManagerConnectionProviderImpl;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.service.spi.Configurable;
+import org.hibernate.service.spi.ServiceRegistryAwareService;
+import org.hibernate.service.spi.ServiceRegistryImplementor;
+import org.hibernate.service.spi.Stoppable;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Пул соединений Hibernate (встроенный DriverManagerConnectionProviderImpl), который замеряет каждый SQL.
+ * <p>
+ * hibernate.show_sql только печатает текст запроса: ни времени, ни значений параметров, ни того, какой
+ * метод его выполнил. Здесь каждое соединение из пула оборачивается (java.lang.reflect.Proxy), и обертки
+ * Statement/PreparedStatement:
+ * <ul>
+ *     <li>запоминают значения параметров (setString, setLong, ... по номеру параметра);</li>
+ *     <li>замеряют execute/executeQuery/executeUpdate/executeBatch;</li>
+ *     <li>передают результат слушателям {@link SqlExecutionListener} (например, {@link SlowQueryLog}).</li>
+ * </ul>
+ * Подключается настройкой hibernate.connection.provider_class - в нее кладется сам объект провайдера
+ * (он бин Spring, чтобы слушатели могли на него подписаться). Все настройки пула (url, pool_size и т.д.)
+ * передаются встроенному пулу как есть.
+ */
+public class TimingConnectionProvider implements ConnectionProvider, Configurable, Stoppable,
+        ServiceRegistryAwareService {
+
+    private final DriverManagerConnectionProviderImpl delegate = new DriverManagerConnectionProviderImpl();
+    private final List<SqlExecutionListener> listeners = new CopyOnWriteArrayList<>();
+
+    public void addListener(SqlExecutionListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(SqlExecutionListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void injectServices(ServiceRegistryImplementor serviceRegistry) {
+        delegate.injectServices(serviceRegistry);
+    }
+
+    @Override
+    public void configure(Map<String, Object> configurationValues) {
+        delegate.configure(configurationValues);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Connection connection = delegate.getConnection();
+        return (Connection) Proxy.newProxyInstance(TimingConnectionProvider.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new ConnectionHandler(connection));
+    }
+
+    @Override
+    public void closeConnection(Connection connection) throws SQLException {
+        //пул ждет обратно то соединение, которое выдал, а не обертку
+        if (Proxy.isProxyClass(connection.getClass())
+                && Proxy.getInvocationHandler(connection) instanceof ConnectionHandler handler) {
+            connection = handler.target;
+            //уровень изоляции, выставленный для одной транзакции (TransactionHelper), не должен достаться
+            //следующему, кто возьмет соединение из пула
+            if (handler.initialIsolation != null && connection.getTransactionIsolation() != handler.initialIsolation) {
+                connection.setTransactionIsolation(handler.initialIsolation);
+            }
+        }
+        delegate.closeConnection(connection);
+    }
+
+    @Override
+    public boolean supportsAggressiveRelease() {
+        return delegate.supportsAggressiveRelease();
+    }
+
+    @Override
+    public boolean isUnwrappableAs(Class<?> unwrapType) {
+        return unwrapType.isInstance(this) || delegate.isUnwrappableAs(unwrapType);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> unwrapType) {
+        return unwrapType.isInstance(this) ? (T) this : delegate.unwrap(unwrapType);
+    }
+
+    @Override
+    public void stop() {
+        delegate.stop();
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Обертка соединения: подменяет создаваемые Statement/PreparedStatement на замеряющие и запоминает
+     * исходный уровень изоляции, если его меняют, - при возврате в пул он восстанавливается.
+     */
+    private final class ConnectionHandler implements InvocationHandler {
+
+        private final Connection target;
+        private Integer initialIsolation;
+
+        private ConnectionHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "prepareStatement":
+                    PreparedStatement prepared = (PreparedStatement) TimingConnectionProvider.invoke(target, method, args);
+                    return Proxy.newProxyInstance(TimingConnectionProvider.class.getClassLoader(),
+                            new Class<?>[]{PreparedStatement.class},
+                            new StatementHandler(prepared, (String) args[0]));
+                case "createStatement":
+                    Statement statement = (Statement) TimingConnectionProvider.invoke(target, method, args);
+                    return Proxy.newProxyInstance(TimingConnectionProvider.class.getClassLoader(),
+                            new Class<?>[]{Statement.class}, new StatementHandler(statement, null));
+                case "setTransactionIsolation":
+                    if (initialIsolation == null) {
+                        initialIsolation = target.getTransactionIsolation();
+                    }
+                    return TimingConnectionProvider.invoke(target, method, args);
+                default:
+                    return TimingConnectionProvider.invoke(target, method, args);
+            }
+        }
+    }
+
+    /**
+     * Обертка Statement/PreparedStatement: запоминает параметры и замеряет выполнение.
+     */
+    private final class StatementHandler implements InvocationHandler {
+
+        private final Statement target;
+        private final String preparedSql;
+        private Object[] binds = new Object[8];
+        private int bindCount;
+        private int batchSize;
+        private String batchSql;
+
+        private StatementHandler(Statement target, String preparedSql) {
+            this.target = target;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("equals")) {
+                return proxy == args[0];
+            }
+            if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer index) {
+                bind(index, name.equals("setNull") ? null : args[1]);
+                return TimingConnectionProvider.invoke(target, method, args);
+            }
+            if (name.equals("clearParameters")) {
+                Arrays.fill(binds, null);
+                bindCount = 0;
+                return TimingConnectionProvider.invoke(target, method, args);
+            }
+            if (name.equals("addBatch")) {
+                batchSize++;
+                if (args != null && args.length == 1) {
+                    batchSql = (String) args[0];
+                }
+                return TimingConnectionProvider.invoke(target, method, args);
+            }
+            if (name.equals("clearBatch")) {
+                batchSize = 0;
+                return TimingConnectionProvider.invoke(target, method, args);
+            }
+            if (!name.startsWith("execute")) {
+                return TimingConnectionProvider.invoke(target, method, args);
+            }
+
+            boolean batch = name.equals("executeBatch") || name.equals("executeLargeBatch");
+            String sql = args != null && args.length > 0 && args[0] instanceof String text
+                    ? text
+                    : batch && preparedSql == null ? batchSql : preparedSql;
+            int executedRows = batch ? batchSize : 1;
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                Object result = TimingConnectionProvider.invoke(target, method, args);
+                failed = false;
+                return result;
+            } finally {
+                long nanos = System.nanoTime() - start;
+                if (batch) {
+                    batchSize = 0;
+                }
+                publish(sql, executedRows, nanos, failed);
+            }
+        }
+
+        /**
+         * Копия параметров и SqlExecution создаются, только если выполнение нужно хотя бы одному слушателю.
+         */
+        private void publish(String sql, int executedRows, long nanos, boolean failed) {
+            SqlExecution execution = null;
+            for (SqlExecutionListener listener : listeners) {
+                if (!listener.wants(failed, nanos)) {
+                    continue;
+                }
+                if (execution == null) {
+                    execution = new SqlExecution(sql, currentBinds(), executedRows, Duration.ofNanos(nanos), failed);
+                }
+                listener.onExecution(execution);
+            }
+        }
+
+        private void bind(int index, Object value) {
+            if (index > binds.length) {
+                binds = Arrays.copyOf(binds, Math.max(index, binds.length * 2));
+            }
+            binds[index - 1] = value;
+            bindCount = Math.max(bindCount, index);
+        }
+
+        private List<Object> currentBinds() {
+            List<Object> values = new ArrayList<>(bindCount);
+            for (int i = 0; i < bindCount; i++) {
+                values.add(binds[i]);
+            }
+            return Collections.unmodifiableList(values);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package sorokin.dev.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Адаптивный лимит одновременных транзакций одного класса операций (AIMD - additive increase,
+ * multiplicative decrease).
+ * <p>
+ * Когда БД замедляется, каждый новый поток, пришедший с запросом, только удлиняет очередь внутри БД
+ * и ожидание соединения в пуле - задержка растет у всех. Лимит подстраивается под то, сколько БД
+ * действительно выдерживает, по задержке завершившихся транзакций:
+ * <ul>
+ *     <li>транзакция дольше latency-threshold или оборвана таймаутом (дедлайн, таймаут блокировки) -
+ *     лимит умножается на {@link #BACKOFF_RATIO}, но не ниже min;</li>
+ *     <li>быстрая транзакция при загрузке не меньше половины лимита - лимит +1, но не выше max. Без загрузки
+ *     лимит не растет: быстрые ответы при паре одновременных транзакций ничего не говорят о сотне.</li>
+ * </ul>
+ * Транзакция сверх лимита ждет места до queue-timeout, потом получает {@link ConcurrencyLimitExceededException}.
+ * queue-timeout 0 - отказ сразу.
+ */
+public final class AdaptiveConcurrencyLimiter {
+
+    static final double BACKOFF_RATIO = 0.9;
+
+    private final OperationClass operationClass;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final long queueTimeoutNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private int limit;
+    private int inFlight;
+    private long accepted;
+    private long rejected;
+    private long decreases;
+
+    public AdaptiveConcurrencyLimiter(
+            OperationClass operationClass,
+            int initialLimit,
+            int minLimit,
+            int maxLimit,
+            long latencyThresholdMs,
+            long queueTimeoutMs
+    ) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid concurrency limits: min=%s, max=%s"
+                    .formatted(minLimit, maxLimit));
+        }
+        this.operationClass = operationClass;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMs);
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMs);
+    }
+
+    /**
+     * Занимает место в лимите, при необходимости ждет его до queue-timeout.
+     *
+     * @return разрешение, которое нужно вернуть в {@link #release(Permit, boolean)}
+     * @throws ConcurrencyLimitExceededException место не освободилось
+     */
+    public Permit acquire() {
+        lock.lock();
+        try {
+            long waitNanos = queueTimeoutNanos;
+            while (inFlight >= limit) {
+                if (waitNanos <= 0) {
+                    rejected++;
+                    throw new ConcurrencyLimitExceededException(operationClass, limit, null);
+                }
+                waitNanos = released.awaitNanos(waitNanos);
+            }
+            inFlight++;
+            accepted++;
+            return new Permit(System.nanoTime(), inFlight);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejected++;
+            throw new ConcurrencyLimitExceededException(operationClass, limit, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Освобождает место и пересчитывает лимит по задержке транзакции.
+     *
+     * @param permit  разрешение из {@link #acquire()}
+     * @param dropped транзакция оборвана таймаутом - признак перегрузки независимо от задержки
+     */
+    public void release(Permit permit, boolean dropped) {
+        long latencyNanos = System.nanoTime() - permit.startNanos();
+        lock.lock();
+        try {
+            inFlight--;
+            if (dropped || latencyNanos > latencyThresholdNanos) {
+                int decreased = Math.max(minLimit, (int) (limit * BACKOFF_RATIO));
+                if (decreased < limit) {
+                    limit = decreased;
+                    decreases++;
+                }
+            } else if (permit.inFlight() * 2 >= limit && limit < maxLimit) {
+                limit++;
+            }
+            //лимит мог вырасти - будим всех ждущих, лишние снова уснут
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public ConcurrencyLimiterStats getStats() {
+        lock.lock();
+        try {
+            return new ConcurrencyLimiterStats(operationClass, limit, inFlight, accepted, rejected, decreases);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Занятое место в лимите.
+     *
+     * @param startNanos когда транзакция получила место
+     * @param inFlight   сколько транзакций выполнялось вместе с ней (загрузка на момент старта)
+     */
+    public record Permit(long startNanos, int inFlight) {
+    }
+}
@@ -0,0 +1,26 @@
+package sorokin.dev.utils;
+
+/**
+ * Метрики {@link LongKeyedSnapshotCache}.
+ *
+ * @param hits           сколько раз значение нашлось в кэше
+ * @param misses         сколько раз значения в кэше не было
+ * @param evictions      сколько значений вытеснено из-за ограничения размера
+ * @param entries        сколько значений сейчас в кэше
+ * @param snapshotBytes  сколько байт занимают сами снимки
+ * @param footprintBytes оценка всей занимаемой памяти: снимки, заголовки массивов и таблица ключей
+ */
+public record CacheStats(
+        long hits,
+        long misses,
+        long evictions,
+        int entries,
+        long snapshotBytes,
+        long footprintBytes
+) {
+
+    public double hitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+}
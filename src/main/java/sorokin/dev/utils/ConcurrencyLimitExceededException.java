@@ -0,0 +1,25 @@
+package sorokin.dev.utils;
+
+/**
+ * Транзакции класса {@link OperationClass} не нашлось места в лимите одновременных транзакций
+ * {@link AdaptiveConcurrencyLimiter} за время ожидания. Транзакция не начиналась, соединение не бралось.
+ */
+public class ConcurrencyLimitExceededException extends RuntimeException {
+
+    private final OperationClass operationClass;
+    private final int limit;
+
+    public ConcurrencyLimitExceededException(OperationClass operationClass, int limit, Throwable cause) {
+        super("Too many concurrent %s transactions: limit=%s".formatted(operationClass, limit), cause);
+        this.operationClass = operationClass;
+        this.limit = limit;
+    }
+
+    public OperationClass getOperationClass() {
+        return operationClass;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+}
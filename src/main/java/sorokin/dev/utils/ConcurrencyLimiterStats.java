@@ -0,0 +1,21 @@
+package sorokin.dev.utils;
+
+/**
+ * Состояние {@link AdaptiveConcurrencyLimiter} одного класса операций.
+ *
+ * @param operationClass чтения или записи
+ * @param limit          текущий лимит одновременных транзакций
+ * @param inFlight       сколько транзакций выполняется сейчас
+ * @param accepted       сколько транзакций получили место
+ * @param rejected       сколько не дождались места и получили {@link ConcurrencyLimitExceededException}
+ * @param decreases      сколько раз лимит уменьшался из-за медленной или оборванной по таймауту транзакции
+ */
+public record ConcurrencyLimiterStats(
+        OperationClass operationClass,
+        int limit,
+        int inFlight,
+        long accepted,
+        long rejected,
+        long decreases
+) {
+}
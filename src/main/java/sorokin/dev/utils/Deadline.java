@@ -0,0 +1,54 @@
+package sorokin.dev.utils;
+
+import java.time.Duration;
+
+/**
+ * Момент, к которому единица работы должна закончиться. Считается по System.nanoTime, поэтому не зависит
+ * от перевода системных часов.
+ */
+public final class Deadline {
+
+    private final Duration timeout;
+    private final long deadlineNanos;
+
+    private Deadline(Duration timeout) {
+        this.timeout = timeout;
+        this.deadlineNanos = System.nanoTime() + timeout.toNanos();
+    }
+
+    public static Deadline after(Duration timeout) {
+        return new Deadline(timeout);
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @return сколько осталось, не меньше нуля
+     */
+    public Duration remaining() {
+        return Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime()));
+    }
+
+    /**
+     * @return оставшееся время в миллисекундах, округленное вверх: 0 - только если время вышло
+     */
+    public long remainingMillis() {
+        long nanos = deadlineNanos - System.nanoTime();
+        return nanos <= 0 ? 0 : (nanos + 999_999) / 1_000_000;
+    }
+
+    public boolean isExpired() {
+        return deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * @throws DeadlineExceededException время вышло
+     */
+    public void check() {
+        if (isExpired()) {
+            throw new DeadlineExceededException(timeout, null);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package sorokin.dev.utils;
+
+import java.time.Duration;
+
+/**
+ * Единица работы в {@link TransactionHelper} не уложилась в {@link TransactionOptions#timeout()}.
+ * Транзакция к этому моменту уже откачена, выполнявшийся запрос отменен.
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+    private final Duration timeout;
+
+    public DeadlineExceededException(Duration timeout, Throwable cause) {
+        super("Transaction deadline exceeded: timeout=%s".formatted(timeout), cause);
+        this.timeout = timeout;
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+}
@@ -0,0 +1,239 @@
+package sorokin.dev.utils;
+
+import java.util.Arrays;
+import java.util.function.LongFunction;
+
+/**
+ * Кэш в памяти приложения: id (примитивный long) - снимок объекта (byte[]).
+ * <p>
+ * Зачем не HashMap&lt;Long, Student&gt;: в нем на каждую запись объект Long, объект Entry и сам объект со всеми
+ * вложенными объектами (группа, курсы, профиль, строки). Здесь ключи лежат в массиве long[], значения - в массиве
+ * byte[][], а сам объект хранится сериализованным {@link SnapshotCodec} в компактный byte[].
+ * При чтении из кэша каждый раз создается новый объект, поэтому вызывающий код может его менять - кэш от этого
+ * не испортится. При промахе возвращается тоже объект из снимка, а не загруженный: результат не зависит от того,
+ * было ли значение в кэше.
+ * <p>
+ * Устройство:
+ * <ul>
+ *     <li>открытая адресация с линейным пробированием: ключ ищется с ячейки hash(id) и дальше подряд до пустой.
+ *     Таблица всегда заполнена не больше чем наполовину;</li>
+ *     <li>ограничение размера по количеству записей и по сумме байт снимков. Вытеснение - CLOCK: при чтении
+ *     записи ставится бит "использовалась", "стрелка" идет по ячейкам, снимает этот бит, а запись без бита
+ *     вытесняет. Почти LRU, но без списка и без перестановок при каждом чтении;</li>
+ *     <li>read-through: {@link #get(long, LongFunction)} сам загружает отсутствующее значение.</li>
+ * </ul>
+ * Инвалидация: сервисы после изменения данных вызывают {@link #invalidate(long)}. Если инвалидация случилась,
+ * пока другой поток загружал значение из БД, загруженное (возможно, уже старое) значение в кэш не кладется.
+ * <p>
+ * Все методы синхронизированы: под блокировкой только работа с массивами, загрузка из БД и
+ * (де)сериализация выполняются без блокировки.
+ *
+ * @param <V> тип объекта
+ */
+public class LongKeyedSnapshotCache<V> {
+
+    /**
+     * Метка пустой ячейки. id в БД положительные, поэтому такого ключа не бывает.
+     */
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    /**
+     * Примерный размер заголовка массива byte[] в heap.
+     */
+    private static final int ARRAY_HEADER_BYTES = 16;
+
+    private final SnapshotCodec<V> codec;
+    private final int maxEntries;
+    private final long maxBytes;
+
+    private final long[] keys;
+    private final byte[][] snapshots;
+    private final boolean[] referenced;
+    private final int mask;
+
+    private int size;
+    private long snapshotBytes;
+    private int clockHand;
+    private long generation;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param codec      сериализация значений
+     * @param maxEntries максимум записей
+     * @param maxBytes   максимум байт в снимках
+     */
+    public LongKeyedSnapshotCache(SnapshotCodec<V> codec, int maxEntries, long maxBytes) {
+        if (maxEntries <= 0 || maxEntries > (1 << 29) || maxBytes <= 0) {
+            throw new IllegalArgumentException(
+                    "Invalid cache size: maxEntries=%s, maxBytes=%s".formatted(maxEntries, maxBytes));
+        }
+        this.codec = codec;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        int capacity = Integer.highestOneBit(maxEntries * 2 - 1) << 1;
+        this.keys = new long[capacity];
+        this.snapshots = new byte[capacity][];
+        this.referenced = new boolean[capacity];
+        this.mask = capacity - 1;
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Возвращает значение из кэша, а если его нет - загружает через loader и кладет в кэш.
+     *
+     * @param id     ключ
+     * @param loader загрузка из БД, может вернуть null (тогда в кэш ничего не кладется)
+     * @return новый объект из снимка. При промахе - тоже из снимка загруженного объекта, а не сам загруженный
+     * объект: вызывающий код всегда получает одну и ту же форму объекта (только то, что входит в снимок)
+     */
+    public V get(long id, LongFunction<V> loader) {
+        byte[] snapshot;
+        long loadGeneration;
+        synchronized (this) {
+            int slot = find(id);
+            if (slot >= 0) {
+                hits++;
+                referenced[slot] = true;
+                snapshot = snapshots[slot];
+                loadGeneration = -1;
+            } else {
+                misses++;
+                snapshot = null;
+                loadGeneration = generation;
+            }
+        }
+        if (snapshot != null) {
+            return codec.decode(snapshot);
+        }
+
+        V value = loader.apply(id);
+        if (value == null) {
+            return null;
+        }
+        byte[] encoded = codec.encode(value);
+        synchronized (this) {
+            if (loadGeneration == generation) {
+                put(id, encoded);
+            }
+        }
+        return codec.decode(encoded);
+    }
+
+    /**
+     * Удаляет значение из кэша. Вызывать после коммита транзакции, которая его изменила.
+     *
+     * @param id ключ
+     */
+    public synchronized void invalidate(long id) {
+        generation++;
+        int slot = find(id);
+        if (slot >= 0) {
+            removeAt(slot);
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        generation++;
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(snapshots, null);
+        Arrays.fill(referenced, false);
+        size = 0;
+        snapshotBytes = 0;
+    }
+
+    public synchronized CacheStats getStats() {
+        //long[] + ссылки byte[][] (считаем по 8 байт) + boolean[] + заголовки всех снимков
+        long tableBytes = (long) keys.length * (Long.BYTES + 8 + 1);
+        long footprint = tableBytes + snapshotBytes + (long) size * ARRAY_HEADER_BYTES;
+        return new CacheStats(hits, misses, evictions, size, snapshotBytes, footprint);
+    }
+
+    private void put(long id, byte[] snapshot) {
+        if (snapshot.length > maxBytes) {
+            return;
+        }
+        int slot = find(id);
+        if (slot >= 0) {
+            snapshotBytes += snapshot.length - snapshots[slot].length;
+            snapshots[slot] = snapshot;
+            referenced[slot] = true;
+        } else {
+            while (size > 0 && (size >= maxEntries || snapshotBytes + snapshot.length > maxBytes)) {
+                evictOne();
+            }
+            slot = indexOf(id);
+            while (keys[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = id;
+            snapshots[slot] = snapshot;
+            //новую запись не помечаем: если ее так и не прочитают, она первой уйдет при вытеснении
+            referenced[slot] = false;
+            size++;
+            snapshotBytes += snapshot.length;
+        }
+        while (snapshotBytes > maxBytes) {
+            evictOne();
+        }
+    }
+
+    private void evictOne() {
+        while (true) {
+            int slot = clockHand;
+            if (keys[slot] != EMPTY) {
+                if (!referenced[slot]) {
+                    //после удаления в эту ячейку может сдвинуться следующая запись, стрелку не двигаем
+                    removeAt(slot);
+                    evictions++;
+                    return;
+                }
+                referenced[slot] = false;
+            }
+            clockHand = (clockHand + 1) & mask;
+        }
+    }
+
+    private int find(long id) {
+        int slot = indexOf(id);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == id) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Удаление при линейном пробировании: нельзя просто очистить ячейку, иначе оборвется цепочка поиска
+     * для ключей, лежащих дальше. Поэтому сдвигаем назад в "дыру" следующие записи цепочки, если их
+     * исходная ячейка hash(id) не находится между дырой и их текущим местом.
+     */
+    private void removeAt(int slot) {
+        size--;
+        snapshotBytes -= snapshots[slot].length;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = indexOf(keys[next]);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                snapshots[hole] = snapshots[next];
+                referenced[hole] = referenced[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = EMPTY;
+        snapshots[hole] = null;
+        referenced[hole] = false;
+    }
+
+    private int indexOf(long id) {
+        //перемешиваем биты: id идут подряд, без этого соседние id занимали бы соседние ячейки длинными цепочками
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+}
@@ -0,0 +1,57 @@
+package sorokin.dev.utils;
+
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Вспомогательный класс для загрузки сразу нескольких сущностей по списку id.
+ * <p>
+ * Если вызывать session.get(...) в цикле, то на каждый id будет отдельный запрос к БД.
+ * Hibernate умеет загружать сущности пачкой (multi-load): session.byMultipleIds(...).multiLoad(ids).
+ * Тогда будет один запрос вида "where id in (?, ?, ...)" на каждые {@link #BATCH_SIZE} id.
+ * <p>
+ * Перед запросом к БД Hibernate проверяет, нет ли сущности в кэше второго уровня, и загружает из БД только те,
+ * которых там нет. Проверку сессии (enableSessionCheck) не включаем: все вызывающие открывают для загрузки
+ * новую сессию, в которой еще ничего нет.
+ */
+public final class MultiLoadHelper {
+
+    /**
+     * Сколько id загружаем одним запросом. На него же ссылается @BatchSize у сущностей.
+     */
+    public static final int BATCH_SIZE = 50;
+
+    private MultiLoadHelper() {
+    }
+
+    /**
+     * Загружает сущности по списку id.
+     *
+     * @param session     сессия, в которой загружаем
+     * @param entityClass класс сущности
+     * @param ids         id сущностей, null и повторы пропускаются
+     * @param <T>         тип сущности
+     * @return найденные сущности в порядке входного списка id (ненайденных в списке не будет)
+     */
+    public static <T> List<T> findAllByIds(Session session, Class<T> entityClass, Collection<Long> ids) {
+        List<Long> distinctIds = ids.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+        if (distinctIds.isEmpty()) {
+            return List.of();
+        }
+        return session.byMultipleIds(entityClass)
+                .withBatchSize(BATCH_SIZE)
+                .with(CacheMode.NORMAL)        // сначала смотрим в кэше второго уровня
+                .enableOrderedReturn(true)     // результат в порядке входных id
+                .multiLoad(distinctIds)
+                .stream()
+                .filter(Objects::nonNull)
+                .toList();
+    }
+}
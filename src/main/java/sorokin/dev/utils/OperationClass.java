@@ -0,0 +1,10 @@
+package sorokin.dev.utils;
+
+/**
+ * Класс операции для ограничения одновременных транзакций в {@link TransactionHelper}: у чтений и записей
+ * свои лимиты, чтобы медленные записи (блокировки строк) не забирали все места у чтений, и наоборот.
+ */
+public enum OperationClass {
+    READ,
+    WRITE
+}
@@ -0,0 +1,63 @@
+package sorokin.dev.utils;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Повтор транзакции {@link TransactionHelper} целиком после ошибки сериализации или взаимной блокировки.
+ * <p>
+ * Такие ошибки - не баг, а нормальный исход конкурентных транзакций в REPEATABLE READ / SERIALIZABLE:
+ * БД откатила одну из них, чтобы другая закончилась корректно. Повторять можно только всю транзакцию
+ * с начала (с новыми чтениями), а не упавший запрос. Пауза перед повтором случайна (full jitter: от 0 до
+ * baseBackoff * 2^(попытка-1), но не больше maxBackoff) - иначе столкнувшиеся транзакции повторятся
+ * одновременно и снова столкнутся.
+ *
+ * @param maxAttempts сколько всего попыток, включая первую; 1 - без повторов
+ * @param baseBackoff верхняя граница паузы перед первым повтором
+ * @param maxBackoff  верхняя граница паузы перед любым повтором
+ */
+public record RetryPolicy(
+        int maxAttempts,
+        Duration baseBackoff,
+        Duration maxBackoff
+) {
+
+    public static final RetryPolicy NONE = new RetryPolicy(1, Duration.ZERO, Duration.ZERO);
+
+    /**
+     * SQLSTATE, после которых транзакцию можно повторить: serialization_failure (PostgreSQL, и взаимная
+     * блокировка в H2) и deadlock_detected (PostgreSQL).
+     */
+    private static final Set<String> RETRYABLE_SQL_STATES = Set.of("40001", "40P01");
+
+    public RetryPolicy {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be positive: maxAttempts=%s".formatted(maxAttempts));
+        }
+    }
+
+    /**
+     * @param attempt номер неудавшейся попытки, с 1
+     * @return случайная пауза перед следующей попыткой
+     */
+    public Duration backoff(int attempt) {
+        long ceilingNanos = Math.min(maxBackoff.toNanos(), baseBackoff.toNanos() << Math.min(attempt - 1, 30));
+        return ceilingNanos <= 0 ? Duration.ZERO
+                : Duration.ofNanos(ThreadLocalRandom.current().nextLong(ceilingNanos + 1));
+    }
+
+    /**
+     * @return в цепочке причин есть SQLException с SQLSTATE 40001 или 40P01
+     */
+    public static boolean isRetryable(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sqlException
+                    && RETRYABLE_SQL_STATES.contains(sqlException.getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,13 @@
+package sorokin.dev.utils;
+
+/**
+ * Преобразует объект в компактный снимок (byte[]) и обратно для {@link LongKeyedSnapshotCache}.
+ *
+ * @param <V> тип объекта
+ */
+public interface SnapshotCodec<V> {
+
+    byte[] encode(V value);
+
+    V decode(byte[] snapshot);
+}
@@ -1,11 +1,31 @@
 package sorokin.dev.utils;
 
+import jakarta.persistence.LockTimeoutException;
+import jakarta.transaction.Synchronization;
+import org.hibernate.QueryTimeoutException;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.Transaction;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.exception.LockAcquisitionException;
 import org.hibernate.resource.transaction.spi.TransactionStatus;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import sorokin.dev.session.PersistenceContextGuard;
 
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -27,14 +47,92 @@ import java.util.function.Supplier;
  * <p>
  * В этом случае второй метод должен увидеть существующую транзакцию и не закрывать ее при окончании
  * работы. Эту транзакцию должен закрыть тот метод, который ее открыл.
+ * <p>
+ * <strong>Дедлайн</strong><br>
+ * У каждого метода есть вариант с {@link TransactionOptions}: {@link TransactionOptions#timeout()} - сколько
+ * всего может занять единица работы. Без него медленный запрос или ожидание блокировки держат соединение
+ * из пула сколько угодно, а следом за ним встают в очередь за соединениями и все остальные потоки.
+ * С таймаутом:
+ * <ul>
+ *     <li>каждому запросу Hibernate выставляет JDBC query timeout - оставшееся на момент начала транзакции время
+ *     (jakarta.persistence.query.timeout на сессии);</li>
+ *     <li>ожидание блокировки ограничено тем же временем: в PostgreSQL - SET LOCAL lock_timeout и
+ *     statement_timeout (действуют до конца транзакции), в H2 - SET LOCK_TIMEOUT, перед commit/rollback
+ *     возвращается значение по умолчанию;</li>
+ *     <li>в момент дедлайна выполняющийся запрос отменяется ({@link Session#cancelQuery()}) из отдельного
+ *     потока - так срабатывает и дедлайн, на который ушло несколько запросов подряд;</li>
+ *     <li>транзакция откатывается, наружу уходит {@link DeadlineExceededException}; commit после дедлайна
+ *     не выполняется.</li>
+ * </ul>
+ * Вложенный вызов (Supplier внутри уже открытой транзакции) работает под дедлайном внешнего.
+ * <p>
+ * <strong>Лимит одновременных транзакций</strong><br>
+ * Каждая новая транзакция сначала занимает место в {@link AdaptiveConcurrencyLimiter} своего класса
+ * ({@link TransactionOptions#operationClass()}: чтения и записи ограничиваются отдельно). Лимит растет, пока
+ * транзакции быстрые, и уменьшается, когда они медленнее transaction.limit.*.latency-ms или обрываются
+ * таймаутом. Не дождавшаяся места транзакция получает {@link ConcurrencyLimitExceededException}, не заняв
+ * соединение. Вложенный вызов места не занимает - его уже занял внешний. Текущие лимиты и отказы -
+ * {@link #getLimiterStats()}.
+ * <p>
+ * <strong>Изоляция и повторы</strong><br>
+ * {@link TransactionOptions#isolation()} выставляет уровень изоляции на время транзакции.
+ * {@link TransactionOptions#retryPolicy()} повторяет всю единицу работы (action целиком, в новой сессии), если
+ * БД отменила транзакцию из-за конфликта сериализации (40001) или взаимной блокировки (40P01). Поэтому action
+ * с повторами не должен иметь побочных эффектов вне БД. Вложенный вызов не повторяется сам - повторяется
+ * внешняя транзакция.
+ * <p>
+ * <strong>Пакетная обработка</strong><br>
+ * {@link TransactionOptions#batchMode()} включает для сессии автоматическую очистку persistence context
+ * ({@link PersistenceContextGuard}): сущности, сохраненные раньше последних batch-size, становятся detached.
  */
 @Component
-public class TransactionHelper {
+public class TransactionHelper implements DisposableBean {
+
+    /**
+     * Размер пула встроенного DriverManagerConnectionProvider, если hibernate.connection.pool_size не задан.
+     */
+    private static final int DEFAULT_POOL_SIZE = 20;
+
+    private static final System.Logger log = System.getLogger(TransactionHelper.class.getName());
 
     private final SessionFactory sessionFactory;
+    private final Dialect dialect;
+    private final ScheduledThreadPoolExecutor deadlineScheduler;
+    private final long h2DefaultLockTimeout;
+    private final Map<OperationClass, AdaptiveConcurrencyLimiter> limiters = new EnumMap<>(OperationClass.class);
 
-    public TransactionHelper(SessionFactory sessionFactory) {
+    /**
+     * @param initialLimit       начальный лимит одновременных транзакций каждого класса
+     * @param minLimit           ниже этого лимит не опускается
+     * @param maxLimit           выше этого лимит не растет; 0 - размер пула соединений
+     * @param queueTimeoutMs     сколько транзакция ждет места в лимите; 0 - отказ сразу
+     * @param readLatencyMs      чтение дольше этого - признак перегрузки
+     * @param writeLatencyMs     запись дольше этого - признак перегрузки
+     */
+    public TransactionHelper(
+            SessionFactory sessionFactory,
+            @Value("${transaction.limit.initial:10}") int initialLimit,
+            @Value("${transaction.limit.min:2}") int minLimit,
+            @Value("${transaction.limit.max:0}") int maxLimit,
+            @Value("${transaction.limit.queue-timeout-ms:1000}") long queueTimeoutMs,
+            @Value("${transaction.limit.read.latency-ms:500}") long readLatencyMs,
+            @Value("${transaction.limit.write.latency-ms:1000}") long writeLatencyMs
+    ) {
         this.sessionFactory = sessionFactory;
+        int resolvedMaxLimit = maxLimit > 0 ? maxLimit : poolSize(sessionFactory);
+        limiters.put(OperationClass.READ, new AdaptiveConcurrencyLimiter(OperationClass.READ,
+                initialLimit, minLimit, resolvedMaxLimit, readLatencyMs, queueTimeoutMs));
+        limiters.put(OperationClass.WRITE, new AdaptiveConcurrencyLimiter(OperationClass.WRITE,
+                initialLimit, minLimit, resolvedMaxLimit, writeLatencyMs, queueTimeoutMs));
+        this.dialect = sessionFactory.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect();
+        this.h2DefaultLockTimeout = dialect instanceof H2Dialect ? readH2LockTimeout(sessionFactory) : 0;
+        this.deadlineScheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "transaction-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        //почти все транзакции успевают до дедлайна - отмененные задачи сразу убираем из очереди
+        deadlineScheduler.setRemoveOnCancelPolicy(true);
     }
 
     /**
@@ -49,29 +147,21 @@ public class TransactionHelper {
      *               5. в случае ошибки - откатываем транзакцию.
      */
     public void executeInTransaction(Consumer<Session> action) {
-        Transaction transaction = null;
-        try (Session session = sessionFactory.getCurrentSession()) {
-//        try (Session session = sessionFactory.openSession()) {
-            transaction = session.getTransaction();
-
-            transaction.begin();
+        executeInTransaction(TransactionOptions.DEFAULT, action);
+    }
 
+    /**
+     * Выполняет действие без результата в транзакции с настройками options (например, с дедлайном).
+     *
+     * @param options настройки транзакции
+     * @param action  действие
+     */
+    public void executeInTransaction(TransactionOptions options, Consumer<Session> action) {
+        executeWithRetry(options, session -> {
             // Выполняем действие в транзакции (наша ЛОГИКА)
             action.accept(session);
-
-            transaction.commit();
-            //session.getTransaction().commit();
-        } catch (Exception e) {
-            //Делаем проверку на null, т.к. транзакция может быть null, потому что
-            //мы не открыли транзакцию, по какой-то причине.
-            //Так мы не получим NullPointerException.
-            if (transaction != null) {
-                transaction.rollback();
-            }
-            //e.printStackTrace();
-            //пробросим исключение на верх
-            throw e;
-        }
+            return null;
+        });
     }
 
     /**
@@ -82,27 +172,19 @@ public class TransactionHelper {
      * @return результат выполнения действия.
      */
     public <T> T executeInTransaction(Function<Session, T> action) {
-        Transaction transaction = null;
-        try (Session session = sessionFactory.getCurrentSession()) {
-//        try (Session session = sessionFactory.openSession()) {
-            transaction = session.getTransaction();
-            transaction.begin();
-
-            var result = action.apply(session);
+        return executeInTransaction(TransactionOptions.DEFAULT, action);
+    }
 
-            transaction.commit();
-//            session.getTransaction().commit();
-            return result;
-        } catch (Exception e) {
-            //Делаем проверку на null, т.к. транзакция может быть null, потому что
-            //мы не открыли транзакцию, по какой-то причине.
-            //Так мы не получим NullPointerException.
-            if (transaction != null) {
-                transaction.rollback();
-            }
-            //пробросим исключение на верх
-            throw e;
-        }
+    /**
+     * Выполняет действие с результатом в транзакции с настройками options (например, с дедлайном).
+     *
+     * @param options настройки транзакции
+     * @param action  действие
+     * @param <T>     тип результата выполнения действия.
+     * @return результат выполнения действия.
+     */
+    public <T> T executeInTransaction(TransactionOptions options, Function<Session, T> action) {
+        return executeWithRetry(options, action);
     }
 
 
@@ -123,6 +205,19 @@ public class TransactionHelper {
      * @return T - результат выполнения действия.
      */
     public <T> T executeInTransaction(Supplier<T> action) {
+        return executeInTransaction(TransactionOptions.DEFAULT, action);
+    }
+
+    /**
+     * Вариант {@link #executeInTransaction(Supplier)} с настройками options. Если транзакция уже открыта,
+     * options не применяются: действие выполняется в ней, под ее дедлайном.
+     *
+     * @param options настройки новой транзакции
+     * @param action  действие
+     * @param <T>     тип результата выполнения действия.
+     * @return результат выполнения действия.
+     */
+    public <T> T executeInTransaction(TransactionOptions options, Supplier<T> action) {
         // получаем текущую сессию
         var session = sessionFactory.getCurrentSession();
         // получаем транзакцию
@@ -134,22 +229,236 @@ public class TransactionHelper {
             return action.get();
         }
         // Иначе запускаем новую транзакцию, т.к. она еще не активна:
+        return executeWithRetry(options, it -> action.get());
+    }
+
+    /**
+     * Выполняет action после завершения текущей транзакции (commit или rollback). Вызывается внутри действия
+     * executeInTransaction: если вызов вложенный, action выполнится после завершения самой внешней транзакции.
+     * <p>
+     * Для сброса кэшей: сброс сразу после вложенного executeInTransaction случился бы до коммита, и другой поток
+     * успел бы положить в кэш еще не закоммиченное (старое) значение.
+     *
+     * @param action действие после завершения транзакции
+     */
+    public void afterCompletion(Runnable action) {
+        Transaction transaction = sessionFactory.getCurrentSession().getTransaction();
+        if (!transaction.isActive()) {
+            throw new IllegalStateException("afterCompletion must be called inside a transaction");
+        }
+        transaction.registerSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * @return текущий лимит, число выполняющихся транзакций и отказы - для каждого класса операций
+     */
+    public Map<OperationClass, ConcurrencyLimiterStats> getLimiterStats() {
+        Map<OperationClass, ConcurrencyLimiterStats> stats = new EnumMap<>(OperationClass.class);
+        limiters.forEach((operationClass, limiter) -> stats.put(operationClass, limiter.getStats()));
+        return stats;
+    }
+
+    @Override
+    public void destroy() {
+        deadlineScheduler.shutdownNow();
+    }
+
+    /**
+     * Транзакция с повторами по {@link TransactionOptions#retryPolicy()}. Каждая попытка - новая сессия
+     * (после rollback сессия, привязанная к потоку, закрывается, и ее сущности устарели) и новое место в лимите:
+     * пауза между попытками место не занимает. Дедлайн один на все попытки.
+     */
+    private <T> T executeWithRetry(TransactionOptions options, Function<Session, T> action) {
+        Deadline deadline = options.timeout() == null ? null : Deadline.after(options.timeout());
+        RetryPolicy retryPolicy = options.retryPolicy();
+        for (int attempt = 1; ; attempt++) {
+            try (Session session = sessionFactory.getCurrentSession()) {
+//            try (Session session = sessionFactory.openSession()) {
+                return execute(session, options, deadline, action);
+            } catch (RuntimeException e) {
+                if (attempt >= retryPolicy.maxAttempts() || !RetryPolicy.isRetryable(e)) {
+                    throw e;
+                }
+                Duration backoff = retryPolicy.backoff(attempt);
+                if (deadline != null && deadline.remaining().compareTo(backoff) <= 0) {
+                    //повтор все равно не успеет
+                    throw e;
+                }
+                log.log(System.Logger.Level.INFO, "Retrying transaction after {0}: attempt={1}, backoff={2}",
+                        e.getMessage(), attempt + 1, backoff);
+                sleep(backoff);
+            }
+        }
+    }
+
+    /**
+     * Место в лимите класса операции, затем транзакция; задержка транзакции пересчитывает лимит.
+     */
+    private <T> T execute(Session session, TransactionOptions options, Deadline deadline,
+                          Function<Session, T> action) {
+        AdaptiveConcurrencyLimiter limiter = limiters.get(options.operationClass());
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire();
+        boolean dropped = false;
+        try {
+            return executeInLimit(session, options, deadline, action);
+        } catch (RuntimeException e) {
+            dropped = isTimeout(e);
+            throw e;
+        } finally {
+            limiter.release(permit, dropped);
+        }
+    }
+
+    /**
+     * Транзакция вокруг action: begin, дедлайн (если задан), commit, при ошибке - rollback.
+     */
+    private <T> T executeInLimit(Session session, TransactionOptions options, Deadline deadline,
+                                 Function<Session, T> action) {
+        Transaction transaction = session.getTransaction();
+        transaction.begin();                // начинаем транзакцию
+        ScheduledFuture<?> cancel = null;
+        boolean lockTimeoutChanged = false;
         try {
-            session.beginTransaction();     // начинаем транзакцию
-            T returnValue = action.get();
+            if (options.isolation() != null) {
+                //до первого запроса транзакции: PostgreSQL не дает менять изоляцию после него. Прежний уровень
+                //восстанавливает пул при возврате соединения (TimingConnectionProvider)
+                int isolation = options.isolation().getJdbcLevel();
+                session.doWork(connection -> connection.setTransactionIsolation(isolation));
+            }
+            if (options.batchMode()) {
+                session.setProperty(PersistenceContextGuard.BATCH_MODE, true);
+            }
+            if (deadline != null) {
+                lockTimeoutChanged = applyTimeouts(session, deadline);
+                cancel = deadlineScheduler.schedule(session::cancelQuery, deadline.remainingMillis(),
+                        TimeUnit.MILLISECONDS);
+            }
+            T result = action.apply(session);
+            if (deadline != null) {
+                //не коммитим то, что уже никто не ждет
+                deadline.check();
+            }
+            //соединение возвращается в пул при commit - настройки H2 возвращаем до него
+            restoreH2LockTimeout(session, lockTimeoutChanged);
             transaction.commit();           // коммитим транзакцию
-            return returnValue;
+            return result;
         } catch (Exception e) {
-            //Делаем проверку на null, т.к. транзакция может быть null, потому что
-            //мы не открыли транзакцию, по какой-то причине.
-            //Так мы не получим NullPointerException.
-            if (transaction != null) {
-                transaction.rollback();     // откатываем транзакцию
+            try {
+                restoreH2LockTimeout(session, lockTimeoutChanged);
+            } catch (RuntimeException restoreFailure) {
+                e.addSuppressed(restoreFailure);
+            }
+            //Откатываем здесь, пока сессия открыта: try-with-resources закрывает ее раньше, чем выполнится
+            //внешний catch, и rollback на закрытой сессии упал бы и спрятал исходное исключение.
+            //Если commit сам уже откатил транзакцию (например, UPDATE с устаревшей версией) - не откатываем.
+            rollback(transaction);
+            if (deadline != null && deadline.isExpired() && !(e instanceof DeadlineExceededException)) {
+                //отмененный запрос или таймаут блокировки - следствие дедлайна
+                throw new DeadlineExceededException(deadline.getTimeout(), e);
             }
             //пробросим исключение на верх
             throw e;
         } finally {
-            session.close();                // закрываем сессию
+            if (cancel != null) {
+                cancel.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Ограничивает запросы и ожидание блокировок оставшимся до дедлайна временем.
+     *
+     * @return true - в H2 изменен LOCK_TIMEOUT соединения, после транзакции его надо вернуть
+     */
+    private boolean applyTimeouts(Session session, Deadline deadline) {
+        long remainingMillis = Math.max(1, deadline.remainingMillis());
+        session.setProperty("jakarta.persistence.query.timeout", (int) Math.min(Integer.MAX_VALUE, remainingMillis));
+        if (dialect instanceof PostgreSQLDialect) {
+            session.doWork(connection -> {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("SET LOCAL lock_timeout = " + remainingMillis);
+                    statement.execute("SET LOCAL statement_timeout = " + remainingMillis);
+                }
+            });
+            return false;
+        }
+        if (dialect instanceof H2Dialect) {
+            //ожидание блокировки в H2 не прерывается отменой запроса, только LOCK_TIMEOUT
+            setH2LockTimeout(session, remainingMillis);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * В H2 нет SET LOCAL: LOCK_TIMEOUT действует на соединение, а соединение вернется в пул. Возвращаем
+     * значение по умолчанию до commit/rollback - после них соединение уже может быть отдано другому потоку.
+     */
+    private void restoreH2LockTimeout(Session session, boolean changed) {
+        if (changed && session.isOpen() && session.getTransaction().isActive()) {
+            setH2LockTimeout(session, h2DefaultLockTimeout);
+        }
+    }
+
+    /**
+     * Транзакцию оборвал таймаут (дедлайн, запрос, ожидание блокировки) - БД не справляется.
+     * Ошибки логики (нет счета, не хватает денег) к перегрузке отношения не имеют.
+     */
+    private static boolean isTimeout(RuntimeException e) {
+        return e instanceof DeadlineExceededException
+                || e instanceof LockAcquisitionException
+                || e instanceof QueryTimeoutException
+                || e instanceof LockTimeoutException
+                || e instanceof jakarta.persistence.QueryTimeoutException;
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to retry transaction", e);
+        }
+    }
+
+    private static int poolSize(SessionFactory sessionFactory) {
+        Object poolSize = sessionFactory.getProperties().get(AvailableSettings.POOL_SIZE);
+        return poolSize == null ? DEFAULT_POOL_SIZE : Integer.parseInt(poolSize.toString());
+    }
+
+    private static long readH2LockTimeout(SessionFactory sessionFactory) {
+        //у всех соединений пула одинаковый URL, а значит и одинаковый LOCK_TIMEOUT по умолчанию
+        try (Session session = sessionFactory.openSession()) {
+            return session.doReturningWork(connection -> {
+                try (Statement statement = connection.createStatement();
+                     ResultSet resultSet = statement.executeQuery("SELECT LOCK_TIMEOUT()")) {
+                    resultSet.next();
+                    return resultSet.getLong(1);
+                }
+            });
+        }
+    }
+
+    private static void setH2LockTimeout(Session session, long lockTimeout) {
+        session.doWork(connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET LOCK_TIMEOUT " + lockTimeout);
+            }
+        });
+    }
+
+    private static void rollback(Transaction transaction) {
+        if (transaction.getStatus().canRollback()) {
+            transaction.rollback();
         }
     }
 }
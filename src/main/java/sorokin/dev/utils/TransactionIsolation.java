@@ -0,0 +1,34 @@
+package sorokin.dev.utils;
+
+import java.sql.Connection;
+
+/**
+ * Уровень изоляции транзакции {@link TransactionHelper}.
+ * <ul>
+ *     <li>READ_COMMITTED - умолчание PostgreSQL и H2: каждый запрос видит данные, закоммиченные до его начала.
+ *     Два перевода могут прочитать один и тот же баланс и оба записать свой результат (потерянное обновление),
+ *     если строки не заблокированы;</li>
+ *     <li>REPEATABLE_READ - вся транзакция видит один снимок; изменение строки, которую параллельно изменила
+ *     другая транзакция, в PostgreSQL падает с 40001;</li>
+ *     <li>SERIALIZABLE - результат как при последовательном выполнении; любая аномалия - ошибка 40001,
+ *     и транзакцию нужно повторить целиком ({@link RetryPolicy}).</li>
+ * </ul>
+ */
+public enum TransactionIsolation {
+    READ_COMMITTED(Connection.TRANSACTION_READ_COMMITTED),
+    REPEATABLE_READ(Connection.TRANSACTION_REPEATABLE_READ),
+    SERIALIZABLE(Connection.TRANSACTION_SERIALIZABLE);
+
+    private final int jdbcLevel;
+
+    TransactionIsolation(int jdbcLevel) {
+        this.jdbcLevel = jdbcLevel;
+    }
+
+    /**
+     * @return константа java.sql.Connection.TRANSACTION_*
+     */
+    public int getJdbcLevel() {
+        return jdbcLevel;
+    }
+}
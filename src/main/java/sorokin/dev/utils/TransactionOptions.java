@@ -0,0 +1,59 @@
+package sorokin.dev.utils;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Настройки одной единицы работы в {@link TransactionHelper}. Собираются от {@link #DEFAULT}:
+ * {@code TransactionOptions.DEFAULT.withTimeout(Duration.ofSeconds(5)).forOperation(OperationClass.READ)}.
+ *
+ * @param timeout        сколько всего может занять транзакция вместе с commit и повторами; null - без ограничения
+ * @param operationClass в лимит каких транзакций (чтений или записей) она входит
+ * @param isolation      уровень изоляции; null - уровень соединения по умолчанию
+ * @param retryPolicy    повторы после ошибки сериализации или взаимной блокировки
+ * @param batchMode      пакетная обработка: сессия очищается при batch-size сущностей
+ *                       (см. {@link sorokin.dev.session.PersistenceContextGuard})
+ */
+public record TransactionOptions(
+        Duration timeout,
+        OperationClass operationClass,
+        TransactionIsolation isolation,
+        RetryPolicy retryPolicy,
+        boolean batchMode
+) {
+
+    /**
+     * Без таймаута, запись, изоляция по умолчанию, без повторов, не пакетная обработка: так работают методы {@link TransactionHelper}
+     * без TransactionOptions.
+     */
+    public static final TransactionOptions DEFAULT = new TransactionOptions(null, OperationClass.WRITE, null,
+            RetryPolicy.NONE, false);
+
+    public TransactionOptions {
+        if (timeout != null && (timeout.isNegative() || timeout.isZero())) {
+            throw new IllegalArgumentException("Transaction timeout must be positive: timeout=%s".formatted(timeout));
+        }
+        Objects.requireNonNull(operationClass, "operationClass");
+        Objects.requireNonNull(retryPolicy, "retryPolicy");
+    }
+
+    public TransactionOptions withTimeout(Duration timeout) {
+        return new TransactionOptions(timeout, operationClass, isolation, retryPolicy, batchMode);
+    }
+
+    public TransactionOptions forOperation(OperationClass operationClass) {
+        return new TransactionOptions(timeout, operationClass, isolation, retryPolicy, batchMode);
+    }
+
+    public TransactionOptions withIsolation(TransactionIsolation isolation) {
+        return new TransactionOptions(timeout, operationClass, isolation, retryPolicy, batchMode);
+    }
+
+    public TransactionOptions withRetry(RetryPolicy retryPolicy) {
+        return new TransactionOptions(timeout, operationClass, isolation, retryPolicy, batchMode);
+    }
+
+    public TransactionOptions inBatchMode() {
+        return new TransactionOptions(timeout, operationClass, isolation, retryPolicy, true);
+    }
+}
@@ -0,0 +1,81 @@
+-- Начальная схема БД. Раньше ее создавал Hibernate (hibernate.hbm2ddl.auto=create-drop),
+-- теперь схема ведется миграциями, а Hibernate только проверяет маппинг (validate).
+-- Скрипт общий для PostgreSQL и H2.
+--
+-- Кроме первичных ключей и users.login, индексы добавлены на все внешние ключи
+-- (join-ы и каскадные удаления не делают полный проход по таблице) и на students.name
+-- (поиск студента по имени).
+
+create table users
+(
+    id    bigint generated by default as identity primary key,
+    login varchar(255) not null,
+    constraint uk_users_login unique (login)
+);
+
+create table accounts
+(
+    id           bigint generated by default as identity primary key,
+    user_id      bigint,
+    money_amount integer,
+    constraint fk_accounts_user foreign key (user_id) references users (id)
+);
+
+create index idx_accounts_user_id on accounts (user_id);
+
+create table student_group
+(
+    id        bigint generated by default as identity primary key,
+    number    varchar(255),
+    grad_year bigint
+);
+
+create table students
+(
+    id          bigint generated by default as identity primary key,
+    name        varchar(255) not null,
+    student_age integer,
+    group_id    bigint,
+    constraint fk_students_group foreign key (group_id) references student_group (id)
+);
+
+create index idx_students_group_id on students (group_id);
+create index idx_students_name on students (name);
+
+-- Уникальный индекс на student_id одновременно служит индексом внешнего ключа.
+create table profiles
+(
+    id             bigint generated by default as identity primary key,
+    bio            varchar(255),
+    last_seen_time timestamp(6),
+    student_id     bigint,
+    constraint uk_profiles_student unique (student_id),
+    constraint fk_profiles_student foreign key (student_id) references students (id)
+);
+
+create table courses
+(
+    id   bigint generated by default as identity primary key,
+    name varchar(255),
+    type varchar(255)
+);
+
+-- Первичный ключ (student_id, course_id) не дает записать студента на курс дважды
+-- и покрывает поиск курсов студента. Для поиска студентов курса нужен индекс по course_id.
+create table student_courses
+(
+    student_id bigint not null,
+    course_id  bigint not null,
+    constraint pk_student_courses primary key (student_id, course_id),
+    constraint fk_student_courses_student foreign key (student_id) references students (id),
+    constraint fk_student_courses_course foreign key (course_id) references courses (id)
+);
+
+create index idx_student_courses_course_id on student_courses (course_id);
+
+create table log_entries
+(
+    id         bigint generated by default as identity primary key,
+    message    varchar(255),
+    created_at timestamp(6)
+);
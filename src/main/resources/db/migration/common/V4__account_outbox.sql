@@ -0,0 +1,15 @@
+-- Outbox событий по счетам: AccountService пишет сюда в той же транзакции, что и изменение accounts,
+-- AccountOutboxRelay читает пачками и удаляет отправленное.
+-- id из последовательности с шагом 50 (allocationSize в маппинге): Hibernate берет из нее 50 id за один
+-- запрос, поэтому INSERT можно отправлять JDBC batch. С identity каждый INSERT - отдельный запрос.
+create sequence account_outbox_seq start with 1 increment by 50;
+
+create table account_outbox
+(
+    id                 bigint       not null primary key,
+    event_type         varchar(20)  not null,
+    account_id         bigint       not null,
+    related_account_id bigint,
+    amount             integer      not null,
+    created_at         timestamp(6) not null
+);
@@ -0,0 +1,36 @@
+-- Сводные таблицы (их заполняет приложение, см. RosterSummaryService) для списков групп и записи на курсы.
+-- Перестраиваются целиком одной транзакцией, читаются одним запросом без join.
+
+-- Состав групп: строка на студента, для пустой группы - одна строка с student_id = null.
+create table group_roster_summary
+(
+    group_id               bigint       not null,
+    group_number           varchar(255),
+    grad_year              bigint,
+    student_id             bigint,
+    student_name           varchar(255),
+    student_age            integer,
+    profile_last_seen_time timestamp(6)
+);
+
+create index idx_group_roster_summary_group on group_roster_summary (group_id);
+
+-- Количество студентов на каждом курсе.
+create table course_enrollment_summary
+(
+    course_id     bigint primary key,
+    course_name   varchar(255),
+    course_type   varchar(255),
+    student_count bigint not null
+);
+
+-- Когда сводные таблицы последний раз перестраивались. Строка блокируется на время перестройки,
+-- чтобы несколько экземпляров приложения не перестраивали их одновременно.
+create table summary_refresh
+(
+    name         varchar(50) primary key,
+    refreshed_at timestamp(6) not null
+);
+
+insert into summary_refresh (name, refreshed_at)
+values ('rosters', timestamp '1970-01-01 00:00:00');
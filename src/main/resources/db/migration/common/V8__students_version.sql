@@ -0,0 +1,4 @@
+-- Версия строки студента для оптимистической блокировки (@Version в Student):
+-- UPDATE ... WHERE id = ? AND version = ? не затирает изменения, сделанные после того, как студента прочитали.
+-- Существующие строки начинают с версии 0.
+alter table students add column version bigint default 0 not null;
@@ -0,0 +1,4 @@
+-- profiles.bio и log_entries.message могут быть большими: снимаем ограничение в 255 символов
+-- (character varying без длины в H2 - максимальная длина строки).
+alter table profiles alter column bio set data type character varying;
+alter table log_entries alter column message set data type character varying;
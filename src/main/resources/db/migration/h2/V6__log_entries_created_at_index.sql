@@ -0,0 +1,3 @@
+-- В H2 секционирования нет: только индекс для запросов за период.
+-- Старые строки удаляет LogRetentionService обычным DELETE.
+create index idx_log_entries_created_at on log_entries (created_at);
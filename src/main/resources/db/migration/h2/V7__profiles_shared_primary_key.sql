@@ -0,0 +1,20 @@
+-- Профиль получает общий первичный ключ со студентом: profiles.id = students.id (@MapsId в Profile).
+-- Колонка student_id больше не нужна, а id профиля теперь одновременно PK и FK на students.
+-- Профили без студента (student_id is null) при общем ключе существовать не могут и не переносятся.
+create table profiles_new
+(
+    id             bigint not null,
+    bio            character varying,
+    last_seen_time timestamp(6)
+);
+
+insert into profiles_new (id, bio, last_seen_time)
+select student_id, bio, last_seen_time
+from profiles
+where student_id is not null;
+
+drop table profiles;
+alter table profiles_new rename to profiles;
+
+alter table profiles add constraint pk_profiles primary key (id);
+alter table profiles add constraint fk_profiles_student foreign key (id) references students (id);
@@ -0,0 +1,3 @@
+-- profiles.bio и log_entries.message могут быть большими: снимаем ограничение в 255 символов.
+alter table profiles alter column bio type text;
+alter table log_entries alter column message type text;
@@ -0,0 +1,9 @@
+-- Индексы для поиска SearchService по students.name, courses.name и profiles.bio.
+-- GIN по to_tsvector('simple', ...): выражение должно совпадать с выражением в запросе буква в букву,
+-- иначе PostgreSQL не использует индекс. Конфигурация 'simple' не делает стемминг, а только
+-- приводит слова к нижнему регистру: имена и названия не нужно сводить к основе слова.
+-- Запрос (PostgresSearchBackend) всегда строится через to_tsquery('simple', ...): целые слова - 'ivan & petrov',
+-- начало последнего слова для подсказок при вводе - 'ivan & pet:*'. Индекс работает для обоих вариантов.
+create index idx_students_name_tsv on students using gin (to_tsvector('simple', name));
+create index idx_courses_name_tsv on courses using gin (to_tsvector('simple', name));
+create index idx_profiles_bio_tsv on profiles using gin (to_tsvector('simple', bio));
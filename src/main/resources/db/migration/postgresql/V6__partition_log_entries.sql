@@ -0,0 +1,58 @@
+-- log_entries секционируется по created_at: секция на каждый месяц (log_entries_YYYY_MM).
+-- Запрос за период читает только нужные секции, а старый месяц удаляется целиком (DROP/DETACH секции)
+-- вместо DELETE по миллионам строк. Новые секции заранее создает LogRetentionService.
+--
+-- Identity-колонку на секционированной таблице PostgreSQL до 17 версии не поддерживает, поэтому id
+-- берется из обычной последовательности. Первичный ключ обязан включать ключ секционирования.
+
+alter table log_entries rename to log_entries_unpartitioned;
+alter table log_entries_unpartitioned rename constraint log_entries_pkey to log_entries_unpartitioned_pkey;
+
+create sequence log_entries_seq;
+
+create table log_entries
+(
+    id         bigint       not null default nextval('log_entries_seq'),
+    message    text,
+    created_at timestamp(6) not null default localtimestamp,
+    primary key (id, created_at)
+) partition by range (created_at);
+
+alter sequence log_entries_seq owned by log_entries.id;
+
+-- сюда попадают строки, для месяца которых секции нет (не должно происходить, см. LogRetentionService)
+create table log_entries_default partition of log_entries default;
+
+create index idx_log_entries_created_at on log_entries (created_at);
+
+-- секции для уже записанных строк и на два месяца вперед
+do
+$$
+    declare
+        month_start date;
+        last_month  date;
+    begin
+        select coalesce(date_trunc('month', min(created_at)), date_trunc('month', localtimestamp))::date,
+               greatest(date_trunc('month', localtimestamp) + interval '2 month',
+                        coalesce(date_trunc('month', max(created_at)), localtimestamp))::date
+        into month_start, last_month
+        from log_entries_unpartitioned;
+
+        while month_start <= last_month
+            loop
+                execute format('create table %I partition of log_entries for values from (%L) to (%L)',
+                               'log_entries_' || to_char(month_start, 'YYYY_MM'),
+                               month_start,
+                               (month_start + interval '1 month')::date);
+                month_start := (month_start + interval '1 month')::date;
+            end loop;
+    end
+$$;
+
+insert into log_entries (id, message, created_at)
+select id, message, coalesce(created_at, localtimestamp)
+from log_entries_unpartitioned;
+
+select setval('log_entries_seq', coalesce((select max(id) from log_entries), 0) + 1, false);
+
+drop table log_entries_unpartitioned;
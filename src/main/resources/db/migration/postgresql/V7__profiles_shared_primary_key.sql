@@ -0,0 +1,25 @@
+-- Профиль получает общий первичный ключ со студентом: profiles.id = students.id (@MapsId в Profile).
+-- Колонка student_id больше не нужна, а id профиля теперь одновременно PK и FK на students.
+--
+-- Таблица пересобирается: новые id профилей = student_id. Профили без студента (student_id is null)
+-- при общем ключе существовать не могут и не переносятся. Внешние ссылки на старые id профилей
+-- (например, отметки ProfileLastSeenService, накопленные до перезапуска) после миграции указывают на id студента.
+create table profiles_new
+(
+    id             bigint not null,
+    bio            text,
+    last_seen_time timestamp(6)
+);
+
+insert into profiles_new (id, bio, last_seen_time)
+select student_id, bio, last_seen_time
+from profiles
+where student_id is not null;
+
+drop table profiles;
+alter table profiles_new rename to profiles;
+
+alter table profiles add constraint pk_profiles primary key (id);
+alter table profiles add constraint fk_profiles_student foreign key (id) references students (id);
+-- индекс полнотекстового поиска (V3) удален вместе со старой таблицей
+create index idx_profiles_bio_tsv on profiles using gin (to_tsvector('simple', bio));
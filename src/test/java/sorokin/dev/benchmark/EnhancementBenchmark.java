@@ -0,0 +1,118 @@
+package sorokin.dev.benchmark;
+
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.spi.ManagedEntity;
+import org.junit.jupiter.api.*;
+import sorokin.dev.config.EntityRegistry;
+import sorokin.dev.config.HibernateBootstrap;
+import sorokin.dev.config.TestHibernateConfiguration;
+import sorokin.dev.entity.Profile;
+import sorokin.dev.entity.Student;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Бенчмарк bytecode enhancement: время flush и память большой сессии с профилями.
+ * <p>
+ * Не запускается вместе с обычными тестами (имя класса не заканчивается на Test). Запуск и сравнение:
+ * <pre>
+ * mvn clean test -Dtest=EnhancementBenchmark -Dsurefire.failIfNoSpecifiedTests=false
+ * mvn clean test -Dtest=EnhancementBenchmark -Dsurefire.failIfNoSpecifiedTests=false -DskipEnhance
+ * </pre>
+ * Что меряем:
+ * <ul>
+ *     <li>flush - в сессии {@link #PROFILES} управляемых профилей, изменен 1%. Без enhancement Hibernate
+ *     сравнивает со снимком все поля всех профилей, с dirty tracking - проверяет только измененные;</li>
+ *     <li>память - сколько занимает сессия с загруженными профилями и сколько символов bio в нее загружено.
+ *     С enhancement большое поле bio ленивое и не загружается. H2 в памяти отдает в entity те же объекты
+ *     String, в которых сама хранит данные, поэтому на H2 разница видна в loadedBio, а не в sessionHeap.
+ *     С PostgreSQL каждая загруженная строка - это новая копия в heap.</li>
+ * </ul>
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class EnhancementBenchmark {
+
+    private static final int PROFILES = 20_000;
+    private static final int BIO_LENGTH = 2_000;
+    private static final int ITERATIONS = 5;
+
+    private TestHibernateConfiguration configuration;
+    private HibernateBootstrap hibernateBootstrap;
+    private SessionFactory sessionFactory;
+
+    @BeforeAll
+    public void setup() {
+        configuration = new TestHibernateConfiguration();
+        configuration.flyway();
+        Map<String, Object> settings = configuration.hibernateSettings();
+        settings.put("hibernate.show_sql", "false");
+        hibernateBootstrap = new HibernateBootstrap(settings, EntityRegistry.ENTITIES, false);
+        sessionFactory = hibernateBootstrap.buildSessionFactory("benchmark");
+
+        //У каждого профиля свой текст: одинаковые строки H2 может отдавать одним и тем же объектом.
+        String bio = "b".repeat(BIO_LENGTH);
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            session.beginTransaction();
+            for (int i = 0; i < PROFILES; i++) {
+                //профиль хранится под id студента (@MapsId), поэтому у каждого профиля свой студент
+                Student student = new Student("Student " + i, 20, null);
+                session.insert(student);
+                session.insert(new Profile(i + bio, LocalDateTime.now(), student));
+            }
+            session.getTransaction().commit();
+        }
+    }
+
+    @AfterAll
+    public void tearDown() throws Exception {
+        sessionFactory.close();
+        hibernateBootstrap.close();
+        configuration.destroy();
+    }
+
+    @Test
+    public void flushAndMemory() {
+        System.out.printf("enhanced=%s, profiles=%s, bio=%s chars%n",
+                ManagedEntity.class.isAssignableFrom(Profile.class), PROFILES, BIO_LENGTH);
+        for (int iteration = 1; iteration <= ITERATIONS; iteration++) {
+            long heapBefore = usedHeap();
+            try (Session session = sessionFactory.openSession()) {
+                session.beginTransaction();
+                List<Profile> profiles = session.createQuery("SELECT p FROM Profile p", Profile.class).list();
+                long heapAfterLoad = usedHeap();
+                long loadedBioChars = profiles.stream()
+                        .filter(profile -> Hibernate.isPropertyInitialized(profile, "bio"))
+                        .mapToLong(profile -> profile.getBio().length())
+                        .sum();
+
+                //flush без изменений - чистая стоимость поиска изменений (dirty checking)
+                long start = System.nanoTime();
+                session.flush();
+                long cleanFlushMicros = (System.nanoTime() - start) / 1_000;
+
+                for (int i = 0; i < profiles.size(); i += 100) {
+                    profiles.get(i).setLastSeenTime(LocalDateTime.now());
+                }
+                start = System.nanoTime();
+                session.flush();
+                long dirtyFlushMicros = (System.nanoTime() - start) / 1_000;
+                session.getTransaction().rollback();
+
+                System.out.printf("iteration=%s cleanFlush=%sus dirtyFlush(1%%)=%sus sessionHeap=%sKB loadedBio=%sKB%n",
+                        iteration, cleanFlushMicros, dirtyFlushMicros,
+                        (heapAfterLoad - heapBefore) / 1024, loadedBioChars / 1024);
+            }
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,113 @@
+package sorokin.dev.benchmark;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.spi.ManagedEntity;
+import org.junit.jupiter.api.*;
+import sorokin.dev.config.EntityRegistry;
+import sorokin.dev.config.HibernateBootstrap;
+import sorokin.dev.config.TestHibernateConfiguration;
+import sorokin.dev.entity.Profile;
+import sorokin.dev.entity.Student;
+import sorokin.dev.sql.SqlExecutionListener;
+import sorokin.dev.sql.TimingConnectionProvider;
+import sorokin.dev.utils.MultiLoadHelper;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Бенчмарк загрузки списка студентов: сколько SQL-запросов уходит на список и сколько это стоит по времени.
+ * <p>
+ * Не запускается вместе с обычными тестами (имя класса не заканчивается на Test). Запуск и сравнение:
+ * <pre>
+ * mvn clean test -Dtest=StudentListQueryBenchmark -Dsurefire.failIfNoSpecifiedTests=false
+ * mvn clean test -Dtest=StudentListQueryBenchmark -Dsurefire.failIfNoSpecifiedTests=false -DskipEnhance
+ * </pre>
+ * У каждого из {@link #STUDENTS} студентов есть профиль (общий первичный ключ, {@code @MapsId}). Что меряем:
+ * <ul>
+ *     <li>studentsOnly - "SELECT s FROM Student s". С enhancement {@link Student#getProfile()} ленивый - 1 запрос
+ *     на список. Без enhancement связь со стороны mappedBy загружается сразу и по одной - N+1 запрос, так же
+ *     работала прежняя схема с profiles.student_id;</li>
+ *     <li>joinFetch - студенты сразу с профилями "left join fetch s.profile" - 1 запрос;</li>
+ *     <li>profilesById - студенты, потом их профили по тем же id (multiLoad пачками) - 1 + N / batch запросов.</li>
+ * </ul>
+ * Курсы студентов (EAGER, @Fetch(SUBSELECT)) в каждом варианте добавляют еще 1 запрос, в счетчике он учтен.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class StudentListQueryBenchmark {
+
+    private static final int STUDENTS = 2_000;
+    private static final int ITERATIONS = 5;
+
+    private TestHibernateConfiguration configuration;
+    private HibernateBootstrap hibernateBootstrap;
+    private SessionFactory sessionFactory;
+    private TimingConnectionProvider timingConnectionProvider;
+
+    @BeforeAll
+    public void setup() {
+        configuration = new TestHibernateConfiguration();
+        configuration.flyway();
+        timingConnectionProvider = new TimingConnectionProvider();
+        Map<String, Object> settings = configuration.hibernateSettings();
+        settings.put(AvailableSettings.CONNECTION_PROVIDER, timingConnectionProvider);
+        hibernateBootstrap = new HibernateBootstrap(settings, EntityRegistry.ENTITIES, false);
+        sessionFactory = hibernateBootstrap.buildSessionFactory("benchmark");
+
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            session.beginTransaction();
+            for (int i = 0; i < STUDENTS; i++) {
+                Student student = new Student("Student " + i, 20, null);
+                session.insert(student);
+                session.insert(new Profile("bio " + i, LocalDateTime.now(), student));
+            }
+            session.getTransaction().commit();
+        }
+    }
+
+    @AfterAll
+    public void tearDown() throws Exception {
+        sessionFactory.close();
+        hibernateBootstrap.close();
+        configuration.destroy();
+    }
+
+    @Test
+    public void queriesPerStudentList() {
+        System.out.printf("enhanced=%s, students=%s%n", ManagedEntity.class.isAssignableFrom(Student.class), STUDENTS);
+        for (int iteration = 1; iteration <= ITERATIONS; iteration++) {
+            measure(iteration, "studentsOnly", session -> session
+                    .createQuery("SELECT s FROM Student s", Student.class)
+                    .list());
+            measure(iteration, "joinFetch", session -> session
+                    .createQuery("SELECT s FROM Student s left join fetch s.profile", Student.class)
+                    .list());
+            measure(iteration, "profilesById", session -> {
+                List<Student> students = session.createQuery("SELECT s FROM Student s", Student.class).list();
+                MultiLoadHelper.findAllByIds(session, Profile.class, students.stream().map(Student::getId).toList());
+                return students;
+            });
+        }
+    }
+
+    private void measure(int iteration, String name, Function<Session, List<Student>> load) {
+        AtomicInteger statements = new AtomicInteger();
+        SqlExecutionListener listener = execution -> statements.incrementAndGet();
+        timingConnectionProvider.addListener(listener);
+        try (Session session = sessionFactory.openSession()) {
+            long start = System.nanoTime();
+            List<Student> students = load.apply(session);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("iteration=%s %-12s students=%s statements=%s time=%sms%n",
+                    iteration, name, students.size(), statements.get(), millis);
+        } finally {
+            timingConnectionProvider.removeListener(listener);
+        }
+    }
+}
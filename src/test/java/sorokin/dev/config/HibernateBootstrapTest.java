@@ -0,0 +1,66 @@
+package sorokin.dev.config;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import sorokin.dev.entity.Student;
+import sorokin.dev.session.SessionLeakExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SessionLeakExtension.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class HibernateBootstrapTest {
+
+    private AnnotationConfigApplicationContext context;
+    private HibernateBootstrap hibernateBootstrap;
+
+    @BeforeAll
+    public void setup() {
+        context = new AnnotationConfigApplicationContext(TestHibernateConfiguration.class);
+        hibernateBootstrap = context.getBean(HibernateBootstrap.class);
+    }
+
+    @AfterAll
+    public void tearDown() {
+        context.close();
+    }
+
+    @Test
+    @DisplayName("Время каждого этапа запуска Hibernate сохраняется")
+    public void testPhasesAreRecorded() {
+        List<String> phaseNames = hibernateBootstrap.getPhases().stream()
+                .map(BootstrapPhase::name)
+                .toList();
+
+        assertEquals(
+                List.of("service-registry", "metadata-sources", "enhancement-check",
+                        "metadata:sessionFactory", "session-factory:sessionFactory"),
+                phaseNames.subList(0, 5)
+        );
+        assertTrue(hibernateBootstrap.getTotalDuration().toNanos() > 0);
+    }
+
+    @Test
+    @DisplayName("На одном ServiceRegistry создается несколько SessionFactory, закрытие одной не ломает другую")
+    public void testSeveralSessionFactoriesFromOneMetadata() {
+        SessionFactory first = context.getBean(SessionFactory.class);
+        SessionFactory second = hibernateBootstrap.buildSessionFactory("second");
+
+        try (Session session = second.openSession()) {
+            session.beginTransaction();
+            session.persist(new Student("From second factory", 20, null));
+            session.getTransaction().commit();
+        }
+        second.close();
+
+        try (Session session = first.openSession()) {
+            Long count = session.createQuery("SELECT count(s) FROM Student s", Long.class).getSingleResult();
+            assertEquals(1L, count);
+        }
+    }
+}
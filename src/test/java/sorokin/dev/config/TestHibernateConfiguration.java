@@ -1,12 +1,104 @@
 package sorokin.dev.config;
 
+import org.flywaydb.core.Flyway;
 import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import sorokin.dev.entity.*;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.core.env.Environment;
+import sorokin.dev.events.EntityChangeIntegrator;
+import sorokin.dev.events.EntityChangeStream;
+import sorokin.dev.session.PersistenceContextGuard;
+import sorokin.dev.session.PersistenceContextGuardIntegrator;
+import sorokin.dev.session.SessionLeakDetector;
+import sorokin.dev.sql.TimingConnectionProvider;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 @Configuration
-public class TestHibernateConfiguration {
+public class TestHibernateConfiguration implements DisposableBean {
+
+    /**
+     * У каждого тестового контекста своя БД в памяти. DB_CLOSE_DELAY=-1 - БД не удаляется, когда закрывается
+     * последнее соединение (между миграциями и стартом Hibernate соединений нет). Удаляем ее сами в {@link #destroy()}.
+     */
+    private final String url = "jdbc:h2:mem:testdb-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+
+    @Bean
+    public Flyway flyway() {
+        Flyway flyway = SchemaMigration.flyway(url, "sa", "");
+        flyway.migrate();
+        return flyway;
+    }
+
+    public Map<String, Object> hibernateSettings() {
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        settings.put("hibernate.connection.driver_class", "org.h2.Driver");
+        settings.put("hibernate.connection.url", url);
+        settings.put("hibernate.connection.username", "sa");
+        settings.put("hibernate.connection.password", "");
+        settings.put("hibernate.hbm2ddl.auto", "validate");
+        settings.put("hibernate.show_sql", "false");
+        settings.put("hibernate.current_session_context_class", "thread");
+        settings.put("hibernate.jdbc.batch_size", "50");
+        settings.put("hibernate.order_updates", "true");
+        settings.put("hibernate.query.startup_check", "true");
+        settings.put("hibernate.query.plan_cache_max_size", "512");
+        settings.put("hibernate.generate_statistics", "true");
+        return settings;
+    }
+
+    @Bean
+    public EntityChangeStream entityChangeStream() {
+        return new EntityChangeStream();
+    }
+
+    @Bean
+    public PersistenceContextGuard persistenceContextGuard(
+            @Value("${persistence-context.warn-threshold:10000}") int warnThreshold,
+            @Value("${persistence-context.batch-size:1000}") int batchSize
+    ) {
+        return new PersistenceContextGuard(warnThreshold, batchSize);
+    }
+
+    @Bean
+    public static SessionLeakDetector sessionLeakDetector(Environment environment) {
+        return new SessionLeakDetector(
+                Duration.ofMillis(environment.getProperty("session.leak.threshold-ms", Long.class, 60000L)),
+                environment.getProperty("session.leak.stack-sample-rate", Double.class, 1.0),
+                Duration.ofMillis(environment.getProperty("session.leak.check-interval-ms", Long.class, 0L)));
+    }
+
+    @Bean
+    public TimingConnectionProvider timingConnectionProvider() {
+        return new TimingConnectionProvider();
+    }
+
+    @Bean
+    @DependsOn("flyway")
+    public HibernateBootstrap hibernateBootstrap(
+            EntityChangeStream entityChangeStream,
+            PersistenceContextGuard persistenceContextGuard,
+            TimingConnectionProvider timingConnectionProvider
+    ) {
+        Map<String, Object> settings = hibernateSettings();
+        settings.put(AvailableSettings.CONNECTION_PROVIDER, timingConnectionProvider);
+        return new HibernateBootstrap(settings, EntityRegistry.ENTITIES, false,
+                List.of(new EntityChangeIntegrator(entityChangeStream, EntityRegistry.CHANGE_STREAM_ENTITIES),
+                        new PersistenceContextGuardIntegrator(persistenceContextGuard)));
+    }
 
     /**
      * TestConfig с H2
@@ -14,24 +106,16 @@ public class TestHibernateConfiguration {
      * @return SessionFactory
      */
     @Bean
-    public SessionFactory sessionFactory() {
-        org.hibernate.cfg.Configuration configuration = new org.hibernate.cfg.Configuration();
-        configuration
-                .addAnnotatedClass(Student.class)
-                .addAnnotatedClass(Profile.class)
-                .addAnnotatedClass(Group.class)
-                .addAnnotatedClass(Course.class)
-                .addAnnotatedClass(User.class)
-                .addAnnotatedClass(Account.class)
-                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
-                .setProperty("hibernate.connection.driver_class", "org.h2.Driver")
-                .setProperty("hibernate.connection.url", "jdbc:h2:mem:testdb")
-                .setProperty("hibernate.connection.username", "sa")
-                .setProperty("hibernate.connection.password", "")
-                .setProperty("hibernate.hbm2ddl.auto", "create-drop")
-                .setProperty("hibernate.show_sql", "true")
-                .setProperty("hibernate.current_session_context_class", "thread");
-        return configuration.buildSessionFactory();
-    }
-
-}
\ No newline at end of file
+    public SessionFactory sessionFactory(HibernateBootstrap hibernateBootstrap) {
+        return hibernateBootstrap.buildSessionFactory("sessionFactory");
+    }
+
+    @Override
+    public void destroy() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("SHUTDOWN");
+        }
+    }
+
+}
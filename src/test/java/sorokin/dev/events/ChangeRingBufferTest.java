@@ -0,0 +1,88 @@
+package sorokin.dev.events;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeRingBufferTest {
+
+    private static final Duration WAIT = Duration.ofMillis(10);
+
+    @Test
+    @DisplayName("Читатель получает значения в порядке резервирования, а не заполнения")
+    public void testReadsInReservationOrder() throws Exception {
+        ChangeRingBuffer<String> buffer = new ChangeRingBuffer<>(4);
+        long first = buffer.reserve(WAIT);
+        long second = buffer.reserve(WAIT);
+        long third = buffer.reserve(WAIT);
+
+        buffer.publish(third, "third");
+        buffer.publish(second, "second");
+        //первая ячейка еще не заполнена - читать дальше нельзя
+        assertNull(buffer.poll(WAIT));
+
+        buffer.abort(first);
+        assertNull(buffer.poll(WAIT));
+        assertEquals("second", buffer.poll(WAIT));
+        assertEquals("third", buffer.poll(WAIT));
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    @DisplayName("Полный буфер: писатель ждет, а по таймауту получает ошибку")
+    public void testBackpressure() throws Exception {
+        ChangeRingBuffer<String> buffer = new ChangeRingBuffer<>(2);
+        buffer.publish(buffer.reserve(WAIT), "1");
+        buffer.publish(buffer.reserve(WAIT), "2");
+
+        assertThrows(TimeoutException.class, () -> buffer.reserve(Duration.ofMillis(20)));
+        assertEquals(1, buffer.backpressureWaits());
+
+        assertEquals("1", buffer.poll(WAIT));
+        buffer.publish(buffer.reserve(WAIT), "3");
+        assertEquals("2", buffer.poll(WAIT));
+        assertEquals("3", buffer.poll(WAIT));
+    }
+
+    @Test
+    @DisplayName("Несколько писателей: читатель получает все значения, каждый писатель - в своем порядке")
+    public void testManyWriters() throws Exception {
+        int writers = 4;
+        int valuesPerWriter = 10_000;
+        ChangeRingBuffer<int[]> buffer = new ChangeRingBuffer<>(64);
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        for (int writer = 0; writer < writers; writer++) {
+            int writerId = writer;
+            executor.submit(() -> {
+                for (int i = 0; i < valuesPerWriter; i++) {
+                    buffer.publish(buffer.reserve(Duration.ofSeconds(10)), new int[]{writerId, i});
+                }
+                return null;
+            });
+        }
+
+        List<Integer> lastValues = new ArrayList<>(List.of(-1, -1, -1, -1));
+        int received = 0;
+        while (received < writers * valuesPerWriter) {
+            int[] value = buffer.poll(WAIT);
+            if (value == null) {
+                continue;
+            }
+            assertEquals(lastValues.get(value[0]) + 1, value[1]);
+            lastValues.set(value[0], value[1]);
+            received++;
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(0, buffer.size());
+    }
+}
@@ -0,0 +1,170 @@
+package sorokin.dev.events;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import sorokin.dev.config.TestHibernateConfiguration;
+import sorokin.dev.entity.Account;
+import sorokin.dev.entity.Student;
+import sorokin.dev.entity.User;
+import sorokin.dev.service.*;
+import sorokin.dev.session.SessionLeakExtension;
+import sorokin.dev.utils.TransactionHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SessionLeakExtension.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class EntityChangeStreamTest {
+
+    private AnnotationConfigApplicationContext context;
+    private EntityChangeStream entityChangeStream;
+    private AccountService accountService;
+    private UserService userService;
+    private StudentService studentService;
+    private TransactionHelper transactionHelper;
+    private final BlockingQueue<EntityChangeBatch> batches = new LinkedBlockingQueue<>();
+    private final EntityChangeSubscriber subscriber = batches::add;
+
+    @BeforeAll
+    public void setup() {
+        context = new AnnotationConfigApplicationContext();
+        context.register(
+                TestHibernateConfiguration.class,
+                TransactionHelper.class,
+                EntitySnapshotCaches.class,
+                AccountService.class,
+                UserService.class,
+                StudentService.class
+        );
+        context.registerBean(AccountProperties.class, () -> new AccountProperties(500, 0));
+        context.refresh();
+        entityChangeStream = context.getBean(EntityChangeStream.class);
+        accountService = context.getBean(AccountService.class);
+        userService = context.getBean(UserService.class);
+        studentService = context.getBean(StudentService.class);
+        transactionHelper = context.getBean(TransactionHelper.class);
+        entityChangeStream.subscribe(subscriber);
+    }
+
+    @AfterAll
+    public void tearDown() {
+        entityChangeStream.unsubscribe(subscriber);
+        context.close();
+    }
+
+    @BeforeEach
+    public void clearBatches() {
+        batches.clear();
+    }
+
+    @Test
+    @DisplayName("Все изменения транзакции приходят одной пачкой после коммита")
+    public void testTransactionIsOneBatch() throws InterruptedException {
+        User user = userService.createUser("events-user-1");
+        Account account1 = accountService.createAccount(user);
+        Account account2 = accountService.createAccount(user);
+        awaitQuiet();
+
+        accountService.transfer(account1.getId(), account2.getId(), 100);
+
+        EntityChangeBatch batch = batches.poll(5, TimeUnit.SECONDS);
+        assertNotNull(batch);
+        assertEquals(
+                List.of(
+                        new EntityChangeEvent(EntityChangeType.UPDATE, Account.class, account1.getId(), List.of("moneyAmount")),
+                        new EntityChangeEvent(EntityChangeType.UPDATE, Account.class, account2.getId(), List.of("moneyAmount"))
+                ),
+                batch.events()
+        );
+    }
+
+    @Test
+    @DisplayName("Вставка и удаление студента, сущности вне списка не публикуются")
+    public void testInsertAndDelete() throws InterruptedException {
+        Student student = studentService.saveStudent(new Student("Events", 20, null));
+        studentService.deleteStudent(student.getId());
+        userService.createUser("events-user-2");
+
+        EntityChangeBatch insert = batches.poll(5, TimeUnit.SECONDS);
+        EntityChangeBatch delete = batches.poll(5, TimeUnit.SECONDS);
+        assertNotNull(insert);
+        assertNotNull(delete);
+        assertEquals(List.of(new EntityChangeEvent(EntityChangeType.INSERT, Student.class, student.getId(), List.of())),
+                insert.events());
+        assertEquals(List.of(new EntityChangeEvent(EntityChangeType.DELETE, Student.class, student.getId(), List.of())),
+                delete.events());
+        assertTrue(insert.sequence() < delete.sequence());
+
+        //createUser создает пользователя (не отслеживается) и счет (отслеживается)
+        EntityChangeBatch userBatch = batches.poll(5, TimeUnit.SECONDS);
+        assertNotNull(userBatch);
+        assertEquals(List.of(EntityChangeType.INSERT),
+                userBatch.events().stream().map(EntityChangeEvent::type).toList());
+        assertEquals(Account.class, userBatch.events().get(0).entityClass());
+    }
+
+    @Test
+    @DisplayName("Откаченная транзакция ничего не публикует")
+    public void testRollbackPublishesNothing() throws InterruptedException {
+        assertThrows(IllegalStateException.class, () -> transactionHelper.executeInTransaction((Session session) -> {
+            session.persist(new Student("Rolled back", 20, null));
+            session.flush();
+            throw new IllegalStateException("rollback");
+        }));
+
+        assertNull(batches.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    @DisplayName("Сессию закрыли посреди транзакции - она снимается с учета, изменения не публикуются")
+    public void testSessionClosedMidTransactionIsReleased() throws InterruptedException {
+        EntityChangeListener listener = changeListener();
+        try (Session session = context.getBean(SessionFactory.class).openSession()) {
+            session.beginTransaction();
+            session.persist(new Student("Abandoned", 20, null));
+            session.flush();
+            assertEquals(1, listener.trackedSessions());
+        }
+
+        assertEquals(0, listener.trackedSessions());
+        assertNull(batches.poll(200, TimeUnit.MILLISECONDS));
+        //поток не застрял: следующая транзакция публикуется
+        Student student = studentService.saveStudent(new Student("After abandoned", 20, null));
+        EntityChangeBatch batch = batches.poll(5, TimeUnit.SECONDS);
+        assertNotNull(batch);
+        assertEquals(student.getId(), batch.events().get(0).entityId());
+        studentService.deleteStudent(student.getId());
+        awaitQuiet();
+    }
+
+    private EntityChangeListener changeListener() {
+        EventListenerRegistry registry = context.getBean(SessionFactory.class).unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(EventListenerRegistry.class);
+        List<EntityChangeListener> found = new ArrayList<>();
+        registry.getEventListenerGroup(EventType.POST_INSERT).fireEventOnEachListener(found,
+                (listener, result) -> {
+                    if (listener instanceof EntityChangeListener changeListener) {
+                        result.add(changeListener);
+                    }
+                });
+        return found.get(0);
+    }
+
+    private void awaitQuiet() throws InterruptedException {
+        while (batches.poll(200, TimeUnit.MILLISECONDS) != null) {
+            //ждем, пока разошлются изменения из подготовки теста
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package sorokin.dev.export;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import sorokin.dev.config.TestHibernateConfiguration;
+import sorokin.dev.entity.Account;
+import sorokin.dev.entity.LogEntry;
+import sorokin.dev.entity.User;
+import sorokin.dev.session.SessionLeakExtension;
+import sorokin.dev.utils.TransactionHelper;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SessionLeakExtension.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class StreamingExportServiceTest {
+
+    private static final LocalDateTime BASE_TIME = LocalDateTime.of(2024, 1, 1, 12, 0, 0, 123_456_000);
+
+    @TempDir
+    Path tempDir;
+
+    private AnnotationConfigApplicationContext context;
+    private StreamingExportService exportService;
+    private TransactionHelper transactionHelper;
+
+    @BeforeAll
+    public void setup() {
+        context = new AnnotationConfigApplicationContext();
+        //маленькие блоки, чтобы в тестах их было несколько
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", Map.of(
+                "export.fetch-size", "50",
+                "export.block-rows", "100"
+        )));
+        context.register(
+                TestHibernateConfiguration.class,
+                TransactionHelper.class,
+                StreamingExportService.class
+        );
+        context.refresh();
+        exportService = context.getBean(StreamingExportService.class);
+        transactionHelper = context.getBean(TransactionHelper.class);
+        saveLogs(0, 1_000);
+    }
+
+    @AfterAll
+    public void tearDown() {
+        context.close();
+    }
+
+    @Test
+    @DisplayName("Выгруженные строки читаются из файла без потерь, файл сжат")
+    public void testExportAndRead() throws IOException {
+        Path file = tempDir.resolve("logs.hcx");
+
+        ExportReport report = exportService.export(ExportDataset.LOG_ENTRIES, file);
+
+        //другие тесты дописывают строки, поэтому сравниваем с отчетом, а не с константой
+        assertTrue(report.rows() >= 1_000);
+        assertEquals((report.rows() + 99) / 100, report.blocks());
+        assertTrue(report.fileBytes() < report.rawBytes(), "Blocks must be compressed: " + report);
+        assertTrue(report.rowsPerSecond() > 0);
+
+        List<Object[]> rows = readAll(file);
+        assertEquals(report.rows(), rows.size());
+        Object[] row = rows.get(7);
+        assertEquals("message 7 with details", row[2]);
+        assertEquals(BASE_TIME.plusSeconds(7), row[1]);
+        assertEquals(report.lastId(), rows.get(rows.size() - 1)[0]);
+    }
+
+    @Test
+    @DisplayName("Повторная выгрузка в тот же файл дописывает только новые строки")
+    public void testResumeAppendsNewRows() throws IOException {
+        Path file = tempDir.resolve("logs-resume.hcx");
+        ExportReport first = exportService.export(ExportDataset.LOG_ENTRIES, file);
+
+        saveLogs(1_000, 50);
+        ExportReport second = exportService.export(ExportDataset.LOG_ENTRIES, file);
+
+        assertEquals(first.lastId(), second.startAfterId());
+        assertEquals(50, second.rows());
+        assertEquals(first.rows() + 50, readAll(file).size());
+    }
+
+    @Test
+    @DisplayName("Неполный блок в конце файла отбрасывается и выгружается заново")
+    public void testResumeAfterTornWrite() throws IOException {
+        Path file = tempDir.resolve("logs-torn.hcx");
+        ExportReport full = exportService.export(ExportDataset.LOG_ENTRIES, file);
+        //обрываем последний блок посередине, как при падении во время записи
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 10);
+        }
+        long rowsBefore = readAll(file).size();
+
+        ExportReport resumed = exportService.export(ExportDataset.LOG_ENTRIES, file);
+
+        assertEquals(full.rows() - rowsBefore, resumed.rows());
+        List<Object[]> rows = readAll(file);
+        assertEquals(full.rows(), rows.size());
+        assertEquals(full.lastId(), rows.get(rows.size() - 1)[0]);
+    }
+
+    @Test
+    @DisplayName("Выгрузка счетов с контрольной точки")
+    public void testExportAccountsFromCheckpoint() throws IOException {
+        List<Long> ids = transactionHelper.executeInTransaction(session -> {
+            User user = new User("export-user", new ArrayList<>());
+            session.persist(user);
+            List<Long> accountIds = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                Account account = new Account(user, 100 * i);
+                session.persist(account);
+                accountIds.add(account.getId());
+            }
+            return accountIds;
+        });
+        Path file = tempDir.resolve("accounts.hcx");
+
+        ExportReport report = exportService.export(ExportDataset.ACCOUNTS, file, ids.get(1));
+
+        assertEquals(3, report.rows());
+        List<Object[]> rows = readAll(file);
+        assertEquals(ids.get(2), rows.get(0)[0]);
+        assertEquals(400L, rows.get(2)[2]);
+    }
+
+    private void saveLogs(int from, int count) {
+        transactionHelper.executeInTransaction(session -> {
+            for (int i = from; i < from + count; i++) {
+                LogEntry entry = new LogEntry(i % 10 == 0 ? "message " + i : "message " + i + " with details");
+                entry.setCreatedAt(BASE_TIME.plusSeconds(i));
+                session.persist(entry);
+            }
+        });
+    }
+
+    private static List<Object[]> readAll(Path file) throws IOException {
+        List<Object[]> rows = new ArrayList<>();
+        try (ExportFileReader reader = ExportFileReader.open(file)) {
+            reader.forEachRow(rows::add);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,166 @@
+package sorokin.dev.outbox;
+
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import sorokin.dev.config.TestHibernateConfiguration;
+import sorokin.dev.entity.Account;
+import sorokin.dev.entity.AccountEventType;
+import sorokin.dev.entity.User;
+import sorokin.dev.service.*;
+import sorokin.dev.session.SessionLeakExtension;
+import sorokin.dev.utils.TransactionHelper;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SessionLeakExtension.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class AccountOutboxRelayTest {
+
+    private AnnotationConfigApplicationContext context;
+    private AccountService accountService;
+    private UserService userService;
+    private AccountOutboxRelay relay;
+    private InMemoryOutboxSink sink;
+    private SessionFactory sessionFactory;
+
+    @BeforeAll
+    public void setup() {
+        context = new AnnotationConfigApplicationContext();
+        //без фонового потока: relay вызываем в тестах сами
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", Map.of(
+                "outbox.relay.poll-interval-ms", "0",
+                "outbox.relay.batch-size", "10"
+        )));
+        context.register(
+                TestHibernateConfiguration.class,
+                TransactionHelper.class,
+                EntitySnapshotCaches.class,
+                AccountService.class,
+                UserService.class,
+                AccountOutboxRelay.class
+        );
+        context.registerBean(AccountProperties.class, () -> new AccountProperties(500, 0));
+        context.registerBean(InMemoryOutboxSink.class);
+        context.refresh();
+        accountService = context.getBean(AccountService.class);
+        userService = context.getBean(UserService.class);
+        relay = context.getBean(AccountOutboxRelay.class);
+        sink = context.getBean(InMemoryOutboxSink.class);
+        sessionFactory = context.getBean(SessionFactory.class);
+    }
+
+    @AfterAll
+    public void tearDown() {
+        context.close();
+    }
+
+    @BeforeEach
+    public void cleanOutbox() {
+        relay.relayPending();
+        sink.clear();
+    }
+
+    @Test
+    @DisplayName("Изменения счетов пишутся в outbox и отправляются по порядку, отправленное удаляется")
+    public void testRelay() {
+        User user = userService.createUser("outbox-user-1");
+        Account account1 = accountService.createAccount(user);
+        Account account2 = accountService.createAccount(user);
+
+        accountService.depositAccount(account1.getId(), 100);
+        accountService.withdrawFromAccount(account1.getId(), 50);
+        accountService.transfer(account1.getId(), account2.getId(), 30);
+        accountService.closeAccount(account1.getId());
+
+        assertEquals(4, relay.relayPending());
+        List<OutboxMessage> messages = sink.getMessages();
+        assertEquals(
+                List.of(AccountEventType.DEPOSIT, AccountEventType.WITHDRAW, AccountEventType.TRANSFER,
+                        AccountEventType.CLOSE),
+                messages.stream().map(OutboxMessage::eventType).toList()
+        );
+        assertEquals(account2.getId(), messages.get(2).relatedAccountId());
+        assertEquals(520, messages.get(3).amount());
+        assertEquals(0, countOutboxRows());
+    }
+
+    @Test
+    @DisplayName("Откаченная операция не пишет событие")
+    public void testRollbackWritesNothing() {
+        User user = userService.createUser("outbox-user-2");
+        Account account1 = accountService.createAccount(user);
+        Account account2 = accountService.createAccount(user);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> accountService.transfer(account1.getId(), account2.getId(), 10_000));
+
+        assertEquals(0, countOutboxRows());
+    }
+
+    @Test
+    @DisplayName("Ошибка отправки: события остаются в outbox и уходят при следующей попытке")
+    public void testSinkFailureKeepsEvents() {
+        User user = userService.createUser("outbox-user-3");
+        Account account = accountService.createAccount(user);
+        accountService.depositAccount(account.getId(), 10);
+
+        AccountOutboxRelay failingRelay = new AccountOutboxRelay(sessionFactory, messages -> {
+            throw new IllegalStateException("sink is down");
+        }, 0, 10);
+        assertThrows(IllegalStateException.class, failingRelay::relayBatch);
+        assertEquals(1, countOutboxRows());
+
+        assertEquals(1, relay.relayPending());
+        assertEquals(1, sink.getMessages().size());
+    }
+
+    @Test
+    @DisplayName("Несколько relay одновременно: каждое событие отправлено ровно один раз")
+    public void testConcurrentRelays() throws Exception {
+        User user = userService.createUser("outbox-user-4");
+        Account account1 = accountService.createAccount(user);
+        Account account2 = accountService.createAccount(user);
+        List<TransferCommand> commands = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            commands.add(i % 2 == 0
+                    ? new TransferCommand(account1.getId(), account2.getId(), 1)
+                    : new TransferCommand(account2.getId(), account1.getId(), 1));
+        }
+        assertTrue(accountService.transferBatch(commands).isFullySuccessful());
+
+        int relays = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(relays);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < relays; i++) {
+            AccountOutboxRelay concurrentRelay = new AccountOutboxRelay(sessionFactory, sink, 0, 10);
+            results.add(executor.submit(concurrentRelay::relayPending));
+        }
+        int sent = 0;
+        for (Future<Integer> result : results) {
+            sent += result.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        Set<Long> ids = new HashSet<>();
+        sink.getMessages().forEach(message -> assertTrue(ids.add(message.id()), "Duplicate: " + message));
+        assertEquals(200, sent);
+        assertEquals(200, ids.size());
+        assertEquals(0, countOutboxRows());
+    }
+
+    private long countOutboxRows() {
+        try (var session = sessionFactory.openSession()) {
+            return session.createQuery("SELECT count(e) FROM AccountOutboxEvent e", Long.class).getSingleResult();
+        }
+    }
+}
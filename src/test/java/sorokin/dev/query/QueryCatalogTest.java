@@ -0,0 +1,90 @@
+package sorokin.dev.query;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.query.named.NamedObjectRepository;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import sorokin.dev.config.TestHibernateConfiguration;
+import sorokin.dev.entity.Student;
+import sorokin.dev.session.SessionLeakExtension;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SessionLeakExtension.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class QueryCatalogTest {
+
+    private AnnotationConfigApplicationContext context;
+    private SessionFactory sessionFactory;
+    private QueryPlanCacheMetrics queryPlanCacheMetrics;
+
+    @BeforeAll
+    public void setup() {
+        context = new AnnotationConfigApplicationContext(
+                TestHibernateConfiguration.class,
+                QueryPlanCacheMetrics.class
+        );
+        sessionFactory = context.getBean(SessionFactory.class);
+        queryPlanCacheMetrics = context.getBean(QueryPlanCacheMetrics.class);
+    }
+
+    @AfterAll
+    public void tearDown() {
+        context.close();
+    }
+
+    @Test
+    @DisplayName("Каждое имя из QueryCatalog зарегистрировано и проходит проверку")
+    public void testAllQueriesRegistered() {
+        SessionFactoryImplementor factory = sessionFactory.unwrap(SessionFactoryImplementor.class);
+        NamedObjectRepository repository = factory.getQueryEngine().getNamedObjectRepository();
+
+        List<String> names = Arrays.stream(QueryCatalog.class.getDeclaredFields())
+                .filter(field -> Modifier.isStatic(field.getModifiers()) && field.getType() == String.class)
+                .map(QueryCatalogTest::value)
+                .toList();
+
+        assertFalse(names.isEmpty());
+        names.forEach(name -> assertNotNull(repository.getSqmQueryMemento(name), name));
+        assertTrue(repository.checkNamedQueries(factory.getQueryEngine()).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Повторный запрос берет план из кэша, а не разбирает HQL заново")
+    public void testPlanCacheHit() {
+        //первый вызов разбирает HQL (промах)
+        findOlderThan(0);
+        QueryPlanCacheStats before = queryPlanCacheMetrics.getStats();
+        findOlderThan(1);
+        findOlderThan(2);
+        QueryPlanCacheStats after = queryPlanCacheMetrics.getStats();
+
+        assertEquals(512, after.maxSize());
+        assertEquals(before.misses(), after.misses(), "Before: " + before + ", after: " + after);
+        assertTrue(after.hits() - before.hits() >= 2, "Before: " + before + ", after: " + after);
+    }
+
+    private void findOlderThan(int age) {
+        try (Session session = sessionFactory.openSession()) {
+            session.createQuery("SELECT s FROM Student s WHERE s.age > :age", Student.class)
+                    .setParameter("age", age)
+                    .list();
+        }
+    }
+
+    private static String value(Field field) {
+        try {
+            return (String) field.get(null);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package sorokin.dev.report;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import sorokin.dev.config.TestHibernateConfiguration;
+import sorokin.dev.entity.Account;
+import sorokin.dev.entity.Student;
+import sorokin.dev.entity.User;
+import sorokin.dev.session.SessionLeakExtension;
+import sorokin.dev.utils.TransactionHelper;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SessionLeakExtension.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ReportServiceTest {
+
+    private AnnotationConfigApplicationContext context;
+    private ReportService reportService;
+    private ParallelScanEngine parallelScanEngine;
+
+    @BeforeAll
+    public void setup() {
+        context = new AnnotationConfigApplicationContext();
+        //маленькие куски, чтобы их было больше, чем потоков
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", Map.of(
+                "scan.parallelism", "4",
+                "scan.chunk-size", "25"
+        )));
+        context.register(
+                TestHibernateConfiguration.class,
+                TransactionHelper.class,
+                ParallelScanEngine.class,
+                ReportService.class
+        );
+        context.refresh();
+        reportService = context.getBean(ReportService.class);
+        parallelScanEngine = context.getBean(ParallelScanEngine.class);
+
+        context.getBean(TransactionHelper.class).executeInTransaction(session -> {
+            for (int i = 0; i < 300; i++) {
+                session.persist(new Student("report-student-" + i, 18 + i % 5, null));
+            }
+            User user = new User("report-user", new ArrayList<>());
+            session.persist(user);
+            for (int i = 0; i < 100; i++) {
+                session.persist(new Account(user, i * 10));
+            }
+        });
+    }
+
+    @AfterAll
+    public void tearDown() {
+        context.close();
+    }
+
+    @Test
+    @DisplayName("Распределение по возрасту собирается из всех кусков")
+    public void testAgeDistribution() {
+        ScanResult<SortedMap<Integer, Long>> result = reportService.getAgeDistribution();
+
+        assertEquals(Map.of(18, 60L, 19, 60L, 20, 60L, 21, 60L, 22, 60L), result.value());
+        assertEquals(12, result.chunks());
+        assertEquals(4, result.parallelism());
+    }
+
+    @Test
+    @DisplayName("Гистограмма остатков по интервалам")
+    public void testBalanceHistogram() {
+        SortedMap<Long, Long> histogram = reportService.getBalanceHistogram(250).value();
+
+        assertEquals(Map.of(0L, 25L, 250L, 25L, 500L, 25L, 750L, 25L), histogram);
+    }
+
+    @Test
+    @DisplayName("Куски обрабатываются в нескольких потоках, каждый в своей сессии")
+    public void testChunksRunInParallelSessions() {
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        Set<Object> sessions = ConcurrentHashMap.newKeySet();
+
+        ScanResult<Long> result = parallelScanEngine.scan(Student.class, (session, fromId, toId) -> {
+            threads.add(Thread.currentThread().getName());
+            sessions.add(session);
+            //кусок "долгий": пока его считают, остальные потоки успевают взять свои
+            pause();
+            return session.createSelectionQuery(
+                            "SELECT count(s) FROM Student s WHERE s.id >= :fromId AND s.id < :toId", Long.class)
+                    .setParameter("fromId", fromId)
+                    .setParameter("toId", toId)
+                    .getSingleResult();
+        }, () -> 0L, Long::sum);
+
+        assertEquals(300L, result.value());
+        assertEquals(12, sessions.size());
+        assertTrue(threads.size() > 1, "Expected several worker threads: " + threads);
+    }
+
+    @Test
+    @DisplayName("Ошибка в одном куске прерывает отчет")
+    public void testChunkFailure() {
+        assertThrows(IllegalStateException.class, () -> parallelScanEngine.scan(Student.class,
+                (session, fromId, toId) -> {
+                    throw new IllegalStateException("chunk failed");
+                }, () -> 0L, Long::sum));
+    }
+
+    @Test
+    @DisplayName("Прерванный отчет возвращается только после остановки всех потоков")
+    public void testInterruptedScanStopsWorkers() {
+        Thread caller = Thread.currentThread();
+        AtomicBoolean interrupted = new AtomicBoolean();
+        AtomicInteger running = new AtomicInteger();
+
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+                () -> parallelScanEngine.scan(Student.class, (session, fromId, toId) -> {
+                    running.incrementAndGet();
+                    try {
+                        if (interrupted.compareAndSet(false, true)) {
+                            caller.interrupt();
+                        }
+                        Thread.sleep(10_000);
+                        return 0L;
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException("chunk cancelled", e);
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                }, () -> 0L, Long::sum));
+
+        assertTrue(Thread.interrupted(), "Interrupt flag must be restored");
+        assertInstanceOf(InterruptedException.class, exception.getCause());
+        assertEquals(0, running.get(), "Workers still running after scan returned");
+    }
+
+    private static void pause() {
+        try {
+            Thread.sleep(20);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
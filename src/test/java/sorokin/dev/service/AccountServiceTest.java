@@ -0,0 +1,198 @@
+package sorokin.dev.service;
+
+import jakarta.persistence.LockModeType;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import sorokin.dev.config.TestHibernateConfiguration;
+import sorokin.dev.entity.Account;
+import sorokin.dev.entity.User;
+import sorokin.dev.session.SessionLeakExtension;
+import sorokin.dev.utils.DeadlineExceededException;
+import sorokin.dev.utils.TransactionHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SessionLeakExtension.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class AccountServiceTest {
+
+    private AnnotationConfigApplicationContext context;
+    private AccountService accountService;
+    private UserService userService;
+
+    @BeforeAll
+    public void setup() {
+        context = new AnnotationConfigApplicationContext();
+        //переводы в SERIALIZABLE; параллельный тест ниже намеренно сталкивает их на одном счете
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", Map.of(
+                "account.transaction-isolation", "SERIALIZABLE",
+                "account.transaction-max-attempts", "20",
+                "account.transfer-batch.timeout-ms", "1000"
+        )));
+        context.register(
+                TestHibernateConfiguration.class,
+                TransactionHelper.class,
+                EntitySnapshotCaches.class,
+                AccountService.class,
+                UserService.class
+        );
+        //AccountProperties создаем сами: 500 на новом счете, без комиссии за перевод.
+        context.registerBean(AccountProperties.class, () -> new AccountProperties(500, 0));
+        context.refresh();
+        accountService = context.getBean(AccountService.class);
+        userService = context.getBean(UserService.class);
+    }
+
+    @AfterAll
+    public void tearDown() {
+        context.close();
+    }
+
+    @Test
+    @DisplayName("Пакетный перевод: все команды применяются в одной транзакции")
+    public void testTransferBatch() {
+        User user = userService.createUser("batch-user-1");
+        Account account1 = accountService.createAccount(user);
+        Account account2 = accountService.createAccount(user);
+        Account account3 = accountService.createAccount(user);
+
+        TransferBatchResult result = accountService.transferBatch(List.of(
+                new TransferCommand(account1.getId(), account2.getId(), 100),
+                new TransferCommand(account2.getId(), account3.getId(), 550),
+                new TransferCommand(account3.getId(), account1.getId(), 50)
+        ));
+
+        assertTrue(result.isFullySuccessful());
+        assertEquals(3, result.appliedCount());
+        assertEquals(450, accountService.findAccountById(account1.getId()).orElseThrow().getMoneyAmount());
+        assertEquals(50, accountService.findAccountById(account2.getId()).orElseThrow().getMoneyAmount());
+        assertEquals(1000, accountService.findAccountById(account3.getId()).orElseThrow().getMoneyAmount());
+    }
+
+    @Test
+    @DisplayName("Пакетный перевод: ошибочные команды попадают в отказы, остальные выполняются")
+    public void testTransferBatchReportsFailures() {
+        User user = userService.createUser("batch-user-2");
+        Account account1 = accountService.createAccount(user);
+        Account account2 = accountService.createAccount(user);
+
+        TransferBatchResult result = accountService.transferBatch(List.of(
+                new TransferCommand(account1.getId(), account2.getId(), 200),
+                new TransferCommand(account1.getId(), account2.getId(), 400),
+                new TransferCommand(account1.getId(), -1L, 10),
+                new TransferCommand(account2.getId(), account1.getId(), 0)
+        ));
+
+        assertEquals(1, result.appliedCount());
+        assertEquals(List.of(1, 2, 3), result.failures().stream().map(TransferFailure::index).toList());
+        assertEquals(300, accountService.findAccountById(account1.getId()).orElseThrow().getMoneyAmount());
+        assertEquals(700, accountService.findAccountById(account2.getId()).orElseThrow().getMoneyAmount());
+    }
+
+    @Test
+    @DisplayName("Пакетный перевод в строгом режиме: одна ошибка откатывает весь пакет")
+    public void testTransferBatchStrictRollsBack() {
+        User user = userService.createUser("batch-user-3");
+        Account account1 = accountService.createAccount(user);
+        Account account2 = accountService.createAccount(user);
+
+        List<TransferCommand> commands = List.of(
+                new TransferCommand(account1.getId(), account2.getId(), 200),
+                new TransferCommand(account1.getId(), account2.getId(), 400)
+        );
+        assertThrows(IllegalArgumentException.class, () -> accountService.transferBatch(commands, true));
+
+        assertEquals(500, accountService.findAccountById(account1.getId()).orElseThrow().getMoneyAmount());
+        assertEquals(500, accountService.findAccountById(account2.getId()).orElseThrow().getMoneyAmount());
+    }
+
+    @Test
+    @DisplayName("Пакетный перевод не ждет заблокированный счет дольше account.transfer-batch.timeout-ms")
+    public void testTransferBatchDeadline() throws Exception {
+        User user = userService.createUser("batch-user-4");
+        Account account1 = accountService.createAccount(user);
+        Account account2 = accountService.createAccount(user);
+        TransactionHelper transactionHelper = context.getBean(TransactionHelper.class);
+
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> holder = CompletableFuture.runAsync(() -> transactionHelper.executeInTransaction(
+                session -> {
+                    session.find(Account.class, account2.getId(), LockModeType.PESSIMISTIC_WRITE);
+                    locked.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }));
+        try {
+            assertTrue(locked.await(5, TimeUnit.SECONDS));
+            long start = System.nanoTime();
+            List<TransferCommand> commands = List.of(new TransferCommand(account1.getId(), account2.getId(), 100));
+            assertThrows(DeadlineExceededException.class, () -> accountService.transferBatch(commands));
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(elapsedMillis < 3000, "Elapsed: " + elapsedMillis);
+        } finally {
+            release.countDown();
+            holder.get(10, TimeUnit.SECONDS);
+        }
+
+        assertEquals(500, accountService.findAccountById(account1.getId()).orElseThrow().getMoneyAmount());
+    }
+
+    @Test
+    @DisplayName("Параллельные переводы с одного счета: ни одно списание не теряется")
+    public void testConcurrentTransfers() throws Exception {
+        User user = userService.createUser("concurrent-user");
+        Account from = accountService.createAccount(user);
+        Account to = accountService.createAccount(user);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> transfers = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                transfers.add(executor.submit(() -> accountService.transfer(from.getId(), to.getId(), 5)));
+            }
+            for (Future<?> transfer : transfers) {
+                transfer.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(300, accountService.findAccountById(from.getId()).orElseThrow().getMoneyAmount());
+        assertEquals(700, accountService.findAccountById(to.getId()).orElseThrow().getMoneyAmount());
+    }
+
+    @Test
+    @DisplayName("Пополнение внутри внешней транзакции сбрасывает кэш после ее коммита, а не раньше")
+    public void testDepositInOuterTransactionInvalidatesAfterCommit() {
+        User user = userService.createUser("nested-deposit-user");
+        Account account = accountService.createAccount(user);
+        TransactionHelper transactionHelper = context.getBean(TransactionHelper.class);
+
+        transactionHelper.executeInTransaction(() -> {
+            accountService.depositAccount(account.getId(), 100);
+            //другая сессия еще видит баланс до коммита и кладет его в кэш
+            assertEquals(500, accountService.findAccountById(account.getId()).orElseThrow().getMoneyAmount());
+            return 0;
+        });
+
+        assertEquals(600, accountService.findAccountById(account.getId()).orElseThrow().getMoneyAmount());
+        accountService.depositAccount(account.getId(), 50);
+        assertEquals(650, accountService.findAccountById(account.getId()).orElseThrow().getMoneyAmount());
+    }
+}
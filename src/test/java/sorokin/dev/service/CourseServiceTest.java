@@ -1,7 +1,9 @@
 package sorokin.dev.service;
 
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import sorokin.dev.session.SessionLeakExtension;
 import sorokin.dev.utils.TransactionHelper;
 import sorokin.dev.config.TestHibernateConfiguration;
 import sorokin.dev.entity.Course;
@@ -10,6 +12,7 @@ import sorokin.dev.entity.Student;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+@ExtendWith(SessionLeakExtension.class)
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 class CourseServiceTest {
 
@@ -26,6 +29,7 @@ class CourseServiceTest {
                 CourseService.class,
                 StudentService.class,
                 TransactionHelper.class,
+                EntitySnapshotCaches.class,
                 GroupService.class
         );
         courseService = context.getBean(CourseService.class);
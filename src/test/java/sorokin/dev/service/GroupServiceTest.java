@@ -1,18 +1,30 @@
 package sorokin.dev.service;
 
+import org.hibernate.Hibernate;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.ManagedEntity;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import sorokin.dev.session.SessionLeakExtension;
 import sorokin.dev.utils.TransactionHelper;
 import sorokin.dev.config.TestHibernateConfiguration;
+import sorokin.dev.entity.Course;
 import sorokin.dev.entity.Group;
 import sorokin.dev.entity.Student;
+import sorokin.dev.sql.SqlExecution;
+import sorokin.dev.sql.SqlExecutionListener;
+import sorokin.dev.sql.TimingConnectionProvider;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+@ExtendWith(SessionLeakExtension.class)
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 class GroupServiceTest {
 
@@ -27,10 +39,12 @@ class GroupServiceTest {
                 TestHibernateConfiguration.class,
                 GroupService.class,
                 StudentService.class,
-                TransactionHelper.class
+                TransactionHelper.class,
+                EntitySnapshotCaches.class
         );
         groupService = context.getBean(GroupService.class);
         studentService = context.getBean(StudentService.class);
+        transactionHelper = context.getBean(TransactionHelper.class);
     }
 
     @AfterAll
@@ -128,5 +142,62 @@ class GroupServiceTest {
         //Hibernate: select cl1_0.student_id,cl1_1.id,cl1_1.name,cl1_1.type from student_courses cl1_0 join courses cl1_1 on cl1_1.id=cl1_0.course_id where cl1_0.student_id=?
     }
 
+    @Test
+    @DisplayName("findAll загружает группы, студентов и курсы тремя запросами при любом числе групп")
+    public void testFindAllLoadsGraphByLevels() {
+        List<Long> groupIds = transactionHelper.executeInTransaction(session -> {
+            Course math = new Course("levels-math", "math");
+            Course physics = new Course("levels-physics", "physics");
+            session.persist(math);
+            session.persist(physics);
+            List<Long> ids = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                Group group = new Group("levels-" + i, 2030L);
+                session.persist(group);
+                for (int j = 0; j < 3; j++) {
+                    Student student = new Student("Levels Student " + i + "-" + j, 20, group);
+                    student.getCourseList().add(math);
+                    student.getCourseList().add(physics);
+                    session.persist(student);
+                }
+                ids.add(group.getId());
+            }
+            return ids;
+        });
 
-}
\ No newline at end of file
+        TimingConnectionProvider provider = context.getBean(TimingConnectionProvider.class);
+        List<SqlExecution> executions = new CopyOnWriteArrayList<>();
+        SqlExecutionListener listener = executions::add;
+        provider.addListener(listener);
+        List<Group> groups;
+        try {
+            groups = groupService.findAll();
+        } finally {
+            provider.removeListener(listener);
+        }
+
+        //без bytecode enhancement (-DskipEnhance) обратную сторону @OneToOne(mappedBy) Hibernate
+        //сделать ленивой не может и дочитывает профили отдельными запросами - их здесь не считаем
+        boolean enhanced = ManagedEntity.class.isAssignableFrom(Student.class);
+        //группы, студенты, курсы; SET LOCK_TIMEOUT дедлайна findAll не считаем
+        List<SqlExecution> queries = executions.stream()
+                .filter(execution -> !execution.sql().startsWith("SET "))
+                .filter(execution -> enhanced || !execution.sql().contains(" profiles "))
+                .toList();
+        assertEquals(3, queries.size(), "Executions: " + executions);
+        assertEquals(groups.size(), new HashSet<>(groups).size());
+        for (Long groupId : groupIds) {
+            Group group = groups.stream().filter(g -> g.getId().equals(groupId)).findFirst().orElseThrow();
+            //граф загружен целиком до закрытия сессии, дублей студентов и курсов нет
+            assertEquals(3, group.getStudentList().size());
+            assertEquals(3, new HashSet<>(group.getStudentList()).size());
+            group.getStudentList().forEach(student -> {
+                assertEquals(2, student.getCourseList().size());
+                if (enhanced) {
+                    //профиль ленивый и не загружался
+                    assertFalse(Hibernate.isPropertyInitialized(student, "profile"));
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package sorokin.dev.service;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import sorokin.dev.config.TestHibernateConfiguration;
+import sorokin.dev.entity.LogEntry;
+import sorokin.dev.session.SessionLeakExtension;
+import sorokin.dev.utils.TransactionHelper;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SessionLeakExtension.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class LoggingServiceTest {
+
+    private AnnotationConfigApplicationContext context;
+    private LoggingService loggingService;
+    private LogRetentionService logRetentionService;
+    private TransactionHelper transactionHelper;
+
+    @BeforeAll
+    public void setup() {
+        context = new AnnotationConfigApplicationContext();
+        //без фонового потока: обслуживание вызываем в тестах сами
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", Map.of(
+                "log.retention.days", "30",
+                "log.retention.check-interval-ms", "0"
+        )));
+        context.register(
+                TestHibernateConfiguration.class,
+                TransactionHelper.class,
+                LoggingService.class,
+                LogRetentionService.class
+        );
+        context.refresh();
+        loggingService = context.getBean(LoggingService.class);
+        logRetentionService = context.getBean(LogRetentionService.class);
+        transactionHelper = context.getBean(TransactionHelper.class);
+    }
+
+    @AfterAll
+    public void tearDown() {
+        context.close();
+    }
+
+    @Test
+    @DisplayName("Записи за период читаются страницами от новых к старым, записи вне периода не попадают")
+    public void testFindLogsByPages() {
+        LocalDateTime base = LocalDateTime.of(2020, 3, 1, 0, 0);
+        saveLog("before", base.minusSeconds(1));
+        for (int i = 0; i < 5; i++) {
+            saveLog("message-" + i, base.plusMinutes(i));
+        }
+        //то же время, что у message-4: порядок решает id
+        saveLog("message-5", base.plusMinutes(4));
+        saveLog("after", base.plusHours(1));
+
+        List<String> messages = new ArrayList<>();
+        LogCursor cursor = null;
+        int pages = 0;
+        do {
+            LogPage page = loggingService.findLogs(base, base.plusHours(1), cursor, 4);
+            page.lines().forEach(line -> messages.add(line.message()));
+            cursor = page.next();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(2, pages);
+        assertEquals(List.of("message-5", "message-4", "message-3", "message-2", "message-1", "message-0"), messages);
+    }
+
+    @Test
+    @DisplayName("Период и размер страницы обязательны и ограничены")
+    public void testFindLogsValidation() {
+        LocalDateTime now = LocalDateTime.now();
+        assertThrows(IllegalArgumentException.class, () -> loggingService.findLogs(null, now, null, 10));
+        assertThrows(IllegalArgumentException.class, () -> loggingService.findLogs(now, now, null, 10));
+        assertThrows(IllegalArgumentException.class,
+                () -> loggingService.findLogs(now.minusDays(1), now, null, LoggingService.MAX_PAGE_SIZE + 1));
+    }
+
+    @Test
+    @DisplayName("Удаляются только записи старше срока хранения")
+    public void testRetention() {
+        LocalDateTime now = LocalDateTime.now();
+        saveLog("expired", now.minusDays(31));
+        loggingService.log("fresh");
+
+        LogRetentionResult result = logRetentionService.applyRetention();
+
+        assertTrue(result.deletedRows() >= 1);
+        assertTrue(logRetentionService.ensurePartitions().isEmpty());
+        List<String> messages = loggingService.findLogs(now.minusDays(40), now.plusMinutes(1), null, 100)
+                .lines().stream().map(LogLine::message).toList();
+        assertEquals(List.of("fresh"), messages);
+    }
+
+    private void saveLog(String message, LocalDateTime createdAt) {
+        transactionHelper.executeInTransaction(session -> {
+            LogEntry entry = new LogEntry(message);
+            entry.setCreatedAt(createdAt);
+            session.persist(entry);
+        });
+    }
+}
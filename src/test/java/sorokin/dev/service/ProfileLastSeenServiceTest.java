@@ -0,0 +1,94 @@
+package sorokin.dev.service;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import sorokin.dev.config.TestHibernateConfiguration;
+import sorokin.dev.entity.Profile;
+import sorokin.dev.entity.Student;
+import sorokin.dev.session.SessionLeakExtension;
+import sorokin.dev.utils.TransactionHelper;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SessionLeakExtension.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ProfileLastSeenServiceTest {
+
+    private static final LocalDateTime BASE_TIME = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+    private AnnotationConfigApplicationContext context;
+    private ProfileLastSeenService profileLastSeenService;
+    private ProfileService profileService;
+    private StudentService studentService;
+
+    @BeforeAll
+    public void setup() {
+        context = new AnnotationConfigApplicationContext();
+        context.register(
+                TestHibernateConfiguration.class,
+                TransactionHelper.class,
+                EntitySnapshotCaches.class,
+                StudentService.class,
+                ProfileService.class,
+                ProfileLastSeenService.class
+        );
+        context.refresh();
+        profileLastSeenService = context.getBean(ProfileLastSeenService.class);
+        profileService = context.getBean(ProfileService.class);
+        studentService = context.getBean(StudentService.class);
+    }
+
+    @AfterAll
+    public void tearDown() {
+        context.close();
+    }
+
+    @Test
+    @DisplayName("Много отметок одного профиля схлопываются в одно значение - самое позднее")
+    public void testTouchCoalescesToLatest() {
+        Profile profile = saveProfile(null);
+
+        for (int i = 0; i < 1_000; i++) {
+            //порядок отметок перемешан: самое позднее время не обязательно приходит последним
+            profileLastSeenService.touch(profile.getId(), BASE_TIME.plusSeconds((i * 7L) % 1_000));
+        }
+        profileLastSeenService.flush();
+
+        assertEquals(0, profileLastSeenService.getPendingCount());
+        assertEquals(BASE_TIME.plusSeconds(999), profileService.getProfileById(profile.getId()).getLastSeenTime());
+    }
+
+    @Test
+    @DisplayName("Более старое время не затирает уже записанное более новое")
+    public void testOlderTouchDoesNotOverwriteNewer() {
+        Profile profile = saveProfile(BASE_TIME.plusHours(1));
+
+        profileLastSeenService.touch(profile.getId(), BASE_TIME);
+        profileLastSeenService.flush();
+
+        assertEquals(BASE_TIME.plusHours(1), profileService.getProfileById(profile.getId()).getLastSeenTime());
+    }
+
+    @Test
+    @DisplayName("Отметки разных профилей записываются одной пачкой")
+    public void testFlushUpdatesManyProfiles() {
+        Profile profile1 = saveProfile(null);
+        Profile profile2 = saveProfile(null);
+
+        profileLastSeenService.touch(profile1.getId(), BASE_TIME);
+        profileLastSeenService.touch(profile2.getId(), BASE_TIME.plusMinutes(1));
+        profileLastSeenService.flush();
+
+        assertEquals(BASE_TIME, profileService.getProfileById(profile1.getId()).getLastSeenTime());
+        assertEquals(BASE_TIME.plusMinutes(1), profileService.getProfileById(profile2.getId()).getLastSeenTime());
+    }
+
+    private Profile saveProfile(LocalDateTime lastSeenTime) {
+        //профиль хранится под id студента, без студента его не сохранить
+        Student student = studentService.saveStudent(new Student("Last Seen Student", 20, null));
+        return profileService.saveProfile(new Profile("bio", lastSeenTime, student));
+    }
+}
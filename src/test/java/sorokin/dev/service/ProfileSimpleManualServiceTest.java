@@ -1,15 +1,18 @@
 package sorokin.dev.service;
 
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
 import sorokin.dev.config.TestHibernateConfiguration;
 import sorokin.dev.entity.Profile;
 import sorokin.dev.entity.Student;
+import sorokin.dev.session.SessionLeakExtension;
 
 import java.time.LocalDateTime;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+@ExtendWith(SessionLeakExtension.class)
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 class ProfileSimpleManualServiceTest {
 
@@ -49,7 +52,7 @@ class ProfileSimpleManualServiceTest {
 
         //Создадим профиль для студента:
         Profile profile = new Profile("My bio", LocalDateTime.now(), student);
-        Profile saveProfile = profileService.saveProfile(profile); //Hibernate: insert into profiles (bio,last_seen_time,student_id,id) values (?,?,?,default)
+        Profile saveProfile = profileService.saveProfile(profile); //Hibernate: insert into profiles (bio,last_seen_time,id) values (?,?,?)
         System.out.println(saveProfile);
         //Profile{id=1, bio='My bio', lastSeenTime=2026-01-10T16:51:26.304001800, student=Student{id=1, name='Test Student', age=20}}
 
@@ -80,7 +83,7 @@ class ProfileSimpleManualServiceTest {
 
         //Создадим профиль для студента:
         Profile profile = new Profile("My bio", LocalDateTime.now(), student);
-        Profile savedProfile = profileService.saveProfile(profile); //Hibernate: insert into profiles (bio,last_seen_time,student_id,id) values (?,?,?,default)
+        Profile savedProfile = profileService.saveProfile(profile); //Hibernate: insert into profiles (bio,last_seen_time,id) values (?,?,?)
         System.out.println(savedProfile);
         //Profile{id=1, bio='My bio', lastSeenTime=2026-01-10T16:51:26.304001800, student=Student{id=1, name='Test Student', age=20}}
 
@@ -104,7 +107,7 @@ class ProfileSimpleManualServiceTest {
 
         //Создадим профиль для студента:
         Profile profile = new Profile("My bio", LocalDateTime.now(), student);
-        Profile savedProfile = profileService.saveProfile(profile); //Hibernate: insert into profiles (bio,last_seen_time,student_id,id) values (?,?,?,default)
+        Profile savedProfile = profileService.saveProfile(profile); //Hibernate: insert into profiles (bio,last_seen_time,id) values (?,?,?)
         System.out.println(savedProfile);
         //Profile{id=1, bio='My bio', lastSeenTime=2026-01-10T16:51:26.304001800, student=Student{id=1, name='Test Student', age=20}}
 
@@ -0,0 +1,113 @@
+package sorokin.dev.service;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import sorokin.dev.config.TestHibernateConfiguration;
+import sorokin.dev.entity.Course;
+import sorokin.dev.entity.Group;
+import sorokin.dev.entity.Student;
+import sorokin.dev.session.SessionLeakExtension;
+import sorokin.dev.utils.TransactionHelper;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SessionLeakExtension.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class RosterSummaryServiceTest {
+
+    private AnnotationConfigApplicationContext context;
+    private RosterSummaryService rosterSummaryService;
+    private GroupService groupService;
+    private StudentService studentService;
+    private CourseService courseService;
+
+    @BeforeAll
+    public void setup() {
+        context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", Map.of(
+                "summary.rosters.check-interval-ms", "50"
+        )));
+        context.register(
+                TestHibernateConfiguration.class,
+                TransactionHelper.class,
+                EntitySnapshotCaches.class,
+                GroupService.class,
+                StudentService.class,
+                CourseService.class,
+                RosterSummaryService.class
+        );
+        context.refresh();
+        rosterSummaryService = context.getBean(RosterSummaryService.class);
+        groupService = context.getBean(GroupService.class);
+        studentService = context.getBean(StudentService.class);
+        courseService = context.getBean(CourseService.class);
+    }
+
+    @AfterAll
+    public void tearDown() {
+        context.close();
+    }
+
+    @Test
+    @DisplayName("Сводка содержит группы со студентами, пустые группы и количество студентов на курсах")
+    public void testRefreshNow() {
+        Group group = groupService.saveGroup("roster-1", 2030L);
+        Group emptyGroup = groupService.saveGroup("roster-2", 2031L);
+        Student bob = studentService.saveStudent(new Student("Bob", 20, group));
+        Student alice = studentService.saveStudent(new Student("Alice", 21, group));
+        Course course = courseService.saveCourse(new Course("Roster course", "online"));
+        Course emptyCourse = courseService.saveCourse(new Course("Roster empty course", "offline"));
+        courseService.enrollStudentToCourse(course.getId(), bob.getId());
+        courseService.enrollStudentToCourse(course.getId(), alice.getId());
+
+        rosterSummaryService.refreshNow();
+
+        GroupRosterSummary roster = findGroup(group.getId());
+        assertEquals("roster-1", roster.number());
+        assertEquals(2030L, roster.graduationYear());
+        assertEquals(List.of("Alice", "Bob"), roster.students().stream().map(RosterStudent::name).toList());
+        assertEquals(21, roster.students().get(0).age());
+        assertTrue(findGroup(emptyGroup.getId()).students().isEmpty());
+
+        List<CourseEnrollmentSummary> enrollments = rosterSummaryService.getCourseEnrollments();
+        assertEquals(2, findCourse(enrollments, course.getId()).studentCount());
+        assertEquals(0, findCourse(enrollments, emptyCourse.getId()).studentCount());
+        assertNotNull(rosterSummaryService.getRefreshedAt());
+    }
+
+    @Test
+    @DisplayName("Новый студент попадает в сводку без явной перестройки - по событию изменения")
+    public void testRefreshOnChange() throws InterruptedException {
+        Group group = groupService.saveGroup("roster-3", 2032L);
+        rosterSummaryService.refreshNow();
+        assertTrue(findGroup(group.getId()).students().isEmpty());
+
+        studentService.saveStudent(new Student("Carol", 22, group));
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (findGroup(group.getId()).students().isEmpty()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Summary was not refreshed after the change");
+            Thread.sleep(20);
+        }
+        assertEquals("Carol", findGroup(group.getId()).students().get(0).name());
+    }
+
+    private GroupRosterSummary findGroup(Long groupId) {
+        return rosterSummaryService.getGroupRosters().stream()
+                .filter(roster -> roster.groupId().equals(groupId))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private static CourseEnrollmentSummary findCourse(List<CourseEnrollmentSummary> enrollments, Long courseId) {
+        return enrollments.stream()
+                .filter(enrollment -> enrollment.courseId().equals(courseId))
+                .findFirst()
+                .orElseThrow();
+    }
+}
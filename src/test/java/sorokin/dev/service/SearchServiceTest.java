@@ -0,0 +1,118 @@
+package sorokin.dev.service;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import sorokin.dev.config.TestHibernateConfiguration;
+import sorokin.dev.entity.Course;
+import sorokin.dev.entity.Profile;
+import sorokin.dev.entity.Student;
+import sorokin.dev.session.SessionLeakExtension;
+import sorokin.dev.utils.TransactionHelper;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SessionLeakExtension.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class SearchServiceTest {
+
+    private AnnotationConfigApplicationContext context;
+    private SearchService searchService;
+    private Student ivanPetrov;
+    private Student ivanIvanovichSidorov;
+    private Student petrIvanov;
+
+    @BeforeAll
+    public void setup() {
+        context = new AnnotationConfigApplicationContext(
+                TestHibernateConfiguration.class,
+                TransactionHelper.class,
+                EntitySnapshotCaches.class,
+                StudentService.class,
+                CourseService.class,
+                ProfileService.class,
+                SearchService.class
+        );
+        searchService = context.getBean(SearchService.class);
+
+        StudentService studentService = context.getBean(StudentService.class);
+        ivanPetrov = studentService.saveStudent(new Student("Иван Петров", 20, null));
+        ivanIvanovichSidorov = studentService.saveStudent(new Student("Иван Иванович Сидоров", 21, null));
+        petrIvanov = studentService.saveStudent(new Student("Петр Иванов", 22, null));
+
+        CourseService courseService = context.getBean(CourseService.class);
+        courseService.saveCourse(new Course("Java Core", "programming"));
+        courseService.saveCourse(new Course("Advanced Java: Hibernate", "programming"));
+        courseService.saveCourse(new Course("Math", "math"));
+
+        ProfileService profileService = context.getBean(ProfileService.class);
+        profileService.saveProfile(new Profile("Люблю Hibernate и PostgreSQL", null, ivanPetrov));
+        profileService.saveProfile(new Profile("Играю в шахматы", null, petrIvanov));
+
+        searchService.reindex();
+    }
+
+    @AfterAll
+    public void tearDown() {
+        context.close();
+    }
+
+    @Test
+    @DisplayName("Поиск по началу слова: выше те, где совпало больше слов")
+    public void testSearchByPrefix() {
+        SearchPage page = searchService.searchByPrefix(SearchTarget.STUDENT, "ива", 0, 10);
+
+        //"Иван Иванович Сидоров": совпали 2 слова из 3, у остальных 1 из 2, при равной релевантности - по id
+        assertEquals(List.of(ivanIvanovichSidorov.getId(), ivanPetrov.getId(), petrIvanov.getId()),
+                page.hits().stream().map(SearchHit::id).toList());
+        assertFalse(page.hasNext());
+    }
+
+    @Test
+    @DisplayName("Поиск по началу слова: первые слова целые, последнее - начало слова")
+    public void testSearchByPrefixSeveralWords() {
+        SearchPage page = searchService.searchByPrefix(SearchTarget.STUDENT, "Иван Пет", 0, 10);
+
+        assertEquals(List.of(ivanPetrov.getId()), page.hits().stream().map(SearchHit::id).toList());
+        assertEquals("Иван Петров", page.hits().get(0).text());
+    }
+
+    @Test
+    @DisplayName("Полнотекстовый поиск: короткое имя релевантнее длинного")
+    public void testSearchFullTextRank() {
+        SearchPage page = searchService.searchFullText(SearchTarget.STUDENT, "иван", 0, 10);
+
+        assertEquals(List.of(ivanPetrov.getId(), ivanIvanovichSidorov.getId()),
+                page.hits().stream().map(SearchHit::id).toList());
+    }
+
+    @Test
+    @DisplayName("Полнотекстовый поиск ищет только целые слова")
+    public void testSearchFullText() {
+        assertEquals(2, searchService.searchFullText(SearchTarget.COURSE, "java", 0, 10).hits().size());
+        assertEquals(0, searchService.searchFullText(SearchTarget.COURSE, "jav", 0, 10).hits().size());
+        assertEquals(1, searchService.searchFullText(SearchTarget.PROFILE, "hibernate", 0, 10).hits().size());
+    }
+
+    @Test
+    @DisplayName("Постраничный поиск")
+    public void testSearchPagination() {
+        SearchPage first = searchService.searchByPrefix(SearchTarget.STUDENT, "ива", 0, 2);
+        SearchPage second = searchService.searchByPrefix(SearchTarget.STUDENT, "ива", 1, 2);
+
+        assertEquals(2, first.hits().size());
+        assertTrue(first.hasNext());
+        assertEquals(List.of(petrIvanov.getId()), second.hits().stream().map(SearchHit::id).toList());
+        assertFalse(second.hasNext());
+    }
+
+    @Test
+    @DisplayName("Пустой запрос ничего не находит")
+    public void testSearchEmptyQuery() {
+        assertTrue(searchService.searchByPrefix(SearchTarget.STUDENT, " ,. ", 0, 10).hits().isEmpty());
+        assertThrows(IllegalArgumentException.class,
+                () -> searchService.searchByPrefix(SearchTarget.STUDENT, "ива", 0, SearchService.MAX_PAGE_SIZE + 1));
+    }
+}
@@ -1,14 +1,36 @@
 package sorokin.dev.service;
 
+import jakarta.persistence.OptimisticLockException;
+import org.hibernate.StaleObjectStateException;
+import org.hibernate.engine.spi.ManagedEntity;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import sorokin.dev.session.SessionLeakExtension;
 import sorokin.dev.utils.TransactionHelper;
 import sorokin.dev.config.TestHibernateConfiguration;
+import sorokin.dev.entity.Course;
+import sorokin.dev.entity.Group;
+import sorokin.dev.entity.Profile;
 import sorokin.dev.entity.Student;
+import sorokin.dev.sql.SqlExecution;
+import sorokin.dev.sql.SqlExecutionListener;
+import sorokin.dev.sql.TimingConnectionProvider;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+@ExtendWith(SessionLeakExtension.class)
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 class StudentServiceTest {
 
@@ -21,7 +43,9 @@ class StudentServiceTest {
                 TestHibernateConfiguration.class,
                 //sorokin.dev.repository.StudentRepository.class,
                 TransactionHelper.class,
-                StudentService.class
+                EntitySnapshotCaches.class,
+                StudentService.class,
+                ProfileService.class
         );
         studentService = context.getBean(StudentService.class);
     }
@@ -55,4 +79,187 @@ class StudentServiceTest {
         assertEquals(2, all.size());
     }
 
-}
\ No newline at end of file
+    @Test
+    @DisplayName("Поиск студентов по списку id с сохранением порядка")
+    public void testFindAllByIds() {
+        Student first = studentService.saveStudent(new Student("First", 21, null));
+        Student second = studentService.saveStudent(new Student("Second", 22, null));
+        Student third = studentService.saveStudent(new Student("Third", 23, null));
+
+        List<Student> found = studentService.findAllByIds(
+                List.of(third.getId(), -1L, first.getId(), third.getId(), second.getId())
+        );
+
+        assertEquals(List.of("Third", "First", "Second"), found.stream().map(Student::getName).toList());
+
+        //Удалим созданных студентов, чтобы не влиять на другие тесты класса:
+        found.forEach(student -> studentService.deleteStudent(student.getId()));
+    }
+
+    @Test
+    @DisplayName("Повторный поиск по ID берется из кэша, изменение студента сбрасывает кэш")
+    public void testGetStudentByIdCacheInvalidation() {
+        Student saved = studentService.saveStudent(new Student("Cached", 20, null));
+
+        studentService.getStudentById(saved.getId());
+        Student cached = studentService.getStudentById(saved.getId());
+        //из кэша каждый раз новый объект: его изменение не портит кэш
+        cached.setName("Changed locally");
+        assertEquals("Cached", studentService.getStudentById(saved.getId()).getName());
+
+        cached.setName("Updated");
+        studentService.updateStudent(cached);
+        assertEquals("Updated", studentService.getStudentById(saved.getId()).getName());
+
+        studentService.deleteStudent(saved.getId());
+        assertNull(studentService.getStudentById(saved.getId()));
+    }
+
+    @Test
+    @DisplayName("Список студентов с профилями загружается без отдельного запроса на профиль каждого студента")
+    public void testFindAllStudentsDoesNotLoadProfiles() {
+        ProfileService profileService = context.getBean(ProfileService.class);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Student student = studentService.saveStudent(new Student("Student With Profile " + i, 20, null));
+            profileService.saveProfile(new Profile("bio " + i, LocalDateTime.now(), student));
+            ids.add(student.getId());
+        }
+        try {
+            assertFindAllStudentsSkipsProfiles(profileService);
+        } finally {
+            //другие тесты считают всех студентов в БД
+            ids.forEach(studentService::deleteStudent);
+        }
+    }
+
+    private void assertFindAllStudentsSkipsProfiles(ProfileService profileService) {
+
+        TimingConnectionProvider provider = context.getBean(TimingConnectionProvider.class);
+        //без bytecode enhancement (-DskipEnhance) профили - обратная сторона @OneToOne(mappedBy) -
+        //загружаются сразу, и утверждение о них проверяется только в режиме с enhancement
+        boolean enhanced = ManagedEntity.class.isAssignableFrom(Student.class);
+        AtomicInteger statements = new AtomicInteger();
+        SqlExecutionListener listener = execution -> {
+            if (enhanced || !execution.sql().contains(" profiles ")) {
+                statements.incrementAndGet();
+            }
+        };
+        provider.addListener(listener);
+        List<Student> students;
+        try {
+            students = studentService.findAllStudents();
+        } finally {
+            provider.removeListener(listener);
+        }
+
+        assertTrue(students.size() >= 10);
+        //студенты и их курсы (@Fetch(SUBSELECT)), профили не загружаются
+        assertEquals(2, statements.get());
+
+        //профиль студента - по id студента (общий первичный ключ)
+        Student student = students.stream()
+                .filter(s -> s.getName().equals("Student With Profile 3"))
+                .findFirst()
+                .orElseThrow();
+        assertEquals("bio 3", profileService.getProfileById(student.getId()).getBio());
+    }
+
+    @Test
+    @DisplayName("patchStudent меняет только переданные поля одним UPDATE без SELECT и проверяет версию")
+    public void testPatchStudent() {
+        Student saved = studentService.saveStudent(new Student("Patched", 20, null));
+        long version = studentService.getStudentById(saved.getId()).getVersion();
+
+        TimingConnectionProvider provider = context.getBean(TimingConnectionProvider.class);
+        List<SqlExecution> executions = new CopyOnWriteArrayList<>();
+        SqlExecutionListener listener = executions::add;
+        provider.addListener(listener);
+        long newVersion;
+        try {
+            newVersion = studentService.patchStudent(saved.getId(), version, StudentPatch.name("Patched Name"));
+        } finally {
+            provider.removeListener(listener);
+        }
+
+        assertEquals(1, executions.size(), "Executions: " + executions);
+        String sql = executions.get(0).sql();
+        assertTrue(sql.startsWith("update students"), sql);
+        assertFalse(sql.contains("student_age"), sql);
+        assertEquals(version + 1, newVersion);
+
+        Student patched = studentService.getStudentById(saved.getId());
+        assertEquals("Patched Name", patched.getName());
+        assertEquals(20, patched.getAge());
+        assertEquals(newVersion, patched.getVersion());
+
+        //старая версия: кто-то уже изменил студента
+        assertThrows(StaleObjectStateException.class,
+                () -> studentService.patchStudent(saved.getId(), version, StudentPatch.age(30)));
+        assertEquals(20, studentService.getStudentById(saved.getId()).getAge());
+
+        studentService.patchStudent(saved.getId(), newVersion, StudentPatch.age(30));
+        assertEquals(30, studentService.getStudentById(saved.getId()).getAge());
+
+        studentService.deleteStudent(saved.getId());
+    }
+
+    @Test
+    @DisplayName("Изменение устаревшей копии студента через merge не затирает более новые изменения")
+    public void testUpdateStaleStudentFails() {
+        Student saved = studentService.saveStudent(new Student("Versioned", 20, null));
+        Student first = studentService.getStudentById(saved.getId());
+        Student second = studentService.getStudentById(saved.getId());
+
+        first.setName("First");
+        studentService.updateStudent(first);
+        second.setName("Second");
+        assertThrows(OptimisticLockException.class, () -> studentService.updateStudent(second));
+        assertEquals("First", studentService.getStudentById(saved.getId()).getName());
+
+        studentService.deleteStudent(saved.getId());
+    }
+
+    @Test
+    @DisplayName("Промах и попадание в кэш возвращают студента одного и того же вида")
+    public void testCacheHitAndMissReturnSameState() {
+        TransactionHelper transactionHelper = context.getBean(TransactionHelper.class);
+        Student saved = transactionHelper.executeInTransaction(session -> {
+            Group group = new Group("CACHE-1", 2030L);
+            session.persist(group);
+            Course course = new Course("Cache course", "cache");
+            session.persist(course);
+            Student student = new Student("Cache Shape", 21, group);
+            student.getCourseList().add(course);
+            session.persist(student);
+            return student;
+        });
+        context.getBean(ProfileService.class).saveProfile(new Profile("bio", LocalDateTime.now(), saved));
+        EntitySnapshotCaches caches = context.getBean(EntitySnapshotCaches.class);
+        caches.students().invalidate(saved.getId());
+        long missesBefore = caches.students().getStats().misses();
+
+        Student miss = studentService.getStudentById(saved.getId());
+        Student hit = studentService.getStudentById(saved.getId());
+
+        assertEquals(missesBefore + 1, caches.students().getStats().misses());
+        assertEquals(describe(miss), describe(hit));
+        assertEquals("CACHE-1", hit.getGroup().getNumber());
+        assertEquals(1, hit.getCourseList().size());
+        //профиля в снимке нет: его last seen меняется в обход кэша
+        assertNull(hit.getProfile());
+
+        studentService.deleteStudent(saved.getId());
+    }
+
+    private static String describe(Student student) {
+        Group group = student.getGroup();
+        String groupState = group == null ? "null" : List.of(group.getId(), group.getNumber(),
+                group.getGraduationYear(), String.valueOf(group.getStudentList())).toString();
+        List<String> courses = student.getCourseList().stream()
+                .map(course -> List.of(course.getId(), course.getName(), course.getType()).toString())
+                .toList();
+        return List.of(student.getId(), student.getVersion(), student.getName(), student.getAge(), groupState,
+                courses, String.valueOf(student.getProfile())).toString();
+    }
+}
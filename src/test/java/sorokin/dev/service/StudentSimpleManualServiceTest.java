@@ -1,12 +1,15 @@
 package sorokin.dev.service;
 
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
 import sorokin.dev.config.TestHibernateConfiguration;
 import sorokin.dev.entity.Student;
+import sorokin.dev.session.SessionLeakExtension;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+@ExtendWith(SessionLeakExtension.class)
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 class StudentSimpleManualServiceTest {
 
@@ -50,4 +53,16 @@ class StudentSimpleManualServiceTest {
         var all = studentService.findAll();
         assertEquals(2, all.size());
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Ошибка при обновлении: транзакция откатывается, сессия закрывается")
+    public void testFailedUpdateClosesSession() {
+        Student saved = studentService.saveStudent(new Student("Update Student", 23, null));
+        saved.setName(null);
+
+        assertThrows(RuntimeException.class, () -> studentService.updateStudent(saved));
+
+        assertEquals("Update Student", studentService.getStudentById(saved.getId()).getName());
+        studentService.deleteStudent(saved.getId());
+    }
+}
@@ -0,0 +1,158 @@
+package sorokin.dev.session;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import sorokin.dev.config.TestHibernateConfiguration;
+import sorokin.dev.entity.Course;
+import sorokin.dev.utils.TransactionHelper;
+import sorokin.dev.utils.TransactionOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SessionLeakExtension.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class PersistenceContextGuardTest {
+
+    private AnnotationConfigApplicationContext context;
+    private SessionFactory sessionFactory;
+    private TransactionHelper transactionHelper;
+    private PersistenceContextGuard guard;
+    private final List<PersistenceContextReport> reports = new CopyOnWriteArrayList<>();
+    private final Consumer<PersistenceContextReport> listener = reports::add;
+
+    @BeforeAll
+    public void setup() {
+        context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", Map.of(
+                "persistence-context.warn-threshold", "30",
+                "persistence-context.batch-size", "20"
+        )));
+        context.register(TestHibernateConfiguration.class, TransactionHelper.class);
+        context.refresh();
+        sessionFactory = context.getBean(SessionFactory.class);
+        transactionHelper = context.getBean(TransactionHelper.class);
+        guard = context.getBean(PersistenceContextGuard.class);
+        guard.addReportListener(listener);
+    }
+
+    @AfterAll
+    public void tearDown() {
+        guard.removeReportListener(listener);
+        context.close();
+    }
+
+    @BeforeEach
+    public void clear() {
+        reports.clear();
+    }
+
+    @Test
+    @DisplayName("После каждой транзакции - отчет с наибольшим размером сессии")
+    public void testPeakReportedPerTransaction() {
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            for (int i = 0; i < 5; i++) {
+                session.persist(new Course("Peak " + i, "peak"));
+            }
+            session.getTransaction().commit();
+
+            //сессия та же: в следующей транзакции в ней уже 5 сущностей
+            session.beginTransaction();
+            session.persist(new Course("Peak 5", "peak"));
+            session.getTransaction().rollback();
+        }
+
+        assertEquals(2, reports.size(), "Reports: " + reports);
+        assertEquals(5, reports.get(0).peakManagedEntities());
+        assertTrue(reports.get(0).committed());
+        assertEquals(6, reports.get(1).peakManagedEntities());
+        assertFalse(reports.get(1).committed());
+    }
+
+    @Test
+    @DisplayName("Пакетная обработка: сессия не растет больше batch-size, все строки сохранены")
+    public void testBatchModeClearsSession() {
+        long warningsBefore = guard.getStats().warnings();
+        int[] maxManaged = {0};
+        transactionHelper.executeInTransaction(TransactionOptions.DEFAULT.inBatchMode(), session -> {
+            for (int i = 0; i < 100; i++) {
+                session.persist(new Course("Batch " + i, "guard-batch"));
+                int managed = ((SessionImplementor) session).getPersistenceContextInternal()
+                        .getNumberOfManagedEntities();
+                maxManaged[0] = Math.max(maxManaged[0], managed);
+            }
+            return null;
+        });
+
+        assertEquals(20, maxManaged[0]);
+        assertEquals(1, reports.size(), "Reports: " + reports);
+        assertEquals(20, reports.get(0).peakManagedEntities());
+        assertEquals(4, reports.get(0).autoClears());
+        assertEquals(warningsBefore, guard.getStats().warnings());
+        Long saved = transactionHelper.executeInTransaction(session -> {
+            return session.createQuery("select count(c) from Course c where c.type = 'guard-batch'", Long.class)
+                    .getSingleResult();
+        });
+        assertEquals(100, saved);
+    }
+
+    @Test
+    @DisplayName("Без пакетной обработки сессия растет, переход через warn-threshold - одно предупреждение")
+    public void testWarningWithoutBatchMode() {
+        long warningsBefore = guard.getStats().warnings();
+        transactionHelper.executeInTransaction(session -> {
+            for (int i = 0; i < 50; i++) {
+                session.persist(new Course("Warn " + i, "guard-warn"));
+            }
+            return null;
+        });
+
+        assertEquals(warningsBefore + 1, guard.getStats().warnings());
+        assertEquals(50, reports.get(0).peakManagedEntities());
+        assertEquals(0, reports.get(0).autoClears());
+        assertTrue(guard.getStats().maxPeakEntities() >= 50);
+    }
+
+    @Test
+    @DisplayName("Сессию закрыли посреди транзакции - она снимается с учета, отчет без коммита")
+    public void testSessionClosedMidTransactionIsReleased() {
+        PersistenceContextGuardListener listener = guardListener();
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            session.persist(new Course("Abandoned", "guard-abandoned"));
+            assertEquals(1, listener.trackedSessions());
+        }
+
+        assertEquals(0, listener.trackedSessions());
+        assertEquals(1, reports.size(), "Reports: " + reports);
+        assertEquals(1, reports.get(0).peakManagedEntities());
+        assertFalse(reports.get(0).committed());
+    }
+
+    private PersistenceContextGuardListener guardListener() {
+        EventListenerRegistry registry = sessionFactory.unwrap(SessionFactoryImplementor.class).getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        List<PersistenceContextGuardListener> found = new ArrayList<>();
+        registry.getEventListenerGroup(EventType.POST_LOAD).fireEventOnEachListener(found,
+                (listener, result) -> {
+                    if (listener instanceof PersistenceContextGuardListener guardListener) {
+                        result.add(guardListener);
+                    }
+                });
+        return found.get(0);
+    }
+}
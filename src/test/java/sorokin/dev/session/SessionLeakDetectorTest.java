@@ -0,0 +1,134 @@
+package sorokin.dev.session;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import sorokin.dev.config.TestHibernateConfiguration;
+import sorokin.dev.entity.Student;
+import sorokin.dev.utils.TransactionHelper;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SessionLeakExtension.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class SessionLeakDetectorTest {
+
+    private AnnotationConfigApplicationContext context;
+    private SessionFactory sessionFactory;
+    private SessionLeakDetector detector;
+
+    @BeforeAll
+    public void setup() {
+        context = new AnnotationConfigApplicationContext();
+        //порог 0: утечка - любая сессия, открытая к моменту проверки
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", Map.of(
+                "session.leak.threshold-ms", "0"
+        )));
+        context.register(TestHibernateConfiguration.class, TransactionHelper.class);
+        context.refresh();
+        sessionFactory = context.getBean(SessionFactory.class);
+        detector = context.getBean(SessionLeakDetector.class);
+    }
+
+    @AfterAll
+    public void tearDown() {
+        context.close();
+    }
+
+    @Test
+    @DisplayName("Обертка SessionFactory: открытая сессия на учете со стеком открытия, закрытая - снята с учета")
+    public void testOpenSessionTracked() {
+        assertInstanceOf(SessionFactoryImplementor.class, sessionFactory);
+        assertNotNull(sessionFactory.unwrap(SessionFactoryImplementor.class).getJdbcServices());
+
+        Session session = sessionFactory.openSession();
+        StatelessSession statelessSession = sessionFactory.openStatelessSession();
+        try {
+            session.get(Student.class, 1L);
+            List<OpenSession> openSessions = detector.getOpenSessions();
+            assertEquals(2, openSessions.size(), "Open sessions: " + openSessions);
+            OpenSession openSession = openSessions.get(0);
+            assertEquals("sessionFactory", openSession.sessionFactoryName());
+            assertEquals(Thread.currentThread().getName(), openSession.thread());
+            //session.get без транзакции: соединение возвращается в пул сразу после запроса
+            assertFalse(openSession.holdsConnection());
+            assertTrue(Arrays.stream(openSession.allocationSite().getStackTrace())
+                            .anyMatch(frame -> frame.getMethodName().equals("testOpenSessionTracked")),
+                    "Allocation site: " + Arrays.toString(openSession.allocationSite().getStackTrace()));
+        } finally {
+            statelessSession.close();
+            session.close();
+        }
+        assertTrue(detector.getOpenSessions().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Сессия, открытая дольше порога, записывается в лог один раз")
+    public void testLeakReportedOnce() {
+        long reportedBefore = detector.getLeaksReported();
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            session.get(Student.class, 1L);
+            assertTrue(detector.getOpenSessions().get(0).holdsConnection());
+
+            assertEquals(1, detector.reportLeaks());
+            assertEquals(0, detector.reportLeaks());
+            session.getTransaction().rollback();
+        }
+        assertEquals(reportedBefore + 1, detector.getLeaksReported());
+    }
+
+    @Test
+    @DisplayName("Сессии TransactionHelper не остаются открытыми")
+    public void testTransactionHelperSessionsClosed() {
+        TransactionHelper transactionHelper = context.getBean(TransactionHelper.class);
+        transactionHelper.executeInTransaction(session -> {
+            session.persist(new Student("Leak Student", 20, null));
+        });
+        Consumer<Session> failingAction = session -> {
+            session.persist(new Student("Leak Student", 21, null));
+            throw new IllegalStateException("rollback");
+        };
+        assertThrows(IllegalStateException.class, () -> transactionHelper.executeInTransaction(failingAction));
+
+        assertTrue(detector.getOpenSessions().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Незакрытая сессия, которую собрал сборщик мусора, записывается как утечка со стеком открытия")
+    public void testCollectedSessionReportedAsLeak() throws InterruptedException {
+        long reportedBefore = detector.getLeaksReported();
+        openAndAbandonSession();
+
+        List<OpenSession> leaks = detector.drainCollectedLeaks();
+        for (int i = 0; i < 50 && leaks.isEmpty(); i++) {
+            System.gc();
+            Thread.sleep(20);
+            leaks = detector.drainCollectedLeaks();
+        }
+
+        //детектор сессию не удерживает, но утечку не теряет
+        assertTrue(detector.getOpenSessions().isEmpty());
+        assertEquals(1, leaks.size(), "Collected leaks: " + leaks);
+        assertEquals(reportedBefore + 1, detector.getLeaksReported());
+        assertTrue(Arrays.stream(leaks.get(0).allocationSite().getStackTrace())
+                        .anyMatch(frame -> frame.getMethodName().equals("openAndAbandonSession")),
+                "Allocation site: " + Arrays.toString(leaks.get(0).allocationSite().getStackTrace()));
+    }
+
+    private void openAndAbandonSession() {
+        //сессия без транзакции: соединение после запроса вернулось в пул, сессию держит только детектор
+        Session session = sessionFactory.openSession();
+        session.get(Student.class, 1L);
+    }
+}
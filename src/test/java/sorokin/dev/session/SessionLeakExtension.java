@@ -0,0 +1,80 @@
+package sorokin.dev.session;
+
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ExtensionConfigurationException;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.opentest4j.AssertionFailedError;
+import org.springframework.context.ApplicationContext;
+
+import java.lang.reflect.Field;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Роняет тест, после которого осталась открытой сессия, открытая во время теста, - или такую сессию уже собрал
+ * сборщик мусора без close().
+ * Подключается к тестовому классу с контекстом Spring:
+ * <pre>
+ * &#64;ExtendWith(SessionLeakExtension.class)
+ * </pre>
+ * Детектор берется из контекста, который тест хранит в поле типа ApplicationContext (создается в &#64;BeforeAll).
+ * В TestHibernateConfiguration стек открытия записывается для каждой сессии - он приложен к ошибке.
+ */
+public class SessionLeakExtension implements BeforeEachCallback, AfterEachCallback {
+
+    private static final ExtensionContext.Namespace NAMESPACE = ExtensionContext.Namespace.create(
+            SessionLeakExtension.class);
+    private static final String TEST_STARTED_AT = "testStartedAt";
+
+    @Override
+    public void beforeEach(ExtensionContext context) {
+        context.getStore(NAMESPACE).put(TEST_STARTED_AT, Instant.now());
+    }
+
+    @Override
+    public void afterEach(ExtensionContext context) {
+        Instant testStartedAt = context.getStore(NAMESPACE).get(TEST_STARTED_AT, Instant.class);
+        SessionLeakDetector detector = detector(context);
+        List<OpenSession> leaked = Stream.concat(
+                        detector.drainCollectedLeaks().stream(),
+                        detector.getOpenSessions().stream())
+                .filter(session -> !session.openedAt().isBefore(testStartedAt))
+                .toList();
+        if (leaked.isEmpty()) {
+            return;
+        }
+        AssertionFailedError error = new AssertionFailedError(
+                "%s left %s open session(s): %s".formatted(context.getDisplayName(), leaked.size(), leaked));
+        leaked.stream()
+                .map(OpenSession::allocationSite)
+                .filter(allocationSite -> allocationSite != null)
+                .forEach(error::addSuppressed);
+        throw error;
+    }
+
+    private static SessionLeakDetector detector(ExtensionContext context) {
+        Object testInstance = context.getRequiredTestInstance();
+        for (Class<?> type = testInstance.getClass(); type != Object.class; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                if (!ApplicationContext.class.isAssignableFrom(field.getType())) {
+                    continue;
+                }
+                field.setAccessible(true);
+                ApplicationContext applicationContext;
+                try {
+                    applicationContext = (ApplicationContext) field.get(testInstance);
+                } catch (IllegalAccessException e) {
+                    throw new ExtensionConfigurationException("Cannot read " + field, e);
+                }
+                if (applicationContext == null) {
+                    throw new ExtensionConfigurationException(field + " is not initialized");
+                }
+                return applicationContext.getBean(SessionLeakDetector.class);
+            }
+        }
+        throw new ExtensionConfigurationException(
+                testInstance.getClass().getName() + " has no ApplicationContext field for SessionLeakExtension");
+    }
+}
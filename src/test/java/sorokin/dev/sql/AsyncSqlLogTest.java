@@ -0,0 +1,111 @@
+package sorokin.dev.sql;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import sorokin.dev.config.TestHibernateConfiguration;
+import sorokin.dev.entity.Student;
+import sorokin.dev.service.EntitySnapshotCaches;
+import sorokin.dev.service.StudentService;
+import sorokin.dev.session.SessionLeakExtension;
+import sorokin.dev.utils.TransactionHelper;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SessionLeakExtension.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class AsyncSqlLogTest {
+
+    private AnnotationConfigApplicationContext context;
+    private AsyncSqlLog asyncSqlLog;
+    private StudentService studentService;
+    private final List<String> lines = new CopyOnWriteArrayList<>();
+
+    @BeforeAll
+    public void setup() {
+        context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", Map.of(
+                "sql.log.sample-rate", "1.0",
+                "sql.log.max-per-second", "100000",
+                "sql.log.include-caller", "true"
+        )));
+        context.register(
+                TestHibernateConfiguration.class,
+                TransactionHelper.class,
+                EntitySnapshotCaches.class,
+                StudentService.class,
+                AsyncSqlLog.class
+        );
+        context.registerBean(SqlLogSink.class, () -> line -> lines.add(line.toString()));
+        context.refresh();
+        asyncSqlLog = context.getBean(AsyncSqlLog.class);
+        studentService = context.getBean(StudentService.class);
+    }
+
+    @AfterAll
+    public void tearDown() {
+        context.close();
+    }
+
+    @Test
+    @DisplayName("Запрос пишется фоновым потоком одной строкой JSON с параметрами и методом сервиса")
+    public void testStructuredLine() throws InterruptedException {
+        studentService.saveStudent(new Student("Json \"Quoted\" Student", 44, null));
+        assertTrue(asyncSqlLog.awaitWritten(5000));
+
+        String insert = lines.stream()
+                .filter(line -> line.contains("\"sql\":\"insert into students"))
+                .filter(line -> line.contains("Json \\\"Quoted\\\" Student"))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("Lines: " + lines));
+        assertTrue(insert.startsWith("{\"ts\":\""), insert);
+        assertTrue(insert.contains("\"failed\":false"), insert);
+        assertTrue(insert.contains("\"binds\":[44,"), insert);
+        assertTrue(insert.contains("\"caller\":\"StudentService."), insert);
+        assertTrue(insert.endsWith("}"), insert);
+    }
+
+    @Test
+    @DisplayName("Выборка и ограничение в секунду отбрасывают запросы, ошибочные пишутся всегда")
+    public void testSamplingAndRateLimit() throws InterruptedException {
+        List<String> sampledLines = new CopyOnWriteArrayList<>();
+        TimingConnectionProvider provider = new TimingConnectionProvider();
+        AsyncSqlLog sampled = new AsyncSqlLog(provider, line -> sampledLines.add(line.toString()),
+                0.0001, 2, 16, false);
+        try {
+            SqlExecution ok = new SqlExecution("select 1", List.of(), 1, Duration.ofMillis(1), false);
+            SqlExecution failed = new SqlExecution("select broken", List.of("x".repeat(500)), 1,
+                    Duration.ofMillis(1), true);
+            //так же, как TimingConnectionProvider: onExecution - только если wants согласился
+            for (int i = 0; i < 1000; i++) {
+                if (sampled.wants(false, ok.duration().toNanos())) {
+                    sampled.onExecution(ok);
+                }
+            }
+            for (int i = 0; i < 10; i++) {
+                if (sampled.wants(true, failed.duration().toNanos())) {
+                    sampled.onExecution(failed);
+                }
+            }
+            assertTrue(sampled.awaitWritten(5000));
+
+            SqlLogStats stats = sampled.getStats();
+            assertTrue(stats.sampledOut() > 900, "Stats: " + stats);
+            //все 10 ошибочных прошли выборку, но в секунду пишется не больше 2 строк
+            //(на границе секунды - до 4)
+            assertTrue(stats.written() <= 4, "Stats: " + stats);
+            assertTrue(stats.rateLimited() >= 6, "Stats: " + stats);
+            assertTrue(sampledLines.stream().anyMatch(line -> line.contains("\"failed\":true")));
+            //длинный параметр обрезан
+            assertTrue(sampledLines.stream().allMatch(line -> line.length() < 300), "Lines: " + sampledLines);
+        } finally {
+            sampled.destroy();
+        }
+    }
+}
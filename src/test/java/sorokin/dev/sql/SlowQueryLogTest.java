@@ -0,0 +1,129 @@
+package sorokin.dev.sql;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import sorokin.dev.config.TestHibernateConfiguration;
+import sorokin.dev.entity.Course;
+import sorokin.dev.entity.Student;
+import sorokin.dev.service.EntitySnapshotCaches;
+import sorokin.dev.service.StudentService;
+import sorokin.dev.session.SessionLeakExtension;
+import sorokin.dev.utils.TransactionHelper;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SessionLeakExtension.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class SlowQueryLogTest {
+
+    private AnnotationConfigApplicationContext context;
+    private SlowQueryLog slowQueryLog;
+    private StudentService studentService;
+    private TimingConnectionProvider timingConnectionProvider;
+
+    @BeforeAll
+    public void setup() {
+        context = new AnnotationConfigApplicationContext();
+        //порог 0: в журнал попадает каждый запрос
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", Map.of(
+                "sql.slow.threshold-ms", "0",
+                "sql.slow.max-entries", "5"
+        )));
+        context.register(
+                TestHibernateConfiguration.class,
+                TransactionHelper.class,
+                EntitySnapshotCaches.class,
+                StudentService.class,
+                SlowQueryLog.class,
+                PgStatStatementsReporter.class
+        );
+        context.refresh();
+        slowQueryLog = context.getBean(SlowQueryLog.class);
+        studentService = context.getBean(StudentService.class);
+        timingConnectionProvider = context.getBean(TimingConnectionProvider.class);
+    }
+
+    @AfterAll
+    public void tearDown() {
+        context.close();
+    }
+
+    @BeforeEach
+    public void clear() {
+        slowQueryLog.clear();
+    }
+
+    @Test
+    @DisplayName("Запрос записывается с параметрами, временем и методом сервиса, который его выполнил")
+    public void testSlowQueryHasBindsAndCaller() {
+        studentService.saveStudent(new Student("Slow Student", 33, null));
+
+        SlowQuery insert = slowQueryLog.getSlowQueries().stream()
+                .filter(query -> query.sql().startsWith("insert into students"))
+                .findFirst()
+                .orElseThrow();
+        assertTrue(insert.binds().contains("Slow Student"), "Binds: " + insert.binds());
+        assertTrue(insert.binds().contains(33), "Binds: " + insert.binds());
+        assertTrue(insert.caller().startsWith("StudentService."), "Caller: " + insert.caller());
+        assertFalse(insert.failed());
+        assertNull(insert.plan());
+    }
+
+    @Test
+    @DisplayName("Журнал хранит только последние max-entries запросов")
+    public void testMaxEntries() {
+        for (int i = 0; i < 10; i++) {
+            studentService.saveStudent(new Student("Student " + i, 20, null));
+        }
+
+        List<SlowQuery> slowQueries = slowQueryLog.getSlowQueries();
+        assertEquals(5, slowQueries.size());
+        assertTrue(slowQueries.get(4).binds().contains("Student 9"));
+    }
+
+    @Test
+    @DisplayName("Слушатель видит и ошибочные запросы, и пачки JDBC batch")
+    public void testListenerSeesFailuresAndBatches() {
+        List<SqlExecution> executions = new CopyOnWriteArrayList<>();
+        SqlExecutionListener listener = executions::add;
+        timingConnectionProvider.addListener(listener);
+        try {
+            TransactionHelper transactionHelper = context.getBean(TransactionHelper.class);
+            transactionHelper.executeInTransaction(session -> {
+                //у Student @DynamicUpdate: такие UPDATE Hibernate не собирает в пачки, поэтому курсы
+                List<Course> courses = List.of(new Course("Batch 1", "batch"),
+                        new Course("Batch 2", "batch"), new Course("Batch 3", "batch"));
+                courses.forEach(session::persist);
+                session.flush();
+                //три UPDATE при следующем flush уходят одной пачкой
+                courses.forEach(course -> course.setType("batched"));
+            });
+            assertThrows(RuntimeException.class, () -> transactionHelper.executeInTransaction(session -> {
+                session.createNativeQuery("INSERT INTO students (name) VALUES (null)", Object.class)
+                        .executeUpdate();
+            }));
+        } finally {
+            timingConnectionProvider.removeListener(listener);
+        }
+
+        assertTrue(executions.stream().anyMatch(execution -> execution.sql().startsWith("update courses")
+                && execution.batchSize() == 3 && !execution.failed()), "Executions: " + executions);
+        assertTrue(executions.stream().anyMatch(execution -> execution.sql().startsWith("INSERT INTO students")
+                && execution.failed()), "Executions: " + executions);
+    }
+
+    @Test
+    @DisplayName("В H2 нет pg_stat_statements: отчет пустой")
+    public void testPgStatStatementsUnavailableOnH2() {
+        PgStatStatementsReporter reporter = context.getBean(PgStatStatementsReporter.class);
+
+        assertFalse(reporter.isAvailable());
+        assertTrue(reporter.getTopStatements(10).isEmpty());
+    }
+}
@@ -0,0 +1,77 @@
+package sorokin.dev.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    @DisplayName("Сверх лимита - отказ, медленная транзакция уменьшает лимит, быстрые под нагрузкой - увеличивают")
+    public void testAdditiveIncreaseMultiplicativeDecrease() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(OperationClass.WRITE,
+                4, 1, 5, 50, 0);
+
+        AdaptiveConcurrencyLimiter.Permit[] permits = new AdaptiveConcurrencyLimiter.Permit[4];
+        for (int i = 0; i < permits.length; i++) {
+            permits[i] = limiter.acquire();
+        }
+        ConcurrencyLimitExceededException exception = assertThrows(ConcurrencyLimitExceededException.class,
+                limiter::acquire);
+        assertEquals(OperationClass.WRITE, exception.getOperationClass());
+        assertEquals(4, exception.getLimit());
+
+        //быстрая, начатая при 4 из 4 - лимит 5 (max)
+        limiter.release(permits[3], false);
+        assertEquals(5, limiter.getStats().limit());
+        //оборвана таймаутом - 5 * 0.9 = 4
+        limiter.release(permits[1], true);
+        assertEquals(4, limiter.getStats().limit());
+        //медленная (дольше 50 мс) - 4 * 0.9 = 3
+        limiter.release(new AdaptiveConcurrencyLimiter.Permit(System.nanoTime() - TimeUnit.SECONDS.toNanos(1), 1),
+                false);
+        assertEquals(3, limiter.getStats().limit());
+
+        ConcurrencyLimiterStats stats = limiter.getStats();
+        assertEquals(1, stats.inFlight());
+        assertEquals(4, stats.accepted());
+        assertEquals(1, stats.rejected());
+        assertEquals(2, stats.decreases());
+    }
+
+    @Test
+    @DisplayName("Лимит не опускается ниже min и не растет без нагрузки")
+    public void testBounds() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(OperationClass.READ,
+                2, 2, 10, 50, 0);
+
+        limiter.release(limiter.acquire(), true);
+        assertEquals(2, limiter.getStats().limit());
+        assertEquals(0, limiter.getStats().decreases());
+
+        //одна транзакция при лимите 4 - загрузка меньше половины, лимит не растет
+        AdaptiveConcurrencyLimiter idle = new AdaptiveConcurrencyLimiter(OperationClass.READ, 4, 1, 10, 50, 0);
+        idle.release(idle.acquire(), false);
+        assertEquals(4, idle.getStats().limit());
+    }
+
+    @Test
+    @DisplayName("Транзакция сверх лимита ждет освободившегося места до queue-timeout")
+    public void testQueueing() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(OperationClass.WRITE,
+                1, 1, 1, 1000, 2000);
+        AdaptiveConcurrencyLimiter.Permit first = limiter.acquire();
+
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> second = CompletableFuture.supplyAsync(limiter::acquire);
+        Thread.sleep(100);
+        assertFalse(second.isDone());
+        limiter.release(first, false);
+
+        limiter.release(second.get(1, TimeUnit.SECONDS), false);
+        assertEquals(0, limiter.getStats().rejected());
+    }
+}
@@ -0,0 +1,113 @@
+package sorokin.dev.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongKeyedSnapshotCacheTest {
+
+    private static final SnapshotCodec<String> STRING_CODEC = new SnapshotCodec<>() {
+        @Override
+        public byte[] encode(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(byte[] snapshot) {
+            return new String(snapshot, StandardCharsets.UTF_8);
+        }
+    };
+
+    @Test
+    @DisplayName("Повторное чтение не вызывает загрузку, метрики считают попадания и промахи")
+    public void testReadThrough() {
+        LongKeyedSnapshotCache<String> cache = new LongKeyedSnapshotCache<>(STRING_CODEC, 10, 1024);
+        AtomicInteger loads = new AtomicInteger();
+        LongFunction<String> loader = id -> {
+            loads.incrementAndGet();
+            return "value-" + id;
+        };
+
+        assertEquals("value-1", cache.get(1, loader));
+        assertEquals("value-1", cache.get(1, loader));
+        assertNull(cache.get(2, id -> null));
+
+        CacheStats stats = cache.getStats();
+        assertEquals(1, loads.get());
+        assertEquals(1, stats.hits());
+        assertEquals(2, stats.misses());
+        assertEquals(1, stats.entries());
+        assertEquals(7, stats.snapshotBytes());
+    }
+
+    @Test
+    @DisplayName("Инвалидация удаляет значение, остальные ключи цепочки остаются доступны")
+    public void testInvalidate() {
+        LongKeyedSnapshotCache<String> cache = new LongKeyedSnapshotCache<>(STRING_CODEC, 1000, 1 << 20);
+        for (long id = 1; id <= 1000; id++) {
+            cache.get(id, Long::toString);
+        }
+        for (long id = 1; id <= 1000; id += 2) {
+            cache.invalidate(id);
+        }
+
+        assertEquals(500, cache.getStats().entries());
+        for (long id = 2; id <= 1000; id += 2) {
+            assertEquals(Long.toString(id), cache.get(id, key -> fail("Must be cached: " + key)));
+        }
+        assertEquals("reloaded", cache.get(1, id -> "reloaded"));
+    }
+
+    @Test
+    @DisplayName("При переполнении вытесняются записи, которые не читали")
+    public void testClockEviction() {
+        LongKeyedSnapshotCache<String> cache = new LongKeyedSnapshotCache<>(STRING_CODEC, 3, 1024);
+        cache.get(1, Long::toString);
+        cache.get(2, Long::toString);
+        cache.get(3, Long::toString);
+        //1 и 3 прочитали еще раз - у них есть бит "использовалась"
+        cache.get(1, Long::toString);
+        cache.get(3, Long::toString);
+
+        cache.get(4, Long::toString);
+
+        assertEquals(1, cache.getStats().evictions());
+        assertEquals(3, cache.getStats().entries());
+        assertEquals("1", cache.get(1, id -> fail("Must be cached: " + id)));
+        assertEquals("3", cache.get(3, id -> fail("Must be cached: " + id)));
+        assertEquals("2-reloaded", cache.get(2, id -> "2-reloaded"));
+    }
+
+    @Test
+    @DisplayName("Размер кэша ограничен суммой байт снимков")
+    public void testMaxBytes() {
+        LongKeyedSnapshotCache<String> cache = new LongKeyedSnapshotCache<>(STRING_CODEC, 100, 10);
+        cache.get(1, id -> "12345");
+        cache.get(2, id -> "12345");
+        cache.get(3, id -> "12345");
+        cache.get(4, id -> "too long for the cache");
+
+        CacheStats stats = cache.getStats();
+        assertEquals(2, stats.entries());
+        assertEquals(10, stats.snapshotBytes());
+    }
+
+    @Test
+    @DisplayName("Значение, загруженное во время инвалидации, в кэш не попадает")
+    public void testInvalidateDuringLoad() {
+        LongKeyedSnapshotCache<String> cache = new LongKeyedSnapshotCache<>(STRING_CODEC, 10, 1024);
+
+        cache.get(1, id -> {
+            //пока читали из БД, другой поток изменил запись и сбросил кэш
+            cache.invalidate(id);
+            return "stale";
+        });
+
+        assertEquals("fresh", cache.get(1, id -> "fresh"));
+    }
+}
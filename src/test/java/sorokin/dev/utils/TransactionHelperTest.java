@@ -0,0 +1,235 @@
+package sorokin.dev.utils;
+
+import jakarta.persistence.LockModeType;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.exception.LockAcquisitionException;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import sorokin.dev.config.TestHibernateConfiguration;
+import sorokin.dev.entity.Course;
+import sorokin.dev.session.SessionLeakExtension;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(SessionLeakExtension.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class TransactionHelperTest {
+
+    private static final TransactionOptions TIMEOUT_300_MS = TransactionOptions.DEFAULT.withTimeout(Duration.ofMillis(300));
+
+    private AnnotationConfigApplicationContext context;
+    private TransactionHelper transactionHelper;
+    private SessionFactory sessionFactory;
+
+    @BeforeAll
+    public void setup() {
+        context = new AnnotationConfigApplicationContext(
+                TestHibernateConfiguration.class,
+                TransactionHelper.class
+        );
+        transactionHelper = context.getBean(TransactionHelper.class);
+        sessionFactory = context.getBean(SessionFactory.class);
+    }
+
+    @AfterAll
+    public void tearDown() {
+        context.close();
+    }
+
+    @Test
+    @DisplayName("Запросу выставляется таймаут не больше оставшегося до дедлайна времени")
+    public void testQueryTimeoutFromDeadline() {
+        Integer timeout = transactionHelper.executeInTransaction(
+                TransactionOptions.DEFAULT.withTimeout(Duration.ofSeconds(5)),
+                session -> {
+                    return session.createQuery("SELECT c FROM Course c", Course.class).getTimeout();
+                });
+
+        assertNotNull(timeout);
+        assertTrue(timeout > 0 && timeout <= 5, "Timeout: " + timeout);
+        //без options таймаута нет
+        Integer noTimeout = transactionHelper.executeInTransaction(session -> {
+            return session.createQuery("SELECT c FROM Course c", Course.class).getTimeout();
+        });
+        assertNull(noTimeout);
+    }
+
+    @Test
+    @DisplayName("Долгий запрос отменяется в момент дедлайна, транзакция откатывается")
+    public void testLongQueryCancelledAtDeadline() {
+        long start = System.nanoTime();
+        DeadlineExceededException exception = assertThrows(DeadlineExceededException.class, () ->
+                transactionHelper.executeInTransaction(TIMEOUT_300_MS, session -> {
+                    session.persist(new Course("Deadline course", "deadline"));
+                    return session.createNativeQuery("""
+                                    WITH RECURSIVE t(n) AS (SELECT 1 UNION ALL SELECT n + 1 FROM t WHERE n < 100000000)
+                                    SELECT count(*) FROM t
+                                    """, Long.class)
+                            .getSingleResult();
+                }));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(Duration.ofMillis(300), exception.getTimeout());
+        assertTrue(elapsedMillis < 3000, "Elapsed: " + elapsedMillis);
+        assertEquals(0, countCourses("deadline"));
+    }
+
+    @Test
+    @DisplayName("Ожидание блокировки ограничено дедлайном")
+    public void testLockWaitBoundedByDeadline() throws Exception {
+        Course course = transactionHelper.executeInTransaction(session -> {
+            Course locked = new Course("Locked course", "locked");
+            session.persist(locked);
+            return locked;
+        });
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> holder = CompletableFuture.runAsync(() -> transactionHelper.executeInTransaction(session -> {
+            session.find(Course.class, course.getId(), LockModeType.PESSIMISTIC_WRITE);
+            locked.countDown();
+            await(release);
+        }));
+        try {
+            assertTrue(locked.await(5, TimeUnit.SECONDS));
+            long start = System.nanoTime();
+            assertThrows(DeadlineExceededException.class, () -> transactionHelper.executeInTransaction(TIMEOUT_300_MS,
+                    session -> {
+                        return session.find(Course.class, course.getId(), LockModeType.PESSIMISTIC_WRITE);
+                    }));
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(elapsedMillis < 900, "Elapsed: " + elapsedMillis);
+        } finally {
+            release.countDown();
+            holder.get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    @DisplayName("Работа, закончившаяся после дедлайна, не коммитится")
+    public void testNoCommitAfterDeadline() {
+        assertThrows(DeadlineExceededException.class, () -> transactionHelper.executeInTransaction(TIMEOUT_300_MS,
+                session -> {
+                    session.persist(new Course("Late course", "late"));
+                    sleep(400);
+                }));
+
+        assertEquals(0, countCourses("late"));
+    }
+
+    @Test
+    @DisplayName("Записи сверх лимита получают отказ, а у чтений свой лимит")
+    public void testConcurrencyLimitPerOperationClass() throws Exception {
+        //лимит 1 на класс, без ожидания места
+        TransactionHelper limited = new TransactionHelper(sessionFactory, 1, 1, 1, 0, 500, 1000);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            CompletableFuture<Void> holder = CompletableFuture.runAsync(() -> limited.executeInTransaction(session -> {
+                started.countDown();
+                await(release);
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            assertThrows(ConcurrencyLimitExceededException.class, () -> limited.executeInTransaction(session -> {
+                session.persist(new Course("Rejected course", "rejected"));
+            }));
+            Long courses = limited.executeInTransaction(TransactionOptions.DEFAULT.forOperation(OperationClass.READ),
+                    session -> {
+                        return session.createQuery("SELECT count(c) FROM Course c", Long.class).getSingleResult();
+                    });
+            assertNotNull(courses);
+
+            release.countDown();
+            holder.get(5, TimeUnit.SECONDS);
+            assertEquals(0, countCourses("rejected"));
+            ConcurrencyLimiterStats writes = limited.getLimiterStats().get(OperationClass.WRITE);
+            assertEquals(1, writes.accepted());
+            assertEquals(1, writes.rejected());
+            assertEquals(0, writes.inFlight());
+            assertEquals(1, limited.getLimiterStats().get(OperationClass.READ).accepted());
+        } finally {
+            release.countDown();
+            limited.destroy();
+        }
+    }
+
+    @Test
+    @DisplayName("Ошибка сериализации (40001) повторяет всю транзакцию, другие ошибки - нет")
+    public void testRetryOnSerializationFailure() {
+        TransactionOptions retrying = TransactionOptions.DEFAULT
+                .withRetry(new RetryPolicy(3, Duration.ofMillis(5), Duration.ofMillis(20)));
+        AtomicInteger attempts = new AtomicInteger();
+
+        transactionHelper.executeInTransaction(retrying, session -> {
+            session.persist(new Course("Retried course", "retried"));
+            if (attempts.incrementAndGet() < 3) {
+                session.flush();
+                throw new LockAcquisitionException("could not serialize access",
+                        new SQLException("could not serialize access due to concurrent update", "40001"));
+            }
+        });
+        assertEquals(3, attempts.get());
+        //первые две попытки откатились
+        assertEquals(1, countCourses("retried"));
+
+        attempts.set(0);
+        Consumer<Session> failing = session -> {
+            attempts.incrementAndGet();
+            throw new IllegalArgumentException("No such account");
+        };
+        assertThrows(IllegalArgumentException.class, () -> transactionHelper.executeInTransaction(retrying, failing));
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    @DisplayName("Уровень изоляции действует только на свою транзакцию")
+    public void testIsolationLevel() {
+        Integer isolation = transactionHelper.executeInTransaction(
+                TransactionOptions.DEFAULT.withIsolation(TransactionIsolation.SERIALIZABLE),
+                session -> {
+                    return session.doReturningWork(Connection::getTransactionIsolation);
+                });
+        assertEquals(Connection.TRANSACTION_SERIALIZABLE, isolation);
+
+        //соединение вернулось в пул с прежним уровнем
+        Integer defaultIsolation = transactionHelper.executeInTransaction(session -> {
+            return session.doReturningWork(Connection::getTransactionIsolation);
+        });
+        assertEquals(Connection.TRANSACTION_READ_COMMITTED, defaultIsolation);
+    }
+
+    private long countCourses(String type) {
+        return transactionHelper.executeInTransaction(session -> {
+            return session.createQuery("SELECT count(c) FROM Course c WHERE c.type = :type", Long.class)
+                    .setParameter("type", type)
+                    .getSingleResult();
+        });
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}